@@ -0,0 +1,212 @@
+package io.penguinstats.benchmark;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+import io.penguinstats.enums.DropMatrixElementType;
+import io.penguinstats.enums.DropType;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.Bounds;
+import io.penguinstats.model.Drop;
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.DropPattern;
+import io.penguinstats.model.PatternMatrixElement;
+import io.penguinstats.model.TimeRange;
+import io.penguinstats.model.TypedDrop;
+
+/**
+ * Synthetic data sized like production: 500 stages, 200 items and 4 servers.<br>
+ * Every stage has {@link #TIME_RANGES_PER_STAGE} consecutive time ranges, the last one still open, and drops
+ * {@link #ITEMS_PER_STAGE} items in each of them. The data is generated from a fixed seed, so that all runs measure the
+ * same input.
+ */
+public class BenchmarkData {
+
+	public static final int STAGE_NUM = 500;
+	public static final int ITEM_NUM = 200;
+	public static final int ITEMS_PER_STAGE = 10;
+	public static final int TIME_RANGES_PER_STAGE = 3;
+	public static final int TREND_STAGE_NUM = 100;
+	public static final int TREND_SECTION_NUM = 60;
+	public static final int PATTERNS_PER_STAGE = 20;
+
+	private static final long BASE_TIME = 1556668800000L;
+	private static final long RANGE_LENGTH = 30L * 86400000L;
+	private static final long TREND_INTERVAL = 86400000L;
+
+	private final Random random = new Random(20190501L);
+
+	private final List<String> stageIds = new ArrayList<>();
+	private final List<String> itemIds = new ArrayList<>();
+	private final Map<String, List<String>> itemIdsByStageId = new HashMap<>();
+
+	public BenchmarkData() {
+		for (int i = 0; i < STAGE_NUM; i++)
+			stageIds.add(String.format("main_%02d-%02d", i / 20, i % 20));
+		for (int i = 0; i < ITEM_NUM; i++)
+			itemIds.add(String.valueOf(30000 + i));
+		for (String stageId : stageIds) {
+			Set<String> picked = new HashSet<>();
+			while (picked.size() < ITEMS_PER_STAGE)
+				picked.add(itemIds.get(random.nextInt(ITEM_NUM)));
+			itemIdsByStageId.put(stageId, new ArrayList<>(picked));
+		}
+	}
+
+	public List<String> getStageIds() {
+		return stageIds;
+	}
+
+	public List<String> getItemIds() {
+		return itemIds;
+	}
+
+	public long getCurrentTime() {
+		return BASE_TIME + TIME_RANGES_PER_STAGE * RANGE_LENGTH - RANGE_LENGTH / 2;
+	}
+
+	/**
+	 * @Title: randomSubset
+	 * @Description: A random subset of the ids, like the stages open at a time or the ids given in a filter.
+	 * @param ids
+	 * @param size
+	 * @return Set<String>
+	 */
+	public Set<String> randomSubset(List<String> ids, int size) {
+		List<String> shuffled = new ArrayList<>(ids);
+		Collections.shuffle(shuffled, random);
+		return new HashSet<>(shuffled.subList(0, Math.min(size, shuffled.size())));
+	}
+
+	/**
+	 * @Title: generateRegularElements
+	 * @Description: One uncombined element for every (stage, item, time range) in the past or current matrix.
+	 * @param server
+	 * @param isPast
+	 * @return List<DropMatrixElement>
+	 */
+	public List<DropMatrixElement> generateRegularElements(Server server, boolean isPast) {
+		List<DropMatrixElement> result = new ArrayList<>();
+		for (String stageId : stageIds) {
+			for (int r = 0; r < TIME_RANGES_PER_STAGE; r++) {
+				boolean isCurrentRange = r == TIME_RANGES_PER_STAGE - 1;
+				if (isPast == isCurrentRange)
+					continue;
+				TimeRange range = getTimeRange(r);
+				int times = 1000 + random.nextInt(100000);
+				for (String itemId : itemIdsByStageId.get(stageId)) {
+					result.add(new DropMatrixElement(DropMatrixElementType.REGULAR, stageId, itemId,
+							random.nextInt(times), times, range.getStart(), range.getEnd(), server, isPast,
+							getCurrentTime() - random.nextInt(3600000)));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @Title: generateTrendElements
+	 * @Description: One element for every section of every (stage, item) in the trend.
+	 * @param server
+	 * @return List<DropMatrixElement>
+	 */
+	public List<DropMatrixElement> generateTrendElements(Server server) {
+		List<DropMatrixElement> result = new ArrayList<>();
+		long start = getCurrentTime() - TREND_SECTION_NUM * TREND_INTERVAL;
+		for (String stageId : stageIds.subList(0, TREND_STAGE_NUM)) {
+			for (String itemId : itemIdsByStageId.get(stageId)) {
+				for (int s = 0; s < TREND_SECTION_NUM; s++) {
+					int times = random.nextInt(5000);
+					long sectionStart = start + s * TREND_INTERVAL;
+					result.add(new DropMatrixElement(DropMatrixElementType.TREND, stageId, itemId,
+							times == 0 ? 0 : random.nextInt(times), times, sectionStart, sectionStart + TREND_INTERVAL,
+							server, null, getCurrentTime()));
+				}
+			}
+		}
+		return result;
+	}
+
+	public List<PatternMatrixElement> generatePatternElements(Server server) {
+		List<PatternMatrixElement> result = new ArrayList<>();
+		TimeRange range = getTimeRange(TIME_RANGES_PER_STAGE - 1);
+		for (String stageId : stageIds) {
+			List<String> stageItemIds = itemIdsByStageId.get(stageId);
+			int times = 1000 + random.nextInt(100000);
+			for (int p = 0; p < PATTERNS_PER_STAGE; p++) {
+				List<Drop> drops = new ArrayList<>();
+				for (int i = 0, num = 1 + random.nextInt(3); i < num; i++)
+					drops.add(new Drop(stageItemIds.get((p + i) % stageItemIds.size()), 1 + random.nextInt(3)));
+				result.add(new PatternMatrixElement(null, stageId, new DropPattern(drops), random.nextInt(times),
+						times, range.getStart(), range.getEnd(), server, getCurrentTime(), null));
+			}
+		}
+		return result;
+	}
+
+	public Map<String, TimeRange> generateTimeRangeMap() {
+		Map<String, TimeRange> result = new HashMap<>();
+		for (int r = 0; r < TIME_RANGES_PER_STAGE; r++) {
+			TimeRange range = getTimeRange(r);
+			result.put(range.getRangeID(), range);
+		}
+		return result;
+	}
+
+	/**
+	 * @Title: generateDropInfos
+	 * @Description: Drop infos of all stages in one server. In every time range, each item of the stage is a normal
+	 *               drop with bounds, and every drop type has a bound on the number of item kinds. The first time range
+	 *               is not accumulatable.
+	 * @param server
+	 * @return List<DropInfo>
+	 */
+	public List<DropInfo> generateDropInfos(Server server) {
+		List<DropInfo> result = new ArrayList<>();
+		for (String stageId : stageIds) {
+			for (int r = 0; r < TIME_RANGES_PER_STAGE; r++) {
+				String rangeID = getTimeRange(r).getRangeID();
+				boolean accumulatable = r > 0;
+				for (String itemId : itemIdsByStageId.get(stageId)) {
+					result.add(new DropInfo(null, server, stageId, itemId, DropType.NORMAL_DROP, rangeID,
+							new Bounds(0, 5), accumulatable, null));
+				}
+				for (DropType dropType : DropType.values()) {
+					result.add(new DropInfo(null, server, stageId, null, dropType, rangeID,
+							new Bounds(0, dropType == DropType.NORMAL_DROP ? ITEMS_PER_STAGE : 3), accumulatable,
+							null));
+				}
+			}
+		}
+		return result;
+	}
+
+	/**
+	 * @Title: generateValidDrops
+	 * @Description: A report which passes DropsValidator, with a few of the stage's items.
+	 * @param stageId
+	 * @return List<TypedDrop>
+	 */
+	public List<TypedDrop> generateValidDrops(String stageId) {
+		List<String> stageItemIds = itemIdsByStageId.get(stageId);
+		return new ArrayList<>(Arrays.asList(new TypedDrop(stageItemIds.get(0), 1, DropType.NORMAL_DROP),
+				new TypedDrop(stageItemIds.get(1), 2, DropType.NORMAL_DROP),
+				new TypedDrop(stageItemIds.get(2), 1, DropType.NORMAL_DROP)));
+	}
+
+	private TimeRange getTimeRange(int index) {
+		TimeRange range = new TimeRange(BASE_TIME + index * RANGE_LENGTH,
+				index == TIME_RANGES_PER_STAGE - 1 ? null : BASE_TIME + (index + 1) * RANGE_LENGTH);
+		range.setRangeID("range_" + index);
+		return range;
+	}
+
+}
@@ -0,0 +1,66 @@
+package io.penguinstats.benchmark;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.service.DropRuleService;
+import io.penguinstats.util.validator.DropRuleIndex;
+import io.penguinstats.util.validator.DropsValidator;
+import io.penguinstats.util.validator.ValidatorContext;
+
+/**
+ * Validating the drops of one report, with the drop rules of the opening stages already compiled.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DropsValidatorBenchmark {
+
+	private DropsValidator[] validators;
+
+	private int next;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		DropRuleIndex index = DropRuleIndex.build(data.generateDropInfos(Server.CN), data.generateTimeRangeMap(),
+				data.getCurrentTime(), Long.MAX_VALUE, 0L);
+		DropRuleService dropRuleService = Stubs.of(DropRuleService.class,
+				Collections.singletonMap("getDropRule", args -> index.getRule((String)args[1])));
+
+		List<String> stageIds = data.getStageIds();
+		validators = new DropsValidator[stageIds.size()];
+		for (int i = 0; i < validators.length; i++) {
+			String stageId = stageIds.get(i);
+			ValidatorContext context = new ValidatorContext().setStageId(stageId).setServer(Server.CN).setTimes(1)
+					.setDrops(data.generateValidDrops(stageId)).setTimestamp(data.getCurrentTime());
+			validators[i] = new DropsValidator(context, dropRuleService);
+		}
+		if (!validators[0].validate())
+			throw new IllegalStateException("The generated drops are expected to be valid");
+	}
+
+	@Benchmark
+	public boolean validate() {
+		DropsValidator validator = validators[next];
+		next = (next + 1) % validators.length;
+		return validator.validate();
+	}
+
+}
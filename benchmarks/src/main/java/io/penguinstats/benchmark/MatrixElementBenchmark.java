@@ -0,0 +1,83 @@
+package io.penguinstats.benchmark;
+
+import static java.util.stream.Collectors.groupingBy;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.util.DropMatrixElementUtil;
+import io.penguinstats.util.matrix.DropMatrixTable;
+import io.penguinstats.util.matrix.OrdinalDictionary;
+
+/**
+ * Combining the elements of the global matrix of one server, as done by the drop matrix tasks and the result APIs.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixElementBenchmark {
+
+	private Collection<List<DropMatrixElement>> uncombinedGroups;
+
+	private List<DropMatrixElement> pastElements;
+
+	private List<DropMatrixElement> currentElements;
+
+	private DropMatrixTable pastTable;
+
+	private DropMatrixTable currentTable;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		List<DropMatrixElement> uncombined = data.generateRegularElements(Server.CN, true);
+		uncombinedGroups = uncombined.stream()
+				.collect(groupingBy(el -> Arrays.asList(el.getStageId(), el.getItemId()))).values();
+
+		pastElements = new ArrayList<>();
+		uncombinedGroups.forEach(els -> pastElements.add(DropMatrixElementUtil.combineElements(els)));
+		currentElements = data.generateRegularElements(Server.CN, false);
+
+		OrdinalDictionary stages = new OrdinalDictionary();
+		OrdinalDictionary items = new OrdinalDictionary();
+		pastTable = DropMatrixTable.of(pastElements, stages, items);
+		currentTable = DropMatrixTable.of(currentElements, stages, items);
+	}
+
+	@Benchmark
+	public void combineElements(Blackhole blackhole) {
+		for (List<DropMatrixElement> elements : uncombinedGroups)
+			blackhole.consume(DropMatrixElementUtil.combineElements(elements));
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> combineElementLists() {
+		return DropMatrixElementUtil.combineElementLists(pastElements, currentElements);
+	}
+
+	@Benchmark
+	public DropMatrixTable combineTables() {
+		return DropMatrixTable.combine(pastTable, currentTable);
+	}
+
+}
@@ -0,0 +1,142 @@
+package io.penguinstats.benchmark;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.util.DropMatrixElementUtil;
+import io.penguinstats.util.matrix.DropMatrixTable;
+import io.penguinstats.util.matrix.OrdinalDictionary;
+
+/**
+ * The filters of GET /result/matrix. ResultUtil.filterStages and filterItems work on a copy of the cached elements
+ * through DropMatrixElementUtil.retainStages and retainItems, and ResultUtil.retainOpeningStages copies the elements of
+ * opening stages in one pass over the opening stage mask. The non-personal matrix is filtered on the ordinals of the
+ * in-memory DropMatrixTable.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MatrixFilterBenchmark {
+
+	private static final int OPENING_STAGE_NUM = 150;
+	private static final int FILTER_SIZE = 20;
+
+	private List<DropMatrixElement> elements;
+
+	private Set<String> openingStages;
+
+	private Set<String> stageFilter;
+
+	private Set<String> itemFilter;
+
+	private OrdinalDictionary stages;
+
+	private DropMatrixTable table;
+
+	private BitSet openingStageMask;
+
+	private BitSet stageMask;
+
+	private BitSet itemMask;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		elements = DropMatrixElementUtil.combineElementLists(data.generateRegularElements(Server.CN, true),
+				data.generateRegularElements(Server.CN, false));
+		openingStages = data.randomSubset(data.getStageIds(), OPENING_STAGE_NUM);
+		stageFilter = data.randomSubset(new ArrayList<>(openingStages), FILTER_SIZE);
+		itemFilter = data.randomSubset(data.getItemIds(), FILTER_SIZE);
+
+		stages = new OrdinalDictionary();
+		OrdinalDictionary items = new OrdinalDictionary();
+		table = DropMatrixTable.of(elements, stages, items);
+		openingStageMask = toMask(stages, openingStages);
+		stageMask = toMask(stages, stageFilter);
+		itemMask = toMask(items, itemFilter);
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> copyOnly() {
+		return new ArrayList<>(elements);
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> removeClosedStages() {
+		List<DropMatrixElement> result = new ArrayList<>(elements);
+		DropMatrixElementUtil.retainStages(result, openingStages);
+		return result;
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> retainOpeningStages() {
+		List<DropMatrixElement> result = new ArrayList<>(elements.size());
+		for (DropMatrixElement element : elements) {
+			int ordinal = stages.lookup(element.getStageId());
+			if (ordinal >= 0 && openingStageMask.get(ordinal))
+				result.add(element);
+		}
+		return result;
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> filterStages() {
+		List<DropMatrixElement> result = new ArrayList<>(elements);
+		DropMatrixElementUtil.retainStages(result, stageFilter);
+		return result;
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> filterItems() {
+		List<DropMatrixElement> result = new ArrayList<>(elements);
+		DropMatrixElementUtil.retainItems(result, itemFilter);
+		return result;
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> removeClosedStagesAndFilterBoth() {
+		List<DropMatrixElement> result = new ArrayList<>(elements);
+		DropMatrixElementUtil.retainStages(result, openingStages);
+		DropMatrixElementUtil.retainStages(result, stageFilter);
+		DropMatrixElementUtil.retainItems(result, itemFilter);
+		return result;
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> tableRemoveClosedStages() {
+		return table.toElements(openingStageMask, null);
+	}
+
+	@Benchmark
+	public List<DropMatrixElement> tableRemoveClosedStagesAndFilterBoth() {
+		BitSet mask = (BitSet)openingStageMask.clone();
+		mask.and(stageMask);
+		return table.toElements(mask, itemMask);
+	}
+
+	private static BitSet toMask(OrdinalDictionary dictionary, Set<String> ids) {
+		BitSet mask = new BitSet();
+		ids.forEach(id -> mask.set(dictionary.lookup(id)));
+		return mask;
+	}
+
+}
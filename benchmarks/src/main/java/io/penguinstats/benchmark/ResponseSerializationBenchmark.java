@@ -0,0 +1,86 @@
+package io.penguinstats.benchmark;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.penguinstats.controller.v2.response.MatrixQueryResponse;
+import io.penguinstats.controller.v2.response.PatternQueryResponse;
+import io.penguinstats.controller.v2.response.TrendQueryResponse;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.PatternMatrixElement;
+import io.penguinstats.util.DropMatrixElementUtil;
+
+/**
+ * Jackson serialization of the responses of GET /result/matrix, /result/trends and /result/pattern.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseSerializationBenchmark {
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+
+	private MatrixQueryResponse matrixResponse;
+
+	private List<DropMatrixElement> trendElements;
+
+	private TrendQueryResponse trendResponse;
+
+	private PatternQueryResponse patternResponse;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		List<DropMatrixElement> matrixElements = DropMatrixElementUtil.combineElementLists(
+				data.generateRegularElements(Server.CN, true), data.generateRegularElements(Server.CN, false));
+		matrixElements.forEach(DropMatrixElement::toResultView);
+		matrixResponse = new MatrixQueryResponse(matrixElements);
+
+		trendElements = data.generateTrendElements(Server.CN);
+		trendElements.forEach(DropMatrixElement::toResultView);
+		trendResponse = new TrendQueryResponse(trendElements);
+
+		List<PatternMatrixElement> patternElements = data.generatePatternElements(Server.CN);
+		patternElements.forEach(PatternMatrixElement::toResultView);
+		patternResponse = new PatternQueryResponse(patternElements);
+	}
+
+	@Benchmark
+	public byte[] serializeMatrix() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(matrixResponse);
+	}
+
+	@Benchmark
+	public byte[] serializeTrend() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(trendResponse);
+	}
+
+	@Benchmark
+	public byte[] buildAndSerializeTrend() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(new TrendQueryResponse(trendElements));
+	}
+
+	@Benchmark
+	public byte[] serializePattern() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(patternResponse);
+	}
+
+}
@@ -0,0 +1,30 @@
+package io.penguinstats.benchmark;
+
+import java.lang.reflect.Proxy;
+import java.util.Map;
+import java.util.function.Function;
+
+/**
+ * Minimal stubs of the services the benchmarked code depends on, so that it runs without Spring and Mongo.
+ */
+public class Stubs {
+
+	/**
+	 * @Title: of
+	 * @Description: Create a stub of the interface. Calls to the given methods are answered by their functions, and
+	 *               calls to any other method fail.
+	 * @param type
+	 * @param answers method name -> function of the arguments
+	 * @return T
+	 */
+	@SuppressWarnings("unchecked")
+	public static <T> T of(Class<T> type, Map<String, Function<Object[], Object>> answers) {
+		return (T)Proxy.newProxyInstance(type.getClassLoader(), new Class<?>[] {type}, (proxy, method, args) -> {
+			Function<Object[], Object> answer = answers.get(method.getName());
+			if (answer == null)
+				throw new UnsupportedOperationException(type.getSimpleName() + "." + method.getName());
+			return answer.apply(args);
+		});
+	}
+
+}
@@ -0,0 +1,73 @@
+package io.penguinstats.benchmark;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import org.javatuples.Pair;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.context.ApplicationContext;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TimeRange;
+import io.penguinstats.service.DropInfoService;
+import io.penguinstats.service.TimeRangeService;
+import io.penguinstats.service.TimeRangeServiceImpl;
+
+/**
+ * TimeRangeService.getLatestMaxAccumulatableTimeRangesMapByServer, with the drop infos and time ranges of all servers
+ * already cached.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TimeRangeServiceBenchmark {
+
+	@Param({"CN", "US", "JP", "KR"})
+	private Server server;
+
+	private TimeRangeServiceImpl timeRangeService;
+
+	@Setup
+	public void setup() {
+		BenchmarkData data = new BenchmarkData();
+		Map<String, TimeRange> timeRangeMap = data.generateTimeRangeMap();
+		Map<Server, List<DropInfo>> dropInfosMap = new EnumMap<>(Server.class);
+		for (Server s : Server.values())
+			dropInfosMap.put(s, data.generateDropInfos(s));
+
+		DropInfoService dropInfoService = Stubs.of(DropInfoService.class,
+				Collections.singletonMap("getDropInfosByServer", args -> dropInfosMap.get((Server)args[0])));
+		TimeRangeService cachedTimeRangeService = Stubs.of(TimeRangeService.class,
+				Collections.singletonMap("getTimeRangeMap", args -> timeRangeMap));
+		ApplicationContext applicationContext =
+				Stubs.of(ApplicationContext.class, Collections.singletonMap("getBean", args -> cachedTimeRangeService));
+
+		timeRangeService = new TimeRangeServiceImpl();
+		ReflectionTestUtils.setField(timeRangeService, "dropInfoService", dropInfoService);
+		ReflectionTestUtils.setField(timeRangeService, "applicationContext", applicationContext);
+	}
+
+	@Benchmark
+	public Map<String, List<Pair<String, List<TimeRange>>>> getLatestMaxAccumulatableTimeRangesMapByServer() {
+		return timeRangeService.getLatestMaxAccumulatableTimeRangesMapByServer(server);
+	}
+
+}
@@ -0,0 +1,54 @@
+package io.penguinstats.configuration;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Only serves the actuator endpoints, e.g. /actuator/prometheus, to requests made from the local host.<br>
+ * A request which came through a proxy carries a forwarding header, and is rejected even if the proxy is local.
+ */
+@Log4j2
+@Component
+public class ActuatorAccessFilter extends OncePerRequestFilter {
+
+	private static final String ACTUATOR_PATH = "/actuator";
+
+	@Override
+	protected boolean shouldNotFilter(HttpServletRequest request) {
+		String path = request.getRequestURI().substring(request.getContextPath().length());
+		return !path.equals(ACTUATOR_PATH) && !path.startsWith(ACTUATOR_PATH + "/");
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		if (!isLocal(request)) {
+			log.warn("Rejected actuator request from " + request.getRemoteAddr());
+			response.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		filterChain.doFilter(request, response);
+	}
+
+	private boolean isLocal(HttpServletRequest request) {
+		if (request.getHeader("X-Forwarded-For") != null || request.getHeader("X-Real-IP") != null)
+			return false;
+		try {
+			return InetAddress.getByName(request.getRemoteAddr()).isLoopbackAddress();
+		} catch (UnknownHostException e) {
+			return false;
+		}
+	}
+
+}
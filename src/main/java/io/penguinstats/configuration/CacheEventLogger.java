@@ -1,6 +1,7 @@
 package io.penguinstats.configuration;
 
 import io.penguinstats.util.LastUpdateTimeUtil;
+import io.penguinstats.util.MetricsUtil;
 import lombok.extern.log4j.Log4j2;
 import org.ehcache.event.CacheEvent;
 import org.ehcache.event.CacheEventListener;
@@ -14,6 +15,7 @@ public class CacheEventLogger implements CacheEventListener<Object, Object> {
 	@Override
 	public void onEvent(CacheEvent<?, ?> cacheEvent) {
 		log.info("Caching event {} {}", cacheEvent.getType(), cacheEvent.getKey());
+		MetricsUtil.recordCacheEvent(cacheEvent.getType().name());
 		if (EventType.CREATED.equals(cacheEvent.getType()) && cacheEvent.getKey() != null) {
 			String key = cacheEvent.getKey().toString();
 			LastUpdateTimeUtil.setCurrentTimestamp(key);
@@ -0,0 +1,113 @@
+package io.penguinstats.configuration;
+
+import java.io.IOException;
+
+import javax.servlet.FilterChain;
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.WriteListener;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import io.penguinstats.util.MetricsUtil;
+
+/**
+ * Records the size of every response, tagged by the matched path pattern of its endpoint.<br>
+ * The bytes written to the output stream are counted as they pass, so the body is never buffered. Responses written
+ * through a writer are measured by their Content-Length header instead.
+ */
+@Component
+public class ResponseMetricsFilter extends OncePerRequestFilter {
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+			throws ServletException, IOException {
+		CountingResponseWrapper wrapper = new CountingResponseWrapper(response);
+		try {
+			filterChain.doFilter(request, wrapper);
+		} finally {
+			Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+			MetricsUtil.recordResponseSize(pattern == null ? "UNKNOWN" : pattern.toString(), request.getMethod(),
+					wrapper.getStatus(), wrapper.getSize());
+		}
+	}
+
+	private static class CountingResponseWrapper extends HttpServletResponseWrapper {
+
+		private CountingOutputStream outputStream;
+
+		private CountingResponseWrapper(HttpServletResponse response) {
+			super(response);
+		}
+
+		@Override
+		public ServletOutputStream getOutputStream() throws IOException {
+			if (outputStream == null)
+				outputStream = new CountingOutputStream(super.getOutputStream());
+			return outputStream;
+		}
+
+		private long getSize() {
+			if (outputStream != null && outputStream.count > 0)
+				return outputStream.count;
+			String contentLength = getHeader(HttpHeaders.CONTENT_LENGTH);
+			try {
+				return contentLength == null ? 0L : Long.parseLong(contentLength);
+			} catch (NumberFormatException e) {
+				return 0L;
+			}
+		}
+
+	}
+
+	private static class CountingOutputStream extends ServletOutputStream {
+
+		private final ServletOutputStream delegate;
+
+		private long count;
+
+		private CountingOutputStream(ServletOutputStream delegate) {
+			this.delegate = delegate;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			delegate.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			delegate.write(b, off, len);
+			count += len;
+		}
+
+		@Override
+		public void flush() throws IOException {
+			delegate.flush();
+		}
+
+		@Override
+		public void close() throws IOException {
+			delegate.close();
+		}
+
+		@Override
+		public boolean isReady() {
+			return delegate.isReady();
+		}
+
+		@Override
+		public void setWriteListener(WriteListener writeListener) {
+			delegate.setWriteListener(writeListener);
+		}
+
+	}
+
+}
@@ -29,15 +29,26 @@ public class Constant {
 		public static final String GLOBAL_TREND_QUERY_TIMEOUT = "global_trend_query_timeout";
 		public static final String GLOBAL_PATTERN_QUERY_TIMEOUT = "global_pattern_query_timeout";
 		public static final String ADVANCED_QUERY_TIMEOUT = "global_advanced_query_timeout";
+		public static final String INCREMENTAL_DROP_MATRIX_LAG = "incremental_drop_matrix_lag";
+		public static final String DROP_MATRIX_RECONCILE_INTERVAL = "drop_matrix_reconcile_interval";
+		public static final String DROP_MATRIX_PERSIST_INTERVAL = "drop_matrix_persist_interval";
+		public static final String INCREMENTAL_PATTERN_MATRIX_LAG = "incremental_pattern_matrix_lag";
+		public static final String PATTERN_MATRIX_RECONCILE_INTERVAL = "pattern_matrix_reconcile_interval";
+		public static final String PATTERN_MATRIX_PERSIST_INTERVAL = "pattern_matrix_persist_interval";
+		public static final String ITEM_DROP_AGGREGATION_ENGINE = "item_drop_aggregation_engine";
+		public static final String ITEM_DROP_SNAPSHOT_LAG = "item_drop_snapshot_lag";
+		public static final String ITEM_DROP_SNAPSHOT_REBUILD_INTERVAL = "item_drop_snapshot_rebuild_interval";
+		public static final String ITEM_DROP_ROLLUP_LAG = "item_drop_rollup_lag";
+		public static final String ITEM_DROP_ROLLUP_REBUILD_INTERVAL = "item_drop_rollup_rebuild_interval";
+		public static final String CLOSED_RANGE_FREEZE_DELAY = "closed_range_freeze_delay";
+		public static final String DROP_INFO_CACHE_REFRESH_INTERVAL = "drop_info_cache_refresh_interval";
 	}
 
 	public static class CacheName {
 		public static final String NO_EXPIRY_MAP = "no-expiry-map";
-	}
-
-	public static class CacheKeyPrefix {
-		public static final String TOTAL_STAGE_TIMES = "total-stage-times";
-		public static final String TOTAL_ITEM_QUANTITIES = "total-item-quantities";
+		public static final String ADVANCED_QUERY_CLOSED = "advanced-query-closed";
+		public static final String ADVANCED_QUERY_OPEN = "advanced-query-open";
+		public static final String ADVANCED_QUERY_PERSONAL = "advanced-query-personal";
 	}
 
 	public static class SiteURL {
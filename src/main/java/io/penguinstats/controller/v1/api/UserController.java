@@ -48,9 +48,7 @@ public class UserController {
 		if (user == null) {
 			if (isInternal) {
 				userID = userService.createNewUser(userID, IpUtil.getIpAddr(request));
-				if (userID != null) {
-					userService.addTag(userID, "internal");
-				}
+				userService.addTag(userID, "internal");
 			} else {
 				return new ResponseEntity<>(headers, HttpStatus.NOT_FOUND);
 			}
@@ -1,5 +1,8 @@
 package io.penguinstats.controller.v2.api;
 
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Caching;
 import org.springframework.http.HttpStatus;
@@ -8,10 +11,18 @@ import org.springframework.web.bind.annotation.DeleteMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 
+import io.penguinstats.service.DropInfoCacheService;
+
 @RestController("cacheController_v2")
 @RequestMapping("/api/v2/cache")
 public class CacheController {
 
+	@Autowired
+	private DropInfoCacheService dropInfoCacheService;
+
+	@Autowired
+	private CacheManager cacheManager;
+
 	@DeleteMapping(path = "/item")
 	@Caching(evict = {@CacheEvict(value = "lists", key = "'itemList'"), @CacheEvict(value = "maps", key = "'itemMap'")})
 	public ResponseEntity<String> evictItemCache() {
@@ -24,17 +35,31 @@ public class CacheController {
 		return new ResponseEntity<>(HttpStatus.NO_CONTENT);
 	}
 
+	/*
+	 * The caches of drop infos and time ranges are evicted in the methods, since the ones of DropInfoCacheService must
+	 * only be invalidated after them.
+	 */
 	@DeleteMapping(path = "/stage")
-	@Caching(evict = {@CacheEvict(value = "lists", allEntries = true), @CacheEvict(value = "maps", allEntries = true),
-			@CacheEvict(value = "sets", allEntries = true)})
 	public ResponseEntity<String> evictStageCache() {
+		Cache lists = cacheManager.getCache("lists");
+		if (lists != null)
+			lists.clear();
+		Cache maps = cacheManager.getCache("maps");
+		if (maps != null)
+			maps.clear();
+		dropInfoCacheService.invalidate();
 		return new ResponseEntity<>(HttpStatus.NO_CONTENT);
 	}
 
 	@DeleteMapping(path = "/time-range")
-	@Caching(evict = {@CacheEvict(value = "lists", key = "'timeRangeList'"),
-			@CacheEvict(value = "maps", key = "'timeRangeMap'")})
 	public ResponseEntity<String> evictTimeRangeCache() {
+		Cache lists = cacheManager.getCache("lists");
+		if (lists != null)
+			lists.evict("timeRangeList");
+		Cache maps = cacheManager.getCache("maps");
+		if (maps != null)
+			maps.evict("timeRangeMap");
+		dropInfoCacheService.invalidate();
 		return new ResponseEntity<>(HttpStatus.NO_CONTENT);
 	}
 
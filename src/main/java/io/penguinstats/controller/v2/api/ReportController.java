@@ -17,13 +17,15 @@ import io.penguinstats.model.Drop;
 import io.penguinstats.model.ItemDrop;
 import io.penguinstats.model.Stage;
 import io.penguinstats.model.TypedDrop;
-import io.penguinstats.service.ItemDropService;
+import io.penguinstats.model.User;
+import io.penguinstats.service.ItemDropIngestionService;
+import io.penguinstats.service.ReportAuditService;
 import io.penguinstats.service.StageService;
 import io.penguinstats.service.UserService;
 import io.penguinstats.util.CookieUtil;
 import io.penguinstats.util.HashUtil;
 import io.penguinstats.util.IpUtil;
-import io.penguinstats.util.JSONUtil;
+import io.penguinstats.util.MetricsUtil;
 import io.penguinstats.util.validator.Validator;
 import io.penguinstats.util.validator.ValidatorContext;
 import io.penguinstats.util.validator.ValidatorFactory;
@@ -32,11 +34,11 @@ import io.swagger.annotations.ApiOperation;
 import java.io.UnsupportedEncodingException;
 import java.util.List;
 import java.util.Map;
-import java.util.Objects;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import lombok.extern.log4j.Log4j2;
+import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
@@ -52,7 +54,10 @@ import org.springframework.web.bind.annotation.RestController;
 public class ReportController {
 
 	@Autowired
-	private ItemDropService itemDropService;
+	private ItemDropIngestionService itemDropIngestionService;
+
+	@Autowired
+	private ReportAuditService reportAuditService;
 
 	@Autowired
 	private UserService userService;
@@ -72,17 +77,19 @@ public class ReportController {
 	public ResponseEntity<SingleReportResponse> saveSingleReport(
 			@Valid @RequestBody SingleReportRequest singleReportRequest, HttpServletRequest request,
 			HttpServletResponse response) throws Exception {
-			String userID = cookieUtil.readUserIDFromCookie(request);
-			if (userID == null) {
-				userID = userService.createNewUser(IpUtil.getIpAddr(request));
+			Long startTime = System.currentTimeMillis();
+			User user = cookieUtil.readUserFromCookie(request);
+			if (user == null) {
+				user = userService.createNewUser(IpUtil.getIpAddr(request));
+				CookieUtil.setUser(request, user);
 			}
+			String userID = user.getUserID();
 			try {
 				CookieUtil.setUserIDCookie(response, userID);
 			} catch (UnsupportedEncodingException e) {
 				log.error("Error in handleUserIDFromCookie: ", e);
 			}
-			log.info("user " + userID + " POST /report\n"
-					+ Objects.requireNonNull(JSONUtil.convertObjectToJSONObject(singleReportRequest)).toString(2));
+			log.debug("user {} POST /report", userID);
 
 			String stageId = singleReportRequest.getStageId();
 			String source = singleReportRequest.getSource();
@@ -96,10 +103,13 @@ public class ReportController {
 			// Validation
 			ValidatorType[] validatorTypes = new ValidatorType[] {STAGE_TIME, USER, IP, DROPS};
 			ValidatorContext context = new ValidatorContext().setStageId(stageId).setServer(server).setTimes(times)
-					.setDrops(singleReportRequest.getDrops()).setTimestamp(timestamp).setIp(ip).setUserID(userID);
+					.setDrops(singleReportRequest.getDrops()).setTimestamp(timestamp).setIp(ip).setUserID(userID)
+					.setUser(user);
 			for (ValidatorType validatorType : validatorTypes) {
 				Validator validator = validatorFactory.getValidator(validatorType, context);
-				if (!validator.validate()) {
+				boolean passed = validator.validate();
+				MetricsUtil.recordValidation(validatorType, passed);
+				if (!passed) {
 					isReliable = false;
 					log.warn("Failed to pass " + validatorType + " check.");
 					break;
@@ -128,11 +138,12 @@ public class ReportController {
 
 			ItemDrop itemDrop = new ItemDrop().setStageId(stageId).setServer(server).setTimes(times).setDrops(drops)
 					.setTimestamp(timestamp).setIp(ip).setIsReliable(isReliable).setIsDeleted(false).setSource(source)
-					.setVersion(version).setUserID(userID);
-			itemDropService.saveItemDrop(itemDrop);
+					.setVersion(version).setUserID(userID).setId(new ObjectId());
+			itemDropIngestionService.submit(itemDrop);
 			String reportHash = HashUtil.getHash(itemDrop.getId().toString());
 
-			log.debug("Saving itemDrop: \n" + JSONUtil.convertObjectToJSONObject(itemDrop.toNoIDView()).toString(2));
+			reportAuditService.record(itemDrop, singleReportRequest.getDrops());
+			MetricsUtil.recordReport(startTime, isReliable);
 
 			return new ResponseEntity<SingleReportResponse>(new SingleReportResponse(reportHash), HttpStatus.CREATED);
 	}
@@ -151,7 +162,7 @@ public class ReportController {
 			}
 
 			log.info("user " + userID + " POST /report/recall\n");
-			itemDropService.recallItemDrop(userID, recallLastReportRequest.getReportHash());
+			itemDropIngestionService.recall(userID, recallLastReportRequest.getReportHash());
 			return new ResponseEntity<>(HttpStatus.OK);
 	}
 
@@ -31,10 +31,10 @@ public class ResultController {
 	@Autowired
 	private ResultUtil resultUtil;
 
-	@ApiOperation(value = "Get matrix result",
+	@ApiOperation(value = "Get matrix result", response = MatrixQueryResponse.class,
 			notes = "Return the Result Matrix in the \"lastest accumulatable time ranges\". Detailed instructions can be found at: https://developer.penguin-stats.io/docs/api-v2-instruction/matrix-api")
 	@GetMapping(path = "/matrix", produces = "application/json;charset=UTF-8")
-	public ResponseEntity<MatrixQueryResponse> getMatrix(HttpServletRequest request,
+	public ResponseEntity<?> getMatrix(HttpServletRequest request,
 			@ApiParam(value = "Whether to see personal drop matrix or not. Default to be false.",
 					required = false) @RequestParam(name = "is_personal", required = false,
 							defaultValue = "false") boolean isPersonal,
@@ -50,6 +50,8 @@ public class ResultController {
 			@ApiParam(value = "Do filter on final result by item. It should be a list of itemIds separated by commas.",
 					required = false) @RequestParam(name = "itemFilter", required = false) String itemFilter)
 			throws Exception {
+		if (!isPersonal && stageFilter == null && itemFilter == null)
+			return resultUtil.getRenderedMatrixHelper(request, server, showClosedZones);
 		return resultUtil.getMatrixHelper(request, server, showClosedZones, stageFilter, itemFilter, isPersonal);
 	}
 
@@ -22,19 +22,20 @@ public class QueryMapper {
 	@Autowired
 	private QueryFactory queryFactory;
 
-	public BasicQuery queryRequestToQueryModel(SingleQuery singleQuery, String userID, Integer timeout) {
+	public BasicQuery queryRequestToQueryModel(SingleQuery singleQuery, String userID, String clientID,
+			Integer timeout) {
 		try {
 			if (singleQuery.getInterval() == null) {
 				MatrixQuery query = (MatrixQuery)queryFactory.getQuery(QueryType.MATRIX);
 				return query.setServer(singleQuery.getServer()).setStageId(singleQuery.getStageId())
 						.setItemIds(singleQuery.getItemIds()).setStart(singleQuery.getStart())
-						.setEnd(singleQuery.getEnd()).setUserID(userID).setTimeout(timeout);
+						.setEnd(singleQuery.getEnd()).setUserID(userID).setClientID(clientID).setTimeout(timeout);
 			} else {
 				TrendQuery query = (TrendQuery)queryFactory.getQuery(QueryType.TREND);
 				return query.setServer(singleQuery.getServer()).setStageId(singleQuery.getStageId())
 						.setItemIds(singleQuery.getItemIds()).setStart(singleQuery.getStart())
 						.setEnd(singleQuery.getEnd()).setUserID(userID).setInterval(singleQuery.getInterval())
-						.setTimeout(timeout);
+						.setClientID(clientID).setTimeout(timeout);
 			}
 		} catch (Exception e) {
 			log.error("Failed to map QueryRequest to Query", e);
@@ -0,0 +1,29 @@
+package io.penguinstats.controller.v2.response;
+
+import java.io.Serializable;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+
+import io.penguinstats.enums.QueryStatus;
+import io.swagger.annotations.ApiModel;
+import io.swagger.annotations.ApiModelProperty;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@JsonInclude(JsonInclude.Include.NON_NULL)
+@ApiModel(description = "The response model for a query in an advanced query which has no result.")
+public class FailedQueryResponse implements Serializable, BasicQueryResponse {
+
+	private static final long serialVersionUID = 1L;
+
+	@ApiModelProperty(notes = "Why the query has no result, TIMEOUT or ERROR.")
+	private QueryStatus status;
+
+	@ApiModelProperty(notes = "The error message.")
+	private String error;
+
+}
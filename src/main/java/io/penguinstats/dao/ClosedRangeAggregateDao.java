@@ -0,0 +1,16 @@
+package io.penguinstats.dao;
+
+import org.springframework.data.mongodb.repository.DeleteQuery;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ClosedRangeAggregate;
+
+@Repository
+public interface ClosedRangeAggregateDao extends MongoRepository<ClosedRangeAggregate, String> {
+
+	@DeleteQuery("{'$and' : [{'server' : ?0}, {'stageId' : ?1}, {'start' : {'$lte' : ?2}}, {'end' : {'$gt' : ?2}}]}")
+	Long deleteByServerAndStageIdAndTimestampInRange(Server server, String stageId, Long timestamp);
+
+}
@@ -0,0 +1,11 @@
+package io.penguinstats.dao;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import io.penguinstats.model.DropMatrixCheckpoint;
+
+@Repository
+public interface DropMatrixCheckpointDao extends MongoRepository<DropMatrixCheckpoint, String> {
+
+}
@@ -1,5 +1,6 @@
 package io.penguinstats.dao;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.mongodb.repository.DeleteQuery;
@@ -14,10 +15,12 @@ import io.penguinstats.model.DropMatrixElement;
 @Repository
 public interface DropMatrixElementDao extends MongoRepository<DropMatrixElement, String> {
 
-	@DeleteQuery("{'$and' : [{'type' : ?0}, {'isPast' : ?1}, {'server' : ?2}]}")
-	Long deleteAllByIsPastAndServer(DropMatrixElementType type, Boolean isPast, Server server);
+	@DeleteQuery("{'$and' : [{'type' : ?0}, {'isPast' : ?1}, {'server' : ?2}, {'generation' : {'$nin' : ?3}}]}")
+	Long deleteAllByIsPastAndServerAndGenerationNotIn(DropMatrixElementType type, Boolean isPast, Server server,
+			Collection<Long> generations);
 
-	@Query("{'$and' : [{'type' : ?0}, {'isPast' : ?1}, {'server' : ?2}]}")
-	List<DropMatrixElement> queryByTypeAndIsPastAndServer(DropMatrixElementType type, Boolean isPast, Server server);
+	@Query("{'$and' : [{'type' : ?0}, {'isPast' : ?1}, {'server' : ?2}, {'generation' : ?3}]}")
+	List<DropMatrixElement> queryByTypeAndIsPastAndServerAndGeneration(DropMatrixElementType type, Boolean isPast,
+			Server server, Long generation);
 
 }
@@ -8,6 +8,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
+import io.penguinstats.enums.Server;
 import io.penguinstats.model.ItemDrop;
 
 @Repository
@@ -23,4 +24,10 @@ public interface ItemDropDao extends MongoRepository<ItemDrop, String>, ItemDrop
 	@Query("{'$and' : [{'isDeleted' : false}, {'isReliable' : true}, {'stageId': ?0}]}")
 	Page<ItemDrop> findValidItemDropByStageId(String stageId, Pageable pageable);
 
+	@Query(value = "{'$and' : [{'isDeleted' : false}, {'isReliable' : true}, {'server' : ?0}, {'timestamp' : {'$gte' : ?1, '$lt' : ?2}}]}",
+			fields = "{'stageId' : 1, 'times' : 1, 'drops' : 1, 'timestamp' : 1}")
+	List<ItemDrop> findValidItemDropsByServerAndTimestampBetween(Server server, Long start, Long end);
+
+	ItemDrop findFirstByOrderByTimestampAsc();
+
 }
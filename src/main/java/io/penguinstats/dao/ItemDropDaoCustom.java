@@ -1,19 +1,28 @@
 package io.penguinstats.dao;
 
+import java.util.Collection;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.bson.Document;
 
+import io.penguinstats.model.ItemDrop;
 import io.penguinstats.model.QueryConditions;
 
 public interface ItemDropDaoCustom {
 
 	List<Document> aggregateItemDrops(QueryConditions conditions);
 
+	void streamItemDrops(QueryConditions conditions, Consumer<Document> consumer);
+
+	void streamItemDropsByTimestamp(QueryConditions conditions, Consumer<Document> consumer);
+
 	List<Document> aggregateDropPatterns(QueryConditions conditions);
 
 	List<Document> aggregateStageTimes(QueryConditions conditions);
 
 	List<Document> aggregateItemQuantities(QueryConditions conditions);
 
+	List<ItemDrop> batchInsertItemDrops(Collection<ItemDrop> itemDrops);
+
 }
@@ -4,31 +4,54 @@ import static org.springframework.data.mongodb.core.aggregation.Aggregation.newA
 import static org.springframework.data.mongodb.core.aggregation.Aggregation.newAggregationOptions;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
 
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.BulkOperationException;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.aggregation.Aggregation;
 import org.springframework.data.mongodb.core.aggregation.AggregationOperation;
-import org.springframework.data.mongodb.core.aggregation.AggregationResults;
+import org.springframework.data.mongodb.core.aggregation.AggregationOperationContext;
 import org.springframework.data.mongodb.core.aggregation.ArithmeticOperators;
 import org.springframework.data.mongodb.core.aggregation.LiteralOperators;
+import org.springframework.data.mongodb.core.aggregation.TypeBasedAggregationOperationContext;
+import org.springframework.data.mongodb.core.convert.QueryMapper;
 import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.util.CloseableIterator;
 
 import com.mongodb.BasicDBObject;
+import com.mongodb.BulkWriteError;
 
+import io.penguinstats.enums.AggregationEngine;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.ItemDrop;
 import io.penguinstats.model.QueryConditions;
 import io.penguinstats.model.QueryConditions.StageWithTimeRange;
+import io.penguinstats.util.DropPatternAggregator;
+import io.penguinstats.util.ItemDropAggregator;
+import io.penguinstats.util.MetricsUtil;
+import io.penguinstats.util.QueryUtil;
+import io.penguinstats.util.exception.BatchInsertException;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
 public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 
+	private static final int DUPLICATE_KEY_ERROR_CODE = 11000;
+
 	@Autowired
 	MongoTemplate mongoTemplate;
 
@@ -40,11 +63,12 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 	 */
 	@Override
 	public List<Document> aggregateItemDrops(QueryConditions conditions) {
+		if (conditions.getEngine() != AggregationEngine.MONGO_PIPELINE)
+			return streamAggregateItemDrops(conditions);
+
 		Long currentTime = System.currentTimeMillis();
 
-		List<String> userIDs = conditions.getUserIDs();
 		List<String> itemIds = conditions.getItemIds();
-		List<Server> servers = conditions.getServers();
 		List<StageWithTimeRange> stages = conditions.getStages();
 		Long interval = conditions.getInterval();
 
@@ -74,37 +98,7 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 			  }
 			}
 		 */
-		List<Criteria> criteriasInAndInPipe1 = new ArrayList<>();
-
-		criteriasInAndInPipe1.add(Criteria.where("isDeleted").is(false));
-
-		if (userIDs.isEmpty())
-			criteriasInAndInPipe1.add(Criteria.where("isReliable").is(true));
-		else
-			criteriasInAndInPipe1.add(Criteria.where("userID").in(userIDs));
-
-		if (!servers.isEmpty())
-			criteriasInAndInPipe1.add(Criteria.where("server").in(servers));
-
-		if (!stages.isEmpty()) {
-			if (1 == stages.size() && stages.get(0).getStageId() == null) {
-				StageWithTimeRange stage = stages.get(0);
-				Long min = stage.getStart() == null ? 0L : stage.getStart();
-				Long max = stage.getEnd() == null ? System.currentTimeMillis() : stage.getEnd();
-				criteriasInAndInPipe1.add(Criteria.where("timestamp").gte(min).lt(max));
-			} else {
-				List<Criteria> criteriasInOrInPipe1 = new ArrayList<>();
-				stages.forEach(stage -> {
-					Long min = stage.getStart() == null ? 0L : stage.getStart();
-					Long max = stage.getEnd() == null ? System.currentTimeMillis() : stage.getEnd();
-					criteriasInOrInPipe1.add(new Criteria().andOperator(Criteria.where("timestamp").gte(min).lt(max),
-							Criteria.where("stageId").is(stage.getStageId())));
-				});
-				criteriasInAndInPipe1.add(new Criteria().orOperator(criteriasInOrInPipe1.toArray(new Criteria[0])));
-			}
-		}
-
-		operations.add(Aggregation.match(new Criteria().andOperator(criteriasInAndInPipe1.toArray(new Criteria[0]))));
+		operations.add(Aggregation.match(getItemDropCriteria(conditions)));
 
 		/* Pipe 2: project section number.
 		 * If no interval is provided, which means we are not calculating segmented results, then project
@@ -133,24 +127,9 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 			}
 		 */
 		if (interval != null) {
-			Long baseTime = null;
-			if (stages.isEmpty())
-				baseTime = 0L;
-			else {
-				final Long firstStartTime = stages.get(0).getStart();
-				boolean passCheck = true;
-				for (int i = 1, size = stages.size(); i < size; i++) {
-					StageWithTimeRange stage = stages.get(i);
-					if (!stage.getStart().equals(firstStartTime)) {
-						log.error("start time must be identical for all stages in the conditions");
-						passCheck = false;
-						break;
-					}
-				}
-				if (passCheck)
-					baseTime = firstStartTime == null ? 0L : firstStartTime;
-			}
-
+			Long baseTime = conditions.getSectionBaseTime();
+			if (baseTime == null)
+				log.error("start time must be identical for all stages in the conditions");
 			operations.add(Aggregation.project("drops", "stageId", "times")
 					.and(ArithmeticOperators.Trunc.truncValueOf(ArithmeticOperators.Divide
 							.valueOf(ArithmeticOperators.Subtract.valueOf("timestamp").subtract(baseTime))
@@ -231,20 +210,27 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 		Aggregation aggregation =
 				newAggregation(operations).withOptions(newAggregationOptions().allowDiskUse(true).build());
 
-		AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, ItemDrop.class, Document.class);
+		List<Document> results = aggregate(aggregation);
 
 		log.debug(conditions.toString() + ", time = " + (System.currentTimeMillis() - currentTime) + "ms");
 
-		return results.getMappedResults();
+		MetricsUtil.recordAggregation("itemDrops", "mongo", currentTime, -1, results.size());
+
+		return results;
 	}
 
+	/** 
+	 * @Title: aggregateDropPatterns 
+	 * @Description: Use aggregation to get the times of every drop pattern under given query conditions
+	 * @param conditions
+	 * @return List<Document>
+	 */
 	@Override
 	public List<Document> aggregateDropPatterns(QueryConditions conditions) {
-		Long currentTime = System.currentTimeMillis();
+		if (conditions.getEngine() != AggregationEngine.MONGO_PIPELINE)
+			return streamAggregateDropPatterns(conditions);
 
-		List<String> userIDs = conditions.getUserIDs();
-		List<Server> servers = conditions.getServers();
-		List<StageWithTimeRange> stages = conditions.getStages();
+		Long currentTime = System.currentTimeMillis();
 
 		List<AggregationOperation> operations = new LinkedList<>();
 
@@ -272,37 +258,7 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 			  }
 			}
 		 */
-		List<Criteria> criteriasInAndInPipe1 = new ArrayList<>();
-
-		criteriasInAndInPipe1.add(Criteria.where("isDeleted").is(false));
-
-		if (userIDs.isEmpty())
-			criteriasInAndInPipe1.add(Criteria.where("isReliable").is(true));
-		else
-			criteriasInAndInPipe1.add(Criteria.where("userID").in(userIDs));
-
-		if (!servers.isEmpty())
-			criteriasInAndInPipe1.add(Criteria.where("server").in(servers));
-
-		if (!stages.isEmpty()) {
-			if (1 == stages.size() && stages.get(0).getStageId() == null) {
-				StageWithTimeRange stage = stages.get(0);
-				Long min = stage.getStart() == null ? 0L : stage.getStart();
-				Long max = stage.getEnd() == null ? System.currentTimeMillis() : stage.getEnd();
-				criteriasInAndInPipe1.add(Criteria.where("timestamp").gte(min).lt(max));
-			} else {
-				List<Criteria> criteriasInOrInPipe1 = new ArrayList<>();
-				stages.forEach(stage -> {
-					Long min = stage.getStart() == null ? 0L : stage.getStart();
-					Long max = stage.getEnd() == null ? System.currentTimeMillis() : stage.getEnd();
-					criteriasInOrInPipe1.add(new Criteria().andOperator(Criteria.where("timestamp").gte(min).lt(max),
-							Criteria.where("stageId").is(stage.getStageId())));
-				});
-				criteriasInAndInPipe1.add(new Criteria().orOperator(criteriasInOrInPipe1.toArray(new Criteria[0])));
-			}
-		}
-
-		operations.add(Aggregation.match(new Criteria().andOperator(criteriasInAndInPipe1.toArray(new Criteria[0]))));
+		operations.add(Aggregation.match(getItemDropCriteria(conditions)));
 
 		/* Pipe 2: group by stageId, sum up 'times' to calculate total times for this stage
 		{
@@ -426,15 +382,189 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 		Aggregation aggregation =
 				newAggregation(operations).withOptions(newAggregationOptions().allowDiskUse(true).build());
 
-		AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, ItemDrop.class, Document.class);
+		List<Document> results = aggregate(aggregation);
 
 		log.debug(conditions.toString() + ", time = " + (System.currentTimeMillis() - currentTime) + "ms");
 
-		return results.getMappedResults();
+		MetricsUtil.recordAggregation("dropPatterns", "mongo", currentTime, -1, results.size());
+
+		return results;
+	}
+
+	/** 
+	 * @Title: streamItemDrops 
+	 * @Description: Stream the item drops matching the conditions through a cursor. Only server, stageId, times, drops
+	 *               and timestamp are fetched.
+	 * @param conditions
+	 * @param consumer
+	 */
+	@Override
+	public void streamItemDrops(QueryConditions conditions, Consumer<Document> consumer) {
+		Query query = new Query(getItemDropCriteria(conditions));
+		query.fields().include("server").include("stageId").include("times").include("drops").include("timestamp")
+				.exclude("_id");
+		stream(query, consumer);
+	}
+
+	/** 
+	 * @Title: streamItemDropsByTimestamp 
+	 * @Description: Same as streamItemDrops, but the item drops are streamed in the order of timestamp, and _id is
+	 *               also fetched.
+	 * @param conditions
+	 * @param consumer
+	 */
+	@Override
+	public void streamItemDropsByTimestamp(QueryConditions conditions, Consumer<Document> consumer) {
+		Query query = new Query(getItemDropCriteria(conditions)).with(new Sort(Direction.ASC, "timestamp"));
+		query.fields().include("server").include("stageId").include("times").include("drops").include("timestamp");
+		stream(query, consumer);
+	}
+
+	private void stream(Query query, Consumer<Document> consumer) {
+		Long maxTime = QueryUtil.getRemainingTime();
+		if (maxTime != null)
+			query.maxTimeMsec(maxTime);
+		try (CloseableIterator<Document> iter =
+				mongoTemplate.stream(query, Document.class, mongoTemplate.getCollectionName(ItemDrop.class))) {
+			while (iter.hasNext()) {
+				if (Thread.currentThread().isInterrupted())
+					throw new CancellationException("Streaming item drops is cancelled");
+				consumer.accept(iter.next());
+			}
+		}
+	}
+
+	/** 
+	 * @Title: aggregate 
+	 * @Description: Run an aggregation on item drops. Inside a query with a deadline, the aggregation is run through
+	 *               the driver with maxTimeMS, so that the database aborts it when the query times out.
+	 * @param aggregation
+	 * @return List<Document>
+	 */
+	private List<Document> aggregate(Aggregation aggregation) {
+		Long maxTime = QueryUtil.getRemainingTime();
+		if (maxTime == null)
+			return mongoTemplate.aggregate(aggregation, ItemDrop.class, Document.class).getMappedResults();
+
+		AggregationOperationContext context = new TypeBasedAggregationOperationContext(ItemDrop.class,
+				mongoTemplate.getConverter().getMappingContext(), new QueryMapper(mongoTemplate.getConverter()));
+		List<Document> pipeline = aggregation.toPipeline(context);
+		return mongoTemplate.getCollection(mongoTemplate.getCollectionName(ItemDrop.class))
+				.aggregate(pipeline, Document.class).allowDiskUse(true).maxTime(maxTime, TimeUnit.MILLISECONDS)
+				.into(new ArrayList<>());
+	}
+
+	/** 
+	 * @Title: streamAggregateItemDrops 
+	 * @Description: Same as the pipeline in aggregateItemDrops, but the matching documents are streamed and counted
+	 *               in one pass by {@link ItemDropAggregator}.
+	 * @param conditions
+	 * @return List<Document>
+	 */
+	private List<Document> streamAggregateItemDrops(QueryConditions conditions) {
+		Long currentTime = System.currentTimeMillis();
+
+		Long interval = conditions.getInterval();
+		Long baseTime = interval == null ? null : conditions.getSectionBaseTime();
+		if (interval != null && baseTime == null)
+			log.error("start time must be identical for all stages in the conditions");
+		ItemDropAggregator aggregator = new ItemDropAggregator(conditions.getItemIds(), baseTime, interval);
+		AtomicLong scanned = new AtomicLong();
+		streamItemDrops(conditions, doc -> {
+			scanned.incrementAndGet();
+			aggregator.accept(doc);
+		});
+
+		log.debug(conditions.toString() + ", engine = streaming, time = " + (System.currentTimeMillis() - currentTime)
+				+ "ms");
+
+		List<Document> results = aggregator.getResults();
+		MetricsUtil.recordAggregation("itemDrops", "streaming", currentTime, scanned.get(), results.size());
+		return results;
+	}
+
+	/** 
+	 * @Title: streamAggregateDropPatterns 
+	 * @Description: Same as the pipeline in aggregateDropPatterns, but the matching documents are streamed and counted
+	 *               in one pass by {@link DropPatternAggregator}.
+	 * @param conditions
+	 * @return List<Document>
+	 */
+	private List<Document> streamAggregateDropPatterns(QueryConditions conditions) {
+		Long currentTime = System.currentTimeMillis();
+
+		DropPatternAggregator aggregator = new DropPatternAggregator();
+		AtomicLong scanned = new AtomicLong();
+		streamItemDrops(conditions, doc -> {
+			scanned.incrementAndGet();
+			aggregator.accept(doc);
+		});
+
+		log.debug(conditions.toString() + ", engine = streaming, time = " + (System.currentTimeMillis() - currentTime)
+				+ "ms");
+
+		List<Document> results = aggregator.getResults();
+		MetricsUtil.recordAggregation("dropPatterns", "streaming", currentTime, scanned.get(), results.size());
+		return results;
+	}
+
+	/* Filter by isReliable, isDeleted, stageId and timestamp
+		{
+		  $or:[
+		    {
+		      stageId:"main_01-07",
+		      timestamp:{
+		        $gt:1586853840000,
+		        $lt:91559229418034
+		      }
+		    },
+		    ...
+		  ],
+		  isReliable:true,
+		  isDeleted:false
+		}
+	 */
+	private Criteria getItemDropCriteria(QueryConditions conditions) {
+		List<String> userIDs = conditions.getUserIDs();
+		List<Server> servers = conditions.getServers();
+		List<StageWithTimeRange> stages = conditions.getStages();
+
+		List<Criteria> criterias = new ArrayList<>();
+
+		criterias.add(Criteria.where("isDeleted").is(false));
+
+		if (userIDs.isEmpty())
+			criterias.add(Criteria.where("isReliable").is(true));
+		else
+			criterias.add(Criteria.where("userID").in(userIDs));
+
+		if (!servers.isEmpty())
+			criterias.add(Criteria.where("server").in(servers));
+
+		if (!stages.isEmpty()) {
+			if (1 == stages.size() && stages.get(0).getStageId() == null) {
+				StageWithTimeRange stage = stages.get(0);
+				Long min = stage.getStart() == null ? 0L : stage.getStart();
+				Long max = stage.getEnd() == null ? System.currentTimeMillis() : stage.getEnd();
+				criterias.add(Criteria.where("timestamp").gte(min).lt(max));
+			} else {
+				List<Criteria> criteriasInOr = new ArrayList<>();
+				stages.forEach(stage -> {
+					Long min = stage.getStart() == null ? 0L : stage.getStart();
+					Long max = stage.getEnd() == null ? System.currentTimeMillis() : stage.getEnd();
+					criteriasInOr.add(new Criteria().andOperator(Criteria.where("timestamp").gte(min).lt(max),
+							Criteria.where("stageId").is(stage.getStageId())));
+				});
+				criterias.add(new Criteria().orOperator(criteriasInOr.toArray(new Criteria[0])));
+			}
+		}
+
+		return new Criteria().andOperator(criterias.toArray(new Criteria[0]));
 	}
 
 	@Override
 	public List<Document> aggregateStageTimes(QueryConditions conditions) {
+		Long currentTime = System.currentTimeMillis();
 		List<Server> servers = conditions.getServers();
 		Long range = conditions.getRange();
 
@@ -457,12 +587,14 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 		Aggregation aggregation =
 				newAggregation(operations).withOptions(newAggregationOptions().allowDiskUse(true).build());
 
-		AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, ItemDrop.class, Document.class);
-		return results.getMappedResults();
+		List<Document> results = aggregate(aggregation);
+		MetricsUtil.recordAggregation("stageTimes", "mongo", currentTime, -1, results.size());
+		return results;
 	}
 
 	@Override
 	public List<Document> aggregateItemQuantities(QueryConditions conditions) {
+		Long currentTime = System.currentTimeMillis();
 		List<Server> servers = conditions.getServers();
 
 		List<AggregationOperation> operations = new LinkedList<>();
@@ -482,8 +614,55 @@ public class ItemDropDaoCustomImpl implements ItemDropDaoCustom {
 		Aggregation aggregation =
 				newAggregation(operations).withOptions(newAggregationOptions().allowDiskUse(true).build());
 
-		AggregationResults<Document> results = mongoTemplate.aggregate(aggregation, ItemDrop.class, Document.class);
-		return results.getMappedResults();
+		List<Document> results = aggregate(aggregation);
+		MetricsUtil.recordAggregation("itemQuantities", "mongo", currentTime, -1, results.size());
+		return results;
+	}
+
+	/** 
+	 * @Title: batchInsertItemDrops 
+	 * @Description: Insert item drops with one unordered bulk write. Drops whose ids already exist are skipped, so it
+	 *               is safe to insert the same drops again.
+	 * @param itemDrops
+	 * @return List<ItemDrop> The drops which are newly inserted
+	 * @throws BatchInsertException if some drops failed for other reasons, with the ones inserted by the same write
+	 */
+	@Override
+	public List<ItemDrop> batchInsertItemDrops(Collection<ItemDrop> itemDrops) {
+		List<ItemDrop> list = new ArrayList<>(itemDrops);
+		if (list.isEmpty())
+			return list;
+		try {
+			mongoTemplate.bulkOps(BulkMode.UNORDERED, ItemDrop.class).insert(list).execute();
+			return list;
+		} catch (BulkOperationException e) {
+			Set<Integer> duplicatedIndexes = new HashSet<>();
+			Set<Integer> failedIndexes = new HashSet<>();
+			for (BulkWriteError error : e.getErrors()) {
+				if (error.getCode() == DUPLICATE_KEY_ERROR_CODE)
+					duplicatedIndexes.add(error.getIndex());
+				else
+					failedIndexes.add(error.getIndex());
+			}
+			if (!duplicatedIndexes.isEmpty())
+				log.warn("{} duplicated item drops are skipped in batch insert", duplicatedIndexes.size());
+			// An unordered write goes on after an error, so every drop without an error has been inserted
+			List<ItemDrop> insertedItemDrops = new ArrayList<>();
+			List<ItemDrop> failedItemDrops = new ArrayList<>();
+			for (int i = 0, size = list.size(); i < size; i++) {
+				if (failedIndexes.contains(i))
+					failedItemDrops.add(list.get(i));
+				else if (!duplicatedIndexes.contains(i))
+					insertedItemDrops.add(list.get(i));
+			}
+			if (insertedItemDrops.size() != e.getResult().getInsertedCount()) {
+				log.warn("{} item drops are inserted in batch insert, but {} are reported by the database",
+						insertedItemDrops.size(), e.getResult().getInsertedCount());
+			}
+			if (!failedItemDrops.isEmpty())
+				throw new BatchInsertException(insertedItemDrops, failedItemDrops, e);
+			return insertedItemDrops;
+		}
 	}
 
 }
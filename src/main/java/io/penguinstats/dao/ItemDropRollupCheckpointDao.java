@@ -0,0 +1,11 @@
+package io.penguinstats.dao;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import io.penguinstats.model.ItemDropRollupCheckpoint;
+
+@Repository
+public interface ItemDropRollupCheckpointDao extends MongoRepository<ItemDropRollupCheckpoint, String> {
+
+}
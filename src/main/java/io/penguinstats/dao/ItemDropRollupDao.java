@@ -0,0 +1,19 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+
+import org.springframework.data.mongodb.repository.DeleteQuery;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import io.penguinstats.model.ItemDropRollup;
+
+@Repository
+public interface ItemDropRollupDao extends MongoRepository<ItemDropRollup, String>, ItemDropRollupDaoCustom {
+
+	@DeleteQuery("{'generation' : {'$nin' : ?0}}")
+	Long deleteByGenerationNotIn(Collection<Long> generations);
+
+	Long deleteByGeneration(Long generation);
+
+}
@@ -0,0 +1,17 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ItemDropRollup;
+
+public interface ItemDropRollupDaoCustom {
+
+	void incrementItemDropRollups(Collection<ItemDropRollup> deltas);
+
+	void streamItemDropRollups(Long generation, List<Server> servers, String stageId, long start, long end,
+			Consumer<ItemDropRollup> consumer);
+
+}
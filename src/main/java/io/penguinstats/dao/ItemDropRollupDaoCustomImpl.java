@@ -0,0 +1,79 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.data.util.CloseableIterator;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ItemDropRollup;
+import io.penguinstats.util.QueryUtil;
+
+public class ItemDropRollupDaoCustomImpl implements ItemDropRollupDaoCustom {
+
+	@Autowired
+	MongoTemplate mongoTemplate;
+
+	/** 
+	 * @Title: incrementItemDropRollups 
+	 * @Description: Add the deltas into the rollups with the same ids in one unordered bulk write. Missing rollups are
+	 *               inserted. Negative deltas cancel deleted drops.
+	 * @param deltas
+	 */
+	@Override
+	public void incrementItemDropRollups(Collection<ItemDropRollup> deltas) {
+		if (deltas.isEmpty())
+			return;
+		BulkOperations operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, ItemDropRollup.class);
+		for (ItemDropRollup delta : deltas) {
+			Update update = new Update().setOnInsert("generation", delta.getGeneration())
+					.setOnInsert("server", delta.getServer()).setOnInsert("stageId", delta.getStageId())
+					.setOnInsert("hour", delta.getHour()).inc("times", delta.getTimes())
+					.inc("emptyTimes", delta.getEmptyTimes());
+			delta.getQuantities().forEach((itemId, quantity) -> update.inc("quantities." + itemId, quantity));
+			operations.upsert(new Query(Criteria.where("_id").is(delta.getId())), update);
+		}
+		operations.execute();
+	}
+
+	/** 
+	 * @Title: streamItemDropRollups 
+	 * @Description: Stream the rollups of one generation whose hour is in [start, end) through a cursor.
+	 * @param generation
+	 * @param servers If empty, rollups of all servers are streamed.
+	 * @param stageId If null, rollups of all stages are streamed.
+	 * @param start
+	 * @param end
+	 * @param consumer
+	 */
+	@Override
+	public void streamItemDropRollups(Long generation, List<Server> servers, String stageId, long start, long end,
+			Consumer<ItemDropRollup> consumer) {
+		Criteria criteria = Criteria.where("generation").is(generation).and("hour").gte(start).lt(end);
+		if (!servers.isEmpty())
+			criteria.and("server").in(servers);
+		if (stageId != null)
+			criteria.and("stageId").is(stageId);
+		Query query = new Query(criteria);
+		Long maxTime = QueryUtil.getRemainingTime();
+		if (maxTime != null)
+			query.maxTimeMsec(maxTime);
+		try (CloseableIterator<ItemDropRollup> iter = mongoTemplate.stream(query, ItemDropRollup.class)) {
+			while (iter.hasNext()) {
+				if (Thread.currentThread().isInterrupted())
+					throw new CancellationException("Streaming item drop rollups is cancelled");
+				consumer.accept(iter.next());
+			}
+		}
+	}
+
+}
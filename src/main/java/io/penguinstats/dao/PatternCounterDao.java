@@ -0,0 +1,24 @@
+package io.penguinstats.dao;
+
+import java.util.List;
+
+import org.springframework.data.mongodb.repository.DeleteQuery;
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
+import org.springframework.stereotype.Repository;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.PatternCounter;
+
+@Repository
+public interface PatternCounterDao extends MongoRepository<PatternCounter, String>, PatternCounterDaoCustom {
+
+	@Query("{'$and' : [{'server' : ?0}, {'generation' : ?1}]}")
+	List<PatternCounter> findByServerAndGeneration(Server server, Long generation);
+
+	@DeleteQuery("{'$and' : [{'server' : ?0}, {'generation' : {'$ne' : ?1}}]}")
+	Long deleteByServerAndGenerationNot(Server server, Long generation);
+
+	Long deleteByServerAndGeneration(Server server, Long generation);
+
+}
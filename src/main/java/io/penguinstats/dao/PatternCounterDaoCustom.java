@@ -0,0 +1,11 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+
+import io.penguinstats.model.PatternCounter;
+
+public interface PatternCounterDaoCustom {
+
+	void incrementPatternCounters(Collection<PatternCounter> deltas);
+
+}
@@ -0,0 +1,42 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import io.penguinstats.model.PatternCounter;
+
+public class PatternCounterDaoCustomImpl implements PatternCounterDaoCustom {
+
+	@Autowired
+	MongoTemplate mongoTemplate;
+
+	/** 
+	 * @Title: incrementPatternCounters 
+	 * @Description: Add the deltas into the counters with the same ids in one unordered bulk write. Missing counters
+	 *               are inserted. Negative deltas cancel deleted drops.
+	 * @param deltas
+	 */
+	@Override
+	public void incrementPatternCounters(Collection<PatternCounter> deltas) {
+		if (deltas.isEmpty())
+			return;
+		BulkOperations operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, PatternCounter.class);
+		for (PatternCounter delta : deltas) {
+			Update update = new Update().setOnInsert("generation", delta.getGeneration())
+					.setOnInsert("server", delta.getServer()).setOnInsert("stageId", delta.getStageId())
+					.setOnInsert("start", delta.getStart()).setOnInsert("end", delta.getEnd())
+					.setOnInsert("hash", delta.getHash()).setOnInsert("drops", delta.getDrops())
+					.inc("quantity", delta.getQuantity());
+			operations.upsert(new Query(Criteria.where("_id").is(delta.getId())), update);
+		}
+		operations.execute();
+	}
+
+}
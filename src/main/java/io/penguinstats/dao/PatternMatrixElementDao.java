@@ -1,8 +1,11 @@
 package io.penguinstats.dao;
 
+import java.util.Collection;
 import java.util.List;
 
+import org.springframework.data.mongodb.repository.DeleteQuery;
 import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.data.mongodb.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import io.penguinstats.enums.Server;
@@ -11,8 +14,10 @@ import io.penguinstats.model.PatternMatrixElement;
 @Repository
 public interface PatternMatrixElementDao extends MongoRepository<PatternMatrixElement, String> {
 
-	Long deleteByServer(Server server);
+	@DeleteQuery("{'$and' : [{'server' : ?0}, {'generation' : {'$nin' : ?1}}]}")
+	Long deleteByServerAndGenerationNotIn(Server server, Collection<Long> generations);
 
-	List<PatternMatrixElement> findByServer(Server server);
+	@Query("{'$and' : [{'server' : ?0}, {'generation' : ?1}]}")
+	List<PatternMatrixElement> findByServerAndGeneration(Server server, Long generation);
 
 }
@@ -0,0 +1,11 @@
+package io.penguinstats.dao;
+
+import org.springframework.data.mongodb.repository.MongoRepository;
+import org.springframework.stereotype.Repository;
+
+import io.penguinstats.model.SiteStatsCheckpoint;
+
+@Repository
+public interface SiteStatsCheckpointDao extends MongoRepository<SiteStatsCheckpoint, String> {
+
+}
@@ -5,7 +5,7 @@ import org.springframework.data.mongodb.repository.MongoRepository;
 import org.springframework.stereotype.Repository;
 
 @Repository
-public interface UserDao extends MongoRepository<User, String> {
+public interface UserDao extends MongoRepository<User, String>, UserDaoCustom {
 
     User findByUserID(String userID);
 
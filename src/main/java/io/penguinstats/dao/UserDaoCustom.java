@@ -0,0 +1,16 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+import java.util.Map;
+
+import io.penguinstats.model.User;
+
+public interface UserDaoCustom {
+
+	void ensureUserIDIndex();
+
+	boolean insertIfAbsent(User user);
+
+	void addIPs(Map<String, ? extends Collection<String>> ipsByUserID);
+
+}
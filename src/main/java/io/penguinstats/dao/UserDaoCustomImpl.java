@@ -0,0 +1,93 @@
+package io.penguinstats.dao;
+
+import java.util.Collection;
+import java.util.Map;
+
+import org.bson.Document;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.data.domain.Sort.Direction;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.BulkOperations.BulkMode;
+import org.springframework.data.mongodb.core.MongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.IndexOperations;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+
+import com.mongodb.client.result.UpdateResult;
+
+import io.penguinstats.model.User;
+import lombok.extern.log4j.Log4j2;
+
+@Log4j2
+public class UserDaoCustomImpl implements UserDaoCustom {
+
+	@Autowired
+	MongoTemplate mongoTemplate;
+
+	/**
+	 * @Title: ensureUserIDIndex
+	 * @Description: Create the unique index on userID, after dropping the old non-unique one. If it still fails, i.e.
+	 *               there are duplicated userIDs, a non-unique index is created again, and users are created without
+	 *               the guarantee of the index.
+	 */
+	@Override
+	public void ensureUserIDIndex() {
+		IndexOperations indexOps = mongoTemplate.indexOps(User.class);
+		for (IndexInfo info : indexOps.getIndexInfo()) {
+			if (!info.isUnique() && info.getIndexFields().size() == 1
+					&& "userID".equals(info.getIndexFields().get(0).getKey())) {
+				log.info("Dropping the old non-unique index {} on userID", info.getName());
+				indexOps.dropIndex(info.getName());
+			}
+		}
+		try {
+			indexOps.ensureIndex(new Index().on("userID", Direction.ASC).unique());
+		} catch (DataAccessException e) {
+			log.error("Failed to create the unique index on userID, remove duplicated userIDs to enforce it", e);
+			indexOps.ensureIndex(new Index().on("userID", Direction.ASC));
+		}
+	}
+
+	/**
+	 * @Title: insertIfAbsent
+	 * @Description: Insert the user in one upsert unless its userID is taken.
+	 * @param user
+	 * @return boolean Whether the user is inserted
+	 */
+	@Override
+	public boolean insertIfAbsent(User user) {
+		Document document = new Document();
+		mongoTemplate.getConverter().write(user, document);
+		document.remove("_id");
+		Update update = new Update();
+		document.forEach(update::setOnInsert);
+		try {
+			UpdateResult result =
+					mongoTemplate.upsert(new Query(Criteria.where("userID").is(user.getUserID())), update, User.class);
+			return result.getUpsertedId() != null;
+		} catch (DuplicateKeyException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * @Title: addIPs
+	 * @Description: Add IPs to the users in one unordered bulk write. IPs which are already there are skipped.
+	 * @param ipsByUserID
+	 */
+	@Override
+	public void addIPs(Map<String, ? extends Collection<String>> ipsByUserID) {
+		if (ipsByUserID.isEmpty())
+			return;
+		BulkOperations operations = mongoTemplate.bulkOps(BulkMode.UNORDERED, User.class);
+		ipsByUserID.forEach((userID, ips) -> operations.updateOne(new Query(Criteria.where("userID").is(userID)),
+				new Update().addToSet("ips").each(ips.toArray())));
+		operations.execute();
+	}
+
+}
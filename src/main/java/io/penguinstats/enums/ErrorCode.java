@@ -11,6 +11,10 @@ public enum ErrorCode {
   CANNOT_CREATE_USER(1001),
 
   ITEM_DROP_HASH_ID_NOT_MATCH(2001),
+  REPORT_QUEUE_FULL(2002),
+  ITEM_DROP_BATCH_INSERT_FAILED(2003),
+
+  QUERY_QUEUE_FULL(3001),
   ;
 
   private Integer value;
@@ -0,0 +1,7 @@
+package io.penguinstats.enums;
+
+public enum ItemDropEventType {
+
+	SAVED, DELETED;
+
+}
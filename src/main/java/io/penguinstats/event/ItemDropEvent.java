@@ -0,0 +1,31 @@
+package io.penguinstats.event;
+
+import java.util.List;
+
+import org.springframework.context.ApplicationEvent;
+
+import io.penguinstats.enums.ItemDropEventType;
+import io.penguinstats.model.ItemDrop;
+import lombok.Getter;
+
+/**
+ * ItemDropEvent is published after item drops have been written into the database.<br>
+ * <b>SAVED</b> means the drops are newly inserted. <br>
+ * <b>DELETED</b> means the drops have just been flipped to be deleted, by recall or by deletion.
+ */
+@Getter
+public class ItemDropEvent extends ApplicationEvent {
+
+	private static final long serialVersionUID = 1L;
+
+	private final ItemDropEventType type;
+
+	private final List<ItemDrop> itemDrops;
+
+	public ItemDropEvent(Object source, ItemDropEventType type, List<ItemDrop> itemDrops) {
+		super(source);
+		this.type = type;
+		this.itemDrops = itemDrops;
+	}
+
+}
@@ -0,0 +1,62 @@
+package io.penguinstats.listener;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import io.penguinstats.enums.ItemDropEventType;
+import io.penguinstats.event.ItemDropEvent;
+import io.penguinstats.service.ClosedRangeAggregateService;
+import io.penguinstats.service.IncrementalDropMatrixService;
+import io.penguinstats.service.IncrementalPatternMatrixService;
+import io.penguinstats.service.ItemDropRollupService;
+import io.penguinstats.service.ItemDropSnapshotService;
+import io.penguinstats.service.PersonalDropMatrixService;
+import io.penguinstats.service.SiteStatsService;
+
+@Component("itemDropEventListener")
+public class ItemDropEventListener {
+
+	@Autowired
+	private ClosedRangeAggregateService closedRangeAggregateService;
+
+	@Autowired
+	private IncrementalDropMatrixService incrementalDropMatrixService;
+
+	@Autowired
+	private IncrementalPatternMatrixService incrementalPatternMatrixService;
+
+	@Autowired
+	private ItemDropSnapshotService itemDropSnapshotService;
+
+	@Autowired
+	private ItemDropRollupService itemDropRollupService;
+
+	@Autowired
+	private PersonalDropMatrixService personalDropMatrixService;
+
+	@Autowired
+	private SiteStatsService siteStatsService;
+
+	@EventListener
+	public void onItemDropEvent(ItemDropEvent event) {
+		closedRangeAggregateService.invalidateAggregates(event.getItemDrops());
+		if (ItemDropEventType.SAVED.equals(event.getType())) {
+			siteStatsService.applySavedItemDrops(event.getItemDrops());
+			incrementalDropMatrixService.applySavedItemDrops(event.getItemDrops());
+			incrementalPatternMatrixService.applySavedItemDrops(event.getItemDrops());
+			itemDropSnapshotService.applySavedItemDrops(event.getItemDrops());
+			itemDropRollupService.applySavedItemDrops(event.getItemDrops());
+			personalDropMatrixService.applySavedItemDrops(event.getItemDrops());
+		}
+		if (ItemDropEventType.DELETED.equals(event.getType())) {
+			siteStatsService.applyDeletedItemDrops(event.getItemDrops());
+			incrementalDropMatrixService.applyDeletedItemDrops(event.getItemDrops());
+			incrementalPatternMatrixService.applyDeletedItemDrops(event.getItemDrops());
+			itemDropSnapshotService.applyDeletedItemDrops(event.getItemDrops());
+			itemDropRollupService.applyDeletedItemDrops(event.getItemDrops());
+			personalDropMatrixService.applyDeletedItemDrops(event.getItemDrops());
+		}
+	}
+
+}
@@ -0,0 +1,98 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import io.penguinstats.enums.Server;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ClosedRangeAggregate is the frozen item drop aggregation of one stage in one closed time range.<br>
+ * <b>start</b> and <b>end</b> are kept to detect a time range whose bounds are changed under the same rangeID. <br>
+ * <b>times</b> is the times of the stage, and <b>quantities</b> maps itemId to its quantity. An aggregate with 0 times
+ * means the stage has no drop in the range.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "closed_range_aggregate")
+public class ClosedRangeAggregate implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	@Indexed
+	private Server server;
+
+	@Indexed
+	private String stageId;
+
+	private String rangeID;
+
+	private Long start;
+
+	private Long end;
+
+	private Integer times;
+
+	private Map<String, Integer> quantities;
+
+	private Long updateTime;
+
+	public static String getId(Server server, String stageId, String rangeID) {
+		return server + "_" + stageId + "_" + rangeID;
+	}
+
+	/**
+	 * @Title: of
+	 * @Description: Freeze the aggregation results of one stage in one time range.
+	 * @param server
+	 * @param stageId
+	 * @param range
+	 * @param docs The results of ItemDropDao.aggregateItemDrops on this stage.
+	 * @return ClosedRangeAggregate
+	 */
+	public static ClosedRangeAggregate of(Server server, String stageId, TimeRange range,
+			List<org.bson.Document> docs) {
+		Map<String, Integer> quantities = new HashMap<>();
+		docs.forEach(doc -> {
+			if (doc.containsKey("itemId"))
+				quantities.put(doc.getString("itemId"), doc.getInteger("quantity"));
+		});
+		Integer times = docs.isEmpty() ? 0 : docs.get(0).getInteger("times");
+		return new ClosedRangeAggregate(getId(server, stageId, range.getRangeID()), server, stageId,
+				range.getRangeID(), range.getStart(), range.getEnd(), times, quantities, System.currentTimeMillis());
+	}
+
+	/**
+	 * @Title: toDocuments
+	 * @Description: Thaw the aggregate into documents in the same shape as ItemDropDao.aggregateItemDrops.
+	 * @return List<org.bson.Document>
+	 */
+	public List<org.bson.Document> toDocuments() {
+		List<org.bson.Document> docs = new ArrayList<>();
+		if (times == null || times == 0)
+			return docs;
+		quantities.forEach((itemId, quantity) -> docs.add(new org.bson.Document("stageId", stageId)
+				.append("times", times).append("itemId", itemId).append("quantity", quantity)));
+		if (docs.isEmpty())
+			docs.add(new org.bson.Document("stageId", stageId).append("times", times));
+		return docs;
+	}
+
+	public boolean isFor(TimeRange range) {
+		return range.getStart().equals(start) && range.getEnd().equals(end);
+	}
+
+}
@@ -0,0 +1,40 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import io.penguinstats.enums.Server;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * DropMatrixCheckpoint persists the state of the incremental current drop matrix of one server.<br>
+ * <b>highWaterMark</b> is the timestamp before which all reliable drops have been applied to the counters. <br>
+ * <b>counters</b> are the un-combined matrix elements, one for each (stageId, itemId, time range).
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "drop_matrix_checkpoint")
+public class DropMatrixCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	private Server server;
+
+	private Long highWaterMark;
+
+	private Long lastReconcileTime;
+
+	private List<DropMatrixElement> counters;
+
+	private Long updateTime;
+
+}
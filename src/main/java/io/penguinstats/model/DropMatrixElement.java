@@ -21,7 +21,8 @@ import lombok.NoArgsConstructor;
 /**
  * MatrixElement is used to present a sparse matrix for drop records.<br>
  * <b>quantity</b> is how many times this item has dropped. <br>
- * <b>times</b> is how many times this stage has been played.
+ * <b>times</b> is how many times this stage has been played. <br>
+ * <b>generation</b> is the refresh which stored this element, see {@link MatrixGeneration}.
  * 
  * @author AlvISs_Reimu
  */
@@ -67,6 +68,10 @@ public class DropMatrixElement implements MatrixElement, Serializable {
 
 	private Long updateTime;
 
+	@Indexed
+	@JsonIgnore
+	private Long generation;
+
 	public DropMatrixElement(DropMatrixElementType type, String stageId, String itemId, Integer quantity, Integer times,
 			Long start, Long end, Server server, Boolean isPast, Long updateTime) {
 		this.type = type;
@@ -87,6 +92,7 @@ public class DropMatrixElement implements MatrixElement, Serializable {
 		this.server = null;
 		this.isPast = null;
 		this.updateTime = null;
+		this.generation = null;
 		return this;
 	}
 
@@ -0,0 +1,59 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import io.penguinstats.enums.Server;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ItemDropRollup is the pre-aggregation of all reliable drops of one (server, stageId) in one hour.<br>
+ * <b>hour</b> is the start time of the hour bucket. <br>
+ * <b>times</b> is the sum of times of the reports, and <b>emptyTimes</b> the part of it from reports with no drops.
+ * <br>
+ * <b>quantities</b> maps itemId to the sum of its quantity. Item ids are used as field names, so they must not contain
+ * '.' or start with '$'.<br>
+ * Rollups are updated with $inc on the id <code>generation_server_stageId_hour</code>, so that the same bucket can be
+ * written by several updates.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "item_drop_rollup")
+public class ItemDropRollup implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	@Indexed
+	private Long generation;
+
+	private Server server;
+
+	@Indexed
+	private String stageId;
+
+	@Indexed
+	private Long hour;
+
+	private Integer times;
+
+	private Integer emptyTimes;
+
+	private Map<String, Integer> quantities;
+
+	public ItemDropRollup(Long generation, Server server, String stageId, Long hour) {
+		this(generation + "_" + server + "_" + stageId + "_" + hour, generation, server, stageId, hour, 0, 0,
+				new HashMap<>());
+	}
+
+}
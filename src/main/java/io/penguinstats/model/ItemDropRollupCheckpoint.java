@@ -0,0 +1,39 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * ItemDropRollupCheckpoint persists the state of the {@link ItemDropRollup}s.<br>
+ * <b>generation</b> is the generation of rollups being served and updated. It is also the time when it was built.
+ * <br>
+ * <b>previousGeneration</b> is kept until the next rebuild, so that readers which have just read the old checkpoint can
+ * still find their rollups. <br>
+ * <b>highWaterMark</b> is the timestamp before which all reliable drops have been applied to the rollups.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "item_drop_rollup_checkpoint")
+public class ItemDropRollupCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	private Long generation;
+
+	private Long previousGeneration;
+
+	private Long highWaterMark;
+
+	private Long updateTime;
+
+}
@@ -0,0 +1,35 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * MatrixGeneration points to the live generation of one stored matrix.<br>
+ * <b>generation</b> is the generation whose elements are served. <br>
+ * <b>previousGeneration</b> is kept until the next swap, so that readers which have just read the old pointer can
+ * still find their elements.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "matrix_generation")
+public class MatrixGeneration implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	private Long generation;
+
+	private Long previousGeneration;
+
+	private Long updateTime;
+
+}
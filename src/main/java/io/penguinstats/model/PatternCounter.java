@@ -0,0 +1,59 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+import java.util.List;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.index.Indexed;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import io.penguinstats.enums.Server;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * PatternCounter is the number of times one drop pattern has dropped in the latest time range of one (server,
+ * stageId).<br>
+ * <b>drops</b> are in canonical order, and <b>hash</b> is their canonical hash. <br>
+ * <b>quantity</b> is the sum of times of the reports with this pattern. The times of the stage is the sum of quantity
+ * of all its counters. <br>
+ * Counters are updated with $inc on the id <code>generation_server_stageId_start_hash</code>, so that the same counter
+ * can be written by several updates. Patterns whose hash collides with an earlier one append <code>_n</code> to it.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "pattern_counter")
+public class PatternCounter implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	@Indexed
+	private Long generation;
+
+	@Indexed
+	private Server server;
+
+	private String stageId;
+
+	private Long start;
+
+	private Long end;
+
+	private Long hash;
+
+	private List<Drop> drops;
+
+	private Integer quantity;
+
+	public PatternCounter(Long generation, Server server, String stageId, Long start, Long end, Long hash,
+			List<Drop> drops) {
+		this(generation + "_" + server + "_" + stageId + "_" + start + "_" + Long.toHexString(hash), generation,
+				server, stageId, start, end, hash, drops, 0);
+	}
+
+}
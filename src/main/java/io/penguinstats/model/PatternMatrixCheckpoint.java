@@ -0,0 +1,43 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import io.penguinstats.enums.Server;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * PatternMatrixCheckpoint persists the state of the incremental global pattern matrix of one server.<br>
+ * <b>generation</b> is the generation of {@link PatternCounter}s being updated. It is also the time of the last
+ * reconciliation. <br>
+ * <b>highWaterMark</b> is the timestamp before which all reliable drops have been applied to the counters. <br>
+ * <b>timeRanges</b> maps stageId to the time range counted for it. Stage ids are used as field names, so they must not
+ * contain '.' or start with '$'.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "pattern_matrix_checkpoint")
+public class PatternMatrixCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	private Server server;
+
+	private Long generation;
+
+	private Long highWaterMark;
+
+	private Map<String, TimeRange> timeRanges;
+
+	private Long updateTime;
+
+}
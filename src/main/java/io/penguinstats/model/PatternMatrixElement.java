@@ -53,10 +53,15 @@ public class PatternMatrixElement implements MatrixElement, Serializable {
 
 	private Long updateTime;
 
+	@Indexed
+	@JsonIgnore
+	private Long generation;
+
 	@JsonIgnore
 	public PatternMatrixElement toResultView() {
 		this.server = null;
 		this.updateTime = null;
+		this.generation = null;
 		return this;
 	}
 
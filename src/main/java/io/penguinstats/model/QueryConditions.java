@@ -2,10 +2,12 @@ package io.penguinstats.model;
 
 import java.util.ArrayList;
 import java.util.List;
+import java.util.Objects;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import io.penguinstats.enums.AggregationEngine;
 import io.penguinstats.enums.Server;
 import lombok.Getter;
 import lombok.Setter;
@@ -20,6 +22,7 @@ public class QueryConditions {
 	private List<String> userIDs;
 	private Long interval;
 	private Long range;
+	private AggregationEngine engine;
 
 	public QueryConditions() {
 		this.stages = new ArrayList<>();
@@ -28,6 +31,7 @@ public class QueryConditions {
 		this.userIDs = new ArrayList<>();
 		this.interval = null;
 		this.range = null;
+		this.engine = AggregationEngine.MONGO_PIPELINE;
 	}
 
 	public QueryConditions addStage(String stageId, Long start, Long end) {
@@ -60,6 +64,26 @@ public class QueryConditions {
 		return this;
 	}
 
+	public QueryConditions setEngine(AggregationEngine engine) {
+		this.engine = engine;
+		return this;
+	}
+
+	/**
+	 * The start time of section 0 in segmented results. It is null if the stages have different start times.
+	 */
+	@JsonIgnore
+	public Long getSectionBaseTime() {
+		if (stages.isEmpty())
+			return 0L;
+		final Long firstStartTime = stages.get(0).getStart();
+		for (int i = 1, size = stages.size(); i < size; i++) {
+			if (!Objects.equals(stages.get(i).getStart(), firstStartTime))
+				return null;
+		}
+		return firstStartTime == null ? 0L : firstStartTime;
+	}
+
 	@JsonIgnore
 	@Override
 	public String toString() {
@@ -0,0 +1,23 @@
+package io.penguinstats.model;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/**
+ * RenderedResponse is an immutable, already serialized response body.<br>
+ * <b>body</b> is the identity encoded JSON, <b>gzipBody</b> is the same bytes gzip encoded. <br>
+ * <b>etag</b> is a quoted strong validator of the identity body, <b>lastModified</b> is in milliseconds.
+ */
+@Getter
+@AllArgsConstructor
+public class RenderedResponse {
+
+	private final byte[] body;
+
+	private final byte[] gzipBody;
+
+	private final String etag;
+
+	private final Long lastModified;
+
+}
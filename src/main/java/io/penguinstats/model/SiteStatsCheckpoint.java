@@ -0,0 +1,40 @@
+package io.penguinstats.model;
+
+import java.io.Serializable;
+import java.util.Map;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+import io.penguinstats.enums.Server;
+import lombok.AllArgsConstructor;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+/**
+ * SiteStatsCheckpoint persists the all-time site statistics of one server.<br>
+ * <b>highWaterMark</b> is the timestamp before which all reliable drops have been counted. <br>
+ * <b>stageTimes</b> maps stageId to its total times, and <b>itemQuantities</b> maps itemId to its total quantity.
+ */
+@Data
+@AllArgsConstructor
+@NoArgsConstructor
+@Document(collection = "site_stats_checkpoint")
+public class SiteStatsCheckpoint implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	@Id
+	private String id;
+
+	private Server server;
+
+	private Long highWaterMark;
+
+	private Map<String, Long> stageTimes;
+
+	private Map<String, Long> itemQuantities;
+
+	private Long updateTime;
+
+}
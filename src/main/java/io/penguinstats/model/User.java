@@ -5,7 +5,6 @@ import java.util.List;
 
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
-import org.springframework.data.mongodb.core.index.Indexed;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
@@ -29,7 +28,7 @@ public class User implements Serializable {
 	@Id
 	@JsonIgnore
 	private ObjectId id;
-	@Indexed
+	// unique index ensured by UserDaoCustom.ensureUserIDIndex
 	private String userID;
 	private Double weight;
 	private List<String> tags;
@@ -2,10 +2,27 @@ package io.penguinstats.model.query;
 
 import java.util.List;
 
+import io.penguinstats.enums.QueryType;
 import io.penguinstats.model.MatrixElement;
 
 public interface BasicQuery {
 
+	QueryType getQueryType();
+
+	String getClientID();
+
+	/**
+	 * @Title: query
+	 * @Description: Run the query in the calling thread.
+	 * @return List<? extends MatrixElement>
+	 */
+	List<? extends MatrixElement> query() throws Exception;
+
+	/**
+	 * @Title: execute
+	 * @Description: Run the query on the query executor, and wait for it until its timeout.
+	 * @return List<? extends MatrixElement>
+	 */
 	List<? extends MatrixElement> execute() throws Exception;
 
 }
@@ -0,0 +1,29 @@
+package io.penguinstats.model.query;
+
+import java.util.List;
+
+import io.penguinstats.enums.Server;
+
+/**
+ * A query answered by DropMatrixElementService.generateCustomDropMatrixElements, whose result is determined by its
+ * parameters and can be cached.
+ */
+public interface CustomDropMatrixQuery extends BasicQuery {
+
+	Server getServer();
+
+	String getStageId();
+
+	List<String> getItemIds();
+
+	Long getStart();
+
+	Long getEnd();
+
+	String getUserID();
+
+	default Long getInterval() {
+		return null;
+	}
+
+}
@@ -6,10 +6,11 @@ import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import io.penguinstats.enums.QueryType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.MatrixElement;
 import io.penguinstats.service.DropMatrixElementService;
-import io.penguinstats.util.QueryUtil;
+import io.penguinstats.service.QueryExecutionService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.experimental.Accessors;
@@ -22,13 +23,21 @@ public class GlobalMatrixQuery implements Serializable, BasicQuery {
 
 	private static final long serialVersionUID = 1L;
 
-	public GlobalMatrixQuery(DropMatrixElementService dropMatrixElementService) {
+	public GlobalMatrixQuery(DropMatrixElementService dropMatrixElementService,
+			QueryExecutionService queryExecutionService) {
 		this.dropMatrixElementService = dropMatrixElementService;
+		this.queryExecutionService = queryExecutionService;
 	}
 
 	@JsonIgnore
 	private DropMatrixElementService dropMatrixElementService;
 
+	@JsonIgnore
+	private QueryExecutionService queryExecutionService;
+
+	@JsonIgnore
+	private String clientID;
+
 	private Server server;
 
 	private String userID;
@@ -37,10 +46,20 @@ public class GlobalMatrixQuery implements Serializable, BasicQuery {
 
 	private Boolean isPast;
 
+	@JsonIgnore
+	@Override
+	public QueryType getQueryType() {
+		return QueryType.GLOBAL_MATRIX;
+	}
+
+	@Override
+	public List<? extends MatrixElement> query() throws Exception {
+		return dropMatrixElementService.generateGlobalDropMatrixElements(server, userID, isPast);
+	}
+
 	@Override
 	public List<? extends MatrixElement> execute() throws Exception {
-		return QueryUtil.runQuery(
-				() -> dropMatrixElementService.generateGlobalDropMatrixElements(server, userID, isPast), timeout);
+		return queryExecutionService.execute(getQueryType(), clientID, this::query, timeout);
 	}
 
 }
\ No newline at end of file
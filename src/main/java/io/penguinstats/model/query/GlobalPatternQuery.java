@@ -6,10 +6,11 @@ import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import io.penguinstats.enums.QueryType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.MatrixElement;
 import io.penguinstats.service.PatternMatrixElementService;
-import io.penguinstats.util.QueryUtil;
+import io.penguinstats.service.QueryExecutionService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.experimental.Accessors;
@@ -22,13 +23,21 @@ public class GlobalPatternQuery implements Serializable, BasicQuery {
 
 	private static final long serialVersionUID = 1L;
 
-	public GlobalPatternQuery(PatternMatrixElementService patternMatrixElementService) {
+	public GlobalPatternQuery(PatternMatrixElementService patternMatrixElementService,
+			QueryExecutionService queryExecutionService) {
 		this.patternMatrixElementService = patternMatrixElementService;
+		this.queryExecutionService = queryExecutionService;
 	}
 
 	@JsonIgnore
 	private PatternMatrixElementService patternMatrixElementService;
 
+	@JsonIgnore
+	private QueryExecutionService queryExecutionService;
+
+	@JsonIgnore
+	private String clientID;
+
 	private Server server;
 
 	private String stageId;
@@ -43,10 +52,20 @@ public class GlobalPatternQuery implements Serializable, BasicQuery {
 
 	private Integer timeout;
 
+	@JsonIgnore
+	@Override
+	public QueryType getQueryType() {
+		return QueryType.GLOBAL_PATTERN;
+	}
+
+	@Override
+	public List<? extends MatrixElement> query() throws Exception {
+		return patternMatrixElementService.generateGlobalPatternMatrixElements(server, userID);
+	}
+
 	@Override
 	public List<? extends MatrixElement> execute() throws Exception {
-		return QueryUtil.runQuery(() -> patternMatrixElementService.generateGlobalPatternMatrixElements(server, userID),
-				timeout);
+		return queryExecutionService.execute(getQueryType(), clientID, this::query, timeout);
 	}
 
 }
@@ -6,10 +6,11 @@ import java.util.List;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import io.penguinstats.enums.QueryType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.MatrixElement;
 import io.penguinstats.service.DropMatrixElementService;
-import io.penguinstats.util.QueryUtil;
+import io.penguinstats.service.QueryExecutionService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.experimental.Accessors;
@@ -22,13 +23,21 @@ public class GlobalTrendQuery implements Serializable, BasicQuery {
 
 	private static final long serialVersionUID = 1L;
 
-	public GlobalTrendQuery(DropMatrixElementService dropMatrixElementService) {
+	public GlobalTrendQuery(DropMatrixElementService dropMatrixElementService,
+			QueryExecutionService queryExecutionService) {
 		this.dropMatrixElementService = dropMatrixElementService;
+		this.queryExecutionService = queryExecutionService;
 	}
 
 	@JsonIgnore
 	private DropMatrixElementService dropMatrixElementService;
 
+	@JsonIgnore
+	private QueryExecutionService queryExecutionService;
+
+	@JsonIgnore
+	private String clientID;
+
 	private Server server;
 
 	private Long interval;
@@ -37,11 +46,20 @@ public class GlobalTrendQuery implements Serializable, BasicQuery {
 
 	private Integer timeout;
 
+	@JsonIgnore
+	@Override
+	public QueryType getQueryType() {
+		return QueryType.GLOBAL_TREND;
+	}
+
+	@Override
+	public List<? extends MatrixElement> query() throws Exception {
+		return dropMatrixElementService.generateSegmentedGlobalDropMatrixElements(server, interval, range);
+	}
+
 	@Override
 	public List<? extends MatrixElement> execute() throws Exception {
-		return QueryUtil.runQuery(
-				() -> dropMatrixElementService.generateSegmentedGlobalDropMatrixElements(server, interval, range),
-				timeout);
+		return queryExecutionService.execute(getQueryType(), clientID, this::query, timeout);
 	}
 
 }
\ No newline at end of file
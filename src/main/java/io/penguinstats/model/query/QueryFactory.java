@@ -6,6 +6,8 @@ import org.springframework.stereotype.Component;
 import io.penguinstats.enums.QueryType;
 import io.penguinstats.service.DropMatrixElementService;
 import io.penguinstats.service.PatternMatrixElementService;
+import io.penguinstats.service.QueryExecutionService;
+import io.penguinstats.service.QueryResultCacheService;
 
 @Component("queryFactory")
 public class QueryFactory {
@@ -14,19 +16,23 @@ public class QueryFactory {
 	private DropMatrixElementService dropMatrixElementService;
 	@Autowired
 	private PatternMatrixElementService patternMatrixElementService;
+	@Autowired
+	private QueryExecutionService queryExecutionService;
+	@Autowired
+	private QueryResultCacheService queryResultCacheService;
 
 	public BasicQuery getQuery(QueryType type) throws Exception {
 		switch (type) {
 			case MATRIX:
-				return new MatrixQuery(dropMatrixElementService);
+				return new MatrixQuery(dropMatrixElementService, queryExecutionService, queryResultCacheService);
 			case TREND:
-				return new TrendQuery(dropMatrixElementService);
+				return new TrendQuery(dropMatrixElementService, queryExecutionService, queryResultCacheService);
 			case GLOBAL_MATRIX:
-				return new GlobalMatrixQuery(dropMatrixElementService);
+				return new GlobalMatrixQuery(dropMatrixElementService, queryExecutionService);
 			case GLOBAL_TREND:
-				return new GlobalTrendQuery(dropMatrixElementService);
+				return new GlobalTrendQuery(dropMatrixElementService, queryExecutionService);
 			case GLOBAL_PATTERN:
-				return new GlobalPatternQuery(patternMatrixElementService);
+				return new GlobalPatternQuery(patternMatrixElementService, queryExecutionService);
 			default:
 				throw new Exception("Failed to create query for " + type);
 		}
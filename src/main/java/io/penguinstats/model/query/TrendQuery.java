@@ -8,10 +8,12 @@ import java.util.Optional;
 import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 
+import io.penguinstats.enums.QueryType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.MatrixElement;
 import io.penguinstats.service.DropMatrixElementService;
-import io.penguinstats.util.QueryUtil;
+import io.penguinstats.service.QueryExecutionService;
+import io.penguinstats.service.QueryResultCacheService;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.experimental.Accessors;
@@ -20,17 +22,29 @@ import lombok.experimental.Accessors;
 @AllArgsConstructor
 @Accessors(chain = true)
 @JsonInclude(JsonInclude.Include.NON_NULL)
-public class TrendQuery implements Serializable, BasicQuery {
+public class TrendQuery implements Serializable, CustomDropMatrixQuery {
 
 	private static final long serialVersionUID = 1L;
 
-	public TrendQuery(DropMatrixElementService dropMatrixElementService) {
+	public TrendQuery(DropMatrixElementService dropMatrixElementService, QueryExecutionService queryExecutionService,
+			QueryResultCacheService queryResultCacheService) {
 		this.dropMatrixElementService = dropMatrixElementService;
+		this.queryExecutionService = queryExecutionService;
+		this.queryResultCacheService = queryResultCacheService;
 	}
 
 	@JsonIgnore
 	private DropMatrixElementService dropMatrixElementService;
 
+	@JsonIgnore
+	private QueryExecutionService queryExecutionService;
+
+	@JsonIgnore
+	private QueryResultCacheService queryResultCacheService;
+
+	@JsonIgnore
+	private String clientID;
+
 	private Server server;
 
 	private String stageId;
@@ -47,12 +61,22 @@ public class TrendQuery implements Serializable, BasicQuery {
 
 	private Integer timeout;
 
+	@JsonIgnore
 	@Override
-	public List<? extends MatrixElement> execute() throws Exception {
-		return QueryUtil.runQuery(
+	public QueryType getQueryType() {
+		return QueryType.TREND;
+	}
+
+	@Override
+	public List<? extends MatrixElement> query() throws Exception {
+		return queryResultCacheService.get(this,
 				() -> dropMatrixElementService.generateCustomDropMatrixElements(server, stageId, itemIds, start, end,
-						Optional.ofNullable(userID).map(userID -> Arrays.asList(userID)).orElse(null), interval),
-				timeout);
+						Optional.ofNullable(userID).map(userID -> Arrays.asList(userID)).orElse(null), interval));
+	}
+
+	@Override
+	public List<? extends MatrixElement> execute() throws Exception {
+		return queryExecutionService.execute(getQueryType(), clientID, this::query, timeout);
 	}
 
 }
@@ -0,0 +1,22 @@
+package io.penguinstats.service;
+
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ClosedRangeAggregate;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.TimeRange;
+
+public interface ClosedRangeAggregateService {
+
+	boolean isClosed(TimeRange range);
+
+	Map<String, ClosedRangeAggregate> getAggregates(Server server, Map<String, TimeRange> rangesByStageId);
+
+	void saveAggregates(Collection<ClosedRangeAggregate> aggregates, long aggregationTime);
+
+	void invalidateAggregates(List<ItemDrop> itemDrops);
+
+}
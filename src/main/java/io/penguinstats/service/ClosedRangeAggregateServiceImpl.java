@@ -0,0 +1,127 @@
+package io.penguinstats.service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.SystemPropertyKey;
+import io.penguinstats.dao.ClosedRangeAggregateDao;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ClosedRangeAggregate;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.TimeRange;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Persist the item drop aggregations of closed time ranges, so that they are not aggregated again by every matrix
+ * update.<br>
+ * A time range is closed once it has ended for longer than the freeze delay, which covers the drops still being
+ * ingested behind. After that, its aggregate only changes when a drop inside it is deleted, or saved late, e.g. by
+ * replaying the report journal. Such a drop deletes the aggregates of its stage containing it, and they are aggregated
+ * again on the next update. An aggregation running across the invalidation is not saved.
+ */
+@Log4j2
+@Service("closedRangeAggregateService")
+public class ClosedRangeAggregateServiceImpl implements ClosedRangeAggregateService {
+
+	private static final long DEFAULT_FREEZE_DELAY = 600000L;
+
+	@Autowired
+	private ClosedRangeAggregateDao closedRangeAggregateDao;
+
+	@Autowired
+	private SystemPropertyService systemPropertyService;
+
+	/**
+	 * server_stageId -> the last time when its aggregates were invalidated
+	 */
+	private final Map<String, Long> invalidationTimes = new ConcurrentHashMap<>();
+
+	@Override
+	public boolean isClosed(TimeRange range) {
+		return range.getRangeID() != null && range.getEnd() != null
+				&& range.getEnd() <= System.currentTimeMillis() - getFreezeDelay();
+	}
+
+	/**
+	 * @Title: getAggregates
+	 * @Description: Get the frozen aggregates of the given closed time ranges. Ranges which have not been frozen, or
+	 *               whose bounds have changed, are missing in the result.
+	 * @param server
+	 * @param rangesByStageId
+	 * @return Map<String,ClosedRangeAggregate> stageId -> aggregate
+	 */
+	@Override
+	public Map<String, ClosedRangeAggregate> getAggregates(Server server, Map<String, TimeRange> rangesByStageId) {
+		List<String> ids = new ArrayList<>();
+		rangesByStageId.forEach(
+				(stageId, range) -> ids.add(ClosedRangeAggregate.getId(server, stageId, range.getRangeID())));
+		Map<String, ClosedRangeAggregate> result = new HashMap<>();
+		closedRangeAggregateDao.findAllById(ids).forEach(aggregate -> {
+			TimeRange range = rangesByStageId.get(aggregate.getStageId());
+			if (range != null && aggregate.isFor(range))
+				result.put(aggregate.getStageId(), aggregate);
+		});
+		return result;
+	}
+
+	/**
+	 * @Title: saveAggregates
+	 * @Description: Save newly frozen aggregates, except the ones invalidated since the aggregation started.
+	 * @param aggregates
+	 * @param aggregationTime The time when the aggregation started.
+	 */
+	@Override
+	public void saveAggregates(Collection<ClosedRangeAggregate> aggregates, long aggregationTime) {
+		List<ClosedRangeAggregate> valid = new ArrayList<>();
+		for (ClosedRangeAggregate aggregate : aggregates) {
+			Long invalidationTime = invalidationTimes.get(getStageKey(aggregate.getServer(), aggregate.getStageId()));
+			if (invalidationTime == null || invalidationTime < aggregationTime)
+				valid.add(aggregate);
+		}
+		if (!valid.isEmpty())
+			closedRangeAggregateDao.saveAll(valid);
+		log.debug("{} closed range aggregates are frozen, {} skipped", valid.size(), aggregates.size() - valid.size());
+	}
+
+	/**
+	 * @Title: invalidateAggregates
+	 * @Description: Delete the aggregates of closed time ranges which the given drops are in.
+	 * @param itemDrops The drops which are deleted or newly saved.
+	 */
+	@Override
+	public void invalidateAggregates(List<ItemDrop> itemDrops) {
+		Long currentTime = System.currentTimeMillis();
+		// Newer drops cannot be in any closed time range
+		long latestClosedTime = currentTime - getFreezeDelay();
+		itemDrops.stream()
+				.filter(itemDrop -> Boolean.TRUE.equals(itemDrop.getIsReliable())
+						&& itemDrop.getTimestamp() < latestClosedTime)
+				.forEach(itemDrop -> {
+					invalidationTimes.put(getStageKey(itemDrop.getServer(), itemDrop.getStageId()), currentTime);
+					Long deletedNum = closedRangeAggregateDao.deleteByServerAndStageIdAndTimestampInRange(
+							itemDrop.getServer(), itemDrop.getStageId(), itemDrop.getTimestamp());
+					if (deletedNum != null && deletedNum > 0)
+						log.debug("{} closed range aggregates of {} in {} are invalidated", deletedNum,
+								itemDrop.getStageId(), itemDrop.getServer());
+				});
+	}
+
+	private String getStageKey(Server server, String stageId) {
+		return server + "_" + stageId;
+	}
+
+	private long getFreezeDelay() {
+		return Optional
+				.ofNullable(systemPropertyService.getPropertyLongValue(SystemPropertyKey.CLOSED_RANGE_FREEZE_DELAY))
+				.orElse(DEFAULT_FREEZE_DELAY);
+	}
+
+}
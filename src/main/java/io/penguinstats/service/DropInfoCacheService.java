@@ -0,0 +1,11 @@
+package io.penguinstats.service;
+
+import io.penguinstats.util.VersionedCache;
+
+public interface DropInfoCacheService {
+
+	<K, V> VersionedCache<K, V> createCache();
+
+	void invalidate();
+
+}
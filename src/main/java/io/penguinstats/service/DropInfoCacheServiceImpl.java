@@ -0,0 +1,50 @@
+package io.penguinstats.service;
+
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.SystemPropertyKey;
+import io.penguinstats.util.VersionedCache;
+
+/**
+ * Hand out the {@link VersionedCache}s of the values built from drop infos and time ranges, i.e. drop rules, opening
+ * stage timelines and drop info indexes, and share one version among them.<br>
+ * The version is increased when drop infos or time ranges are saved through their services, after their cached lists
+ * are evicted. Changes made in the database directly are picked up once per refresh interval.
+ */
+@Service("dropInfoCacheService")
+public class DropInfoCacheServiceImpl implements DropInfoCacheService {
+
+	private static final long DEFAULT_REFRESH_INTERVAL = 300000L;
+
+	@Autowired
+	private SystemPropertyService systemPropertyService;
+
+	private final AtomicLong version = new AtomicLong();
+
+	@Override
+	public <K, V> VersionedCache<K, V> createCache() {
+		return new VersionedCache<>(version::get, this::getRefreshInterval);
+	}
+
+	/**
+	 * @Title: invalidate
+	 * @Description: Make every cache reload on its next read. Must be called after the cached drop infos and time
+	 *               ranges are evicted, otherwise the reload may read the stale ones.
+	 */
+	@Override
+	public void invalidate() {
+		version.incrementAndGet();
+	}
+
+	private long getRefreshInterval() {
+		return Optional
+				.ofNullable(
+						systemPropertyService.getPropertyLongValue(SystemPropertyKey.DROP_INFO_CACHE_REFRESH_INTERVAL))
+				.orElse(DEFAULT_REFRESH_INTERVAL);
+	}
+
+}
@@ -0,0 +1,10 @@
+package io.penguinstats.service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.DropInfoIndex;
+
+public interface DropInfoIndexService {
+
+	DropInfoIndex getIndex(Server server);
+
+}
@@ -0,0 +1,54 @@
+package io.penguinstats.service;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.DropInfoIndex;
+import io.penguinstats.util.VersionedCache;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keep a {@link DropInfoIndex} of every server, so that the drop infos active at a time, or overlapping a period, are
+ * found without walking all drop infos of the server.<br>
+ * The indexes are cached by {@link DropInfoCacheService}.
+ */
+@Log4j2
+@Service("dropInfoIndexService")
+public class DropInfoIndexServiceImpl implements DropInfoIndexService {
+
+	@Autowired
+	private DropInfoService dropInfoService;
+
+	@Autowired
+	private TimeRangeService timeRangeService;
+
+	@Autowired
+	private DropInfoCacheService dropInfoCacheService;
+
+	private VersionedCache<Server, DropInfoIndex> indexes;
+
+	@PostConstruct
+	public void init() {
+		indexes = dropInfoCacheService.createCache();
+	}
+
+	/**
+	 * @Title: getIndex
+	 * @Description: Get the drop info index of the given server. It is immutable and may be shared.
+	 * @param server
+	 * @return DropInfoIndex
+	 */
+	@Override
+	public DropInfoIndex getIndex(Server server) {
+		return indexes.get(server, key -> {
+			DropInfoIndex index =
+					DropInfoIndex.build(dropInfoService.getDropInfosByServer(key), timeRangeService.getTimeRangeMap());
+			log.debug("Rebuilt drop info index of server {}", key);
+			return index;
+		});
+	}
+
+}
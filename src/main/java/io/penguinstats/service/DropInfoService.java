@@ -4,19 +4,13 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.DropInfo;
 
 public interface DropInfoService {
 
-	@Caching(evict = {@CacheEvict(value = "lists", key = "'dropInfoList_' + #dropInfo.server"),
-			@CacheEvict(value = "maps", key = "'latestMaxAccumulatableTimeRangesMap_' + #dropInfo.server"),
-			@CacheEvict(value = "maps", key = "'latestTimeRangesMap_' + #dropInfo.server"),
-			@CacheEvict(value = "sets", allEntries = true)})
 	void saveDropInfo(DropInfo dropInfo);
 
 	void batchSave(List<DropInfo> infos);
@@ -35,8 +29,6 @@ public interface DropInfoService {
 
 	Map<String, Set<String>> getDropSetMap(Server server, Long time);
 
-	@Cacheable(value = "sets", key = "'dropSet_' + #server + '_' + #stageId + '_' + #time",
-			condition = "#filter == null")
 	Set<String> getDropSet(Server server, String stageId, Long time);
 
 	Map<String, List<DropInfo>> getOpeningDropInfosMap(Server server, Long time);
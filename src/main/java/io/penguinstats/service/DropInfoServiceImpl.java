@@ -5,13 +5,15 @@ import static java.util.stream.Collectors.mapping;
 import static java.util.stream.Collectors.toList;
 import static java.util.stream.Collectors.toSet;
 
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.context.ApplicationContext;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.stereotype.Service;
 
 import io.penguinstats.constant.Constant.LastUpdateMapKeyName;
@@ -29,11 +31,25 @@ public class DropInfoServiceImpl implements DropInfoService {
 	@Autowired
 	private TimeRangeService timeRangeService;
 	@Autowired
-	private ApplicationContext applicationContext;
+	private DropInfoCacheService dropInfoCacheService;
+	@Autowired
+	private OpeningStageService openingStageService;
+	@Autowired
+	private DropInfoIndexService dropInfoIndexService;
+	@Autowired
+	private CacheManager cacheManager;
 
+	/** 
+	 * @Title: saveDropInfo 
+	 * @Description: Save a drop info. The cached lists and maps of its server are evicted before the caches of
+	 *               DropInfoCacheService are invalidated, so that they are not rebuilt from the stale ones.
+	 * @param dropInfo
+	 */
 	@Override
 	public void saveDropInfo(DropInfo dropInfo) {
 		dropInfoDao.save(dropInfo);
+		evictCaches(dropInfo.getServer());
+		dropInfoCacheService.invalidate();
 	}
 
 	@Override
@@ -81,22 +97,19 @@ public class DropInfoServiceImpl implements DropInfoService {
 
 	/** 
 	 * @Title: getDropSetMap 
-	 * @Description: Get all dropsets in a map, key is stageId
+	 * @Description: Get all dropsets in a map, key is stageId. Drop infos are found by a stab query on the drop info
+	 *               index.
 	 * @param server
 	 * @param time
 	 * @return Map<String,Set<String>>
 	 */
 	@Override
 	public Map<String, Set<String>> getDropSetMap(Server server, Long time) {
-		Map<String, TimeRange> timeRangeMap = timeRangeService.getTimeRangeMap();
-		List<DropInfo> infos = getSpringProxy().getDropInfosByServer(server);
-
-		Map<String, Set<String>> result = infos.stream().filter(info -> {
-			String itemId = info.getItemId();
-			TimeRange range = timeRangeMap.get(info.getTimeRangeID());
-			return itemId != null && range.isIn(time);
-		}).collect(groupingBy(DropInfo::getStageId, mapping(DropInfo::getItemId, toSet())));
-		return result;
+		if (time == null)
+			return new HashMap<>();
+		return dropInfoIndexService.getIndex(server).getActiveDropInfos(time).stream()
+				.filter(info -> info.getItemId() != null)
+				.collect(groupingBy(DropInfo::getStageId, mapping(DropInfo::getItemId, toSet())));
 	}
 
 	/** 
@@ -105,12 +118,18 @@ public class DropInfoServiceImpl implements DropInfoService {
 	 * @param server
 	 * @param stageId
 	 * @param time
-	 * @return Set<String>
+	 * @return Set<String> A new set which the caller may modify, or null if nothing drops
 	 */
 	@Override
 	public Set<String> getDropSet(Server server, String stageId, Long time) {
-		Map<String, Set<String>> dropsetMap = getDropSetMap(server, time);
-		return dropsetMap.get(stageId);
+		if (time == null)
+			return null;
+		Set<String> result = new HashSet<>();
+		for (DropInfo info : dropInfoIndexService.getIndex(server).getActiveDropInfos(stageId, time)) {
+			if (info.getItemId() != null)
+				result.add(info.getItemId());
+		}
+		return result.isEmpty() ? null : result;
 	}
 
 	/** 
@@ -122,52 +141,41 @@ public class DropInfoServiceImpl implements DropInfoService {
 	 */
 	@Override
 	public Map<String, List<DropInfo>> getOpeningDropInfosMap(Server server, Long time) {
-		Map<String, TimeRange> timeRangeMap = timeRangeService.getTimeRangeMap();
-		List<DropInfo> infos = getSpringProxy().getDropInfosByServer(server);
-
-		Map<String, List<DropInfo>> result = infos.stream().filter(info -> {
-			TimeRange range = timeRangeMap.get(info.getTimeRangeID());
-			return range.isIn(time);
-		}).collect(groupingBy(DropInfo::getStageId));
-		return result;
+		if (time == null)
+			return new HashMap<>();
+		return dropInfoIndexService.getIndex(server).getActiveDropInfos(time).stream()
+				.collect(groupingBy(DropInfo::getStageId));
 	}
 
 	/** 
 	 * @Title: getOpeningStages 
-	 * @Description: Get a list of stageIds which are opening under the given time and server
+	 * @Description: Get a list of stageIds which are opening under the given time and server, from the opening stage
+	 *               timeline
 	 * @param server
 	 * @param time
-	 * @return Set<String>
+	 * @return Set<String> An unmodifiable set
 	 */
 	@Override
 	public Set<String> getOpeningStages(Server server, Long time) {
-		Map<String, TimeRange> timeRangeMap = timeRangeService.getTimeRangeMap();
-		List<DropInfo> infos = getSpringProxy().getDropInfosByServer(server);
-		Set<String> stageIds = new HashSet<>();
-		infos.forEach(info -> {
-			String stageId = info.getStageId();
-			if (!stageIds.contains(stageId)) {
-				TimeRange range = timeRangeMap.get(info.getTimeRangeID());
-				if (range != null && range.isIn(time)) {
-					stageIds.add(stageId);
-				}
-			}
-		});
-		return stageIds;
-	}
-
-	/** 
-	 * @Title: getSpringProxy 
-	 * @Description: Use proxy to hit cache 
-	 * @return DropInfoService
-	 */
-	private DropInfoService getSpringProxy() {
-		return applicationContext.getBean(DropInfoService.class);
+		return openingStageService.getOpeningStages(server, time);
 	}
 
 	@Override
 	public void batchSave(List<DropInfo> infos) {
 		dropInfoDao.saveAll(infos);
+		infos.stream().map(DropInfo::getServer).distinct().forEach(this::evictCaches);
+		dropInfoCacheService.invalidate();
+	}
+
+	private void evictCaches(Server server) {
+		Cache lists = cacheManager.getCache("lists");
+		if (lists != null)
+			lists.evict("dropInfoList_" + server);
+		Cache maps = cacheManager.getCache("maps");
+		if (maps != null) {
+			maps.evict("latestMaxAccumulatableTimeRangesMap_" + server);
+			maps.evict("latestTimeRangesMap_" + server);
+		}
 	}
 
 }
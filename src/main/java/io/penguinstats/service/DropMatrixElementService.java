@@ -2,6 +2,7 @@ package io.penguinstats.service;
 
 import java.util.Collection;
 import java.util.List;
+import java.util.Map;
 
 import org.springframework.cache.annotation.CachePut;
 import org.springframework.cache.annotation.Cacheable;
@@ -14,7 +15,8 @@ public interface DropMatrixElementService {
 
 	void batchSave(Collection<DropMatrixElement> elements);
 
-	void batchDelete(DropMatrixElementType type, Server server, Boolean isPast);
+	void replaceGlobalElements(DropMatrixElementType type, Server server, Boolean isPast,
+			Collection<DropMatrixElement> elements);
 
 	@Cacheable(value = "drop-matrix-v2", key = "'drop-matrix-v2_' + #server + '_' + (#isPast ? 'past' : 'current')",
 			sync = true)
@@ -27,6 +29,9 @@ public interface DropMatrixElementService {
 			condition = "#userID == null")
 	List<DropMatrixElement> generateGlobalDropMatrixElements(Server server, String userID, boolean isPast);
 
+	Map<String, Map<String, List<DropMatrixElement>>> generateGlobalDropMatrixElementsByTimeRange(Server server,
+			String userID, boolean isPast, Long upperBound);
+
 	@CachePut(value = "all-segmented-drop-matrix-v2", key = "'all-segmented-drop-matrix-v2_' + #server")
 	List<DropMatrixElement> generateDefaultSegmentedGlobalDropMatrixElements(Server server);
 
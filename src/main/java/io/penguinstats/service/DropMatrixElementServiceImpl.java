@@ -14,6 +14,7 @@ import java.util.Map;
 import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.bson.Document;
 import org.javatuples.Pair;
@@ -23,12 +24,15 @@ import org.springframework.stereotype.Service;
 import io.penguinstats.constant.Constant.SystemPropertyKey;
 import io.penguinstats.dao.DropMatrixElementDao;
 import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.enums.AggregationEngine;
 import io.penguinstats.enums.DropMatrixElementType;
 import io.penguinstats.enums.Server;
+import io.penguinstats.model.ClosedRangeAggregate;
 import io.penguinstats.model.DropMatrixElement;
 import io.penguinstats.model.QueryConditions;
 import io.penguinstats.model.TimeRange;
 import io.penguinstats.util.DropMatrixElementUtil;
+import io.penguinstats.util.TaskRunner;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -50,30 +54,87 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 	@Autowired
 	private SystemPropertyService systemPropertyService;
 
+	@Autowired
+	private ItemDropSnapshotService itemDropSnapshotService;
+
+	@Autowired
+	private ItemDropRollupService itemDropRollupService;
+
+	@Autowired
+	private ClosedRangeAggregateService closedRangeAggregateService;
+
+	@Autowired
+	private MatrixGenerationService matrixGenerationService;
+
+	@Autowired
+	private TaskRunner taskRunner;
+
 	@Override
 	public void batchSave(Collection<DropMatrixElement> elements) {
 		dropMatrixElementDao.saveAll(elements);
 	}
 
+	/**
+	 * @Title: replaceGlobalElements
+	 * @Description: Replace the stored elements of one global matrix with a new generation. Readers keep getting the
+	 *               old elements until all new ones are saved.
+	 * @param type
+	 * @param server
+	 * @param isPast
+	 * @param elements
+	 */
 	@Override
-	public void batchDelete(DropMatrixElementType type, Server server, Boolean isPast) {
-		dropMatrixElementDao.deleteAllByIsPastAndServer(type, isPast, server);
+	public void replaceGlobalElements(DropMatrixElementType type, Server server, Boolean isPast,
+			Collection<DropMatrixElement> elements) {
+		matrixGenerationService.replaceGeneration(getMatrixId(type, server, isPast), generation -> {
+			elements.forEach(el -> el.setGeneration(generation));
+			dropMatrixElementDao.saveAll(elements);
+		}, liveGenerations -> dropMatrixElementDao.deleteAllByIsPastAndServerAndGenerationNotIn(type, isPast, server,
+				liveGenerations));
 	}
 
 	@Override
 	public List<DropMatrixElement> getGlobalDropMatrixElements(Server server, boolean isPast) {
-		return dropMatrixElementDao.queryByTypeAndIsPastAndServer(DropMatrixElementType.REGULAR, isPast, server);
+		return getGlobalElements(DropMatrixElementType.REGULAR, server, isPast);
 	}
 
 	@Override
 	public List<DropMatrixElement> getGlobalTrendElements(Server server) {
-		return dropMatrixElementDao.queryByTypeAndIsPastAndServer(DropMatrixElementType.TREND, null, server);
+		return getGlobalElements(DropMatrixElementType.TREND, server, null);
 	}
 
 	@Override
 	public List<DropMatrixElement> generateGlobalDropMatrixElements(Server server, String userID, boolean isPast) {
 		Long startTime = System.currentTimeMillis();
 
+		Map<String, Map<String, List<DropMatrixElement>>> allElementsMap =
+				generateGlobalDropMatrixElementsByTimeRange(server, userID, isPast, null);
+
+		List<DropMatrixElement> result = allElementsMap.values().stream()
+				.flatMap(m -> m.values().stream().map(els -> DropMatrixElementUtil.combineElements(els)))
+				.collect(toList());
+
+		if (userID == null) {
+			log.info("generateGlobalDropMatrixElements done in {} ms for server {}, isPast = {}",
+					System.currentTimeMillis() - startTime, server, isPast);
+		}
+
+		return result;
+	}
+
+	/** 
+	 * @Title: generateGlobalDropMatrixElementsByTimeRange 
+	 * @Description: Generate the elements of the global matrix before they are combined. Every element covers exactly
+	 *               one time range of one item in one stage.
+	 * @param server
+	 * @param userID
+	 * @param isPast
+	 * @param upperBound If not null, drops are only aggregated before this timestamp in those open time ranges.
+	 * @return Map<String,Map<String,List<DropMatrixElement>>> stageId -> itemId -> elements
+	 */
+	@Override
+	public Map<String, Map<String, List<DropMatrixElement>>> generateGlobalDropMatrixElementsByTimeRange(
+			Server server, String userID, boolean isPast, Long upperBound) {
 		Map<String, List<Pair<String, List<TimeRange>>>> latestMaxAccumulatableTimeRangesMap =
 				timeRangeService.getLatestMaxAccumulatableTimeRangesMapByServer(server);
 
@@ -91,7 +152,9 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 		List<String> userIDs = userID != null ? Collections.singletonList(userID) : new ArrayList<>();
 		Map<String, Map<String, List<DropMatrixElement>>> allElementsMap = new HashMap<>();
 
-		for (int i = 0; i < maxSize; i++) {
+		// Every batch of stages with their i-th time range is aggregated in parallel
+		List<Integer> batchIndexes = IntStream.range(0, maxSize).boxed().collect(toList());
+		List<List<DropMatrixElement>> elementsByBatch = taskRunner.map(batchIndexes, i -> {
 			Map<String, List<TimeRange>> timeRangeMap = new HashMap<>();
 			for (String stageId : convertedMap.keySet()) {
 				List<Pair<TimeRange, List<String>>> pairs = convertedMap.get(stageId);
@@ -101,8 +164,12 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 				TimeRange range = pair.getValue0();
 				timeRangeMap.put(stageId, Collections.singletonList(range));
 			}
-			List<DropMatrixElement> elements = generateDropMatrixElementsFromTimeRangeMapByStageId(server, timeRangeMap,
-					new ArrayList<>(), userIDs, isPast);
+			return generateDropMatrixElementsFromTimeRangeMapByStageId(server, timeRangeMap, new ArrayList<>(),
+					userIDs, isPast, upperBound);
+		});
+
+		for (int i = 0; i < maxSize; i++) {
+			List<DropMatrixElement> elements = elementsByBatch.get(i);
 
 			for (String stageId : convertedMap.keySet()) {
 				Map<String, List<DropMatrixElement>> subMap = allElementsMap.getOrDefault(stageId, new HashMap<>());
@@ -124,17 +191,7 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 				allElementsMap.put(stageId, subMap);
 			}
 		}
-
-		List<DropMatrixElement> result = allElementsMap.values().stream()
-				.flatMap(m -> m.values().stream().map(els -> DropMatrixElementUtil.combineElements(els)))
-				.collect(toList());
-
-		if (userID == null) {
-			log.info("generateGlobalDropMatrixElements done in {} ms for server {}, isPast = {}",
-					System.currentTimeMillis() - startTime, server, isPast);
-		}
-
-		return result;
+		return allElementsMap;
 	}
 
 	@Override
@@ -161,11 +218,21 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 		Map<String, List<TimeRange>> timeRangeMap = new HashMap<>();
 		timeRangeMap.put(stageId, splittedRanges);
 		if (interval == null)
-			return generateDropMatrixElementsFromTimeRangeMapByStageId(server, timeRangeMap, itemIds, userIDs, null);
+			return generateDropMatrixElementsFromTimeRangeMapByStageId(server, timeRangeMap, itemIds, userIDs, null,
+					null);
 		else
 			return generateSegmentedDropMatrixElements(server, stageId, itemIds, start, end, userIDs, interval);
 	}
 
+	private List<DropMatrixElement> getGlobalElements(DropMatrixElementType type, Server server, Boolean isPast) {
+		Long generation = matrixGenerationService.getCurrentGeneration(getMatrixId(type, server, isPast));
+		return dropMatrixElementDao.queryByTypeAndIsPastAndServerAndGeneration(type, isPast, server, generation);
+	}
+
+	private String getMatrixId(DropMatrixElementType type, Server server, Boolean isPast) {
+		return "drop_" + type + "_" + server + (isPast == null ? "" : isPast ? "_past" : "_current");
+	}
+
 	private List<Pair<TimeRange, List<String>>> convertItemIdBasedTimeRangesToTimeRangeBasedItemIds(
 			List<Pair<String, List<TimeRange>>> pairs, boolean isPast) {
 		List<Pair<TimeRange, List<String>>> subList = new ArrayList<>();
@@ -189,7 +256,8 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 	}
 
 	private List<DropMatrixElement> generateDropMatrixElementsFromTimeRangeMapByStageId(Server server,
-			Map<String, List<TimeRange>> timeRangeMap, List<String> itemIds, List<String> userIDs, Boolean isPast) {
+			Map<String, List<TimeRange>> timeRangeMap, List<String> itemIds, List<String> userIDs, Boolean isPast,
+			Long upperBound) {
 		Integer maxSize = null;
 		for (String stageId : timeRangeMap.keySet()) {
 			List<TimeRange> ranges = timeRangeMap.get(stageId);
@@ -197,9 +265,14 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 				maxSize = ranges.size();
 		}
 
+		AggregationEngine engine = getAggregationEngine();
+		// Only the global matrix on one server can reuse the frozen aggregates of closed time ranges
+		boolean isFreezable = server != null && !Optional.ofNullable(userIDs).map(list -> !list.isEmpty()).orElse(false)
+				&& !Optional.ofNullable(itemIds).map(list -> !list.isEmpty()).orElse(false);
 		Map<String, Map<String, List<DropMatrixElement>>> mapByStageIdAndItemId = new HashMap<>();
 		for (int i = 0; i < maxSize; i++) {
-			QueryConditions conditions = new QueryConditions();
+			Long aggregationTime = System.currentTimeMillis();
+			QueryConditions conditions = new QueryConditions().setEngine(engine);
 			if (server != null)
 				conditions.addServer(server);
 			if (Optional.ofNullable(userIDs).map(list -> !list.isEmpty()).orElse(false)) {
@@ -210,16 +283,33 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 			}
 
 			Map<String, TimeRange> currentRangesByStageId = new HashMap<>();
+			Map<String, TimeRange> closedRangesByStageId = new HashMap<>();
 			for (String stageId : timeRangeMap.keySet()) {
 				List<TimeRange> ranges = timeRangeMap.get(stageId);
 				if (i < ranges.size()) {
 					TimeRange range = ranges.get(i);
-					conditions.addStage(stageId, range.getStart(), range.getEnd());
 					currentRangesByStageId.put(stageId, range);
+					if (isFreezable && closedRangeAggregateService.isClosed(range))
+						closedRangesByStageId.put(stageId, range);
+					else
+						conditions.addStage(stageId, range.getStart(),
+								range.getEnd() == null ? upperBound : range.getEnd());
 				}
 			}
 
-			List<Document> docs = itemDropDao.aggregateItemDrops(conditions);
+			Map<String, ClosedRangeAggregate> frozenAggregates = closedRangesByStageId.isEmpty() ? new HashMap<>()
+					: closedRangeAggregateService.getAggregates(server, closedRangesByStageId);
+			closedRangesByStageId.forEach((stageId, range) -> {
+				if (!frozenAggregates.containsKey(stageId))
+					conditions.addStage(stageId, range.getStart(), range.getEnd());
+			});
+
+			// Conditions without any stage would match all stages
+			List<Document> docs = conditions.getStages().isEmpty() ? new ArrayList<>()
+					: new ArrayList<>(aggregateItemDrops(conditions));
+			if (frozenAggregates.size() < closedRangesByStageId.size())
+				freezeClosedRanges(server, closedRangesByStageId, frozenAggregates.keySet(), docs, aggregationTime);
+			frozenAggregates.values().forEach(aggregate -> docs.addAll(aggregate.toDocuments()));
 			Map<String, List<Document>> docsGroupByStageId =
 					docs.stream().collect(groupingBy(doc -> doc.getString("stageId")));
 			for (String stageId : docsGroupByStageId.keySet()) {
@@ -287,7 +377,7 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 			return new ArrayList<>();
 		}
 
-		QueryConditions conditions = new QueryConditions();
+		QueryConditions conditions = new QueryConditions().setEngine(getAggregationEngine());
 		conditions.addStage(stageId, start, end);
 		conditions.setInterval(interval);
 		if (server != null)
@@ -299,7 +389,7 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 			itemIds.forEach(itemId -> conditions.addItemId(itemId));
 		}
 
-		List<Document> docs = itemDropDao.aggregateItemDrops(conditions);
+		List<Document> docs = aggregateItemDrops(conditions);
 
 		Map<String, Map<String, List<DropMatrixElement>>> map = new HashMap<>();
 		Map<String, Map<Integer, Integer>> timesMap = new HashMap<>();
@@ -351,4 +441,50 @@ public class DropMatrixElementServiceImpl implements DropMatrixElementService {
 				.collect(Collectors.toList());
 	}
 
+	/**
+	 * Save the aggregates of the closed time ranges which have just been aggregated.
+	 */
+	private void freezeClosedRanges(Server server, Map<String, TimeRange> closedRangesByStageId,
+			Set<String> frozenStageIds, List<Document> docs, Long aggregationTime) {
+		Map<String, List<Document>> docsGroupByStageId =
+				docs.stream().collect(groupingBy(doc -> doc.getString("stageId")));
+		List<ClosedRangeAggregate> aggregates = new ArrayList<>();
+		closedRangesByStageId.forEach((stageId, range) -> {
+			if (!frozenStageIds.contains(stageId)) {
+				aggregates.add(ClosedRangeAggregate.of(server, stageId, range,
+						docsGroupByStageId.getOrDefault(stageId, new ArrayList<>())));
+			}
+		});
+		closedRangeAggregateService.saveAggregates(aggregates, aggregationTime);
+	}
+
+	/**
+	 * Segmented aggregations on hour boundaries are answered from the hourly rollups. Others go to the configured
+	 * engine.
+	 */
+	private List<Document> aggregateItemDrops(QueryConditions conditions) {
+		return taskRunner.limitAggregation(() -> {
+			if (itemDropRollupService.isApplicable(conditions))
+				return itemDropRollupService.aggregateItemDrops(conditions);
+			return conditions.getEngine() == AggregationEngine.SNAPSHOT
+					? itemDropSnapshotService.aggregateItemDrops(conditions)
+					: itemDropDao.aggregateItemDrops(conditions);
+		});
+	}
+
+	/**
+	 * The engine used to aggregate item drops, configured by system property. Default is the Mongo pipeline.
+	 */
+	private AggregationEngine getAggregationEngine() {
+		String engine = systemPropertyService.getPropertyStringValue(SystemPropertyKey.ITEM_DROP_AGGREGATION_ENGINE);
+		if (engine == null)
+			return AggregationEngine.MONGO_PIPELINE;
+		try {
+			return AggregationEngine.valueOf(engine);
+		} catch (IllegalArgumentException e) {
+			log.error("Invalid item drop aggregation engine " + engine);
+			return AggregationEngine.MONGO_PIPELINE;
+		}
+	}
+
 }
@@ -0,0 +1,24 @@
+package io.penguinstats.service;
+
+import java.util.BitSet;
+import java.util.Collection;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.matrix.DropMatrixTable;
+import io.penguinstats.util.matrix.OrdinalDictionary;
+
+public interface DropMatrixStoreService {
+
+	DropMatrixTable getTable(Server server, boolean isPast);
+
+	DropMatrixTable getCombinedTable(Server server);
+
+	void refresh(Server server);
+
+	BitSet getStageMask(Collection<String> stageIds);
+
+	BitSet getItemMask(Collection<String> itemIds);
+
+	OrdinalDictionary getStageDictionary();
+
+}
@@ -0,0 +1,127 @@
+package io.penguinstats.service;
+
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.matrix.DropMatrixTable;
+import io.penguinstats.util.matrix.OrdinalDictionary;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keep the global regular drop matrices of every server in memory as {@link DropMatrixTable}s.<br>
+ * Stage and item ordinals are shared by all tables and seeded from StageService and ItemService. The tables of a
+ * server are rebuilt from the cached elements after the drop matrix tasks update them, and are swapped in as a whole.
+ */
+@Log4j2
+@Service("dropMatrixStoreService")
+public class DropMatrixStoreServiceImpl implements DropMatrixStoreService {
+
+	@Autowired
+	private DropMatrixElementService dropMatrixElementService;
+
+	@Autowired
+	private StageService stageService;
+
+	@Autowired
+	private ItemService itemService;
+
+	private final OrdinalDictionary stages = new OrdinalDictionary();
+
+	private final OrdinalDictionary items = new OrdinalDictionary();
+
+	private final Map<Server, Tables> tablesMap = new ConcurrentHashMap<>();
+
+	@Override
+	public DropMatrixTable getTable(Server server, boolean isPast) {
+		Tables tables = getTables(server);
+		return isPast ? tables.past : tables.current;
+	}
+
+	@Override
+	public DropMatrixTable getCombinedTable(Server server) {
+		return getTables(server).combined;
+	}
+
+	/**
+	 * @Title: refresh
+	 * @Description: Rebuild the tables of the given server from the cached elements.
+	 * @param server
+	 */
+	@Override
+	public void refresh(Server server) {
+		Long startTime = System.currentTimeMillis();
+		stageService.getStageMap().keySet().stream().sorted().forEach(stages::intern);
+		itemService.getItemMap().keySet().stream().sorted().forEach(items::intern);
+
+		DropMatrixTable past =
+				DropMatrixTable.of(dropMatrixElementService.getGlobalDropMatrixElements(server, true), stages, items);
+		DropMatrixTable current =
+				DropMatrixTable.of(dropMatrixElementService.getGlobalDropMatrixElements(server, false), stages, items);
+		tablesMap.put(server, new Tables(past, current, DropMatrixTable.combine(past, current)));
+		log.debug("drop matrix store is refreshed in {} ms for server {}", System.currentTimeMillis() - startTime,
+				server);
+	}
+
+	@Override
+	public BitSet getStageMask(Collection<String> stageIds) {
+		return toMask(stages, stageIds);
+	}
+
+	@Override
+	public BitSet getItemMask(Collection<String> itemIds) {
+		return toMask(items, itemIds);
+	}
+
+	/**
+	 * @Title: getStageDictionary
+	 * @Description: The stage ordinals shared by all tables, for building stage masks elsewhere.
+	 * @return OrdinalDictionary
+	 */
+	@Override
+	public OrdinalDictionary getStageDictionary() {
+		return stages;
+	}
+
+	private Tables getTables(Server server) {
+		Tables tables = tablesMap.get(server);
+		if (tables == null) {
+			refresh(server);
+			tables = tablesMap.get(server);
+		}
+		return tables;
+	}
+
+	/**
+	 * Unknown ids are not in any table, so they are simply left out of the mask.
+	 */
+	private BitSet toMask(OrdinalDictionary dictionary, Collection<String> ids) {
+		BitSet mask = new BitSet(dictionary.size());
+		for (String id : ids) {
+			int ordinal = dictionary.lookup(id);
+			if (ordinal >= 0)
+				mask.set(ordinal);
+		}
+		return mask;
+	}
+
+	private static class Tables {
+
+		private final DropMatrixTable past;
+		private final DropMatrixTable current;
+		private final DropMatrixTable combined;
+
+		private Tables(DropMatrixTable past, DropMatrixTable current, DropMatrixTable combined) {
+			this.past = past;
+			this.current = current;
+			this.combined = combined;
+		}
+
+	}
+
+}
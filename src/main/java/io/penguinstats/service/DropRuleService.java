@@ -0,0 +1,10 @@
+package io.penguinstats.service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.validator.CompiledDropRule;
+
+public interface DropRuleService {
+
+	CompiledDropRule getDropRule(Server server, String stageId, long time);
+
+}
@@ -0,0 +1,71 @@
+package io.penguinstats.service;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.VersionedCache;
+import io.penguinstats.util.validator.CompiledDropRule;
+import io.penguinstats.util.validator.DropRuleIndex;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keep the compiled drop rules of the opening stages in every server, for validating reports without regrouping all
+ * drop infos each time.<br>
+ * The index of a server is rebuilt when a time range boundary is crossed, or when its {@link DropInfoCacheService}
+ * cache is invalidated or expires. Only the index around the current time is kept. Reports at other times build an
+ * index of their own, like before.
+ */
+@Log4j2
+@Service("dropRuleService")
+public class DropRuleServiceImpl implements DropRuleService {
+
+	@Autowired
+	private DropInfoService dropInfoService;
+
+	@Autowired
+	private TimeRangeService timeRangeService;
+
+	@Autowired
+	private DropInfoCacheService dropInfoCacheService;
+
+	private VersionedCache<Server, DropRuleIndex> indexes;
+
+	@PostConstruct
+	public void init() {
+		indexes = dropInfoCacheService.createCache();
+	}
+
+	/**
+	 * @Title: getDropRule
+	 * @Description: Get the compiled drop rule of a stage at the given time.
+	 * @param server
+	 * @param stageId
+	 * @param time
+	 * @return CompiledDropRule Null if the stage is not opening at the time.
+	 */
+	@Override
+	public CompiledDropRule getDropRule(Server server, String stageId, long time) {
+		return getIndex(server, time).getRule(stageId);
+	}
+
+	private DropRuleIndex getIndex(Server server, long time) {
+		long currentTime = System.currentTimeMillis();
+		long currentVersion = indexes.getVersion();
+		DropRuleIndex index = indexes.getIfPresent(server);
+		if (index != null && index.covers(time))
+			return index;
+
+		index = DropRuleIndex.build(dropInfoService.getDropInfosByServer(server), timeRangeService.getTimeRangeMap(),
+				time);
+		if (index.covers(currentTime)) {
+			indexes.put(server, index, currentVersion);
+			log.debug("Rebuilt drop rules of server {}, {} stages are opening", server,
+					index.getRulesByStageId().size());
+		}
+		return index;
+	}
+
+}
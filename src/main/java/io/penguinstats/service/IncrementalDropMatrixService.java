@@ -0,0 +1,23 @@
+package io.penguinstats.service;
+
+import java.util.List;
+
+import org.springframework.cache.annotation.CachePut;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.ItemDrop;
+
+public interface IncrementalDropMatrixService {
+
+	@CachePut(value = "drop-matrix-v2", key = "'drop-matrix-v2_' + #server + '_current'")
+	List<DropMatrixElement> updateCurrentDropMatrixElements(Server server);
+
+	@CachePut(value = "drop-matrix-v2", key = "'drop-matrix-v2_' + #server + '_current'")
+	List<DropMatrixElement> reconcileCurrentDropMatrixElements(Server server);
+
+	void applySavedItemDrops(List<ItemDrop> itemDrops);
+
+	void applyDeletedItemDrops(List<ItemDrop> itemDrops);
+
+}
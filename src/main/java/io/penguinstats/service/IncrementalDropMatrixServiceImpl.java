@@ -0,0 +1,397 @@
+package io.penguinstats.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+import org.javatuples.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.SystemPropertyKey;
+import io.penguinstats.dao.DropMatrixCheckpointDao;
+import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.enums.DropMatrixElementType;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixCheckpoint;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.TimeRange;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Maintain the current (isPast = false) global drop matrix incrementally.<br>
+ * Quantity and times are kept as counters per (stageId, itemId, time range). Each update only applies the reliable
+ * drops whose timestamp is in [highWaterMark, now - lag). Drops saved late below the high water mark, and deleted or
+ * recalled drops, are added or subtracted as soon as they are saved or flipped. The live matrix is served from the
+ * cache put by each update, while the stored elements are only replaced by a reconciliation, or by an update which
+ * changed the counters once the persist interval has passed since the last replacement. A full re-aggregation is
+ * still done as reconciliation when there is no usable state, when the current time ranges have changed, or when the
+ * last reconciliation is too old.
+ */
+@Log4j2
+@Service("incrementalDropMatrixService")
+public class IncrementalDropMatrixServiceImpl implements IncrementalDropMatrixService {
+
+	private static final long DEFAULT_LAG = 10000L;
+	private static final long DEFAULT_RECONCILE_INTERVAL = 21600000L;
+	private static final long DEFAULT_PERSIST_INTERVAL = 900000L;
+
+	@Autowired
+	private DropMatrixElementService dropMatrixElementService;
+
+	@Autowired
+	private TimeRangeService timeRangeService;
+
+	@Autowired
+	private SystemPropertyService systemPropertyService;
+
+	@Autowired
+	private ItemDropDao itemDropDao;
+
+	@Autowired
+	private DropMatrixCheckpointDao dropMatrixCheckpointDao;
+
+	private final Map<Server, CounterState> states = new EnumMap<>(Server.class);
+
+	@Override
+	public List<DropMatrixElement> updateCurrentDropMatrixElements(Server server) {
+		Map<String, Map<String, List<RangeCounter>>> layout = buildEmptyCounters(server);
+		CounterState state = getOrLoadState(server);
+		if (state == null || !isSameLayout(state.counters, layout) || isReconcileNeeded(state))
+			return reconcileCurrentDropMatrixElements(server);
+
+		synchronized (state) {
+			Long startTime = System.currentTimeMillis();
+			Long newHighWaterMark = startTime - getLag();
+			if (newHighWaterMark.compareTo(state.highWaterMark) <= 0)
+				return toStoredElements(server, state);
+
+			List<ItemDrop> itemDrops = itemDropDao.findValidItemDropsByServerAndTimestampBetween(server,
+					state.highWaterMark, newHighWaterMark);
+			state.lastWindowIds = new HashSet<>();
+			itemDrops.forEach(itemDrop -> {
+				applyItemDrop(state, itemDrop, 1);
+				state.lastWindowIds.add(itemDrop.getId());
+			});
+			state.lastWindowStart = state.highWaterMark;
+			state.highWaterMark = newHighWaterMark;
+			saveCheckpoint(server, state);
+
+			log.info("updateCurrentDropMatrixElements applied {} drops in {} ms for server {}", itemDrops.size(),
+					System.currentTimeMillis() - startTime, server);
+			return toStoredElements(server, state);
+		}
+	}
+
+	@Override
+	public List<DropMatrixElement> reconcileCurrentDropMatrixElements(Server server) {
+		Long startTime = System.currentTimeMillis();
+		Long highWaterMark = startTime - getLag();
+
+		CounterState state = new CounterState();
+		state.counters = buildEmptyCounters(server);
+		state.highWaterMark = highWaterMark;
+		state.lastReconcileTime = startTime;
+
+		Map<String, Map<String, List<DropMatrixElement>>> elementsMap =
+				dropMatrixElementService.generateGlobalDropMatrixElementsByTimeRange(server, null, false, highWaterMark);
+		elementsMap.values().forEach(subMap -> subMap.values().forEach(elements -> elements.forEach(el -> {
+			RangeCounter counter = findCounter(state, el.getStageId(), el.getItemId(), el.getStart(), el.getEnd());
+			if (counter != null) {
+				counter.quantity += el.getQuantity();
+				counter.times += el.getTimes();
+			}
+		})));
+
+		synchronized (states) {
+			states.put(server, state);
+		}
+		synchronized (state) {
+			saveCheckpoint(server, state);
+			List<DropMatrixElement> result = toCombinedElements(server, state);
+			dropMatrixElementService.replaceGlobalElements(DropMatrixElementType.REGULAR, server, false, result);
+			state.dirty = false;
+			state.lastPersistTime = System.currentTimeMillis();
+			log.info("reconcileCurrentDropMatrixElements done in {} ms for server {}",
+					System.currentTimeMillis() - startTime, server);
+			return result;
+		}
+	}
+
+	/**
+	 * @Title: applySavedItemDrops
+	 * @Description: Add drops which have just been saved below the high water mark, e.g. by a delayed flush or a
+	 *               journal replay. Drops above it will be counted by the next update.
+	 * @param itemDrops
+	 */
+	@Override
+	public void applySavedItemDrops(List<ItemDrop> itemDrops) {
+		applyLateItemDrops(itemDrops, 1);
+	}
+
+	/**
+	 * @Title: applyDeletedItemDrops
+	 * @Description: Subtract drops which have just been deleted or recalled. Drops that are not yet covered by the
+	 *               high water mark are skipped, since they will be filtered out by the next update.
+	 * @param itemDrops
+	 */
+	@Override
+	public void applyDeletedItemDrops(List<ItemDrop> itemDrops) {
+		applyLateItemDrops(itemDrops, -1);
+	}
+
+	private void applyLateItemDrops(List<ItemDrop> itemDrops, int sign) {
+		itemDrops.forEach(itemDrop -> {
+			if (!Boolean.TRUE.equals(itemDrop.getIsReliable()) || itemDrop.getServer() == null)
+				return;
+			CounterState state = null;
+			synchronized (states) {
+				state = states.get(itemDrop.getServer());
+			}
+			if (state == null)
+				return;
+			synchronized (state) {
+				if (itemDrop.getTimestamp().compareTo(state.highWaterMark) >= 0)
+					return;
+				// The last update may have read the drop before its event came: it was counted if it was saved, and
+				// left out if it was deleted
+				if (state.lastWindowStart != null && itemDrop.getTimestamp().compareTo(state.lastWindowStart) >= 0) {
+					boolean counted = state.lastWindowIds.contains(itemDrop.getId());
+					if (counted == sign > 0)
+						return;
+				}
+				applyItemDrop(state, itemDrop, sign);
+			}
+		});
+	}
+
+	private CounterState getOrLoadState(Server server) {
+		synchronized (states) {
+			CounterState state = states.get(server);
+			if (state != null)
+				return state;
+			DropMatrixCheckpoint checkpoint = dropMatrixCheckpointDao.findById(server.name()).orElse(null);
+			if (checkpoint == null || checkpoint.getCounters() == null)
+				return null;
+
+			state = new CounterState();
+			state.counters = new HashMap<>();
+			state.highWaterMark = checkpoint.getHighWaterMark();
+			state.lastReconcileTime = checkpoint.getLastReconcileTime();
+			// The stored elements may be older than the checkpoint
+			state.dirty = true;
+			for (DropMatrixElement el : checkpoint.getCounters()) {
+				RangeCounter counter = new RangeCounter(el.getStart(), el.getEnd());
+				counter.quantity = el.getQuantity();
+				counter.times = el.getTimes();
+				state.counters.computeIfAbsent(el.getStageId(), k -> new HashMap<>())
+						.computeIfAbsent(el.getItemId(), k -> new ArrayList<>()).add(counter);
+			}
+			states.put(server, state);
+			log.info("loaded drop matrix checkpoint for server {}, high water mark = {}", server,
+					state.highWaterMark);
+			return state;
+		}
+	}
+
+	private void saveCheckpoint(Server server, CounterState state) {
+		List<DropMatrixElement> counters = new ArrayList<>();
+		state.counters.forEach((stageId, subMap) -> subMap.forEach((itemId, rangeCounters) -> rangeCounters
+				.forEach(counter -> counters.add(new DropMatrixElement(DropMatrixElementType.REGULAR, stageId, itemId,
+						(int)counter.quantity, (int)counter.times, counter.start, counter.end, server, false,
+						null)))));
+		dropMatrixCheckpointDao.save(new DropMatrixCheckpoint(server.name(), server, state.highWaterMark,
+				state.lastReconcileTime, counters, System.currentTimeMillis()));
+	}
+
+	/**
+	 * @Title: buildEmptyCounters
+	 * @Description: Build zero counters for every item in every stage, under each of its latest max accumulatable time
+	 *               ranges which are still open now.
+	 * @param server
+	 * @return Map<String,Map<String,List<RangeCounter>>> stageId -> itemId -> counters
+	 */
+	private Map<String, Map<String, List<RangeCounter>>> buildEmptyCounters(Server server) {
+		Long now = System.currentTimeMillis();
+		Map<String, List<Pair<String, List<TimeRange>>>> latestMaxAccumulatableTimeRangesMap =
+				timeRangeService.getLatestMaxAccumulatableTimeRangesMapByServer(server);
+		Map<String, Map<String, List<RangeCounter>>> result = new HashMap<>();
+		latestMaxAccumulatableTimeRangesMap.forEach((stageId, pairs) -> pairs.forEach(pair -> {
+			pair.getValue1().forEach(range -> {
+				if (range.isIn(now)) {
+					result.computeIfAbsent(stageId, k -> new HashMap<>())
+							.computeIfAbsent(pair.getValue0(), k -> new ArrayList<>())
+							.add(new RangeCounter(range.getStart(), range.getEnd()));
+				}
+			});
+		}));
+		return result;
+	}
+
+	private boolean isSameLayout(Map<String, Map<String, List<RangeCounter>>> counters1,
+			Map<String, Map<String, List<RangeCounter>>> counters2) {
+		if (!counters1.keySet().equals(counters2.keySet()))
+			return false;
+		for (String stageId : counters1.keySet()) {
+			Map<String, List<RangeCounter>> subMap1 = counters1.get(stageId);
+			Map<String, List<RangeCounter>> subMap2 = counters2.get(stageId);
+			if (!subMap1.keySet().equals(subMap2.keySet()))
+				return false;
+			for (String itemId : subMap1.keySet()) {
+				List<RangeCounter> rangeCounters1 = subMap1.get(itemId);
+				List<RangeCounter> rangeCounters2 = subMap2.get(itemId);
+				if (rangeCounters1.size() != rangeCounters2.size())
+					return false;
+				for (RangeCounter counter : rangeCounters1) {
+					if (rangeCounters2.stream().noneMatch(c -> c.isSameRange(counter.start, counter.end)))
+						return false;
+				}
+			}
+		}
+		return true;
+	}
+
+	private boolean isReconcileNeeded(CounterState state) {
+		Long reconcileInterval =
+				systemPropertyService.getPropertyLongValue(SystemPropertyKey.DROP_MATRIX_RECONCILE_INTERVAL);
+		if (reconcileInterval == null)
+			reconcileInterval = DEFAULT_RECONCILE_INTERVAL;
+		return state.highWaterMark == null || state.lastReconcileTime == null
+				|| System.currentTimeMillis() - state.lastReconcileTime > reconcileInterval;
+	}
+
+	private long getLag() {
+		return Optional
+				.ofNullable(systemPropertyService.getPropertyLongValue(SystemPropertyKey.INCREMENTAL_DROP_MATRIX_LAG))
+				.orElse(DEFAULT_LAG);
+	}
+
+	private long getPersistInterval() {
+		return Optional
+				.ofNullable(systemPropertyService.getPropertyLongValue(SystemPropertyKey.DROP_MATRIX_PERSIST_INTERVAL))
+				.orElse(DEFAULT_PERSIST_INTERVAL);
+	}
+
+	private RangeCounter findCounter(CounterState state, String stageId, String itemId, Long start, Long end) {
+		List<RangeCounter> rangeCounters =
+				state.counters.getOrDefault(stageId, new HashMap<>()).getOrDefault(itemId, new ArrayList<>());
+		for (RangeCounter counter : rangeCounters) {
+			if (counter.isSameRange(start, end))
+				return counter;
+		}
+		return null;
+	}
+
+	private void applyItemDrop(CounterState state, ItemDrop itemDrop, int sign) {
+		Map<String, List<RangeCounter>> subMap = state.counters.get(itemDrop.getStageId());
+		if (subMap == null)
+			return;
+		state.dirty = true;
+		long timestamp = itemDrop.getTimestamp();
+		int times = itemDrop.getTimes();
+		subMap.forEach((itemId, rangeCounters) -> {
+			for (RangeCounter counter : rangeCounters) {
+				if (counter.isIn(timestamp)) {
+					counter.times += sign * times;
+					counter.quantity += sign * itemDrop.getDropQuantity(itemId);
+				}
+			}
+		});
+	}
+
+	/**
+	 * Combine the counters into elements, and replace the stored elements with them if the counters have changed
+	 * since the last replacement, and the persist interval has passed.
+	 */
+	private List<DropMatrixElement> toStoredElements(Server server, CounterState state) {
+		List<DropMatrixElement> result = toCombinedElements(server, state);
+		Long currentTime = System.currentTimeMillis();
+		if (state.dirty
+				&& (state.lastPersistTime == null || currentTime - state.lastPersistTime >= getPersistInterval())) {
+			dropMatrixElementService.replaceGlobalElements(DropMatrixElementType.REGULAR, server, false, result);
+			state.dirty = false;
+			state.lastPersistTime = currentTime;
+		}
+		return result;
+	}
+
+	private List<DropMatrixElement> toCombinedElements(Server server, CounterState state) {
+		Long updateTime = System.currentTimeMillis();
+		List<DropMatrixElement> result = new ArrayList<>();
+		state.counters.forEach((stageId, subMap) -> subMap.forEach((itemId, rangeCounters) -> {
+			long quantity = 0L;
+			long times = 0L;
+			Long start = null;
+			Long end = rangeCounters.isEmpty() ? null : rangeCounters.get(0).end;
+			for (RangeCounter counter : rangeCounters) {
+				quantity += counter.quantity;
+				times += counter.times;
+				if (start == null || counter.start.compareTo(start) < 0)
+					start = counter.start;
+				if (end != null && (counter.end == null || counter.end.compareTo(end) > 0))
+					end = counter.end;
+			}
+			if (times > 0) {
+				result.add(new DropMatrixElement(DropMatrixElementType.REGULAR, stageId, itemId, (int)quantity,
+						(int)times, start, end, server, false, updateTime));
+			}
+		}));
+		return result;
+	}
+
+	private static class CounterState {
+
+		private Map<String, Map<String, List<RangeCounter>>> counters;
+
+		private Long highWaterMark;
+
+		private Long lastReconcileTime;
+
+		/** the start of the window read by the last update, null if there is no update since the state is built */
+		private Long lastWindowStart;
+
+		/** ids of the drops read by the last update */
+		private Set<ObjectId> lastWindowIds = new HashSet<>();
+
+		/** whether the counters have changed since the stored elements were replaced */
+		private boolean dirty;
+
+		/** when the stored elements were last replaced, null if not since the state is loaded */
+		private Long lastPersistTime;
+
+	}
+
+	private static class RangeCounter {
+
+		private final Long start;
+
+		private final Long end;
+
+		private long quantity;
+
+		private long times;
+
+		private RangeCounter(Long start, Long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		private boolean isIn(long time) {
+			return start.longValue() <= time && (end == null || end.longValue() > time);
+		}
+
+		private boolean isSameRange(Long start, Long end) {
+			return Objects.equals(this.start, start) && Objects.equals(this.end, end);
+		}
+
+	}
+
+}
@@ -0,0 +1,23 @@
+package io.penguinstats.service;
+
+import java.util.List;
+
+import org.springframework.cache.annotation.CachePut;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.PatternMatrixElement;
+
+public interface IncrementalPatternMatrixService {
+
+	@CachePut(value = "pattern-matrix-v2", key = "'pattern-matrix-v2_' + #server")
+	List<PatternMatrixElement> updateGlobalPatternMatrixElements(Server server);
+
+	@CachePut(value = "pattern-matrix-v2", key = "'pattern-matrix-v2_' + #server")
+	List<PatternMatrixElement> reconcileGlobalPatternMatrixElements(Server server);
+
+	void applySavedItemDrops(List<ItemDrop> itemDrops);
+
+	void applyDeletedItemDrops(List<ItemDrop> itemDrops);
+
+}
@@ -0,0 +1,468 @@
+package io.penguinstats.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.SystemPropertyKey;
+import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.dao.PatternCounterDao;
+import io.penguinstats.dao.PatternMatrixCheckpointDao;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.Drop;
+import io.penguinstats.model.DropPattern;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.PatternCounter;
+import io.penguinstats.model.PatternMatrixCheckpoint;
+import io.penguinstats.model.PatternMatrixElement;
+import io.penguinstats.model.Stage;
+import io.penguinstats.model.TimeRange;
+import io.penguinstats.util.DropPatternAggregator;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Maintain the global pattern matrix incrementally.<br>
+ * Each (server, stageId, pattern hash) in the latest time range of a stage has a {@link PatternCounter}. Each update
+ * only applies the reliable drops whose timestamp is in [highWaterMark, now - lag), one pattern increment per report.
+ * Drops saved late below the high water mark, and deleted or recalled drops, are added or subtracted as soon as they
+ * are saved or flipped, unless the last update has already counted or left them out. The changed counters are written
+ * with $inc at the next update, and the matrix is built from the counters in memory without any aggregation. The live
+ * matrix is served from the cache put by each update, while the stored elements are only replaced by a
+ * reconciliation, or by an update which changed the counters once the persist interval has passed since the last
+ * replacement.<br>
+ * Patterns with the same hash are told apart by comparing their drops, like {@link DropPatternAggregator} does. The
+ * first one keeps the counter id of the hash, and the others get a suffix.<br>
+ * A full aggregation is still done as reconciliation under a new generation of counters when there is no usable state,
+ * when the latest time ranges have changed, or when the last reconciliation is too old. It also corrects any drift,
+ * e.g. from a crash between writing the counters and the checkpoint.
+ */
+@Log4j2
+@Service("incrementalPatternMatrixService")
+public class IncrementalPatternMatrixServiceImpl implements IncrementalPatternMatrixService {
+
+	private static final long DEFAULT_LAG = 10000L;
+	private static final long DEFAULT_RECONCILE_INTERVAL = 21600000L;
+	private static final long DEFAULT_PERSIST_INTERVAL = 900000L;
+
+	@Autowired
+	private PatternMatrixElementService patternMatrixElementService;
+
+	@Autowired
+	private TimeRangeService timeRangeService;
+
+	@Autowired
+	private StageService stageService;
+
+	@Autowired
+	private SystemPropertyService systemPropertyService;
+
+	@Autowired
+	private ItemDropDao itemDropDao;
+
+	@Autowired
+	private PatternCounterDao patternCounterDao;
+
+	@Autowired
+	private PatternMatrixCheckpointDao patternMatrixCheckpointDao;
+
+	private final Map<Server, CounterState> states = new EnumMap<>(Server.class);
+
+	@Override
+	public List<PatternMatrixElement> updateGlobalPatternMatrixElements(Server server) {
+		Map<String, TimeRange> layout = getLatestTimeRanges(server);
+		CounterState state = getOrLoadState(server);
+		if (state == null || !isSameLayout(state.timeRanges, layout) || isReconcileNeeded(state))
+			return reconcileGlobalPatternMatrixElements(server);
+
+		synchronized (state) {
+			Long startTime = System.currentTimeMillis();
+			Long newHighWaterMark = startTime - getLag();
+			List<ItemDrop> itemDrops = new ArrayList<>();
+			if (newHighWaterMark.compareTo(state.highWaterMark) > 0) {
+				itemDrops = itemDropDao.findValidItemDropsByServerAndTimestampBetween(server, state.highWaterMark,
+						newHighWaterMark);
+				state.lastWindowIds = new HashSet<>();
+				itemDrops.forEach(itemDrop -> {
+					applyItemDrop(server, state, itemDrop, 1);
+					state.lastWindowIds.add(itemDrop.getId());
+				});
+				state.lastWindowStart = state.highWaterMark;
+				state.highWaterMark = newHighWaterMark;
+			}
+			patternCounterDao.incrementPatternCounters(state.deltas.values());
+			state.deltas.clear();
+			saveCheckpoint(server, state);
+			List<PatternMatrixElement> result = toElements(server, state);
+			if (state.dirty
+					&& (state.lastPersistTime == null || startTime - state.lastPersistTime >= getPersistInterval())) {
+				patternMatrixElementService.replaceGlobalElements(server, result);
+				state.dirty = false;
+				state.lastPersistTime = System.currentTimeMillis();
+			}
+
+			log.debug("updateGlobalPatternMatrixElements applied {} drops in {} ms for server {}", itemDrops.size(),
+					System.currentTimeMillis() - startTime, server);
+			return result;
+		}
+	}
+
+	@Override
+	public List<PatternMatrixElement> reconcileGlobalPatternMatrixElements(Server server) {
+		Long startTime = System.currentTimeMillis();
+		Long highWaterMark = startTime - getLag();
+		Long previousGeneration = null;
+		synchronized (states) {
+			CounterState previous = states.get(server);
+			if (previous != null)
+				previousGeneration = previous.generation;
+		}
+
+		CounterState state = new CounterState();
+		state.generation = previousGeneration == null ? startTime : Math.max(startTime, previousGeneration + 1);
+		state.highWaterMark = highWaterMark;
+		state.timeRanges = getLatestTimeRanges(server);
+		state.stages = buildEmptyCounters(state.timeRanges);
+
+		List<PatternMatrixElement> elements =
+				patternMatrixElementService.generateGlobalPatternMatrixElements(server, null, highWaterMark);
+		List<PatternCounter> counters = new ArrayList<>();
+		for (PatternMatrixElement el : elements) {
+			StageCounter stage = state.stages.get(el.getStageId());
+			if (stage == null || !stage.isSameRange(el.getStart(), el.getEnd()))
+				continue;
+			List<Drop> drops = DropPatternAggregator.canonicalize(el.getPattern().getDrops());
+			Long hash = DropPatternAggregator.canonicalHash(drops);
+			stage.times = el.getTimes();
+			PatternCount count = getOrAddPattern(server, state, el.getStageId(), stage, hash, drops);
+			count.quantity = el.getQuantity();
+			PatternCounter counter = newCounter(server, state, el.getStageId(), stage, hash, count);
+			counter.setQuantity(el.getQuantity());
+			counters.add(counter);
+		}
+
+		try {
+			patternCounterDao.saveAll(counters);
+		} catch (RuntimeException e) {
+			patternCounterDao.deleteByServerAndGeneration(server, state.generation);
+			throw e;
+		}
+		synchronized (states) {
+			states.put(server, state);
+		}
+		synchronized (state) {
+			saveCheckpoint(server, state);
+			try {
+				patternCounterDao.deleteByServerAndGenerationNot(server, state.generation);
+			} catch (Exception e) {
+				log.warn("Failed to delete old generations of pattern counters: ", e);
+			}
+			List<PatternMatrixElement> result = toElements(server, state);
+			patternMatrixElementService.replaceGlobalElements(server, result);
+			state.dirty = false;
+			state.lastPersistTime = System.currentTimeMillis();
+			log.info("reconcileGlobalPatternMatrixElements saved {} counters in {} ms for server {}", counters.size(),
+					System.currentTimeMillis() - startTime, server);
+			return result;
+		}
+	}
+
+	/**
+	 * @Title: applySavedItemDrops
+	 * @Description: Add drops which have just been saved below the high water mark, e.g. by a delayed flush or a
+	 *               journal replay. Drops above it will be counted by the next update.
+	 * @param itemDrops
+	 */
+	@Override
+	public void applySavedItemDrops(List<ItemDrop> itemDrops) {
+		applyLateItemDrops(itemDrops, 1);
+	}
+
+	/**
+	 * @Title: applyDeletedItemDrops
+	 * @Description: Subtract drops which have just been deleted or recalled. Drops that are not yet covered by the
+	 *               high water mark are skipped, since they will be filtered out by the next update.
+	 * @param itemDrops
+	 */
+	@Override
+	public void applyDeletedItemDrops(List<ItemDrop> itemDrops) {
+		applyLateItemDrops(itemDrops, -1);
+	}
+
+	private void applyLateItemDrops(List<ItemDrop> itemDrops, int sign) {
+		itemDrops.forEach(itemDrop -> {
+			if (!Boolean.TRUE.equals(itemDrop.getIsReliable()) || itemDrop.getServer() == null)
+				return;
+			CounterState state = null;
+			synchronized (states) {
+				state = states.get(itemDrop.getServer());
+			}
+			if (state == null)
+				return;
+			synchronized (state) {
+				if (itemDrop.getTimestamp().compareTo(state.highWaterMark) >= 0)
+					return;
+				// The last update may have read the drop before its event came: it was counted if it was saved, and
+				// left out if it was deleted
+				if (state.lastWindowStart != null && itemDrop.getTimestamp().compareTo(state.lastWindowStart) >= 0) {
+					boolean counted = state.lastWindowIds.contains(itemDrop.getId());
+					if (counted == sign > 0)
+						return;
+				}
+				applyItemDrop(itemDrop.getServer(), state, itemDrop, sign);
+			}
+		});
+	}
+
+	private CounterState getOrLoadState(Server server) {
+		synchronized (states) {
+			CounterState state = states.get(server);
+			if (state != null)
+				return state;
+			PatternMatrixCheckpoint checkpoint = patternMatrixCheckpointDao.findById(server.name()).orElse(null);
+			if (checkpoint == null || checkpoint.getTimeRanges() == null)
+				return null;
+
+			state = new CounterState();
+			state.generation = checkpoint.getGeneration();
+			state.highWaterMark = checkpoint.getHighWaterMark();
+			state.timeRanges = checkpoint.getTimeRanges();
+			state.stages = buildEmptyCounters(state.timeRanges);
+			// The stored elements may be older than the checkpoint
+			state.dirty = true;
+			for (PatternCounter counter : patternCounterDao.findByServerAndGeneration(server, state.generation)) {
+				StageCounter stage = state.stages.get(counter.getStageId());
+				if (stage == null || !stage.isSameRange(counter.getStart(), counter.getEnd()))
+					continue;
+				// Counters cancelled down to 0 are kept, so that their ids are not given to other patterns
+				if (counter.getQuantity() > 0)
+					stage.times += counter.getQuantity();
+				stage.patterns.computeIfAbsent(counter.getHash(), k -> new ArrayList<>(1))
+						.add(new PatternCount(counter.getId(), counter.getDrops(), counter.getQuantity()));
+			}
+			states.put(server, state);
+			log.info("loaded pattern matrix checkpoint for server {}, high water mark = {}", server,
+					state.highWaterMark);
+			return state;
+		}
+	}
+
+	private void saveCheckpoint(Server server, CounterState state) {
+		patternMatrixCheckpointDao.save(new PatternMatrixCheckpoint(server.name(), server, state.generation,
+				state.highWaterMark, state.timeRanges, System.currentTimeMillis()));
+	}
+
+	/**
+	 * @Title: getLatestTimeRanges
+	 * @Description: The latest time range of every non-gacha stage, which is where the pattern matrix is counted.
+	 * @param server
+	 * @return Map<String,TimeRange> stageId -> time range
+	 */
+	private Map<String, TimeRange> getLatestTimeRanges(Server server) {
+		Map<String, Stage> stageMap = stageService.getStageMap();
+		Map<String, TimeRange> result = new HashMap<>();
+		timeRangeService.getLatestTimeRangesMapByServer(server).forEach((stageId, range) -> {
+			if (stageMap.containsKey(stageId) && !Boolean.TRUE.equals(stageMap.get(stageId).getIsGacha()))
+				result.put(stageId, range);
+		});
+		return result;
+	}
+
+	private Map<String, StageCounter> buildEmptyCounters(Map<String, TimeRange> timeRanges) {
+		Map<String, StageCounter> result = new HashMap<>();
+		timeRanges.forEach((stageId, range) -> result.put(stageId, new StageCounter(range.getStart(), range.getEnd())));
+		return result;
+	}
+
+	private boolean isSameLayout(Map<String, TimeRange> timeRanges1, Map<String, TimeRange> timeRanges2) {
+		if (!timeRanges1.keySet().equals(timeRanges2.keySet()))
+			return false;
+		for (Map.Entry<String, TimeRange> entry : timeRanges1.entrySet()) {
+			TimeRange range = timeRanges2.get(entry.getKey());
+			if (!Objects.equals(entry.getValue().getStart(), range.getStart())
+					|| !Objects.equals(entry.getValue().getEnd(), range.getEnd()))
+				return false;
+		}
+		return true;
+	}
+
+	private boolean isReconcileNeeded(CounterState state) {
+		Long reconcileInterval = Optional
+				.ofNullable(
+						systemPropertyService.getPropertyLongValue(SystemPropertyKey.PATTERN_MATRIX_RECONCILE_INTERVAL))
+				.orElse(DEFAULT_RECONCILE_INTERVAL);
+		return state.highWaterMark == null || state.generation == null
+				|| System.currentTimeMillis() - state.generation > reconcileInterval;
+	}
+
+	private long getLag() {
+		return Optional
+				.ofNullable(
+						systemPropertyService.getPropertyLongValue(SystemPropertyKey.INCREMENTAL_PATTERN_MATRIX_LAG))
+				.orElse(DEFAULT_LAG);
+	}
+
+	private long getPersistInterval() {
+		return Optional
+				.ofNullable(
+						systemPropertyService.getPropertyLongValue(SystemPropertyKey.PATTERN_MATRIX_PERSIST_INTERVAL))
+				.orElse(DEFAULT_PERSIST_INTERVAL);
+	}
+
+	/**
+	 * Count the pattern of one report into the counters in memory, and into the deltas to be written.
+	 */
+	private void applyItemDrop(Server server, CounterState state, ItemDrop itemDrop, int sign) {
+		StageCounter stage = state.stages.get(itemDrop.getStageId());
+		if (stage == null || !stage.isIn(itemDrop.getTimestamp()))
+			return;
+		List<Drop> drops = DropPatternAggregator.canonicalize(itemDrop.getDrops());
+		Long hash = DropPatternAggregator.canonicalHash(drops);
+		PatternCount count = sign > 0 ? getOrAddPattern(server, state, itemDrop.getStageId(), stage, hash, drops)
+				: findPattern(stage, hash, drops);
+		if (count == null)
+			return;
+		int times = sign * itemDrop.getTimes();
+		count.quantity += times;
+		stage.times += times;
+		state.dirty = true;
+
+		PatternCounter delta = state.deltas.computeIfAbsent(count.id,
+				k -> newCounter(server, state, itemDrop.getStageId(), stage, hash, count));
+		delta.setQuantity(delta.getQuantity() + times);
+	}
+
+	private PatternCount findPattern(StageCounter stage, Long hash, List<Drop> drops) {
+		List<PatternCount> bucket = stage.patterns.get(hash);
+		if (bucket == null)
+			return null;
+		for (PatternCount count : bucket) {
+			if (count.drops.equals(drops))
+				return count;
+		}
+		return null;
+	}
+
+	private PatternCount getOrAddPattern(Server server, CounterState state, String stageId, StageCounter stage,
+			Long hash, List<Drop> drops) {
+		PatternCount count = findPattern(stage, hash, drops);
+		if (count != null)
+			return count;
+		List<PatternCount> bucket = stage.patterns.computeIfAbsent(hash, k -> new ArrayList<>(1));
+		String id =
+				new PatternCounter(state.generation, server, stageId, stage.start, stage.end, hash, drops).getId();
+		if (!bucket.isEmpty()) {
+			log.info("pattern hash collision in stage {}: {} and {}", stageId, bucket.get(0).drops, drops);
+			id += "_" + bucket.size();
+		}
+		count = new PatternCount(id, drops, 0L);
+		bucket.add(count);
+		return count;
+	}
+
+	private PatternCounter newCounter(Server server, CounterState state, String stageId, StageCounter stage,
+			Long hash, PatternCount count) {
+		PatternCounter counter =
+				new PatternCounter(state.generation, server, stageId, stage.start, stage.end, hash, count.drops);
+		counter.setId(count.id);
+		return counter;
+	}
+
+	private List<PatternMatrixElement> toElements(Server server, CounterState state) {
+		Long updateTime = System.currentTimeMillis();
+		List<PatternMatrixElement> result = new ArrayList<>();
+		state.stages.forEach((stageId, stage) -> {
+			if (stage.times <= 0)
+				return;
+			for (List<PatternCount> bucket : stage.patterns.values()) {
+				for (PatternCount count : bucket) {
+					if (count.quantity <= 0)
+						continue;
+					result.add(new PatternMatrixElement(null, stageId, new DropPattern(new ArrayList<>(count.drops)),
+							(int)count.quantity, (int)stage.times, stage.start, stage.end, server, updateTime, null));
+				}
+			}
+		});
+		return result;
+	}
+
+	private static class CounterState {
+
+		private Long generation;
+
+		private Long highWaterMark;
+
+		private Map<String, TimeRange> timeRanges;
+
+		private Map<String, StageCounter> stages;
+
+		/** the high water mark before the last update */
+		private Long lastWindowStart;
+
+		/** ids of the drops read by the last update */
+		private Set<ObjectId> lastWindowIds = new HashSet<>();
+
+		/** counter id -> delta not yet written */
+		private final Map<String, PatternCounter> deltas = new HashMap<>();
+
+		/** whether the counters have changed since the elements were stored */
+		private boolean dirty;
+
+		/** when the elements were last stored, null if not since the state is loaded */
+		private Long lastPersistTime;
+
+	}
+
+	private static class StageCounter {
+
+		private final Long start;
+
+		private final Long end;
+
+		private long times;
+
+		/** canonical hash -> counts of the patterns with the hash, usually only one */
+		private final Map<Long, List<PatternCount>> patterns = new HashMap<>();
+
+		private StageCounter(Long start, Long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		private boolean isIn(Long time) {
+			return time != null && start.compareTo(time) <= 0 && (end == null || end.compareTo(time) > 0);
+		}
+
+		private boolean isSameRange(Long start, Long end) {
+			return Objects.equals(this.start, start) && Objects.equals(this.end, end);
+		}
+
+	}
+
+	private static class PatternCount {
+
+		/** id of the counter in the database */
+		private final String id;
+
+		private final List<Drop> drops;
+
+		private long quantity;
+
+		private PatternCount(String id, List<Drop> drops, long quantity) {
+			this.id = id;
+			this.drops = drops;
+			this.quantity = quantity;
+		}
+
+	}
+
+}
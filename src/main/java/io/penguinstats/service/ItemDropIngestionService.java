@@ -0,0 +1,13 @@
+package io.penguinstats.service;
+
+import io.penguinstats.model.ItemDrop;
+
+public interface ItemDropIngestionService {
+
+	void submit(ItemDrop itemDrop);
+
+	void flush();
+
+	void recall(String userID, String reportHash) throws Exception;
+
+}
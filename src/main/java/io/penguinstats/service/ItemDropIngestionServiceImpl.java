@@ -0,0 +1,421 @@
+package io.penguinstats.service;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataAccessResourceFailureException;
+import org.springframework.dao.TransientDataAccessException;
+import org.springframework.data.mongodb.core.convert.MongoConverter;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.ErrorCode;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.util.HashUtil;
+import io.penguinstats.util.ReportJournal;
+import io.penguinstats.util.exception.BatchInsertException;
+import io.penguinstats.util.exception.DatabaseException;
+import io.penguinstats.util.exception.NotFoundException;
+import io.penguinstats.util.exception.ServiceUnavailableException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Write-behind ingestion of reports.<br>
+ * Accepted drops are appended into a local {@link ReportJournal} and into a bounded in-memory queue, then committed
+ * into the database by a background flusher with unordered bulk inserts, every <b>flushInterval</b> ms or as soon as
+ * <b>batchSize</b> drops are waiting. Ids are generated before a drop is accepted, so replaying the journal after a
+ * crash or retrying a failed batch never inserts one drop twice.<br>
+ * When the database is unavailable, the drops are kept and retried in the next flush. Any other failure is isolated
+ * by splitting the batch, and a drop which fails <b>maxAttempts</b> times is moved into a dead letter journal, so that
+ * one bad drop never blocks the others.<br>
+ * A report which is not committed yet is recalled in the buffer: it is removed from the queue, or deleted right after
+ * its commit if it is being committed, and the recall is journaled so that a replay does not bring it back.
+ */
+@Log4j2
+@Service("itemDropIngestionService")
+public class ItemDropIngestionServiceImpl implements ItemDropIngestionService {
+
+	/** The key of a journal line recording a recall, whose value is the id of the recalled drop */
+	private static final String RECALLED_ID_KEY = "recalledId";
+
+	@Value("${penguinstats.report.queue-capacity:20000}")
+	private int queueCapacity;
+
+	@Value("${penguinstats.report.batch-size:500}")
+	private int batchSize;
+
+	@Value("${penguinstats.report.flush-interval:1000}")
+	private long flushInterval;
+
+	@Value("${penguinstats.report.retry-after:5}")
+	private int retryAfter;
+
+	@Value("${penguinstats.report.journal-dir:report-journal}")
+	private String journalDir;
+
+	@Value("${penguinstats.report.max-attempts:5}")
+	private int maxAttempts;
+
+	@Value("${penguinstats.report.dead-letter-dir:report-dead-letter}")
+	private String deadLetterDir;
+
+	@Autowired
+	private ItemDropService itemDropService;
+
+	@Autowired
+	private MongoConverter mongoConverter;
+
+	private ReportJournal journal;
+
+	private ReportJournal deadLetterJournal;
+
+	private final Object queueLock = new Object();
+
+	private final Object flushLock = new Object();
+
+	/** guarded by queueLock, the drops waiting to be committed, including the ones whose commit failed */
+	private List<ItemDrop> queue = new ArrayList<>();
+
+	/** guarded by queueLock, the drops being committed by the running flush */
+	private List<ItemDrop> inFlight = Collections.emptyList();
+
+	/** guarded by queueLock, drops recalled after they were taken by a flush, id -> userID */
+	private final Map<ObjectId, String> recalledIds = new HashMap<>();
+
+	/** guarded by queueLock, number of accepted drops which are not committed yet */
+	private int backlog = 0;
+
+	/** guarded by flushLock, the journal segments which still have uncommitted drops */
+	private final List<Path> pendingSegments = new ArrayList<>();
+
+	/** guarded by flushLock, how many times each drop has failed */
+	private final Map<ObjectId, Integer> failedAttempts = new HashMap<>();
+
+	private volatile boolean running = false;
+
+	private Thread flusherThread;
+
+	@PostConstruct
+	public void init() throws IOException {
+		journal = new ReportJournal(Paths.get(journalDir));
+		deadLetterJournal = new ReportJournal(Paths.get(deadLetterDir));
+		replayJournal();
+		running = true;
+		flusherThread = new Thread(this::runFlusher, "report-flusher");
+		flusherThread.setDaemon(true);
+		flusherThread.start();
+	}
+
+	@PreDestroy
+	public void destroy() throws InterruptedException {
+		running = false;
+		synchronized (queueLock) {
+			queueLock.notifyAll();
+		}
+		flusherThread.join(flushInterval * 10);
+		flush();
+		deadLetterJournal.rotate();
+	}
+
+	/**
+	 * @Title: submit
+	 * @Description: Accept a drop. When this method returns, the drop has been journaled and will be committed later.
+	 * @param itemDrop
+	 * @throws ServiceUnavailableException if too many drops are waiting to be committed
+	 */
+	@Override
+	public void submit(ItemDrop itemDrop) {
+		if (itemDrop.getId() == null)
+			itemDrop.setId(new ObjectId());
+		String line = toJournalLine(itemDrop);
+		synchronized (queueLock) {
+			if (backlog >= queueCapacity) {
+				throw new ServiceUnavailableException(ErrorCode.REPORT_QUEUE_FULL,
+						"Too many reports are being processed. Please retry later.", Optional.empty(), retryAfter);
+			}
+			try {
+				journal.append(line);
+			} catch (IOException e) {
+				log.error("Error in appending report journal: ", e);
+				throw new ServiceUnavailableException(ErrorCode.REPORT_QUEUE_FULL, "Failed to accept the report.",
+						Optional.empty(), retryAfter);
+			}
+			queue.add(itemDrop);
+			backlog++;
+			if (queue.size() >= batchSize)
+				queueLock.notifyAll();
+		}
+	}
+
+	/**
+	 * @Title: flush
+	 * @Description: Commit all accepted drops into the database now. Failed drops are put back into the queue and
+	 *               retried in the next flush, unless they have failed too many times.
+	 */
+	@Override
+	public void flush() {
+		synchronized (flushLock) {
+			List<ItemDrop> itemDrops;
+			synchronized (queueLock) {
+				itemDrops = queue;
+				queue = new ArrayList<>();
+				inFlight = itemDrops;
+				pendingSegments.addAll(journal.rotate());
+			}
+			if (itemDrops.isEmpty()) {
+				if (deleteRecalledItemDrops()) {
+					journal.delete(pendingSegments);
+					pendingSegments.clear();
+				}
+				return;
+			}
+
+			Long startTime = System.currentTimeMillis();
+			List<ItemDrop> failedItemDrops = new ArrayList<>();
+			boolean available = true;
+			for (int i = 0, size = itemDrops.size(); i < size; i += batchSize) {
+				List<ItemDrop> batch = itemDrops.subList(i, Math.min(i + batchSize, size));
+				if (available)
+					available = commit(batch, failedItemDrops);
+				else
+					failedItemDrops.addAll(batch);
+			}
+
+			int resolved;
+			synchronized (queueLock) {
+				// A drop recalled while it was being committed is not retried
+				failedItemDrops.removeIf(itemDrop -> recalledIds.remove(itemDrop.getId()) != null);
+				resolved = itemDrops.size() - failedItemDrops.size();
+				queue.addAll(0, failedItemDrops);
+				inFlight = Collections.emptyList();
+				backlog -= resolved;
+			}
+			if (deleteRecalledItemDrops() && failedItemDrops.isEmpty()) {
+				journal.delete(pendingSegments);
+				pendingSegments.clear();
+			} else
+				log.warn("{} reports are not flushed, will retry later", failedItemDrops.size());
+			log.debug("flushed {} reports in {} ms", resolved, System.currentTimeMillis() - startTime);
+		}
+	}
+
+	/**
+	 * @Title: commit
+	 * @Description: Commit a batch of drops. If the batch fails for other reasons than an unavailable database, it is
+	 *               split until the failing drops are found.
+	 * @param batch
+	 * @param failedItemDrops The drops to retry later are added into it
+	 * @return boolean False if the database is unavailable, in which case the rest of the flush is skipped
+	 */
+	private boolean commit(List<ItemDrop> batch, List<ItemDrop> failedItemDrops) {
+		List<ItemDrop> rejectedItemDrops;
+		try {
+			itemDropService.batchSaveItemDrops(batch);
+			batch.forEach(itemDrop -> failedAttempts.remove(itemDrop.getId()));
+			return true;
+		} catch (DataAccessResourceFailureException | TransientDataAccessException e) {
+			log.error("Error in flushing " + batch.size() + " reports, will retry later: ", e);
+			failedItemDrops.addAll(batch);
+			return false;
+		} catch (BatchInsertException e) {
+			e.getInsertedItemDrops().forEach(itemDrop -> failedAttempts.remove(itemDrop.getId()));
+			rejectedItemDrops = e.getFailedItemDrops();
+			log.error("Error in flushing " + rejectedItemDrops.size() + " reports: ", e);
+		} catch (Exception e) {
+			if (batch.size() > 1) {
+				int half = batch.size() / 2;
+				if (commit(batch.subList(0, half), failedItemDrops))
+					return commit(batch.subList(half, batch.size()), failedItemDrops);
+				failedItemDrops.addAll(batch.subList(half, batch.size()));
+				return false;
+			}
+			rejectedItemDrops = batch;
+			log.error("Error in flushing report " + batch.get(0).getId() + ": ", e);
+		}
+
+		for (ItemDrop itemDrop : rejectedItemDrops) {
+			int attempts = failedAttempts.merge(itemDrop.getId(), 1, Integer::sum);
+			if (attempts >= maxAttempts && moveToDeadLetter(itemDrop))
+				failedAttempts.remove(itemDrop.getId());
+			else
+				failedItemDrops.add(itemDrop);
+		}
+		return true;
+	}
+
+	private boolean moveToDeadLetter(ItemDrop itemDrop) {
+		String line;
+		try {
+			line = toJournalLine(itemDrop);
+		} catch (Exception e) {
+			line = new Document("raw", String.valueOf(itemDrop)).toJson();
+		}
+		try {
+			deadLetterJournal.append(line);
+		} catch (IOException e) {
+			log.error("Error in appending dead letter journal: ", e);
+			return false;
+		}
+		log.error("Report {} is moved into the dead letter journal after {} failed attempts", itemDrop.getId(),
+				maxAttempts);
+		return true;
+	}
+
+	/**
+	 * @Title: recall
+	 * @Description: Recall the last report of the user. If it is not committed yet, it is recalled in the buffer,
+	 *               otherwise in the database.
+	 * @param userID
+	 * @param reportHash
+	 * @throws DatabaseException if the hash does not match the last report
+	 * @throws NotFoundException if the user has no visible report
+	 */
+	@Override
+	public void recall(String userID, String reportHash) throws Exception {
+		synchronized (queueLock) {
+			// Drops in the queue are newer than the ones being committed, which are newer than the committed ones
+			ItemDrop itemDrop = findLastItemDrop(queue, userID);
+			boolean inQueue = itemDrop != null;
+			if (!inQueue)
+				itemDrop = findLastItemDrop(inFlight, userID);
+			if (itemDrop != null) {
+				if (!HashUtil.getHash(itemDrop.getId().toString()).equals(reportHash)) {
+					throw new DatabaseException(ErrorCode.ITEM_DROP_HASH_ID_NOT_MATCH, "ItemDropHashId doesn't match!",
+							Optional.ofNullable(reportHash));
+				}
+				try {
+					journal.append(new Document(RECALLED_ID_KEY, itemDrop.getId().toHexString())
+							.append("userID", userID).toJson());
+				} catch (IOException e) {
+					log.error("Error in appending report journal: ", e);
+					throw new ServiceUnavailableException(ErrorCode.REPORT_QUEUE_FULL, "Failed to recall the report.",
+							Optional.empty(), retryAfter);
+				}
+				if (inQueue) {
+					queue.remove(itemDrop);
+					backlog--;
+				} else
+					recalledIds.put(itemDrop.getId(), userID);
+				return;
+			}
+		}
+		itemDropService.recallItemDrop(userID, reportHash);
+	}
+
+	private ItemDrop findLastItemDrop(List<ItemDrop> itemDrops, String userID) {
+		ItemDrop result = null;
+		for (ItemDrop itemDrop : itemDrops) {
+			if (!userID.equals(itemDrop.getUserID()) || recalledIds.containsKey(itemDrop.getId()))
+				continue;
+			if (result == null || Optional.ofNullable(itemDrop.getTimestamp()).orElse(0L) >= Optional
+					.ofNullable(result.getTimestamp()).orElse(0L))
+				result = itemDrop;
+		}
+		return result;
+	}
+
+	/**
+	 * @Title: deleteRecalledItemDrops
+	 * @Description: Delete the recalled drops which have been committed, or which may have been committed before the
+	 *               last run ended.
+	 * @return boolean False if some of them are to be deleted again later
+	 */
+	private boolean deleteRecalledItemDrops() {
+		Map<ObjectId, String> recalls;
+		synchronized (queueLock) {
+			if (recalledIds.isEmpty())
+				return true;
+			recalls = new HashMap<>(recalledIds);
+		}
+		boolean done = true;
+		for (Map.Entry<ObjectId, String> entry : recalls.entrySet()) {
+			try {
+				itemDropService.deleteItemDrop(entry.getValue(), entry.getKey().toHexString());
+			} catch (NotFoundException e) {
+				// never committed
+			} catch (Exception e) {
+				log.error("Error in deleting recalled report " + entry.getKey() + ": ", e);
+				done = false;
+				continue;
+			}
+			synchronized (queueLock) {
+				recalledIds.remove(entry.getKey());
+			}
+		}
+		return done;
+	}
+
+	private void runFlusher() {
+		while (running) {
+			try {
+				synchronized (queueLock) {
+					if (running && queue.size() < batchSize)
+						queueLock.wait(flushInterval);
+				}
+				flush();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				return;
+			} catch (Exception e) {
+				log.error("Error in report flusher: ", e);
+			}
+		}
+	}
+
+	/**
+	 * @Title: replayJournal
+	 * @Description: Load the drops left in the journal by the last run. They will be committed by the first flush.
+	 * @throws IOException
+	 */
+	private void replayJournal() throws IOException {
+		List<Path> segments = journal.listSegments();
+		if (segments.isEmpty())
+			return;
+		List<ItemDrop> itemDrops = new ArrayList<>();
+		Map<ObjectId, String> recalls = new HashMap<>();
+		for (Path segment : segments) {
+			for (String line : journal.readSegment(segment)) {
+				try {
+					Document document = Document.parse(line);
+					if (document.containsKey(RECALLED_ID_KEY))
+						recalls.put(new ObjectId(document.getString(RECALLED_ID_KEY)), document.getString("userID"));
+					else
+						itemDrops.add(mongoConverter.read(ItemDrop.class, document));
+				} catch (Exception e) {
+					log.error("Error in parsing report journal line in " + segment + ": " + line, e);
+				}
+			}
+		}
+		// A recalled drop is not committed again, and is deleted in case it was committed before the crash
+		itemDrops.removeIf(itemDrop -> recalls.containsKey(itemDrop.getId()));
+		synchronized (flushLock) {
+			pendingSegments.addAll(segments);
+		}
+		synchronized (queueLock) {
+			queue.addAll(0, itemDrops);
+			recalledIds.putAll(recalls);
+			backlog += itemDrops.size();
+		}
+		log.info("{} reports are loaded from {} report journal segments", itemDrops.size(), segments.size());
+	}
+
+	private String toJournalLine(ItemDrop itemDrop) {
+		Document document = new Document();
+		mongoConverter.write(itemDrop, document);
+		return document.toJson();
+	}
+
+}
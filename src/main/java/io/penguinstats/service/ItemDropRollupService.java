@@ -0,0 +1,22 @@
+package io.penguinstats.service;
+
+import java.util.List;
+
+import org.bson.Document;
+
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.QueryConditions;
+
+public interface ItemDropRollupService {
+
+	void updateRollup();
+
+	void applySavedItemDrops(List<ItemDrop> itemDrops);
+
+	void applyDeletedItemDrops(List<ItemDrop> itemDrops);
+
+	boolean isApplicable(QueryConditions conditions);
+
+	List<Document> aggregateItemDrops(QueryConditions conditions);
+
+}
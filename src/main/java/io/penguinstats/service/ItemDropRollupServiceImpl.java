@@ -0,0 +1,411 @@
+package io.penguinstats.service;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.SystemPropertyKey;
+import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.dao.ItemDropRollupCheckpointDao;
+import io.penguinstats.dao.ItemDropRollupDao;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.Drop;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.ItemDropRollup;
+import io.penguinstats.model.ItemDropRollupCheckpoint;
+import io.penguinstats.model.QueryConditions;
+import io.penguinstats.model.QueryConditions.StageWithTimeRange;
+import io.penguinstats.util.ItemDropAggregator;
+import io.penguinstats.util.MetricsUtil;
+import io.penguinstats.util.snapshot.DeletionTracker;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Maintain the hourly {@link ItemDropRollup}s of all reliable and non-deleted item drops, and answer segmented item
+ * drop aggregations from them.<br>
+ * Each update adds the drops whose timestamp is in [highWaterMark, now - lag) into their hour buckets, after adding the
+ * drops saved late below the high water mark and cancelling the drops deleted since the last update. A late drop in
+ * the window of the last update is only added if that update has not read it. The rollups are rebuilt under a new
+ * generation when they are missing or older than the rebuild interval, which also corrects any drift caused by drops
+ * deleted while they were being added. A rebuild streams the drops in the order of timestamp, and uses a
+ * {@link DeletionTracker} to only cancel the drops deleted after the stream counted them, and to add the drops saved
+ * behind the stream.<br>
+ * A segmented query whose start and interval are on hour boundaries sums the buckets of the hours which are complete
+ * before the high water mark, and only streams the remaining drops from Mongo. Queries on given users always go to
+ * Mongo.
+ */
+@Log4j2
+@Service("itemDropRollupService")
+public class ItemDropRollupServiceImpl implements ItemDropRollupService {
+
+	private static final String CHECKPOINT_ID = "item_drop_rollup";
+	private static final long HOUR = 3600000L;
+	private static final long REBUILD_WINDOW = 7L * 24L * HOUR;
+	private static final long DEFAULT_LAG = 10000L;
+	private static final long DEFAULT_REBUILD_INTERVAL = 7L * 86400000L;
+
+	@Autowired
+	private ItemDropRollupDao itemDropRollupDao;
+
+	@Autowired
+	private ItemDropRollupCheckpointDao itemDropRollupCheckpointDao;
+
+	@Autowired
+	private ItemDropDao itemDropDao;
+
+	@Autowired
+	private SystemPropertyService systemPropertyService;
+
+	private volatile ItemDropRollupCheckpoint checkpoint;
+
+	private final Queue<ItemDrop> savedItemDrops = new ConcurrentLinkedQueue<>();
+
+	private final Queue<ItemDrop> deletedItemDrops = new ConcurrentLinkedQueue<>();
+
+	/** the high water mark before the last update, guarded by updateLock */
+	private Long lastWindowStart;
+
+	/** ids of the drops read by the last update, guarded by updateLock */
+	private Set<ObjectId> lastWindowIds = new HashSet<>();
+
+	private final Object updateLock = new Object();
+
+	/** guards savedItemDrops, deletedItemDrops, rebuildTracker, and the swap of checkpoint by a rebuild */
+	private final Object deleteLock = new Object();
+
+	private volatile DeletionTracker rebuildTracker;
+
+	/**
+	 * @Title: updateRollup
+	 * @Description: Add new drops into the rollups, or rebuild them if needed.
+	 */
+	@Override
+	public void updateRollup() {
+		synchronized (updateLock) {
+			if (checkpoint == null)
+				checkpoint = itemDropRollupCheckpointDao.findById(CHECKPOINT_ID).orElse(null);
+			if (checkpoint == null || System.currentTimeMillis() - checkpoint.getGeneration() >= getRebuildInterval())
+				rebuildRollup();
+			else
+				appendNewItemDrops(checkpoint);
+		}
+	}
+
+	@Override
+	public void applySavedItemDrops(List<ItemDrop> itemDrops) {
+		synchronized (deleteLock) {
+			DeletionTracker tracker = rebuildTracker;
+			if (checkpoint == null && tracker == null)
+				return;
+			itemDrops.stream().filter(itemDrop -> Boolean.TRUE.equals(itemDrop.getIsReliable()))
+					.forEach(tracker != null ? tracker::save : savedItemDrops::add);
+		}
+	}
+
+	@Override
+	public void applyDeletedItemDrops(List<ItemDrop> itemDrops) {
+		synchronized (deleteLock) {
+			DeletionTracker tracker = rebuildTracker;
+			if (checkpoint == null && tracker == null)
+				return;
+			itemDrops.stream().filter(itemDrop -> Boolean.TRUE.equals(itemDrop.getIsReliable()))
+					.forEach(tracker != null ? tracker::delete : deletedItemDrops::add);
+		}
+	}
+
+	/**
+	 * @Title: isApplicable
+	 * @Description: Check if the aggregation can be answered from the rollups, i.e. it is segmented, not on given
+	 *               users, and all its sections start on hour boundaries.
+	 * @param conditions
+	 * @return boolean
+	 */
+	@Override
+	public boolean isApplicable(QueryConditions conditions) {
+		Long interval = conditions.getInterval();
+		if (checkpoint == null || interval == null || interval % HOUR != 0 || !conditions.getUserIDs().isEmpty()
+				|| conditions.getStages().isEmpty())
+			return false;
+		Long baseTime = conditions.getSectionBaseTime();
+		return baseTime != null && baseTime % HOUR == 0;
+	}
+
+	/**
+	 * @Title: aggregateItemDrops
+	 * @Description: The same as ItemDropDao.aggregateItemDrops, but the complete hours before the high water mark are
+	 *               read from the rollups. The conditions must be applicable.
+	 * @param conditions
+	 * @return List<Document>
+	 */
+	@Override
+	public List<Document> aggregateItemDrops(QueryConditions conditions) {
+		ItemDropRollupCheckpoint current = checkpoint;
+		Long startTime = System.currentTimeMillis();
+		ItemDropAggregator aggregator = new ItemDropAggregator(conditions.getItemIds(),
+				conditions.getSectionBaseTime(), conditions.getInterval());
+		QueryConditions tailConditions = new QueryConditions();
+		conditions.getServers().forEach(tailConditions::addServer);
+		long rollupEnd = floorHour(current.getHighWaterMark());
+		AtomicLong scanned = new AtomicLong();
+
+		for (StageWithTimeRange stage : conditions.getStages()) {
+			long start = Optional.ofNullable(stage.getStart()).orElse(0L);
+			long end = Optional.ofNullable(stage.getEnd()).orElse(startTime);
+			long stageRollupEnd = Math.max(start, Math.min(floorHour(end), rollupEnd));
+			if (start < stageRollupEnd) {
+				itemDropRollupDao.streamItemDropRollups(current.getGeneration(), conditions.getServers(),
+						stage.getStageId(), start, stageRollupEnd, rollup -> {
+							scanned.incrementAndGet();
+							accept(aggregator, rollup);
+						});
+			}
+			if (stageRollupEnd < end)
+				tailConditions.addStage(stage.getStageId(), stageRollupEnd, end);
+		}
+		if (!tailConditions.getStages().isEmpty()) {
+			itemDropDao.streamItemDrops(tailConditions, doc -> {
+				scanned.incrementAndGet();
+				aggregator.accept(doc);
+			});
+		}
+
+		log.debug(conditions.toString() + ", engine = rollup, time = " + (System.currentTimeMillis() - startTime)
+				+ "ms");
+		List<Document> results = aggregator.getResults();
+		MetricsUtil.recordAggregation("itemDrops", "rollup", startTime, scanned.get(), results.size());
+		return results;
+	}
+
+	private void appendNewItemDrops(ItemDropRollupCheckpoint current) {
+		Long startTime = System.currentTimeMillis();
+		long highWaterMark = current.getHighWaterMark();
+		long newHighWaterMark = Math.max(startTime - getLag(), highWaterMark);
+
+		RollupDeltas deltas = new RollupDeltas(current.getGeneration());
+		int savedNum = addSavedItemDrops(deltas, highWaterMark);
+		int deletedNum = addDeletedItemDrops(deltas, highWaterMark);
+		Set<ObjectId> windowIds = new HashSet<>();
+		if (newHighWaterMark > highWaterMark) {
+			itemDropDao.streamItemDropsByTimestamp(
+					new QueryConditions().addStage(null, highWaterMark, newHighWaterMark), doc -> {
+						windowIds.add(doc.getObjectId("_id"));
+						deltas.add(doc);
+					});
+		}
+		itemDropRollupDao.incrementItemDropRollups(deltas.values());
+		checkpoint = itemDropRollupCheckpointDao.save(new ItemDropRollupCheckpoint(CHECKPOINT_ID,
+				current.getGeneration(), current.getPreviousGeneration(), newHighWaterMark, startTime));
+		lastWindowStart = highWaterMark;
+		lastWindowIds = windowIds;
+		log.debug("item drop rollups updated {} buckets, added {} late drops and cancelled {} drops in {} ms",
+				deltas.values().size(), savedNum, deletedNum, System.currentTimeMillis() - startTime);
+	}
+
+	private void rebuildRollup() {
+		Long startTime = System.currentTimeMillis();
+		long highWaterMark = startTime - getLag();
+		DeletionTracker tracker = new DeletionTracker();
+		// All drops deleted so far are already excluded by the query, but are kept for the current generation in case
+		// the rebuild fails
+		List<ItemDrop> staleItemDrops = new ArrayList<>(deletedItemDrops.size());
+		List<ItemDrop> staleSavedItemDrops = new ArrayList<>(savedItemDrops.size());
+		synchronized (deleteLock) {
+			ItemDrop itemDrop;
+			while ((itemDrop = deletedItemDrops.poll()) != null)
+				staleItemDrops.add(itemDrop);
+			while ((itemDrop = savedItemDrops.poll()) != null)
+				staleSavedItemDrops.add(itemDrop);
+			rebuildTracker = tracker;
+		}
+
+		Long previousGeneration = checkpoint == null ? null : checkpoint.getGeneration();
+		Long generation = previousGeneration == null ? startTime : Math.max(startTime, previousGeneration + 1);
+		ItemDrop firstItemDrop = itemDropDao.findFirstByOrderByTimestampAsc();
+		long firstHour = firstItemDrop == null ? highWaterMark : floorHour(firstItemDrop.getTimestamp());
+		try {
+			// Drops are counted a window at a time, so that the deltas in memory stay small. The windows go forward in
+			// time, so the tracker sees the whole stream in the order of timestamp.
+			for (long windowStart = firstHour; windowStart < highWaterMark; windowStart += REBUILD_WINDOW) {
+				RollupDeltas deltas = new RollupDeltas(generation);
+				itemDropDao.streamItemDropsByTimestamp(new QueryConditions().addStage(null, windowStart,
+						Math.min(windowStart + REBUILD_WINDOW, highWaterMark)), doc -> {
+							if (tracker.accept(doc.getObjectId("_id"), ((Number)doc.get("timestamp")).longValue()))
+								deltas.add(doc);
+						});
+				itemDropRollupDao.incrementItemDropRollups(deltas.values());
+			}
+			synchronized (deleteLock) {
+				RollupDeltas deltas = new RollupDeltas(generation);
+				tracker.getMissedItemDrops(highWaterMark).forEach(deltas::add);
+				tracker.getCountedItemDrops().forEach(deltas::subtract);
+				itemDropRollupDao.incrementItemDropRollups(deltas.values());
+				checkpoint = itemDropRollupCheckpointDao.save(new ItemDropRollupCheckpoint(CHECKPOINT_ID, generation,
+						previousGeneration, highWaterMark, startTime));
+				lastWindowStart = null;
+				lastWindowIds = new HashSet<>();
+				rebuildTracker = null;
+			}
+		} catch (RuntimeException e) {
+			synchronized (deleteLock) {
+				// The current generation still needs every deletion
+				if (checkpoint != null) {
+					savedItemDrops.addAll(staleSavedItemDrops);
+					savedItemDrops.addAll(tracker.getSavedItemDrops());
+					deletedItemDrops.addAll(staleItemDrops);
+					deletedItemDrops.addAll(tracker.getDeletedItemDrops());
+				}
+				rebuildTracker = null;
+			}
+			itemDropRollupDao.deleteByGeneration(generation);
+			throw e;
+		}
+
+		try {
+			itemDropRollupDao.deleteByGenerationNotIn(Arrays.asList(generation, previousGeneration));
+		} catch (Exception e) {
+			log.warn("Failed to delete old generations of item drop rollups: ", e);
+		}
+		log.info("item drop rollups are rebuilt as generation {} in {} ms", generation,
+				System.currentTimeMillis() - startTime);
+	}
+
+	private int addSavedItemDrops(RollupDeltas deltas, long highWaterMark) {
+		int count = 0;
+		ItemDrop itemDrop;
+		while ((itemDrop = savedItemDrops.poll()) != null) {
+			// Drops after the high water mark will be fetched, and those read by the last update have been added
+			if (itemDrop.getTimestamp() >= highWaterMark || lastWindowStart != null
+					&& itemDrop.getTimestamp() >= lastWindowStart && lastWindowIds.contains(itemDrop.getId()))
+				continue;
+			deltas.add(itemDrop);
+			count++;
+		}
+		return count;
+	}
+
+	private int addDeletedItemDrops(RollupDeltas deltas, long highWaterMark) {
+		int count = 0;
+		ItemDrop itemDrop;
+		while ((itemDrop = deletedItemDrops.poll()) != null) {
+			// Drops after the high water mark have not been added, and will not be fetched any more
+			if (itemDrop.getTimestamp() >= highWaterMark)
+				continue;
+			deltas.subtract(itemDrop);
+			count++;
+		}
+		return count;
+	}
+
+	/**
+	 * Feed one rollup into the aggregator as if it were the reports of its hour.
+	 */
+	private static void accept(ItemDropAggregator aggregator, ItemDropRollup rollup) {
+		String[] itemIds = new String[rollup.getQuantities().size()];
+		long[] quantities = new long[itemIds.length];
+		int dropNum = 0;
+		for (Map.Entry<String, Integer> entry : rollup.getQuantities().entrySet()) {
+			// A quantity cancelled down to 0 means the item has not dropped
+			if (entry.getValue() == 0)
+				continue;
+			itemIds[dropNum] = entry.getKey();
+			quantities[dropNum++] = entry.getValue();
+		}
+		int times = rollup.getTimes();
+		int emptyTimes = rollup.getEmptyTimes();
+		if (emptyTimes > 0)
+			aggregator.accept(rollup.getStageId(), rollup.getHour(), emptyTimes, null, null, 0);
+		if (dropNum > 0 || times > emptyTimes)
+			aggregator.accept(rollup.getStageId(), rollup.getHour(), times - emptyTimes, itemIds, quantities, dropNum);
+	}
+
+	private static long floorHour(long timestamp) {
+		return timestamp - Math.floorMod(timestamp, HOUR);
+	}
+
+	private long getLag() {
+		return Optional.ofNullable(systemPropertyService.getPropertyLongValue(SystemPropertyKey.ITEM_DROP_ROLLUP_LAG))
+				.orElse(DEFAULT_LAG);
+	}
+
+	private long getRebuildInterval() {
+		return Optional
+				.ofNullable(
+						systemPropertyService.getPropertyLongValue(SystemPropertyKey.ITEM_DROP_ROLLUP_REBUILD_INTERVAL))
+				.orElse(DEFAULT_REBUILD_INTERVAL);
+	}
+
+	/**
+	 * The changes of one update, summed by (server, stageId, hour).
+	 */
+	private static class RollupDeltas {
+
+		private final Long generation;
+		private final Map<String, ItemDropRollup> deltas = new HashMap<>();
+
+		private RollupDeltas(Long generation) {
+			this.generation = generation;
+		}
+
+		@SuppressWarnings("unchecked")
+		private void add(Document doc) {
+			String server = doc.getString("server");
+			ItemDropRollup delta = get(server == null ? null : Server.valueOf(server), doc.getString("stageId"),
+					((Number)doc.get("timestamp")).longValue());
+			int times = ((Number)doc.get("times")).intValue();
+			delta.setTimes(delta.getTimes() + times);
+			List<Document> drops = (List<Document>)doc.get("drops");
+			if (drops == null || drops.isEmpty()) {
+				delta.setEmptyTimes(delta.getEmptyTimes() + times);
+				return;
+			}
+			for (Document drop : drops)
+				delta.getQuantities().merge(drop.getString("itemId"), ((Number)drop.get("quantity")).intValue(),
+						Integer::sum);
+		}
+
+		private void add(ItemDrop itemDrop) {
+			apply(itemDrop, 1);
+		}
+
+		private void subtract(ItemDrop itemDrop) {
+			apply(itemDrop, -1);
+		}
+
+		private void apply(ItemDrop itemDrop, int sign) {
+			ItemDropRollup delta = get(itemDrop.getServer(), itemDrop.getStageId(), itemDrop.getTimestamp());
+			int times = sign * itemDrop.getTimes();
+			delta.setTimes(delta.getTimes() + times);
+			if (itemDrop.getDrops() == null || itemDrop.getDrops().isEmpty()) {
+				delta.setEmptyTimes(delta.getEmptyTimes() + times);
+				return;
+			}
+			for (Drop drop : itemDrop.getDrops())
+				delta.getQuantities().merge(drop.getItemId(), sign * drop.getQuantity(), Integer::sum);
+		}
+
+		private ItemDropRollup get(Server server, String stageId, long timestamp) {
+			ItemDropRollup delta = new ItemDropRollup(generation, server, stageId, floorHour(timestamp));
+			return deltas.computeIfAbsent(delta.getId(), k -> delta);
+		}
+
+		private Collection<ItemDropRollup> values() {
+			return deltas.values();
+		}
+
+	}
+
+}
@@ -4,8 +4,6 @@ import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 
-import org.springframework.cache.annotation.CachePut;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 
@@ -34,19 +32,8 @@ public interface ItemDropService {
 
 	Page<ItemDrop> getValidItemDropsByStageId(String stageId, Pageable pageable);
 
-	@Cacheable(value = "no-expiry-map", key = "'total-stage-times_' + #server + (#range == null ? '' : ('_' + #range))",
-			condition = "#filter == null", sync = true)
 	Map<String, Integer> getTotalStageTimesMap(Server server, Long range);
 
-	@CachePut(value = "no-expiry-map", key = "'total-stage-times_' + #server + (#range == null ? '' : ('_' + #range))",
-			condition = "#filter == null")
-	Map<String, Integer> refreshTotalStageTimesMap(Server server, Long range);
-
-	@Cacheable(value = "no-expiry-map", key = "'total-item-quantities_' + #server", condition = "#filter == null",
-			sync = true)
 	Map<String, Integer> getTotalItemQuantitiesMap(Server server);
 
-	@CachePut(value = "no-expiry-map", key = "'total-item-quantities_' + #server", condition = "#filter == null")
-	Map<String, Integer> refreshTotalItemQuantitiesMap(Server server);
-
 }
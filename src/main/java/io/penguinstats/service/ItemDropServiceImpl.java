@@ -1,13 +1,16 @@
 package io.penguinstats.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
 import org.bson.Document;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Pageable;
@@ -16,12 +19,16 @@ import org.springframework.stereotype.Service;
 
 import io.penguinstats.constant.Constant.LastUpdateMapKeyName;
 import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.event.ItemDropEvent;
 import io.penguinstats.enums.ErrorCode;
+import io.penguinstats.enums.ItemDropEventType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.ItemDrop;
 import io.penguinstats.model.QueryConditions;
 import io.penguinstats.util.HashUtil;
 import io.penguinstats.util.LastUpdateTimeUtil;
+import io.penguinstats.util.TaskRunner;
+import io.penguinstats.util.exception.BatchInsertException;
 import io.penguinstats.util.exception.DatabaseException;
 import io.penguinstats.util.exception.NotFoundException;
 
@@ -31,14 +38,32 @@ public class ItemDropServiceImpl implements ItemDropService {
 	@Autowired
 	private ItemDropDao itemDropDao;
 
+	@Autowired
+	private ApplicationEventPublisher applicationEventPublisher;
+
+	@Autowired
+	private SiteStatsService siteStatsService;
+
+	@Autowired
+	private TaskRunner taskRunner;
+
 	@Override
 	public void saveItemDrop(ItemDrop itemDrop) {
 		itemDropDao.save(itemDrop);
+		publishItemDropEvent(ItemDropEventType.SAVED, Collections.singletonList(itemDrop));
 	}
 
 	@Override
 	public void batchSaveItemDrops(Collection<ItemDrop> itemDrops) {
-		itemDropDao.saveAll(itemDrops);
+		List<ItemDrop> insertedItemDrops;
+		try {
+			insertedItemDrops = itemDropDao.batchInsertItemDrops(itemDrops);
+		} catch (BatchInsertException e) {
+			// The inserted drops count as duplicates when the batch is retried, so their events must be sent now
+			publishItemDropEvent(ItemDropEventType.SAVED, e.getInsertedItemDrops());
+			throw e;
+		}
+		publishItemDropEvent(ItemDropEventType.SAVED, insertedItemDrops);
 	}
 
 	@Override
@@ -49,8 +74,12 @@ public class ItemDropServiceImpl implements ItemDropService {
 					"ItemDrop[" + itemDropId + "] not found for user with ID[" + userID + "]", Optional.empty());
 		}
 
+		if (Boolean.TRUE.equals(itemDrop.getIsDeleted()))
+			return;
+
 		itemDrop.setIsDeleted(true);
 		itemDropDao.save(itemDrop);
+		publishItemDropEvent(ItemDropEventType.DELETED, Collections.singletonList(itemDrop));
 	}
 
 	@Override
@@ -71,6 +100,7 @@ public class ItemDropServiceImpl implements ItemDropService {
 
 		lastItemDrop.setIsDeleted(true);
 		itemDropDao.save(lastItemDrop);
+		publishItemDropEvent(ItemDropEventType.DELETED, Collections.singletonList(lastItemDrop));
 	}
 
 	@Override
@@ -103,10 +133,24 @@ public class ItemDropServiceImpl implements ItemDropService {
 		return itemDropDao.findValidItemDropByStageId(stageId, pageable);
 	}
 
+	/**
+	 * @Title: getTotalStageTimesMap
+	 * @Description: Get the total times of each stage. All-time and last-24h stage times are read from the live site
+	 *               stats once they are ready. Other ranges are aggregated from Mongo.
+	 * @param server
+	 * @param range If not null, only drops in the latest range are counted.
+	 * @return Map<String,Integer>
+	 */
 	@Override
 	public Map<String, Integer> getTotalStageTimesMap(Server server, Long range) {
+		if (siteStatsService.isReady()) {
+			if (range == null)
+				return siteStatsService.getStageTimesMap(server);
+			if (range == TimeUnit.DAYS.toMillis(1))
+				return siteStatsService.getLastDayStageTimesMap(server);
+		}
 		QueryConditions conditions = new QueryConditions().addServer(server).setRange(range);
-		List<Document> docs = itemDropDao.aggregateStageTimes(conditions);
+		List<Document> docs = taskRunner.limitAggregation(() -> itemDropDao.aggregateStageTimes(conditions));
 		Map<String, Integer> result =
 				docs.stream().collect(Collectors.toMap(doc -> doc.getString("_id"), doc -> doc.getInteger("times")));
 		LastUpdateTimeUtil.setCurrentTimestamp(
@@ -114,24 +158,21 @@ public class ItemDropServiceImpl implements ItemDropService {
 		return result;
 	}
 
-	@Override
-	public Map<String, Integer> refreshTotalStageTimesMap(Server server, Long range) {
-		return getTotalStageTimesMap(server, range);
-	}
-
 	@Override
 	public Map<String, Integer> getTotalItemQuantitiesMap(Server server) {
+		if (siteStatsService.isReady())
+			return siteStatsService.getItemQuantitiesMap(server);
 		QueryConditions conditions = new QueryConditions().addServer(server);
-		List<Document> docs = itemDropDao.aggregateItemQuantities(conditions);
+		List<Document> docs = taskRunner.limitAggregation(() -> itemDropDao.aggregateItemQuantities(conditions));
 		Map<String, Integer> result =
 				docs.stream().collect(Collectors.toMap(doc -> doc.getString("_id"), doc -> doc.getInteger("quantity")));
 		LastUpdateTimeUtil.setCurrentTimestamp(LastUpdateMapKeyName.TOTAL_ITEM_QUANTITIES_MAP + "_" + server);
 		return result;
 	}
 
-	@Override
-	public Map<String, Integer> refreshTotalItemQuantitiesMap(Server server) {
-		return getTotalItemQuantitiesMap(server);
+	private void publishItemDropEvent(ItemDropEventType type, List<ItemDrop> itemDrops) {
+		if (!itemDrops.isEmpty())
+			applicationEventPublisher.publishEvent(new ItemDropEvent(this, type, itemDrops));
 	}
 
 }
@@ -0,0 +1,20 @@
+package io.penguinstats.service;
+
+import java.util.List;
+
+import org.bson.Document;
+
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.QueryConditions;
+
+public interface ItemDropSnapshotService {
+
+	void updateSnapshot();
+
+	void applySavedItemDrops(List<ItemDrop> itemDrops);
+
+	void applyDeletedItemDrops(List<ItemDrop> itemDrops);
+
+	List<Document> aggregateItemDrops(QueryConditions conditions);
+
+}
@@ -0,0 +1,453 @@
+package io.penguinstats.service;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.SystemPropertyKey;
+import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.enums.AggregationEngine;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.QueryConditions;
+import io.penguinstats.model.QueryConditions.StageWithTimeRange;
+import io.penguinstats.util.ItemDropAggregator;
+import io.penguinstats.util.MetricsUtil;
+import io.penguinstats.util.snapshot.DeletionTracker;
+import io.penguinstats.util.snapshot.ItemDropSnapshot;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Maintain a local {@link ItemDropSnapshot} of all reliable and non-deleted item drops, and answer item drop
+ * aggregations from it.<br>
+ * Each update appends the drops whose timestamp is in [highWaterMark, now - lag), after appending the drops saved late
+ * below the high water mark and cancelling the drops deleted since the last update. A late drop in the window of the
+ * last update is only appended if that update has not read it. The snapshot is rebuilt into a new directory when it is
+ * missing or older than the rebuild interval, which also corrects any drift caused by drops deleted while they were
+ * being appended. A rebuild streams the drops in the order of timestamp, and uses a {@link DeletionTracker} to only
+ * cancel the drops deleted after the stream counted them, and to append the drops saved behind the stream.<br>
+ * A query reads the snapshot for everything before its high water mark and only streams the newer drops from Mongo.
+ * Queries on given users always go to Mongo.
+ */
+@Log4j2
+@Service("itemDropSnapshotService")
+public class ItemDropSnapshotServiceImpl implements ItemDropSnapshotService {
+
+	private static final long DEFAULT_LAG = 10000L;
+	private static final long DEFAULT_REBUILD_INTERVAL = 86400000L;
+	private static final String GENERATION_PREFIX = "gen-";
+
+	@Value("${penguinstats.snapshot.dir:item-drop-snapshot}")
+	private String snapshotDir;
+
+	@Autowired
+	private ItemDropDao itemDropDao;
+
+	@Autowired
+	private SystemPropertyService systemPropertyService;
+
+	private volatile ItemDropSnapshot snapshot;
+
+	private final Queue<ItemDrop> savedItemDrops = new ConcurrentLinkedQueue<>();
+
+	private final Queue<ItemDrop> deletedItemDrops = new ConcurrentLinkedQueue<>();
+
+	/** the high water mark before the last update, guarded by updateLock */
+	private Long lastWindowStart;
+
+	/** ids of the drops read by the last update, guarded by updateLock */
+	private Set<ObjectId> lastWindowIds = new HashSet<>();
+
+	private final Object updateLock = new Object();
+
+	/** guards savedItemDrops, deletedItemDrops, rebuildTracker, and the swap of snapshot */
+	private final Object deleteLock = new Object();
+
+	private volatile DeletionTracker rebuildTracker;
+
+	@PostConstruct
+	public void init() {
+		List<Path> generations = listGenerations();
+		for (int i = generations.size() - 1; i >= 0 && snapshot == null; i--) {
+			try {
+				snapshot = ItemDropSnapshot.open(generations.get(i));
+				log.info("item drop snapshot is loaded from {}, {} rows", generations.get(i), snapshot.getRows());
+			} catch (Exception e) {
+				log.warn("Failed to open item drop snapshot in " + generations.get(i) + ": ", e);
+			}
+		}
+		generations.stream().filter(dir -> snapshot == null || !dir.equals(snapshot.getDirectory()))
+				.forEach(this::deleteGeneration);
+	}
+
+	@PreDestroy
+	public void destroy() throws IOException {
+		synchronized (updateLock) {
+			if (snapshot != null)
+				snapshot.close();
+		}
+	}
+
+	/**
+	 * @Title: updateSnapshot
+	 * @Description: Append new drops into the snapshot, or rebuild it if needed. The snapshot is dropped while the
+	 *               item drop aggregation engine is not SNAPSHOT, and rebuilt once it is selected again.
+	 */
+	@Override
+	public void updateSnapshot() {
+		synchronized (updateLock) {
+			if (!isSelected()) {
+				dropSnapshot();
+				return;
+			}
+			try {
+				if (snapshot == null || System.currentTimeMillis() - snapshot.getBuildTime() >= getRebuildInterval())
+					rebuildSnapshot();
+				else
+					appendNewItemDrops(snapshot);
+			} catch (IOException | UncheckedIOException e) {
+				log.error("Error in updateSnapshot: ", e);
+			}
+		}
+	}
+
+	@Override
+	public void applySavedItemDrops(List<ItemDrop> itemDrops) {
+		synchronized (deleteLock) {
+			DeletionTracker tracker = rebuildTracker;
+			if (snapshot == null && tracker == null)
+				return;
+			itemDrops.stream().filter(itemDrop -> Boolean.TRUE.equals(itemDrop.getIsReliable()))
+					.forEach(tracker != null ? tracker::save : savedItemDrops::add);
+		}
+	}
+
+	@Override
+	public void applyDeletedItemDrops(List<ItemDrop> itemDrops) {
+		synchronized (deleteLock) {
+			DeletionTracker tracker = rebuildTracker;
+			if (snapshot == null && tracker == null)
+				return;
+			itemDrops.stream().filter(itemDrop -> Boolean.TRUE.equals(itemDrop.getIsReliable()))
+					.forEach(tracker != null ? tracker::delete : deletedItemDrops::add);
+		}
+	}
+
+	/**
+	 * @Title: aggregateItemDrops
+	 * @Description: The same as ItemDropDao.aggregateItemDrops, but the drops before the high water mark are read
+	 *               from the snapshot.
+	 * @param conditions
+	 * @return List<Document>
+	 */
+	@Override
+	public List<Document> aggregateItemDrops(QueryConditions conditions) {
+		ItemDropSnapshot current = snapshot;
+		if (current == null || !conditions.getUserIDs().isEmpty())
+			return itemDropDao.aggregateItemDrops(conditions);
+
+		Long startTime = System.currentTimeMillis();
+		Long interval = conditions.getInterval();
+		ItemDropAggregator aggregator = new ItemDropAggregator(conditions.getItemIds(),
+				interval == null ? null : conditions.getSectionBaseTime(), interval);
+		Set<String> servers = conditions.getServers().stream().map(Server::name).collect(Collectors.toSet());
+		StageFilter stageFilter = new StageFilter(conditions.getStages(), startTime);
+		AtomicLong scanned = new AtomicLong();
+		try {
+			long highWaterMark = current.scan((server, stageId, timestamp, times, itemIds, quantities, dropNum) -> {
+				scanned.incrementAndGet();
+				if ((servers.isEmpty() || servers.contains(server)) && stageFilter.matches(stageId, timestamp))
+					aggregator.accept(stageId, timestamp, times, itemIds, quantities, dropNum);
+			});
+			QueryConditions tailConditions = getTailConditions(conditions, highWaterMark, startTime);
+			if (tailConditions != null) {
+				itemDropDao.streamItemDrops(tailConditions, doc -> {
+					scanned.incrementAndGet();
+					aggregator.accept(doc);
+				});
+			}
+		} catch (IOException e) {
+			log.error("Error in scanning item drop snapshot: ", e);
+			return itemDropDao.aggregateItemDrops(conditions);
+		}
+
+		log.debug(conditions.toString() + ", engine = snapshot, time = " + (System.currentTimeMillis() - startTime)
+				+ "ms");
+		List<Document> results = aggregator.getResults();
+		MetricsUtil.recordAggregation("itemDrops", "snapshot", startTime, scanned.get(), results.size());
+		return results;
+	}
+
+	private void appendNewItemDrops(ItemDropSnapshot current) throws IOException {
+		Long startTime = System.currentTimeMillis();
+		long highWaterMark = current.getHighWaterMark();
+		long newHighWaterMark = startTime - getLag();
+
+		int savedNum = appendSavedItemDrops(current, highWaterMark);
+		int deletedNum = appendDeletedItemDrops(current, highWaterMark);
+		if (newHighWaterMark <= highWaterMark) {
+			if (savedNum > 0 || deletedNum > 0)
+				current.commit(highWaterMark);
+			return;
+		}
+
+		long rows = current.getRows();
+		Set<ObjectId> windowIds = new HashSet<>();
+		itemDropDao.streamItemDropsByTimestamp(new QueryConditions().addStage(null, highWaterMark, newHighWaterMark),
+				doc -> {
+					windowIds.add(doc.getObjectId("_id"));
+					append(current, doc);
+				});
+		current.commit(newHighWaterMark);
+		lastWindowStart = highWaterMark;
+		lastWindowIds = windowIds;
+		log.debug("item drop snapshot appended {} rows, {} late rows and cancelled {} rows in {} ms",
+				current.getRows() - rows, savedNum, deletedNum, System.currentTimeMillis() - startTime);
+	}
+
+	private void rebuildSnapshot() throws IOException {
+		Long startTime = System.currentTimeMillis();
+		long highWaterMark = startTime - getLag();
+		DeletionTracker tracker = new DeletionTracker();
+		// All drops deleted so far are already excluded by the query, but are kept for the old snapshot in case the
+		// rebuild fails
+		List<ItemDrop> staleItemDrops = new ArrayList<>(deletedItemDrops.size());
+		List<ItemDrop> staleSavedItemDrops = new ArrayList<>(savedItemDrops.size());
+		synchronized (deleteLock) {
+			ItemDrop itemDrop;
+			while ((itemDrop = deletedItemDrops.poll()) != null)
+				staleItemDrops.add(itemDrop);
+			while ((itemDrop = savedItemDrops.poll()) != null)
+				staleSavedItemDrops.add(itemDrop);
+			rebuildTracker = tracker;
+		}
+
+		ItemDropSnapshot built = null;
+		ItemDropSnapshot old;
+		try {
+			ItemDropSnapshot target = ItemDropSnapshot.create(Paths.get(snapshotDir, GENERATION_PREFIX + startTime));
+			built = target;
+			itemDropDao.streamItemDropsByTimestamp(new QueryConditions().addStage(null, 0L, highWaterMark), doc -> {
+				if (tracker.accept(doc.getObjectId("_id"), ((Number)doc.get("timestamp")).longValue()))
+					append(target, doc);
+			});
+			synchronized (deleteLock) {
+				for (ItemDrop itemDrop : tracker.getMissedItemDrops(highWaterMark))
+					built.appendSaved(itemDrop);
+				for (ItemDrop itemDrop : tracker.getCountedItemDrops())
+					built.appendDeleted(itemDrop);
+				built.commit(highWaterMark);
+				old = snapshot;
+				snapshot = built;
+				lastWindowStart = null;
+				lastWindowIds = new HashSet<>();
+				rebuildTracker = null;
+			}
+		} catch (IOException | RuntimeException e) {
+			synchronized (deleteLock) {
+				// The old snapshot still needs every deletion
+				if (snapshot != null) {
+					savedItemDrops.addAll(staleSavedItemDrops);
+					savedItemDrops.addAll(tracker.getSavedItemDrops());
+					deletedItemDrops.addAll(staleItemDrops);
+					deletedItemDrops.addAll(tracker.getDeletedItemDrops());
+				}
+				rebuildTracker = null;
+			}
+			if (built != null) {
+				built.close();
+				deleteGeneration(built.getDirectory());
+			}
+			throw e;
+		}
+
+		if (old != null) {
+			old.close();
+			deleteGeneration(old.getDirectory());
+		}
+		log.info("item drop snapshot is rebuilt with {} rows in {} ms", built.getRows(),
+				System.currentTimeMillis() - startTime);
+	}
+
+	private boolean isSelected() {
+		return AggregationEngine.SNAPSHOT.name()
+				.equals(systemPropertyService.getPropertyStringValue(SystemPropertyKey.ITEM_DROP_AGGREGATION_ENGINE));
+	}
+
+	private void dropSnapshot() {
+		ItemDropSnapshot old;
+		synchronized (deleteLock) {
+			old = snapshot;
+			snapshot = null;
+			savedItemDrops.clear();
+			deletedItemDrops.clear();
+		}
+		if (old == null)
+			return;
+		try {
+			old.close();
+		} catch (IOException e) {
+			log.warn("Failed to close item drop snapshot in " + old.getDirectory() + ": ", e);
+		}
+		deleteGeneration(old.getDirectory());
+		log.info("item drop snapshot is dropped since the aggregation engine is not snapshot");
+	}
+
+	private int appendSavedItemDrops(ItemDropSnapshot current, long highWaterMark) throws IOException {
+		int count = 0;
+		ItemDrop itemDrop;
+		while ((itemDrop = savedItemDrops.poll()) != null) {
+			// Drops after the high water mark will be fetched, and those read by the last update have been appended
+			if (itemDrop.getTimestamp() >= highWaterMark || lastWindowStart != null
+					&& itemDrop.getTimestamp() >= lastWindowStart && lastWindowIds.contains(itemDrop.getId()))
+				continue;
+			current.appendSaved(itemDrop);
+			count++;
+		}
+		return count;
+	}
+
+	private int appendDeletedItemDrops(ItemDropSnapshot current, long highWaterMark) throws IOException {
+		int count = 0;
+		ItemDrop itemDrop;
+		while ((itemDrop = deletedItemDrops.poll()) != null) {
+			// Drops after the high water mark have not been appended, and will not be fetched any more
+			if (itemDrop.getTimestamp() >= highWaterMark)
+				continue;
+			current.appendDeleted(itemDrop);
+			count++;
+		}
+		return count;
+	}
+
+	private void append(ItemDropSnapshot current, Document doc) {
+		try {
+			current.append(doc);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+
+	/**
+	 * The conditions for the drops which are not in the snapshot yet. Null if there is no such drop.
+	 */
+	private QueryConditions getTailConditions(QueryConditions conditions, long highWaterMark, long currentTime) {
+		QueryConditions tailConditions = new QueryConditions();
+		conditions.getServers().forEach(tailConditions::addServer);
+		if (conditions.getStages().isEmpty()) {
+			tailConditions.addStage(null, highWaterMark, currentTime);
+			return tailConditions;
+		}
+		for (StageWithTimeRange stage : conditions.getStages()) {
+			long start = Math.max(Optional.ofNullable(stage.getStart()).orElse(0L), highWaterMark);
+			long end = Optional.ofNullable(stage.getEnd()).orElse(currentTime);
+			if (start < end)
+				tailConditions.addStage(stage.getStageId(), start, end);
+		}
+		return tailConditions.getStages().isEmpty() ? null : tailConditions;
+	}
+
+	private List<Path> listGenerations() {
+		Path dir = Paths.get(snapshotDir);
+		if (!Files.isDirectory(dir))
+			return new ArrayList<>();
+		try (Stream<Path> stream = Files.list(dir)) {
+			return stream.filter(path -> path.getFileName().toString().startsWith(GENERATION_PREFIX))
+					.sorted(Comparator.comparing(path -> path.getFileName().toString())).collect(Collectors.toList());
+		} catch (IOException e) {
+			log.error("Error in listing item drop snapshots: ", e);
+			return new ArrayList<>();
+		}
+	}
+
+	private void deleteGeneration(Path dir) {
+		try (Stream<Path> stream = Files.list(dir)) {
+			for (Path file : stream.collect(Collectors.toList()))
+				Files.deleteIfExists(file);
+			Files.deleteIfExists(dir);
+		} catch (IOException e) {
+			log.warn("Failed to delete item drop snapshot in " + dir + ": ", e);
+		}
+	}
+
+	private long getLag() {
+		return Optional.ofNullable(systemPropertyService.getPropertyLongValue(SystemPropertyKey.ITEM_DROP_SNAPSHOT_LAG))
+				.orElse(DEFAULT_LAG);
+	}
+
+	private long getRebuildInterval() {
+		return Optional
+				.ofNullable(
+						systemPropertyService.getPropertyLongValue(SystemPropertyKey.ITEM_DROP_SNAPSHOT_REBUILD_INTERVAL))
+				.orElse(DEFAULT_REBUILD_INTERVAL);
+	}
+
+	/**
+	 * Matches rows the same way as the stage and timestamp criteria of ItemDropDao.
+	 */
+	private static class StageFilter {
+
+		private final long[] anyStageRange;
+		private final Map<String, List<long[]>> rangesByStageId = new HashMap<>();
+
+		private StageFilter(List<StageWithTimeRange> stages, long currentTime) {
+			if (stages.isEmpty()) {
+				anyStageRange = new long[] {Long.MIN_VALUE, Long.MAX_VALUE};
+			} else if (stages.size() == 1 && stages.get(0).getStageId() == null) {
+				anyStageRange = toRange(stages.get(0), currentTime);
+			} else {
+				anyStageRange = null;
+				stages.forEach(stage -> rangesByStageId
+						.computeIfAbsent(stage.getStageId(), k -> new ArrayList<>()).add(toRange(stage, currentTime)));
+			}
+		}
+
+		private boolean matches(String stageId, long timestamp) {
+			if (anyStageRange != null)
+				return isIn(anyStageRange, timestamp);
+			List<long[]> ranges = rangesByStageId.get(stageId);
+			if (ranges == null)
+				return false;
+			for (long[] range : ranges) {
+				if (isIn(range, timestamp))
+					return true;
+			}
+			return false;
+		}
+
+		private static long[] toRange(StageWithTimeRange stage, long currentTime) {
+			return new long[] {Optional.ofNullable(stage.getStart()).orElse(0L),
+					Optional.ofNullable(stage.getEnd()).orElse(currentTime)};
+		}
+
+		private static boolean isIn(long[] range, long timestamp) {
+			return timestamp >= range[0] && timestamp < range[1];
+		}
+
+	}
+
+}
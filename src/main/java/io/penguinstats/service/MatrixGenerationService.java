@@ -0,0 +1,12 @@
+package io.penguinstats.service;
+
+import java.util.List;
+import java.util.function.Consumer;
+
+public interface MatrixGenerationService {
+
+	Long getCurrentGeneration(String matrixId);
+
+	Long replaceGeneration(String matrixId, Consumer<Long> writer, Consumer<List<Long>> cleaner);
+
+}
@@ -0,0 +1,72 @@
+package io.penguinstats.service;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Consumer;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.dao.MatrixGenerationDao;
+import io.penguinstats.model.MatrixGeneration;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Swap stored matrices by generation.<br>
+ * A refresh writes all new elements under a new generation, then makes them live by updating the single
+ * {@link MatrixGeneration} document of the matrix. Readers only query the live generation, so they never see a
+ * half-written or empty matrix. Generations older than the previous one are deleted after the swap.
+ */
+@Log4j2
+@Service("matrixGenerationService")
+public class MatrixGenerationServiceImpl implements MatrixGenerationService {
+
+	@Autowired
+	private MatrixGenerationDao matrixGenerationDao;
+
+	private final Map<String, Object> locks = new ConcurrentHashMap<>();
+
+	/**
+	 * @Title: getCurrentGeneration
+	 * @Description: Get the live generation of a matrix. Null if the matrix has never been swapped, which matches the
+	 *               elements stored before generations were introduced.
+	 * @param matrixId
+	 * @return Long
+	 */
+	@Override
+	public Long getCurrentGeneration(String matrixId) {
+		return matrixGenerationDao.findById(matrixId).map(MatrixGeneration::getGeneration).orElse(null);
+	}
+
+	/**
+	 * @Title: replaceGeneration
+	 * @Description: Write a new generation of a matrix and make it live.
+	 * @param matrixId
+	 * @param writer Stores all elements with the given generation.
+	 * @param cleaner Deletes all elements whose generation is not in the given list.
+	 * @return Long The new generation
+	 */
+	@Override
+	public Long replaceGeneration(String matrixId, Consumer<Long> writer, Consumer<List<Long>> cleaner) {
+		synchronized (locks.computeIfAbsent(matrixId, k -> new Object())) {
+			Long currentTime = System.currentTimeMillis();
+			Long previousGeneration = getCurrentGeneration(matrixId);
+			Long generation =
+					previousGeneration == null ? currentTime : Math.max(currentTime, previousGeneration + 1);
+
+			writer.accept(generation);
+			matrixGenerationDao.save(new MatrixGeneration(matrixId, generation, previousGeneration, currentTime));
+
+			try {
+				cleaner.accept(Arrays.asList(generation, previousGeneration));
+			} catch (Exception e) {
+				log.warn("Failed to delete old generations of " + matrixId + ": ", e);
+			}
+			log.debug("matrix {} is swapped to generation {}", matrixId, generation);
+			return generation;
+		}
+	}
+
+}
@@ -0,0 +1,12 @@
+package io.penguinstats.service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.RenderedResponse;
+
+public interface MatrixResponseService {
+
+	RenderedResponse getRenderedMatrix(Server server, boolean showClosedZones);
+
+	void refreshRenderedMatrix(Server server);
+
+}
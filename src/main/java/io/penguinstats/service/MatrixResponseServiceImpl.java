@@ -0,0 +1,115 @@
+package io.penguinstats.service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.zip.GZIPOutputStream;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.penguinstats.controller.v2.response.MatrixQueryResponse;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.RenderedResponse;
+import io.penguinstats.util.matrix.DropMatrixTable;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keeps the global matrix of every (server, showClosedZones) variant rendered into bytes, so that GET
+ * /api/v2/result/matrix does not merge and serialize the elements on every request. The variants are re-rendered
+ * from the {@link DropMatrixStoreService} after the drop matrix tasks update the cached elements.
+ */
+@Log4j2
+@Service("matrixResponseService")
+public class MatrixResponseServiceImpl implements MatrixResponseService {
+
+	@Autowired
+	private DropMatrixStoreService dropMatrixStoreService;
+
+	@Autowired
+	private OpeningStageService openingStageService;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	private final Map<String, RenderedResponse> renderedMatrixMap = new ConcurrentHashMap<>();
+
+	/**
+	 * @Title: getRenderedMatrix
+	 * @Description: Get the rendered global matrix, rendering it first if it has not been.
+	 * @param server
+	 * @param showClosedZones
+	 * @return RenderedResponse Null if the matrix cannot be rendered, and the caller has to serve it another way.
+	 */
+	@Override
+	public RenderedResponse getRenderedMatrix(Server server, boolean showClosedZones) {
+		RenderedResponse rendered = renderedMatrixMap.get(getKey(server, showClosedZones));
+		if (rendered == null) {
+			try {
+				refreshRenderedMatrix(server);
+			} catch (RuntimeException e) {
+				log.error("Error in refreshing rendered matrix for server " + server + ": ", e);
+				return null;
+			}
+			rendered = renderedMatrixMap.get(getKey(server, showClosedZones));
+		}
+		return rendered;
+	}
+
+	/**
+	 * @Title: refreshRenderedMatrix
+	 * @Description: Render both variants of the global matrix of the given server from the cached elements.
+	 * @param server
+	 */
+	@Override
+	public void refreshRenderedMatrix(Server server) {
+		Long startTime = System.currentTimeMillis();
+		dropMatrixStoreService.refresh(server);
+		DropMatrixTable table = dropMatrixStoreService.getCombinedTable(server);
+		Long lastModified = table.getUpdateTime() > 0 ? table.getUpdateTime() : startTime;
+
+		BitSet openingStageMask = openingStageService.getOpeningStageMask(server, startTime);
+		List<DropMatrixElement> elements = table.toElements(null, null);
+		List<DropMatrixElement> openingElements = table.toElements(openingStageMask, null);
+
+		try {
+			renderedMatrixMap.put(getKey(server, true), render(elements, lastModified));
+			renderedMatrixMap.put(getKey(server, false), render(openingElements, lastModified));
+		} catch (IOException | NoSuchAlgorithmException e) {
+			log.error("Error in rendering matrix for server " + server + ": ", e);
+			return;
+		}
+		log.debug("refreshRenderedMatrix done in {} ms for server {}", System.currentTimeMillis() - startTime, server);
+	}
+
+	private RenderedResponse render(List<DropMatrixElement> elements, Long lastModified)
+			throws IOException, NoSuchAlgorithmException {
+		byte[] body = objectMapper.writeValueAsBytes(new MatrixQueryResponse(elements));
+
+		ByteArrayOutputStream out = new ByteArrayOutputStream(body.length / 4);
+		try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+			gzip.write(body);
+		}
+
+		byte[] digest = MessageDigest.getInstance("SHA-256").digest(body);
+		StringBuilder etag = new StringBuilder("\"");
+		for (int i = 0; i < 16; i++)
+			etag.append(String.format("%02x", digest[i]));
+		etag.append('"');
+
+		return new RenderedResponse(body, out.toByteArray(), etag.toString(), lastModified);
+	}
+
+	private String getKey(Server server, boolean showClosedZones) {
+		return server + "_" + showClosedZones;
+	}
+
+}
@@ -0,0 +1,14 @@
+package io.penguinstats.service;
+
+import java.util.BitSet;
+import java.util.Set;
+
+import io.penguinstats.enums.Server;
+
+public interface OpeningStageService {
+
+	Set<String> getOpeningStages(Server server, long time);
+
+	BitSet getOpeningStageMask(Server server, long time);
+
+}
@@ -0,0 +1,78 @@
+package io.penguinstats.service;
+
+import java.util.BitSet;
+import java.util.Set;
+
+import javax.annotation.PostConstruct;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.util.VersionedCache;
+import io.penguinstats.util.matrix.OpeningStageTimeline;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keep an {@link OpeningStageTimeline} of every server, so that the opening stages at any time are found by a binary
+ * search instead of walking all drop infos.<br>
+ * Stage ordinals are the ones of {@link DropMatrixStoreService}, so the masks can be applied to its tables directly.
+ * The timelines are cached by {@link DropInfoCacheService}.
+ */
+@Log4j2
+@Service("openingStageService")
+public class OpeningStageServiceImpl implements OpeningStageService {
+
+	@Autowired
+	private DropInfoService dropInfoService;
+
+	@Autowired
+	private TimeRangeService timeRangeService;
+
+	@Autowired
+	private DropMatrixStoreService dropMatrixStoreService;
+
+	@Autowired
+	private DropInfoCacheService dropInfoCacheService;
+
+	private VersionedCache<Server, OpeningStageTimeline> timelines;
+
+	@PostConstruct
+	public void init() {
+		timelines = dropInfoCacheService.createCache();
+	}
+
+	/**
+	 * @Title: getOpeningStages
+	 * @Description: Get the ids of the stages which are opening at the given time in the given server.
+	 * @param server
+	 * @param time
+	 * @return Set<String> An unmodifiable set
+	 */
+	@Override
+	public Set<String> getOpeningStages(Server server, long time) {
+		return getTimeline(server).getOpeningStages(time);
+	}
+
+	/**
+	 * @Title: getOpeningStageMask
+	 * @Description: Get the ordinals of the stages which are opening at the given time in the given server.
+	 * @param server
+	 * @param time
+	 * @return BitSet A copy which the caller may modify
+	 */
+	@Override
+	public BitSet getOpeningStageMask(Server server, long time) {
+		return getTimeline(server).getOpeningStageMask(time);
+	}
+
+	private OpeningStageTimeline getTimeline(Server server) {
+		return timelines.get(server, key -> {
+			OpeningStageTimeline timeline = OpeningStageTimeline.build(dropInfoService.getDropInfosByServer(key),
+					timeRangeService.getTimeRangeMap(), dropMatrixStoreService.getStageDictionary());
+			log.debug("Rebuilt opening stage timeline of server {}", key);
+			return timeline;
+		});
+	}
+
+}
@@ -13,7 +13,7 @@ public interface PatternMatrixElementService {
 
 	void batchSave(Collection<PatternMatrixElement> elements);
 
-	void batchDelete(Server server);
+	void replaceGlobalElements(Server server, Collection<PatternMatrixElement> elements);
 
 	@Cacheable(value = "pattern-matrix-v2", key = "'pattern-matrix-v2_' + #server", sync = true)
 	List<PatternMatrixElement> getGlobalPatternMatrixElements(Server server);
@@ -21,4 +21,6 @@ public interface PatternMatrixElementService {
 	@CachePut(value = "pattern-matrix-v2", key = "'pattern-matrix-v2_' + #server", condition = "#userID == null")
 	List<PatternMatrixElement> generateGlobalPatternMatrixElements(Server server, String userID);
 
+	List<PatternMatrixElement> generateGlobalPatternMatrixElements(Server server, String userID, Long endTime);
+
 }
@@ -11,6 +11,7 @@ import org.springframework.stereotype.Service;
 
 import io.penguinstats.dao.ItemDropDao;
 import io.penguinstats.dao.PatternMatrixElementDao;
+import io.penguinstats.enums.AggregationEngine;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.Drop;
 import io.penguinstats.model.DropPattern;
@@ -18,6 +19,7 @@ import io.penguinstats.model.PatternMatrixElement;
 import io.penguinstats.model.QueryConditions;
 import io.penguinstats.model.Stage;
 import io.penguinstats.model.TimeRange;
+import io.penguinstats.util.TaskRunner;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -36,40 +38,76 @@ public class PatternMatrixElementServiceImpl implements PatternMatrixElementServ
 	@Autowired
 	private StageService stageService;
 
+	@Autowired
+	private MatrixGenerationService matrixGenerationService;
+
+	@Autowired
+	private TaskRunner taskRunner;
+
 	@Override
 	public void batchSave(Collection<PatternMatrixElement> elements) {
 		patternMatrixElementDao.saveAll(elements);
 	}
 
+	/**
+	 * @Title: replaceGlobalElements
+	 * @Description: Replace the stored global pattern matrix with a new generation. Readers keep getting the old
+	 *               elements until all new ones are saved.
+	 * @param server
+	 * @param elements
+	 */
 	@Override
-	public void batchDelete(Server server) {
-		patternMatrixElementDao.deleteByServer(server);
+	public void replaceGlobalElements(Server server, Collection<PatternMatrixElement> elements) {
+		matrixGenerationService.replaceGeneration(getMatrixId(server), generation -> {
+			elements.forEach(el -> el.setGeneration(generation));
+			patternMatrixElementDao.saveAll(elements);
+		}, liveGenerations -> patternMatrixElementDao.deleteByServerAndGenerationNotIn(server, liveGenerations));
 	}
 
 	@Override
 	public List<PatternMatrixElement> getGlobalPatternMatrixElements(Server server) {
-		return patternMatrixElementDao.findByServer(server);
+		Long generation = matrixGenerationService.getCurrentGeneration(getMatrixId(server));
+		return patternMatrixElementDao.findByServerAndGeneration(server, generation);
 	}
 
-	@SuppressWarnings("unchecked")
 	@Override
 	public List<PatternMatrixElement> generateGlobalPatternMatrixElements(Server server, String userID) {
+		return generateGlobalPatternMatrixElements(server, userID, null);
+	}
+
+	/**
+	 * @Title: generateGlobalPatternMatrixElements
+	 * @Description: Aggregate the patterns in the latest time range of every non-gacha stage, only counting the drops
+	 *               before endTime.
+	 * @param server
+	 * @param userID
+	 * @param endTime If null, all drops in the ranges are counted.
+	 * @return List<PatternMatrixElement>
+	 */
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<PatternMatrixElement> generateGlobalPatternMatrixElements(Server server, String userID,
+			Long endTime) {
 		Long startTime = System.currentTimeMillis();
 
 		Map<String, TimeRange> timeRangesMap = timeRangeService.getLatestTimeRangesMapByServer(server);
 		Map<String, Stage> stageMap = stageService.getStageMap();
-		QueryConditions conditions = new QueryConditions();
+		QueryConditions conditions = new QueryConditions().setEngine(AggregationEngine.STREAMING);
 		if (server != null)
 			conditions.addServer(server);
 		if (userID != null)
 			conditions.addUserID(userID);
 		timeRangesMap.forEach((stageId, range) -> {
-			if (stageMap.containsKey(stageId) && !Boolean.TRUE.equals(stageMap.get(stageId).getIsGacha()))
-				conditions.addStage(stageId, range.getStart(), range.getEnd());
+			if (stageMap.containsKey(stageId) && !Boolean.TRUE.equals(stageMap.get(stageId).getIsGacha())) {
+				Long end = range.getEnd();
+				if (endTime != null && (end == null || end.compareTo(endTime) > 0))
+					end = endTime;
+				conditions.addStage(stageId, range.getStart(), end);
+			}
 		});
 
 		List<PatternMatrixElement> result = new ArrayList<>();
-		List<Document> docs = itemDropDao.aggregateDropPatterns(conditions);
+		List<Document> docs = taskRunner.limitAggregation(() -> itemDropDao.aggregateDropPatterns(conditions));
 		docs.forEach(doc -> {
 			String stageId = doc.getString("stageId");
 			Integer quantity = doc.getInteger("quantity");
@@ -87,7 +125,7 @@ public class PatternMatrixElementServiceImpl implements PatternMatrixElementServ
 			DropPattern pattern = new DropPattern(drops);
 			TimeRange range = timeRangesMap.get(stageId);
 			PatternMatrixElement element = new PatternMatrixElement(null, stageId, pattern, quantity, times,
-					range.getStart(), range.getEnd(), server, System.currentTimeMillis());
+					range.getStart(), range.getEnd(), server, System.currentTimeMillis(), null);
 			result.add(element);
 		});
 
@@ -99,4 +137,8 @@ public class PatternMatrixElementServiceImpl implements PatternMatrixElementServ
 		return result;
 	}
 
+	private String getMatrixId(Server server) {
+		return "pattern_" + server;
+	}
+
 }
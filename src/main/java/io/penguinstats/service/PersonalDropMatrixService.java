@@ -0,0 +1,19 @@
+package io.penguinstats.service;
+
+import java.util.List;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.ItemDrop;
+
+public interface PersonalDropMatrixService {
+
+	List<DropMatrixElement> getPersonalDropMatrixElements(Server server, String userID);
+
+	List<DropMatrixElement> buildPersonalDropMatrixElements(Server server, String userID);
+
+	void applySavedItemDrops(List<ItemDrop> itemDrops);
+
+	void applyDeletedItemDrops(List<ItemDrop> itemDrops);
+
+}
@@ -0,0 +1,316 @@
+package io.penguinstats.service;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+import javax.annotation.PostConstruct;
+
+import org.javatuples.Pair;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.DropMatrixElementType;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.TimeRange;
+import io.penguinstats.util.DropMatrixElementUtil;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Keep the personal drop matrices of recently active users in memory.<br>
+ * A user's matrix is built on the first request by aggregating the user's drops before the build time, as counters
+ * per (stageId, itemId, time range) in the latest max accumulatable time ranges. After that, each report and recall of
+ * the user is added to or subtracted from the counters, so later requests are answered without any aggregation. At
+ * most <b>maxUsers</b> matrices are kept, and the least recently used one is evicted first.<br>
+ * A matrix is dropped, to be built again on the next request, whenever it cannot tell whether a drop has been counted:
+ * a drop older than the build time is saved, a drop is deleted during the build, or a drop falls out of every counted
+ * time range because the ranges have changed. Matrices older than <b>maxAge</b> are dropped as well, which picks up
+ * changes of drop infos.
+ */
+@Log4j2
+@Service("personalDropMatrixService")
+public class PersonalDropMatrixServiceImpl implements PersonalDropMatrixService {
+
+	@Autowired
+	private DropMatrixElementService dropMatrixElementService;
+
+	@Autowired
+	private TimeRangeService timeRangeService;
+
+	@Value("${penguinstats.personal-matrix.max-users:10000}")
+	private int maxUsers;
+
+	@Value("${penguinstats.personal-matrix.max-age:3600000}")
+	private long maxAge;
+
+	private Map<String, PersonalMatrix> matrices;
+
+	@PostConstruct
+	public void init() {
+		matrices = new LinkedHashMap<String, PersonalMatrix>(16, 0.75f, true) {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, PersonalMatrix> eldest) {
+				return size() > maxUsers;
+			}
+
+		};
+	}
+
+	/**
+	 * @Title: getPersonalDropMatrixElements
+	 * @Description: Get the combined personal matrix of the user from memory.
+	 * @param server
+	 * @param userID
+	 * @return List<DropMatrixElement> Null if the matrix has not been built.
+	 */
+	@Override
+	public List<DropMatrixElement> getPersonalDropMatrixElements(Server server, String userID) {
+		String key = getKey(server, userID);
+		PersonalMatrix matrix = getMatrix(key);
+		if (matrix == null)
+			return null;
+		synchronized (matrix) {
+			if (!matrix.isBuilt || matrix.isStale)
+				return null;
+			if (System.currentTimeMillis() - matrix.buildTime > maxAge) {
+				removeMatrix(key, matrix);
+				return null;
+			}
+			return toCombinedElements(server, matrix);
+		}
+	}
+
+	/**
+	 * @Title: buildPersonalDropMatrixElements
+	 * @Description: Aggregate the personal matrix of the user, and keep it in memory for later requests.
+	 * @param server
+	 * @param userID
+	 * @return List<DropMatrixElement>
+	 */
+	@Override
+	public List<DropMatrixElement> buildPersonalDropMatrixElements(Server server, String userID) {
+		Long startTime = System.currentTimeMillis();
+		String key = getKey(server, userID);
+		// Registered before the aggregation, so that no drop saved from now on can be missed
+		PersonalMatrix matrix = new PersonalMatrix(startTime);
+		synchronized (matrices) {
+			matrices.put(key, matrix);
+		}
+
+		try {
+			Map<String, List<Pair<String, List<TimeRange>>>> layout =
+					timeRangeService.getLatestMaxAccumulatableTimeRangesMapByServer(server);
+			List<DropMatrixElement> elements = new ArrayList<>();
+			for (boolean isPast : new boolean[] {true, false}) {
+				dropMatrixElementService.generateGlobalDropMatrixElementsByTimeRange(server, userID, isPast, startTime)
+						.values().forEach(subMap -> subMap.values().forEach(elements::addAll));
+			}
+
+			synchronized (matrix) {
+				matrix.layout = layout;
+				for (DropMatrixElement el : elements) {
+					RangeCounter counter = matrix.findCounter(el.getStageId(), el.getItemId(), el.getStart(),
+							el.getEnd());
+					if (counter != null) {
+						counter.quantity += el.getQuantity();
+						counter.times += el.getTimes();
+					}
+				}
+				for (ItemDrop itemDrop : matrix.pendingItemDrops) {
+					if (!matrix.apply(itemDrop, 1))
+						matrix.isStale = true;
+				}
+				matrix.pendingItemDrops = null;
+				matrix.isBuilt = true;
+				if (matrix.isStale)
+					removeMatrix(key, matrix);
+				log.debug("personal matrix of user {} is built in {} ms for server {}", userID,
+						System.currentTimeMillis() - startTime, server);
+				return toCombinedElements(server, matrix);
+			}
+		} catch (RuntimeException e) {
+			removeMatrix(key, matrix);
+			throw e;
+		}
+	}
+
+	@Override
+	public void applySavedItemDrops(List<ItemDrop> itemDrops) {
+		itemDrops.forEach(itemDrop -> {
+			if (itemDrop.getUserID() == null || itemDrop.getServer() == null)
+				return;
+			String key = getKey(itemDrop.getServer(), itemDrop.getUserID());
+			PersonalMatrix matrix = getMatrix(key);
+			if (matrix == null)
+				return;
+			synchronized (matrix) {
+				boolean isNew = itemDrop.getTimestamp().compareTo(matrix.buildTime) >= 0;
+				if (!matrix.isBuilt) {
+					if (isNew)
+						matrix.pendingItemDrops.add(itemDrop);
+					else
+						matrix.isStale = true;
+				} else if (!isNew || !matrix.apply(itemDrop, 1))
+					removeMatrix(key, matrix);
+			}
+		});
+	}
+
+	@Override
+	public void applyDeletedItemDrops(List<ItemDrop> itemDrops) {
+		itemDrops.forEach(itemDrop -> {
+			if (itemDrop.getUserID() == null || itemDrop.getServer() == null)
+				return;
+			String key = getKey(itemDrop.getServer(), itemDrop.getUserID());
+			PersonalMatrix matrix = getMatrix(key);
+			if (matrix == null)
+				return;
+			synchronized (matrix) {
+				if (!matrix.isBuilt)
+					matrix.isStale = true;
+				else if (!matrix.apply(itemDrop, -1))
+					removeMatrix(key, matrix);
+			}
+		});
+	}
+
+	private PersonalMatrix getMatrix(String key) {
+		synchronized (matrices) {
+			return matrices.get(key);
+		}
+	}
+
+	private void removeMatrix(String key, PersonalMatrix matrix) {
+		synchronized (matrices) {
+			matrices.remove(key, matrix);
+		}
+	}
+
+	private String getKey(Server server, String userID) {
+		return server + "_" + userID;
+	}
+
+	private List<DropMatrixElement> toCombinedElements(Server server, PersonalMatrix matrix) {
+		Long updateTime = System.currentTimeMillis();
+		List<DropMatrixElement> result = new ArrayList<>();
+		matrix.counters.forEach((stageId, subMap) -> subMap.forEach((itemId, rangeCounters) -> {
+			List<DropMatrixElement> elements = new ArrayList<>();
+			for (RangeCounter counter : rangeCounters) {
+				if (counter.times > 0) {
+					elements.add(new DropMatrixElement(DropMatrixElementType.REGULAR, stageId, itemId,
+							counter.quantity, counter.times, counter.start, counter.end, server,
+							!counter.isIn(updateTime), updateTime));
+				}
+			}
+			if (!elements.isEmpty())
+				result.add(DropMatrixElementUtil.combineElements(elements));
+		}));
+		return result;
+	}
+
+	private static class PersonalMatrix {
+
+		private final Long buildTime;
+
+		private boolean isBuilt = false;
+
+		private boolean isStale = false;
+
+		/** Drops saved during the build, which are not in the aggregation */
+		private List<ItemDrop> pendingItemDrops = new ArrayList<>();
+
+		private Map<String, List<Pair<String, List<TimeRange>>>> layout;
+
+		/** stageId -> itemId -> counters, only for the stages the user has played */
+		private final Map<String, Map<String, List<RangeCounter>>> counters = new HashMap<>();
+
+		private PersonalMatrix(Long buildTime) {
+			this.buildTime = buildTime;
+		}
+
+		/**
+		 * Get the counters of a stage, which are created with the latest max accumulatable time ranges of all its
+		 * items when the stage is first met.
+		 */
+		private Map<String, List<RangeCounter>> getStageCounters(String stageId) {
+			Map<String, List<RangeCounter>> subMap = counters.get(stageId);
+			if (subMap != null || !layout.containsKey(stageId))
+				return subMap;
+			Map<String, List<RangeCounter>> newSubMap = new HashMap<>();
+			layout.get(stageId).forEach(pair -> pair.getValue1().forEach(range -> newSubMap
+					.computeIfAbsent(pair.getValue0(), k -> new ArrayList<>())
+					.add(new RangeCounter(range.getStart(), range.getEnd()))));
+			counters.put(stageId, newSubMap);
+			return newSubMap;
+		}
+
+		private RangeCounter findCounter(String stageId, String itemId, Long start, Long end) {
+			Map<String, List<RangeCounter>> subMap = getStageCounters(stageId);
+			if (subMap == null || !subMap.containsKey(itemId))
+				return null;
+			for (RangeCounter counter : subMap.get(itemId)) {
+				if (counter.isSameRange(start, end))
+					return counter;
+			}
+			return null;
+		}
+
+		/**
+		 * @return boolean False if the drop is in a stage being counted, but not in any of its time ranges.
+		 */
+		private boolean apply(ItemDrop itemDrop, int sign) {
+			Map<String, List<RangeCounter>> subMap = getStageCounters(itemDrop.getStageId());
+			if (subMap == null)
+				return true;
+			long timestamp = itemDrop.getTimestamp();
+			int times = itemDrop.getTimes();
+			boolean isCounted = false;
+			for (Map.Entry<String, List<RangeCounter>> entry : subMap.entrySet()) {
+				for (RangeCounter counter : entry.getValue()) {
+					if (counter.isIn(timestamp)) {
+						counter.times += sign * times;
+						counter.quantity += sign * itemDrop.getDropQuantity(entry.getKey());
+						isCounted = true;
+					}
+				}
+			}
+			return isCounted;
+		}
+
+	}
+
+	private static class RangeCounter {
+
+		private final Long start;
+
+		private final Long end;
+
+		private int quantity;
+
+		private int times;
+
+		private RangeCounter(Long start, Long end) {
+			this.start = start;
+			this.end = end;
+		}
+
+		private boolean isIn(long time) {
+			return start.longValue() <= time && (end == null || end.longValue() > time);
+		}
+
+		private boolean isSameRange(Long start, Long end) {
+			return Objects.equals(this.start, start) && Objects.equals(this.end, end);
+		}
+
+	}
+
+}
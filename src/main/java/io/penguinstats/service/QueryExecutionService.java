@@ -0,0 +1,19 @@
+package io.penguinstats.service;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+
+import io.penguinstats.enums.QueryType;
+import io.penguinstats.model.MatrixElement;
+import io.penguinstats.model.query.BasicQuery;
+
+public interface QueryExecutionService {
+
+	<T> T execute(QueryType queryType, String clientID, Callable<T> query, Integer timeout) throws Exception;
+
+	List<Future<List<? extends MatrixElement>>> submitAll(String clientID, List<BasicQuery> queries, Long deadline);
+
+	int getQueuedNum();
+
+}
@@ -0,0 +1,287 @@
+package io.penguinstats.service;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.enums.ErrorCode;
+import io.penguinstats.enums.QueryType;
+import io.penguinstats.model.MatrixElement;
+import io.penguinstats.model.query.BasicQuery;
+import io.penguinstats.util.MetricsUtil;
+import io.penguinstats.util.QueryUtil;
+import io.penguinstats.util.exception.ServiceUnavailableException;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The shared executor of queries from clients.<br>
+ * Queries run on a fixed number of workers. Waiting queries are queued per client, and the workers take them from the
+ * clients in turn, so that one client sending many queries does not starve the others. A query is rejected if the
+ * queue is full or its client already has too many queries waiting.<br>
+ * A query which times out is cancelled: it is removed from the queue if it has not started, or its worker is
+ * interrupted. The deadline is also published through {@link QueryUtil#getRemainingTime()}, so that the database
+ * aborts the aggregations of the query by maxTimeMS. A query fanning its aggregations out with
+ * {@link io.penguinstats.util.TaskRunner#map} keeps both, since they run in the worker of the query.
+ */
+@Log4j2
+@Service("queryExecutionService")
+public class QueryExecutionServiceImpl implements QueryExecutionService {
+
+	@Value("${penguinstats.query.parallelism:4}")
+	private int parallelism;
+
+	@Value("${penguinstats.query.queue-capacity:64}")
+	private int queueCapacity;
+
+	@Value("${penguinstats.query.max-queued-per-client:4}")
+	private int maxQueuedPerClient;
+
+	@Value("${penguinstats.query.retry-after:5}")
+	private int retryAfter;
+
+	private final ReentrantLock lock = new ReentrantLock();
+
+	private final Condition notEmpty = lock.newCondition();
+
+	/** guarded by lock, the clients are kept in the order they are served */
+	private final Map<String, Deque<QueryTask<?>>> queues = new LinkedHashMap<>();
+
+	/** guarded by lock */
+	private int queuedNum = 0;
+
+	private final List<Thread> workers = new ArrayList<>();
+
+	private volatile boolean running = false;
+
+	@PostConstruct
+	public void init() {
+		running = true;
+		for (int i = 0; i < parallelism; i++) {
+			Thread worker = new Thread(this::work, "query-worker-" + i);
+			worker.setDaemon(true);
+			worker.start();
+			workers.add(worker);
+		}
+	}
+
+	@PreDestroy
+	public void destroy() {
+		running = false;
+		workers.forEach(Thread::interrupt);
+		List<QueryTask<?>> waitingTasks = new ArrayList<>();
+		lock.lock();
+		try {
+			queues.values().forEach(waitingTasks::addAll);
+		} finally {
+			lock.unlock();
+		}
+		waitingTasks.forEach(task -> task.cancel(false));
+	}
+
+	/**
+	 * @Title: execute
+	 * @Description: Run a query on the workers and wait for its result.
+	 * @param queryType
+	 * @param clientID
+	 * @param query
+	 * @param timeout In minutes, null if the query never times out
+	 * @return T
+	 * @throws TimeoutException if the query is not finished in time, and it is cancelled
+	 * @throws ExecutionException if the query failed
+	 * @throws ServiceUnavailableException if the query is rejected
+	 */
+	@Override
+	public <T> T execute(QueryType queryType, String clientID, Callable<T> query, Integer timeout) throws Exception {
+		Long deadline = timeout == null ? null : System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeout);
+		return executeUntil(queryType, clientID, query, deadline);
+	}
+
+	/**
+	 * Same as {@link #execute(QueryType, String, Callable, Integer)}, with the deadline given as a timestamp.
+	 */
+	<T> T executeUntil(QueryType queryType, String clientID, Callable<T> query, Long deadline) throws Exception {
+		QueryTask<T> task = new QueryTask<>(queryType, clientID, query, deadline);
+		enqueue(Collections.singletonList(task));
+		try {
+			return deadline == null ? task.get()
+					: task.get(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS);
+		} catch (TimeoutException | InterruptedException e) {
+			task.cancel(true);
+			throw e;
+		}
+	}
+
+	/**
+	 * @Title: submitAll
+	 * @Description: Submit a batch of queries to run concurrently, sharing one deadline. The batch is admitted or
+	 *               rejected as a whole. The caller waits for the futures and cancels the ones not done in time.
+	 * @param clientID
+	 * @param queries
+	 * @param deadline Null if the queries never time out
+	 * @return List<Future<List<? extends MatrixElement>>> In the order of the queries
+	 * @throws ServiceUnavailableException if the batch is rejected
+	 */
+	@Override
+	public List<Future<List<? extends MatrixElement>>> submitAll(String clientID, List<BasicQuery> queries,
+			Long deadline) {
+		List<QueryTask<List<? extends MatrixElement>>> tasks = queries.stream()
+				.map(query -> new QueryTask<List<? extends MatrixElement>>(query.getQueryType(), clientID, query::query,
+						deadline))
+				.collect(Collectors.toList());
+		enqueue(tasks);
+		return new ArrayList<>(tasks);
+	}
+
+	@Override
+	public int getQueuedNum() {
+		lock.lock();
+		try {
+			return queuedNum;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Queue all the tasks of one client, or reject all of them. A batch larger than maxQueuedPerClient is admitted only
+	 * when the client has nothing waiting.
+	 */
+	private void enqueue(List<? extends QueryTask<?>> tasks) {
+		if (tasks.isEmpty())
+			return;
+		QueryTask<?> first = tasks.get(0);
+		String clientID = first.clientID;
+		lock.lock();
+		try {
+			Deque<QueryTask<?>> queue = queues.get(clientID);
+			int clientQueuedNum = queue == null ? 0 : queue.size();
+			if (queuedNum + tasks.size() > queueCapacity
+					|| clientQueuedNum + tasks.size() > Math.max(maxQueuedPerClient, tasks.size())) {
+				throw new ServiceUnavailableException(ErrorCode.QUERY_QUEUE_FULL,
+						"Too many queries are waiting. Please retry later.", Optional.empty(), retryAfter);
+			}
+			if (queue == null) {
+				queue = new ArrayDeque<>();
+				queues.put(clientID, queue);
+			}
+			queue.addAll(tasks);
+			queuedNum += tasks.size();
+			notEmpty.signalAll();
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	/**
+	 * Take the next query of the first client, then move the client to the end if it has more.
+	 */
+	private QueryTask<?> take() throws InterruptedException {
+		lock.lock();
+		try {
+			while (queuedNum == 0)
+				notEmpty.await();
+			Iterator<Map.Entry<String, Deque<QueryTask<?>>>> iter = queues.entrySet().iterator();
+			Map.Entry<String, Deque<QueryTask<?>>> entry = iter.next();
+			iter.remove();
+			QueryTask<?> task = entry.getValue().poll();
+			queuedNum--;
+			if (!entry.getValue().isEmpty())
+				queues.put(entry.getKey(), entry.getValue());
+			return task;
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void dequeue(QueryTask<?> task) {
+		lock.lock();
+		try {
+			Deque<QueryTask<?>> queue = queues.get(task.clientID);
+			if (queue != null && queue.remove(task)) {
+				queuedNum--;
+				if (queue.isEmpty())
+					queues.remove(task.clientID);
+			}
+		} finally {
+			lock.unlock();
+		}
+	}
+
+	private void work() {
+		while (running) {
+			QueryTask<?> task;
+			try {
+				task = take();
+			} catch (InterruptedException e) {
+				break;
+			}
+			try {
+				task.run();
+			} catch (Exception e) {
+				log.error("Error in " + Thread.currentThread().getName() + ": ", e);
+			}
+			// Clear the interruption from cancelling the query, so that it does not hit the next one
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * A query waiting in or taken from the queues. Cancelling it also removes it from the queues.
+	 */
+	private class QueryTask<T> extends FutureTask<T> {
+
+		private final String clientID;
+
+		private QueryTask(QueryType queryType, String clientID, Callable<T> query, Long deadline) {
+			super(timed(queryType, query, deadline));
+			this.clientID = Optional.ofNullable(clientID).orElse("");
+		}
+
+		@Override
+		public boolean cancel(boolean mayInterruptIfRunning) {
+			boolean cancelled = super.cancel(mayInterruptIfRunning);
+			if (cancelled)
+				dequeue(this);
+			return cancelled;
+		}
+
+	}
+
+	/**
+	 * Wrap a query to publish its deadline to the database calls, and to record its queue and execution time.
+	 */
+	private static <T> Callable<T> timed(QueryType queryType, Callable<T> query, Long deadline) {
+		long submitTime = System.currentTimeMillis();
+		return () -> {
+			long startTime = System.currentTimeMillis();
+			QueryUtil.setDeadline(deadline);
+			try {
+				return query.call();
+			} finally {
+				QueryUtil.clearDeadline();
+				MetricsUtil.recordQuery(queryType, startTime - submitTime, System.currentTimeMillis() - startTime);
+			}
+		};
+	}
+
+}
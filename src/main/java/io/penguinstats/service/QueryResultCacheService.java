@@ -0,0 +1,16 @@
+package io.penguinstats.service;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.query.CustomDropMatrixQuery;
+
+public interface QueryResultCacheService {
+
+	List<DropMatrixElement> getIfPresent(CustomDropMatrixQuery query);
+
+	List<DropMatrixElement> get(CustomDropMatrixQuery query, Callable<List<DropMatrixElement>> loader)
+			throws Exception;
+
+}
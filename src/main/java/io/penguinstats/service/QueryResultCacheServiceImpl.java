@@ -0,0 +1,122 @@
+package io.penguinstats.service;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.constant.Constant.CacheName;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.query.CustomDropMatrixQuery;
+import io.penguinstats.util.QueryUtil;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Cache the results of advanced queries, keyed by the canonical form of the query.<br>
+ * A query whose time range ended before {@link #CLOSED_RANGE_LAG} ago reads data which no longer changes, and is kept
+ * in a long-lived cache. A query reaching the current time is kept only until the current matrix is refreshed, and a
+ * personal query lives in its own small cache, because the user can recall reports at any time. The key keeps the end
+ * as it is given: an end in the future counts the same drops as no end, but the elements carry the end, and a trend
+ * has its number of sections computed from it.<br>
+ * Identical queries arriving while one of them is running wait for its result instead of running again, but no
+ * longer than their own deadline from {@link QueryUtil}.
+ */
+@Log4j2
+@Service("queryResultCacheService")
+public class QueryResultCacheServiceImpl implements QueryResultCacheService {
+
+	/** Reports are committed by the write-behind ingestion a while after their timestamps. */
+	private static final long CLOSED_RANGE_LAG = 60000L;
+
+	@Autowired
+	private CacheManager cacheManager;
+
+	private final Map<String, CompletableFuture<List<DropMatrixElement>>> inFlightQueries = new ConcurrentHashMap<>();
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public List<DropMatrixElement> getIfPresent(CustomDropMatrixQuery query) {
+		long currentTime = System.currentTimeMillis();
+		return getCache(query, currentTime).get(getKey(query), List.class);
+	}
+
+	/**
+	 * @Title: get
+	 * @Description: Get the cached result of the query, or load it. The result is cached in result view.
+	 * @param query
+	 * @param loader
+	 * @return List<DropMatrixElement>
+	 * @throws TimeoutException if the identical query in flight is not finished before the deadline of this one
+	 */
+	@Override
+	public List<DropMatrixElement> get(CustomDropMatrixQuery query, Callable<List<DropMatrixElement>> loader)
+			throws Exception {
+		long currentTime = System.currentTimeMillis();
+		Cache cache = getCache(query, currentTime);
+		String key = getKey(query);
+		@SuppressWarnings("unchecked")
+		List<DropMatrixElement> cached = cache.get(key, List.class);
+		if (cached != null)
+			return cached;
+
+		CompletableFuture<List<DropMatrixElement>> future = new CompletableFuture<>();
+		CompletableFuture<List<DropMatrixElement>> inFlight = inFlightQueries.putIfAbsent(key, future);
+		if (inFlight != null) {
+			log.debug("query {} is coalesced with the one in flight", key);
+			Long remainingTime = QueryUtil.getRemainingTime();
+			try {
+				return remainingTime == null ? inFlight.get() : inFlight.get(remainingTime, TimeUnit.MILLISECONDS);
+			} catch (ExecutionException e) {
+				throw e.getCause() instanceof Exception ? (Exception)e.getCause() : e;
+			}
+		}
+		try {
+			List<DropMatrixElement> elements = loader.call();
+			elements.forEach(DropMatrixElement::toResultView);
+			cache.put(key, elements);
+			future.complete(elements);
+			return elements;
+		} catch (Exception e) {
+			future.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlightQueries.remove(key, future);
+		}
+	}
+
+	private Cache getCache(CustomDropMatrixQuery query, long currentTime) {
+		if (query.getUserID() != null)
+			return cacheManager.getCache(CacheName.ADVANCED_QUERY_PERSONAL);
+		return cacheManager.getCache(
+				isClosed(query, currentTime) ? CacheName.ADVANCED_QUERY_CLOSED : CacheName.ADVANCED_QUERY_OPEN);
+	}
+
+	private boolean isClosed(CustomDropMatrixQuery query, long currentTime) {
+		return query.getEnd() != null && query.getEnd() <= currentTime - CLOSED_RANGE_LAG;
+	}
+
+	/**
+	 * type_server_stageId_sortedItemIds_start_end_interval_userID, where a null item list is '*', a null start is 0
+	 * and a null end is 'now'.
+	 */
+	private String getKey(CustomDropMatrixQuery query) {
+		String itemIds = query.getItemIds() == null ? "*"
+				: query.getItemIds().stream().distinct().sorted().collect(Collectors.joining(","));
+		return query.getQueryType() + "_" + query.getServer() + "_" + query.getStageId() + "_" + itemIds + "_"
+				+ Optional.ofNullable(query.getStart()).orElse(0L) + "_"
+				+ Optional.ofNullable(query.getEnd()).map(String::valueOf).orElse("now") + "_"
+				+ query.getInterval() + "_"
+				+ Optional.ofNullable(query.getUserID()).orElse("");
+	}
+
+}
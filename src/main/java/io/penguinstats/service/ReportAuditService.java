@@ -0,0 +1,12 @@
+package io.penguinstats.service;
+
+import java.util.List;
+
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.TypedDrop;
+
+public interface ReportAuditService {
+
+	void record(ItemDrop itemDrop, List<TypedDrop> typedDrops);
+
+}
@@ -0,0 +1,260 @@
+package io.penguinstats.service;
+
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.TypedDrop;
+import io.penguinstats.util.MetricsUtil;
+import io.penguinstats.util.RingBuffer;
+import lombok.AllArgsConstructor;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The audit log of accepted reports, one compact JSON line per report in rolling local files.<br>
+ * A request thread only samples the report and puts a reference to it into a {@link RingBuffer}. The writer thread
+ * serializes and writes the records in batches. When the ring is full, the record is dropped rather than slowing down
+ * the request. The files are rolled at <b>maxFileSize</b> bytes, and only the latest <b>maxFiles</b> are kept.
+ */
+@Log4j2
+@Service("reportAuditService")
+public class ReportAuditServiceImpl implements ReportAuditService {
+
+	private static final String FILE_PREFIX = "report-audit-";
+	private static final String FILE_SUFFIX = ".log";
+	private static final int BATCH_SIZE = 1024;
+	private static final long IDLE_WAIT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+	private static final long SHUTDOWN_WAIT_MILLIS = 10000L;
+
+	@Value("${penguinstats.report.audit-dir:report-audit}")
+	private String auditDir;
+
+	@Value("${penguinstats.report.audit-sample-rate:1.0}")
+	private double sampleRate;
+
+	@Value("${penguinstats.report.audit-buffer-size:8192}")
+	private int bufferSize;
+
+	@Value("${penguinstats.report.audit-max-file-size:67108864}")
+	private long maxFileSize;
+
+	@Value("${penguinstats.report.audit-max-files:10}")
+	private int maxFiles;
+
+	private final JsonFactory jsonFactory = new JsonFactory();
+
+	private RingBuffer<AuditRecord> ringBuffer;
+
+	private Path directory;
+
+	/** accessed by the writer thread only, which also closes it when it stops */
+	private OutputStream activeStream;
+
+	/** accessed by the writer thread only */
+	private long activeSize;
+
+	private volatile boolean running = false;
+
+	private Thread writerThread;
+
+	@PostConstruct
+	public void init() throws IOException {
+		jsonFactory.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+		directory = Paths.get(auditDir);
+		Files.createDirectories(directory);
+		ringBuffer = new RingBuffer<>(bufferSize);
+		running = true;
+		writerThread = new Thread(this::runWriter, "report-audit-writer");
+		writerThread.setDaemon(true);
+		writerThread.start();
+	}
+
+	@PreDestroy
+	public void destroy() throws InterruptedException {
+		running = false;
+		LockSupport.unpark(writerThread);
+		// The writer drains the ring and closes the file itself, so the file is never closed under it
+		writerThread.join(SHUTDOWN_WAIT_MILLIS);
+		if (writerThread.isAlive())
+			log.warn("report audit writer is still draining after {} ms, records left are lost", SHUTDOWN_WAIT_MILLIS);
+	}
+
+	/**
+	 * @Title: record
+	 * @Description: Queue an accepted report into the audit log. The drops are the ones in the request, before they
+	 *               are combined by item.
+	 * @param itemDrop
+	 * @param typedDrops
+	 */
+	@Override
+	public void record(ItemDrop itemDrop, List<TypedDrop> typedDrops) {
+		if (sampleRate < 1.0 && ThreadLocalRandom.current().nextDouble() >= sampleRate)
+			return;
+		boolean queued = ringBuffer.offer(new AuditRecord(itemDrop, typedDrops));
+		MetricsUtil.recordAudit(queued);
+	}
+
+	private void runWriter() {
+		while (running) {
+			try {
+				if (writeBatches() == 0)
+					LockSupport.parkNanos(IDLE_WAIT_NANOS);
+			} catch (Exception e) {
+				log.error("Error in report audit writer: ", e);
+				closeActiveFile();
+				LockSupport.parkNanos(IDLE_WAIT_NANOS);
+			}
+		}
+		try {
+			writeBatches();
+		} catch (Exception e) {
+			log.error("Error in writing report audit records on shutdown: ", e);
+		}
+		closeActiveFile();
+	}
+
+	/**
+	 * @Title: writeBatches
+	 * @Description: Write all records in the ring, and flush them to the file.
+	 * @return int The number of records written
+	 * @throws IOException
+	 */
+	private int writeBatches() throws IOException {
+		int total = 0;
+		List<AuditRecord> batch = new ArrayList<>();
+		while (ringBuffer.drain(batch::add, BATCH_SIZE) > 0) {
+			for (AuditRecord record : batch)
+				write(record);
+			total += batch.size();
+			batch.clear();
+		}
+		if (total > 0)
+			activeStream.flush();
+		return total;
+	}
+
+	private void write(AuditRecord record) throws IOException {
+		if (activeStream == null || activeSize >= maxFileSize)
+			rollFile();
+		ItemDrop itemDrop = record.itemDrop;
+		CountingOutputStream out = new CountingOutputStream(activeStream);
+		try (JsonGenerator generator = jsonFactory.createGenerator(out, JsonEncoding.UTF8)) {
+			generator.writeStartObject();
+			if (itemDrop.getTimestamp() != null)
+				generator.writeNumberField("timestamp", itemDrop.getTimestamp());
+			generator.writeStringField("id", itemDrop.getId() != null ? itemDrop.getId().toHexString() : null);
+			generator.writeStringField("userID", itemDrop.getUserID());
+			generator.writeStringField("ip", itemDrop.getIp());
+			generator.writeStringField("server", itemDrop.getServer() != null ? itemDrop.getServer().name() : null);
+			generator.writeStringField("stageId", itemDrop.getStageId());
+			if (itemDrop.getTimes() != null)
+				generator.writeNumberField("times", itemDrop.getTimes());
+			generator.writeBooleanField("isReliable", Boolean.TRUE.equals(itemDrop.getIsReliable()));
+			generator.writeStringField("source", itemDrop.getSource());
+			generator.writeStringField("version", itemDrop.getVersion());
+			generator.writeArrayFieldStart("drops");
+			if (record.typedDrops != null) {
+				for (TypedDrop drop : record.typedDrops) {
+					generator.writeStartObject();
+					generator.writeStringField("dropType",
+							drop.getDropType() != null ? drop.getDropType().name() : null);
+					generator.writeStringField("itemId", drop.getItemId());
+					if (drop.getQuantity() != null)
+						generator.writeNumberField("quantity", drop.getQuantity());
+					generator.writeEndObject();
+				}
+			}
+			generator.writeEndArray();
+			generator.writeEndObject();
+		}
+		out.write('\n');
+		activeSize += out.count;
+	}
+
+	private void rollFile() throws IOException {
+		closeActiveFile();
+		String name = FILE_PREFIX + new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date()) + FILE_SUFFIX;
+		activeStream = new BufferedOutputStream(Files.newOutputStream(directory.resolve(name),
+				StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND));
+		activeSize = 0L;
+		deleteOldFiles();
+	}
+
+	private void closeActiveFile() {
+		if (activeStream == null)
+			return;
+		try {
+			activeStream.close();
+		} catch (IOException e) {
+			log.error("Error in closing report audit file: ", e);
+		}
+		activeStream = null;
+	}
+
+	private void deleteOldFiles() throws IOException {
+		List<Path> files = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, FILE_PREFIX + "*" + FILE_SUFFIX)) {
+			stream.forEach(files::add);
+		}
+		files.sort(null);
+		for (int i = 0; i < files.size() - maxFiles; i++)
+			Files.deleteIfExists(files.get(i));
+	}
+
+	@AllArgsConstructor
+	private static class AuditRecord {
+
+		private final ItemDrop itemDrop;
+
+		private final List<TypedDrop> typedDrops;
+
+	}
+
+	private static class CountingOutputStream extends OutputStream {
+
+		private final OutputStream target;
+
+		private long count = 0L;
+
+		private CountingOutputStream(OutputStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			target.write(b);
+			count++;
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			target.write(b, off, len);
+			count += len;
+		}
+
+	}
+
+}
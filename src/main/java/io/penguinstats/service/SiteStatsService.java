@@ -0,0 +1,27 @@
+package io.penguinstats.service;
+
+import java.util.List;
+import java.util.Map;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ItemDrop;
+
+public interface SiteStatsService {
+
+	void updateSiteStats();
+
+	void applySavedItemDrops(List<ItemDrop> itemDrops);
+
+	void applyDeletedItemDrops(List<ItemDrop> itemDrops);
+
+	boolean isReady();
+
+	Map<String, Integer> getStageTimesMap(Server server);
+
+	Map<String, Integer> getLastDayStageTimesMap(Server server);
+
+	Map<String, Integer> getItemQuantitiesMap(Server server);
+
+	Long getLastUpdateTime(Server server);
+
+}
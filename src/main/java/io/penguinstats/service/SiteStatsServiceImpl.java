@@ -0,0 +1,287 @@
+package io.penguinstats.service;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.Collectors;
+
+import javax.annotation.PreDestroy;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+
+import io.penguinstats.dao.ItemDropDao;
+import io.penguinstats.dao.SiteStatsCheckpointDao;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.ItemDrop;
+import io.penguinstats.model.QueryConditions;
+import io.penguinstats.model.SiteStatsCheckpoint;
+import io.penguinstats.util.SlidingWindowCounter;
+import io.penguinstats.util.snapshot.DeletionTracker;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Maintain live site statistics of every server: all-time stage times and item quantities, and the stage times in
+ * the last 24 hours.<br>
+ * Counters are changed on the ingest path by the drops which are saved, deleted or recalled. The all-time counters are
+ * saved as checkpoints every minute. On startup, they are loaded from the checkpoints, and only the drops after the
+ * checkpoints and in the last 24 hours are read from Mongo. Without any checkpoint, all drops are counted once.<br>
+ * Drops saved while counters are being loaded are queued and applied afterwards, unless they are older than the
+ * loading, since they have already been read. Drops deleted meanwhile go to a {@link DeletionTracker}, and are only
+ * subtracted from the counters which have counted them: the loaded ones if the stream had passed them, the queued
+ * ones if they are newer than the loading, and the all-time ones if they are before the checkpoint.
+ */
+@Log4j2
+@Service("siteStatsService")
+public class SiteStatsServiceImpl implements SiteStatsService {
+
+	private static final long LAST_DAY = 86400000L;
+
+	@Autowired
+	private ItemDropDao itemDropDao;
+
+	@Autowired
+	private SiteStatsCheckpointDao siteStatsCheckpointDao;
+
+	private final Map<Server, SiteStats> statsByServer = new EnumMap<>(Server.class);
+
+	/**
+	 * Counting drops takes the read lock, while loading and saving counters take the write lock.
+	 */
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	private final Queue<List<ItemDrop>> pendingItemDrops = new ConcurrentLinkedQueue<>();
+
+	/** drops deleted before the counters are ready, replaced by each attempt of loading them */
+	private volatile DeletionTracker loadTracker = new DeletionTracker();
+
+	private volatile boolean ready = false;
+
+	public SiteStatsServiceImpl() {
+		for (Server server : Server.values())
+			statsByServer.put(server, new SiteStats());
+	}
+
+	@PreDestroy
+	public void destroy() {
+		if (ready)
+			saveCheckpoints();
+	}
+
+	/**
+	 * @Title: updateSiteStats
+	 * @Description: Load the counters if they are not ready, or save them as checkpoints.
+	 */
+	@Override
+	public void updateSiteStats() {
+		if (ready)
+			saveCheckpoints();
+		else
+			loadCounters();
+	}
+
+	@Override
+	public void applySavedItemDrops(List<ItemDrop> itemDrops) {
+		apply(itemDrops, 1);
+	}
+
+	@Override
+	public void applyDeletedItemDrops(List<ItemDrop> itemDrops) {
+		apply(itemDrops, -1);
+	}
+
+	@Override
+	public boolean isReady() {
+		return ready;
+	}
+
+	@Override
+	public Map<String, Integer> getStageTimesMap(Server server) {
+		return toIntegerMap(statsByServer.get(server).stageTimes);
+	}
+
+	@Override
+	public Map<String, Integer> getLastDayStageTimesMap(Server server) {
+		return toIntegerMap(statsByServer.get(server).lastDayStageTimes.sum(System.currentTimeMillis()));
+	}
+
+	@Override
+	public Map<String, Integer> getItemQuantitiesMap(Server server) {
+		return toIntegerMap(statsByServer.get(server).itemQuantities);
+	}
+
+	@Override
+	public Long getLastUpdateTime(Server server) {
+		return statsByServer.get(server).lastUpdateTime;
+	}
+
+	private void loadCounters() {
+		Long startTime = System.currentTimeMillis();
+		long lastDayStart = startTime - LAST_DAY;
+		// A failed attempt may have streamed some drops, but none of them have been kept
+		DeletionTracker tracker = new DeletionTracker();
+		lock.writeLock().lock();
+		try {
+			loadTracker.getDeletedItemDrops().forEach(tracker::delete);
+			loadTracker = tracker;
+		} finally {
+			lock.writeLock().unlock();
+		}
+
+		Map<Server, SiteStats> loaded = new EnumMap<>(Server.class);
+		Map<Server, Long> highWaterMarks = new EnumMap<>(Server.class);
+		long firstTime = lastDayStart;
+		for (Server server : Server.values()) {
+			SiteStatsCheckpoint checkpoint = siteStatsCheckpointDao.findById(server.name()).orElse(null);
+			SiteStats stats = new SiteStats();
+			loaded.put(server, stats);
+			long highWaterMark = 0L;
+			if (checkpoint != null) {
+				highWaterMark = checkpoint.getHighWaterMark();
+				stats.stageTimes.putAll(checkpoint.getStageTimes());
+				stats.itemQuantities.putAll(checkpoint.getItemQuantities());
+			}
+			highWaterMarks.put(server, highWaterMark);
+			firstTime = Math.min(firstTime, highWaterMark);
+		}
+
+		itemDropDao.streamItemDropsByTimestamp(new QueryConditions().addStage(null, firstTime, startTime), doc -> {
+			long timestamp = ((Number)doc.get("timestamp")).longValue();
+			String serverName = doc.getString("server");
+			if (!tracker.accept(doc.getObjectId("_id"), timestamp) || serverName == null)
+				return;
+			Server server = Server.valueOf(serverName);
+			if (timestamp >= highWaterMarks.get(server))
+				countAllTime(loaded.get(server), doc);
+			if (timestamp >= lastDayStart) {
+				loaded.get(server).lastDayStageTimes.add(doc.getString("stageId"), timestamp,
+						((Number)doc.get("times")).longValue(), startTime);
+			}
+		});
+
+		lock.writeLock().lock();
+		try {
+			statsByServer.putAll(loaded);
+			Long currentTime = System.currentTimeMillis();
+			List<ItemDrop> pending;
+			while ((pending = pendingItemDrops.poll()) != null) {
+				for (ItemDrop itemDrop : pending) {
+					if (itemDrop.getTimestamp() >= startTime)
+						apply(itemDrop, 1, currentTime);
+				}
+			}
+			List<ItemDrop> countedItemDrops = tracker.getCountedItemDrops();
+			Set<ObjectId> countedIds = countedItemDrops.stream().map(ItemDrop::getId).collect(Collectors.toSet());
+			countedItemDrops.forEach(itemDrop -> apply(itemDrop, -1, currentTime));
+			for (ItemDrop itemDrop : tracker.getDeletedItemDrops()) {
+				if (countedIds.contains(itemDrop.getId()) || itemDrop.getServer() == null)
+					continue;
+				if (itemDrop.getTimestamp() >= startTime)
+					apply(itemDrop, -1, currentTime);
+				else if (itemDrop.getTimestamp() < highWaterMarks.get(itemDrop.getServer()))
+					applyAllTime(itemDrop, -1);
+			}
+			statsByServer.values().forEach(stats -> stats.lastUpdateTime = currentTime);
+			ready = true;
+			loadTracker = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+		log.info("site stats are loaded in {} ms", System.currentTimeMillis() - startTime);
+	}
+
+	private void saveCheckpoints() {
+		List<SiteStatsCheckpoint> checkpoints = new ArrayList<>();
+		lock.writeLock().lock();
+		try {
+			Long highWaterMark = System.currentTimeMillis();
+			statsByServer.forEach((server, stats) -> checkpoints.add(new SiteStatsCheckpoint(server.name(), server,
+					highWaterMark, new HashMap<>(stats.stageTimes), new HashMap<>(stats.itemQuantities),
+					highWaterMark)));
+		} finally {
+			lock.writeLock().unlock();
+		}
+		siteStatsCheckpointDao.saveAll(checkpoints);
+	}
+
+	private void apply(List<ItemDrop> itemDrops, int sign) {
+		lock.readLock().lock();
+		try {
+			if (!ready) {
+				if (sign > 0)
+					pendingItemDrops.add(itemDrops);
+				else
+					itemDrops.forEach(loadTracker::delete);
+				return;
+			}
+			Long currentTime = System.currentTimeMillis();
+			itemDrops.forEach(itemDrop -> apply(itemDrop, sign, currentTime));
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	private void apply(ItemDrop itemDrop, int sign, long currentTime) {
+		if (!applyAllTime(itemDrop, sign))
+			return;
+		SiteStats stats = statsByServer.get(itemDrop.getServer());
+		stats.lastDayStageTimes.add(itemDrop.getStageId(), itemDrop.getTimestamp(), (long)itemDrop.getTimes() * sign,
+				currentTime);
+		stats.lastUpdateTime = currentTime;
+	}
+
+	/**
+	 * Change the all-time counters only. False if the drop is not counted at all.
+	 */
+	private boolean applyAllTime(ItemDrop itemDrop, int sign) {
+		if (!Boolean.TRUE.equals(itemDrop.getIsReliable()) || itemDrop.getServer() == null)
+			return false;
+		SiteStats stats = statsByServer.get(itemDrop.getServer());
+		stats.stageTimes.merge(itemDrop.getStageId(), (long)itemDrop.getTimes() * sign, Long::sum);
+		if (itemDrop.getDrops() != null) {
+			itemDrop.getDrops().forEach(
+					drop -> stats.itemQuantities.merge(drop.getItemId(), (long)drop.getQuantity() * sign, Long::sum));
+		}
+		return true;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static void countAllTime(SiteStats stats, Document doc) {
+		stats.stageTimes.merge(doc.getString("stageId"), ((Number)doc.get("times")).longValue(), Long::sum);
+		List<Document> drops = (List<Document>)doc.get("drops");
+		if (drops == null)
+			return;
+		for (Document drop : drops)
+			stats.itemQuantities.merge(drop.getString("itemId"), ((Number)drop.get("quantity")).longValue(),
+					Long::sum);
+	}
+
+	private static Map<String, Integer> toIntegerMap(Map<String, Long> map) {
+		Map<String, Integer> result = new HashMap<>();
+		map.forEach((key, value) -> {
+			if (value != 0L)
+				result.put(key, value.intValue());
+		});
+		return result;
+	}
+
+	private static class SiteStats {
+
+		private final Map<String, Long> stageTimes = new ConcurrentHashMap<>();
+		private final Map<String, Long> itemQuantities = new ConcurrentHashMap<>();
+		private final SlidingWindowCounter lastDayStageTimes = new SlidingWindowCounter(LAST_DAY);
+		private volatile Long lastUpdateTime = null;
+
+	}
+
+}
@@ -4,17 +4,13 @@ import java.util.List;
 import java.util.Map;
 
 import org.javatuples.Pair;
-import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
-import org.springframework.cache.annotation.Caching;
 
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.TimeRange;
 
 public interface TimeRangeService {
 
-	@Caching(evict = {@CacheEvict(value = "lists", key = "'timeRangeList'"),
-			@CacheEvict(value = "maps", key = "'timeRangeMap'")})
 	void saveTimeRange(TimeRange timeRange);
 
 	TimeRange getTimeRangeByRangeID(String rangeID);
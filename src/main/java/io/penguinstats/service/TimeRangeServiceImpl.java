@@ -13,6 +13,8 @@ import java.util.stream.Collectors;
 
 import org.javatuples.Pair;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 
@@ -31,11 +33,30 @@ public class TimeRangeServiceImpl implements TimeRangeService {
 	@Autowired
 	private DropInfoService dropInfoService;
 	@Autowired
+	private DropInfoCacheService dropInfoCacheService;
+	@Autowired
+	private DropInfoIndexService dropInfoIndexService;
+	@Autowired
 	private ApplicationContext applicationContext;
+	@Autowired
+	private CacheManager cacheManager;
 
+	/** 
+	 * @Title: saveTimeRange 
+	 * @Description: Save a time range. The cached time ranges are evicted before the caches of DropInfoCacheService
+	 *               are invalidated, so that they are not rebuilt from the stale ones.
+	 * @param timeRange
+	 */
 	@Override
 	public void saveTimeRange(TimeRange timeRange) {
 		timeRangeDao.save(timeRange);
+		Cache lists = cacheManager.getCache("lists");
+		if (lists != null)
+			lists.evict("timeRangeList");
+		Cache maps = cacheManager.getCache("maps");
+		if (maps != null)
+			maps.evict("timeRangeMap");
+		dropInfoCacheService.invalidate();
 	}
 
 	@Override
@@ -155,13 +176,21 @@ public class TimeRangeServiceImpl implements TimeRangeService {
 		return result;
 	}
 
+	/** 
+	 * @Title: getSplittedTimeRanges 
+	 * @Description: Get the distinct time ranges of the stage's drop infos, cut by the given period. The ranges
+	 *               overlapping the period are found by a range query on the drop info index.
+	 * @param server
+	 * @param stageId
+	 * @param start
+	 * @param end
+	 * @return List<TimeRange>
+	 */
 	@Override
 	public List<TimeRange> getSplittedTimeRanges(Server server, String stageId, Long start, Long end) {
-		Map<String, TimeRange> timeRangeMap = getSpringProxy().getTimeRangeMap();
-		List<DropInfo> infos = dropInfoService.getDropInfosByServerAndStageId(server, stageId);
 		TimeRange givenTimeRange = new TimeRange(start, end);
-		return infos.stream().map(info -> timeRangeMap.get(info.getTimeRangeID())).filter(range -> range != null)
-				.distinct().map(range -> range.intersection(givenTimeRange)).filter(range -> range != null)
+		return dropInfoIndexService.getIndex(server).getTimeRanges(stageId, start, end).stream()
+				.map(range -> range.intersection(givenTimeRange)).filter(range -> range != null)
 				.collect(Collectors.toList());
 	}
 
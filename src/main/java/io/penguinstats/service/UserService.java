@@ -13,13 +13,14 @@ public interface UserService {
 	@Cacheable(value = "user", key = "'user_' + #userID", unless = "#result == null")
 	User getUserByUserID(String userID);
 
-	String createNewUser(String ip);
+	User createNewUser(String ip);
 
 	String createNewUser(String userID, String ip);
 
-	@CacheEvict(value = "user", key = "'user_' + #userID")
 	void addIP(String userID, String ip);
 
+	void flushIPs();
+
 	@CacheEvict(value = "user", key = "'user_' + #userID")
 	void addTag(String userID, String tag);
 
@@ -2,10 +2,20 @@ package io.penguinstats.service;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
 import org.springframework.data.mongodb.core.MongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -18,6 +28,11 @@ import io.penguinstats.model.User;
 import io.penguinstats.util.exception.DatabaseException;
 import lombok.extern.log4j.Log4j2;
 
+/**
+ * New IPs of existing users are not written by the requests which find them. They are coalesced per user and added in
+ * one bulk write by {@link #flushIPs()}, which then evicts the cached users, so that an IP is queued again until the
+ * next flush at most.
+ */
 @Log4j2
 @Service("userService")
 public class UserServiceImpl implements UserService {
@@ -31,6 +46,24 @@ public class UserServiceImpl implements UserService {
 	@Autowired
 	private MongoTemplate mongoTemplate;
 
+	@Autowired
+	private CacheManager cacheManager;
+
+	/**
+	 * userID -> IPs waiting to be added. A set is only modified inside compute, and never again once it is removed.
+	 */
+	private final Map<String, Set<String>> pendingIPs = new ConcurrentHashMap<>();
+
+	@PostConstruct
+	public void init() {
+		userDao.ensureUserIDIndex();
+	}
+
+	@PreDestroy
+	public void destroy() {
+		flushIPs();
+	}
+
 	@Override
 	public void saveUser(User user) {
 		userDao.save(user);
@@ -43,27 +76,23 @@ public class UserServiceImpl implements UserService {
 
 	/**
 	 * @Title: createNewUser
-	 * @Description: Create a new user with random userID.
+	 * @Description: Create a new user with random userID. Each try is one conditional insert, which only fails if the
+	 *               userID is taken.
 	 * @param ip Initial IP
-	 * @return String Newly-created userID. If MAX_RETRY_TIME is exceeded, null will be returned and no new user was
+	 * @return User Newly-created user. If MAX_RETRY_TIME is exceeded, DatabaseException is thrown and no new user was
 	 *         created.
 	 */
 	@Override
-	public String createNewUser(String ip) {
-		String userID = generateUserID();
-		int times = 0;
-		while (times < MAX_RETRY_TIME) {
-			userID = generateUserID();
-			if (getUserByUserID(userID) == null)
-				break;
-			times++;
+	public User createNewUser(String ip) {
+		for (int times = 0; times < MAX_RETRY_TIME; times++) {
+			User user = newUser(generateUserID(), ip);
+			if (userDao.insertIfAbsent(user)) {
+				log.info("new user " + user.getUserID() + " is created");
+				return user;
+			}
 		}
-		if (times == MAX_RETRY_TIME) {
-			log.error("Failed to create new user.");
-			throw new DatabaseException(ErrorCode.CANNOT_CREATE_USER, "Failed to create new user.", Optional.empty());
-		}
-
-		return createNewUser(userID, ip);
+		log.error("Failed to create new user.");
+		throw new DatabaseException(ErrorCode.CANNOT_CREATE_USER, "Failed to create new user.", Optional.empty());
 	}
 
 	/** 
@@ -71,29 +100,59 @@ public class UserServiceImpl implements UserService {
 	 * @Description: Create a new user with indicated userID.
 	 * @param userID
 	 * @param ip
-	 * @return String
+	 * @return String The userID. If it is taken, e.g. by a concurrent login, the existing user is kept.
 	 */
 	@Override
 	public String createNewUser(String userID, String ip) {
-		saveUser(new User(null, userID, 1.0, new ArrayList<>(), ip != null ? Arrays.asList(ip) : new ArrayList<>(),
-				null, System.currentTimeMillis(), null, null));
+		if (!userDao.insertIfAbsent(newUser(userID, ip))) {
+			log.warn("user " + userID + " already exists");
+			return userID;
+		}
 		log.info("new user " + userID + " is created");
 		return userID;
 	}
 
 	/**
 	 * @Title: addIP
-	 * @Description: Add IP to ips field of an existing user if IP is not in it.
+	 * @Description: Queue an IP to be added to ips field of an existing user if IP is not in it.
 	 * @param userID
 	 * @param ip
 	 * @return void
 	 */
 	@Override
 	public void addIP(String userID, String ip) {
-		Query query = new Query(Criteria.where("userID").is(userID));
-		Update update = new Update();
-		update.addToSet("ips", ip);
-		mongoTemplate.updateFirst(query, update, User.class);
+		pendingIPs.compute(userID, (k, ips) -> {
+			Set<String> result = ips != null ? ips : new HashSet<>();
+			result.add(ip);
+			return result;
+		});
+	}
+
+	/**
+	 * @Title: flushIPs
+	 * @Description: Add the queued IPs in one bulk write. If it fails, the IPs are dropped, and queued again by the
+	 *               next requests of their users.
+	 */
+	@Override
+	public void flushIPs() {
+		Map<String, Set<String>> ipsByUserID = new HashMap<>();
+		for (String userID : pendingIPs.keySet()) {
+			Set<String> ips = pendingIPs.remove(userID);
+			if (ips != null)
+				ipsByUserID.put(userID, ips);
+		}
+		if (ipsByUserID.isEmpty())
+			return;
+
+		try {
+			userDao.addIPs(ipsByUserID);
+			log.debug("Added IPs to {} users", ipsByUserID.size());
+		} catch (Exception e) {
+			log.error("Failed to add IPs to " + ipsByUserID.size() + " users", e);
+		}
+		Cache cache = cacheManager.getCache("user");
+		if (cache != null)
+			ipsByUserID.keySet().forEach(userID -> cache.evict("user_" + userID));
 	}
 
 	/** 
@@ -111,6 +170,11 @@ public class UserServiceImpl implements UserService {
 		mongoTemplate.updateFirst(query, update, User.class);
 	}
 
+	private User newUser(String userID, String ip) {
+		return new User(null, userID, 1.0, new ArrayList<>(), ip != null ? Arrays.asList(ip) : new ArrayList<>(), null,
+				System.currentTimeMillis(), null, null);
+	}
+
 	/**
 	 * @Title: generateUserID
 	 * @Description: Generate a userID. UserID now is a string of 8-digit integer.
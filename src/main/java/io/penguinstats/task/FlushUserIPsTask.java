@@ -0,0 +1,29 @@
+package io.penguinstats.task;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.penguinstats.service.UserService;
+import io.penguinstats.util.TaskRunner;
+import lombok.extern.log4j.Log4j2;
+
+@Log4j2
+@Component
+public class FlushUserIPsTask implements Task {
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private TaskRunner taskRunner;
+
+	@Scheduled(fixedRate = 10000, initialDelay = 10000)
+	@Override
+	public void execute() {
+		log.debug("execute FlushUserIPsTask");
+
+		taskRunner.run("FlushUserIPsTask", () -> userService.flushIPs());
+	}
+
+}
@@ -1,17 +1,15 @@
 package io.penguinstats.task;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Arrays;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
-import io.penguinstats.enums.DropMatrixElementType;
 import io.penguinstats.enums.Server;
-import io.penguinstats.model.DropMatrixElement;
-import io.penguinstats.service.DropMatrixElementService;
+import io.penguinstats.service.IncrementalDropMatrixService;
+import io.penguinstats.service.MatrixResponseService;
+import io.penguinstats.util.TaskRunner;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -19,22 +17,29 @@ import lombok.extern.log4j.Log4j2;
 public class UpdateCurrentDropMatrixTask implements Task {
 
 	@Autowired
-	private DropMatrixElementService dropMatrixElementService;
+	private IncrementalDropMatrixService incrementalDropMatrixService;
 
-	@Scheduled(fixedRate = 900000, initialDelay = 600000)
+	@Autowired
+	private TaskRunner taskRunner;
+
+	@Autowired
+	private MatrixResponseService matrixResponseService;
+
+	/**
+	 * Only new drops since the last run are applied. A full re-aggregation is done by the service when
+	 * reconciliation is needed.
+	 */
+	@Scheduled(fixedRate = 30000, initialDelay = 60000)
 	@Override
 	public void execute() {
-		log.info("execute UpdateCurrentDropMatrixTask");
-
-		ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-		for (Server server : Server.values()) {
-			singleThreadExecutor.execute(() -> {
-				List<DropMatrixElement> elements =
-						dropMatrixElementService.generateGlobalDropMatrixElements(server, null, false);
-				dropMatrixElementService.batchDelete(DropMatrixElementType.REGULAR, server, false);
-				dropMatrixElementService.batchSave(elements);
+		log.debug("execute UpdateCurrentDropMatrixTask");
+
+		taskRunner.run("UpdateCurrentDropMatrixTask", () -> {
+			taskRunner.forEach(Arrays.asList(Server.values()), server -> {
+				incrementalDropMatrixService.updateCurrentDropMatrixElements(server);
+				matrixResponseService.refreshRenderedMatrix(server);
 			});
-		}
+		});
 	}
 
 }
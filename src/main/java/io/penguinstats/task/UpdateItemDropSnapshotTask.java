@@ -0,0 +1,30 @@
+package io.penguinstats.task;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.penguinstats.service.ItemDropSnapshotService;
+import io.penguinstats.util.TaskRunner;
+import lombok.extern.log4j.Log4j2;
+
+@Log4j2
+@Component
+public class UpdateItemDropSnapshotTask implements Task {
+
+	@Autowired
+	private ItemDropSnapshotService itemDropSnapshotService;
+
+	@Autowired
+	private TaskRunner taskRunner;
+
+	@Scheduled(fixedRate = 60000, initialDelay = 120000)
+	@Override
+	public void execute() {
+		log.debug("execute UpdateItemDropSnapshotTask");
+
+		taskRunner.run("UpdateItemDropSnapshotTask", () -> itemDropSnapshotService.updateSnapshot());
+	}
+
+}
@@ -1,8 +1,7 @@
 package io.penguinstats.task;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -12,6 +11,8 @@ import io.penguinstats.enums.DropMatrixElementType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.DropMatrixElement;
 import io.penguinstats.service.DropMatrixElementService;
+import io.penguinstats.service.MatrixResponseService;
+import io.penguinstats.util.TaskRunner;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -21,20 +22,25 @@ public class UpdatePastDropMatrixTask implements Task {
 	@Autowired
 	private DropMatrixElementService dropMatrixElementService;
 
+	@Autowired
+	private TaskRunner taskRunner;
+
+	@Autowired
+	private MatrixResponseService matrixResponseService;
+
 	@Scheduled(fixedRate = 43200000, initialDelay = 900000)
 	@Override
 	public void execute() {
 		log.info("execute UpdatePastDropMatrixTask");
 
-		ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-		for (Server server : Server.values()) {
-			singleThreadExecutor.execute(() -> {
+		taskRunner.run("UpdatePastDropMatrixTask", () -> {
+			taskRunner.forEach(Arrays.asList(Server.values()), server -> {
 				List<DropMatrixElement> elements =
 						dropMatrixElementService.generateGlobalDropMatrixElements(server, null, true);
-				dropMatrixElementService.batchDelete(DropMatrixElementType.REGULAR, server, true);
-				dropMatrixElementService.batchSave(elements);
+				dropMatrixElementService.replaceGlobalElements(DropMatrixElementType.REGULAR, server, true, elements);
+				matrixResponseService.refreshRenderedMatrix(server);
 			});
-		}
+		});
 	}
 
 }
@@ -1,16 +1,14 @@
 package io.penguinstats.task;
 
-import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.Arrays;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Component;
 
 import io.penguinstats.enums.Server;
-import io.penguinstats.model.PatternMatrixElement;
-import io.penguinstats.service.PatternMatrixElementService;
+import io.penguinstats.service.IncrementalPatternMatrixService;
+import io.penguinstats.util.TaskRunner;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -18,22 +16,24 @@ import lombok.extern.log4j.Log4j2;
 public class UpdatePatternMatrixTask implements Task {
 
 	@Autowired
-	private PatternMatrixElementService patternMatrixElementService;
+	private IncrementalPatternMatrixService incrementalPatternMatrixService;
 
-	@Scheduled(fixedRate = 900000, initialDelay = 1200000)
+	@Autowired
+	private TaskRunner taskRunner;
+
+	/**
+	 * Only new drops since the last run are counted. A full aggregation is done by the service when reconciliation is
+	 * needed.
+	 */
+	@Scheduled(fixedRate = 60000, initialDelay = 120000)
 	@Override
 	public void execute() {
-		log.info("execute UpdatePatternMatrixTask");
-
-		ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-		for (Server server : Server.values()) {
-			singleThreadExecutor.execute(() -> {
-				List<PatternMatrixElement> elements =
-						patternMatrixElementService.generateGlobalPatternMatrixElements(server, null);
-				patternMatrixElementService.batchDelete(server);
-				patternMatrixElementService.batchSave(elements);
-			});
-		}
+		log.debug("execute UpdatePatternMatrixTask");
+
+		taskRunner.run("UpdatePatternMatrixTask", () -> {
+			taskRunner.forEach(Arrays.asList(Server.values()),
+					server -> incrementalPatternMatrixService.updateGlobalPatternMatrixElements(server));
+		});
 	}
 
 }
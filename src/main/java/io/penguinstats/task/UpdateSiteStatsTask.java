@@ -0,0 +1,30 @@
+package io.penguinstats.task;
+
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.stereotype.Component;
+
+import io.penguinstats.service.SiteStatsService;
+import io.penguinstats.util.TaskRunner;
+import lombok.extern.log4j.Log4j2;
+
+@Log4j2
+@Component
+public class UpdateSiteStatsTask implements Task {
+
+	@Autowired
+	private SiteStatsService siteStatsService;
+
+	@Autowired
+	private TaskRunner taskRunner;
+
+	@Scheduled(fixedRate = 60000, initialDelay = 0)
+	@Override
+	public void execute() {
+		log.debug("execute UpdateSiteStatsTask");
+
+		taskRunner.run("UpdateSiteStatsTask", () -> siteStatsService.updateSiteStats());
+	}
+
+}
@@ -1,8 +1,7 @@
 package io.penguinstats.task;
 
+import java.util.Arrays;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.scheduling.annotation.Scheduled;
@@ -12,6 +11,7 @@ import io.penguinstats.enums.DropMatrixElementType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.DropMatrixElement;
 import io.penguinstats.service.DropMatrixElementService;
+import io.penguinstats.util.TaskRunner;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -21,20 +21,21 @@ public class UpdateTrendTask implements Task {
 	@Autowired
 	private DropMatrixElementService dropMatrixElementService;
 
+	@Autowired
+	private TaskRunner taskRunner;
+
 	@Scheduled(fixedRate = 86400000, initialDelay = 300000)
 	@Override
 	public void execute() {
 		log.info("execute UpdateTrendTask");
 
-		ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-		for (Server server : Server.values()) {
-			singleThreadExecutor.execute(() -> {
+		taskRunner.run("UpdateTrendTask", () -> {
+			taskRunner.forEach(Arrays.asList(Server.values()), server -> {
 				List<DropMatrixElement> elements =
 						dropMatrixElementService.generateDefaultSegmentedGlobalDropMatrixElements(server);
-				dropMatrixElementService.batchDelete(DropMatrixElementType.TREND, server, null);
-				dropMatrixElementService.batchSave(elements);
+				dropMatrixElementService.replaceGlobalElements(DropMatrixElementType.TREND, server, null, elements);
 			});
-		}
+		});
 	}
 
 }
@@ -17,6 +17,8 @@ import org.springframework.stereotype.Component;
 @Component("cookieUtil")
 public class CookieUtil {
 
+	private static final String USER_ATTRIBUTE = CookieUtil.class.getName() + ".user";
+
 	private static CookieUtil cookieUtil;
 
 	@Autowired
@@ -43,42 +45,69 @@ public class CookieUtil {
 	 * @return String
 	 */
 	public String readUserIDFromCookie(HttpServletRequest request) {
+		User user = readUserFromCookie(request);
+		return user != null ? user.getUserID() : null;
+	}
+
+	/** 
+	 * @Title: readUserFromCookie 
+	 * @Description: Read the user whose userID is in cookies. The user is looked up once per request, and kept in the
+	 *               request as its user context. A new IP of the user is queued to be added.
+	 * @param request
+	 * @return User Null if there is no userID in cookies, or the user does not exist.
+	 */
+	public User readUserFromCookie(HttpServletRequest request) {
+		Object resolved = request.getAttribute(USER_ATTRIBUTE);
+		if (resolved != null)
+			return resolved instanceof User ? (User)resolved : null;
+
+		User user = lookUpUserFromCookie(request);
+		request.setAttribute(USER_ATTRIBUTE, user != null ? user : Boolean.FALSE);
+		return user;
+	}
+
+	/** 
+	 * @Title: setUser 
+	 * @Description: Set the user context of the request, e.g. after the user is created.
+	 * @param request
+	 * @param user
+	 */
+	public static void setUser(HttpServletRequest request, User user) {
+		request.setAttribute(USER_ATTRIBUTE, user);
+	}
+
+	private User lookUpUserFromCookie(HttpServletRequest request) {
 		Cookie[] cookies = request.getCookies();
-		String userID = null;
-		if (cookies != null) {
-			for (Cookie cookie : cookies) {
-				if (cookie.getName().equals("userID")) {
-					userID = cookie.getValue();
-					if (userID != null) {
-						try {
-							userID = URLDecoder.decode(userID, "UTF-8");
-						} catch (UnsupportedEncodingException e) {
-							log.error("Error in getUserIDFromCookies: ", e);
-							userID = null;
-						}
-					}
-					if (userID != null) {
-						User user = userService.getUserByUserID(userID);
-						if (user == null) {
-							log.warn("userID " + userID + " is not existed.");
-							userID = null;
-						} else {
-							// old user
-							String ip = IpUtil.getIpAddr(request);
-							if (ip != null && !user.containsIp(ip)) {
-								log.info("Add ip " + ip + " to user " + userID);
-								userService.addIP(userID, ip);
-							}
-						}
-					} else {
-						// userID == null
-						log.warn("userID's value in the cookie map is null.");
-					}
-					break;
-				}
+		if (cookies == null)
+			return null;
+		for (Cookie cookie : cookies) {
+			if (!cookie.getName().equals("userID"))
+				continue;
+			String userID = cookie.getValue();
+			if (userID == null) {
+				log.warn("userID's value in the cookie map is null.");
+				return null;
+			}
+			try {
+				userID = URLDecoder.decode(userID, "UTF-8");
+			} catch (UnsupportedEncodingException e) {
+				log.error("Error in getUserIDFromCookies: ", e);
+				return null;
+			}
+			User user = userService.getUserByUserID(userID);
+			if (user == null) {
+				log.warn("userID " + userID + " is not existed.");
+				return null;
+			}
+			// old user
+			String ip = IpUtil.getIpAddr(request);
+			if (ip != null && !user.containsIp(ip)) {
+				log.info("Add ip " + ip + " to user " + userID);
+				userService.addIP(userID, ip);
 			}
+			return user;
 		}
-		return userID;
+		return null;
 	}
 
 }
@@ -0,0 +1,118 @@
+package io.penguinstats.util;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TimeRange;
+
+/**
+ * The drop infos of one server indexed by the intervals of their time ranges, as one {@link IntervalTree} of all
+ * stages and one for each stage.<br>
+ * Infos whose time range is unknown are left out, since they are never active.
+ */
+public class DropInfoIndex {
+
+	private final IntervalTree<Entry> allEntries;
+
+	private final Map<String, IntervalTree<Entry>> entriesByStageId;
+
+	private DropInfoIndex(IntervalTree<Entry> allEntries, Map<String, IntervalTree<Entry>> entriesByStageId) {
+		this.allEntries = allEntries;
+		this.entriesByStageId = entriesByStageId;
+	}
+
+	/**
+	 * @Title: build
+	 * @Description: Index the drop infos with their time ranges.
+	 * @param infos
+	 * @param timeRangeMap rangeID -> time range
+	 * @return DropInfoIndex
+	 */
+	public static DropInfoIndex build(List<DropInfo> infos, Map<String, TimeRange> timeRangeMap) {
+		List<Entry> entries = new ArrayList<>();
+		Map<String, List<Entry>> entryListsByStageId = new HashMap<>();
+		for (DropInfo info : infos) {
+			TimeRange range = timeRangeMap.get(info.getTimeRangeID());
+			if (range == null)
+				continue;
+			Entry entry = new Entry(info, range);
+			entries.add(entry);
+			entryListsByStageId.computeIfAbsent(info.getStageId(), k -> new ArrayList<>()).add(entry);
+		}
+		Map<String, IntervalTree<Entry>> entriesByStageId = new HashMap<>();
+		entryListsByStageId.forEach((stageId, list) -> entriesByStageId.put(stageId, toTree(list)));
+		return new DropInfoIndex(toTree(entries), entriesByStageId);
+	}
+
+	/**
+	 * @Title: getActiveDropInfos
+	 * @Description: Get the drop infos of all stages whose time range contains the time.
+	 * @param time
+	 * @return List<DropInfo>
+	 */
+	public List<DropInfo> getActiveDropInfos(long time) {
+		List<DropInfo> result = new ArrayList<>();
+		allEntries.stab(time, entry -> result.add(entry.info));
+		return result;
+	}
+
+	/**
+	 * @Title: getActiveDropInfos
+	 * @Description: Get the drop infos of one stage whose time range contains the time.
+	 * @param stageId
+	 * @param time
+	 * @return List<DropInfo>
+	 */
+	public List<DropInfo> getActiveDropInfos(String stageId, long time) {
+		IntervalTree<Entry> tree = entriesByStageId.get(stageId);
+		if (tree == null)
+			return Collections.emptyList();
+		List<DropInfo> result = new ArrayList<>();
+		tree.stab(time, entry -> result.add(entry.info));
+		return result;
+	}
+
+	/**
+	 * @Title: getTimeRanges
+	 * @Description: Get the distinct time ranges of one stage which overlap [start, end), in the order of start.
+	 * @param stageId
+	 * @param start If null, there is no lower bound.
+	 * @param end If null, there is no upper bound.
+	 * @return List<TimeRange>
+	 */
+	public List<TimeRange> getTimeRanges(String stageId, Long start, Long end) {
+		IntervalTree<Entry> tree = entriesByStageId.get(stageId);
+		if (tree == null)
+			return Collections.emptyList();
+		Set<TimeRange> result = new LinkedHashSet<>();
+		tree.overlap(start == null ? Long.MIN_VALUE : start, end == null ? Long.MAX_VALUE : end,
+				entry -> result.add(entry.range));
+		return new ArrayList<>(result);
+	}
+
+	private static IntervalTree<Entry> toTree(List<Entry> entries) {
+		return IntervalTree.of(entries,
+				entry -> entry.range.getStart() == null ? Long.MIN_VALUE : entry.range.getStart(),
+				entry -> entry.range.getEnd() == null ? Long.MAX_VALUE : entry.range.getEnd());
+	}
+
+	private static class Entry {
+
+		private final DropInfo info;
+
+		private final TimeRange range;
+
+		private Entry(DropInfo info, TimeRange range) {
+			this.info = info;
+			this.range = range;
+		}
+
+	}
+
+}
@@ -8,6 +8,7 @@ import java.util.Collection;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import io.penguinstats.enums.DropMatrixElementType;
 import io.penguinstats.enums.Server;
@@ -59,6 +60,14 @@ public class DropMatrixElementUtil {
 		return convertMapByStageIdAndItemIdToElements(convertedMap);
 	}
 
+	public static void retainStages(List<DropMatrixElement> elements, Set<String> stageIds) {
+		elements.removeIf(el -> !stageIds.contains(el.getStageId()));
+	}
+
+	public static void retainItems(List<DropMatrixElement> elements, Set<String> itemIds) {
+		elements.removeIf(el -> !itemIds.contains(el.getItemId()));
+	}
+
 	private static Map<String, Map<String, DropMatrixElement>>
 			convertElementsToMapByStageIdAndItemId(Collection<DropMatrixElement> elements) {
 		Map<String, Map<String, DropMatrixElement>> result = new HashMap<>();
@@ -0,0 +1,273 @@
+package io.penguinstats.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.Document;
+
+import io.penguinstats.model.Drop;
+
+/**
+ * Single pass, in-JVM counterpart of the drop pattern aggregation pipeline.<br>
+ * Item drop documents (only <b>stageId</b>, <b>times</b> and <b>drops</b> are read) are fed one by one into
+ * {@link #accept(Document)}. The drops of each report are canonicalized into a key of (item ordinal, quantity) pairs
+ * sorted by itemId, together with its {@link #canonicalHash canonical 64-bit hash}, and counted into an open addressing
+ * table of the stage. Nothing is allocated for a report whose pattern has been seen before.<br>
+ * {@link #getResults()} returns documents in the same shape as the pipeline does: <b>stageId</b>, <b>times</b>,
+ * <b>quantity</b> and <b>pattern</b>, a list of drops sorted by itemId.
+ */
+public class DropPatternAggregator {
+
+	private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+	private static final long FNV_PRIME = 0x100000001b3L;
+
+	private final Map<String, PatternTable> tables = new HashMap<>();
+
+	private final Map<String, Integer> itemOrdinals = new HashMap<>();
+
+	private final List<String> itemIds = new ArrayList<>();
+
+	private String[] dropItemIds = new String[8];
+
+	private long[] dropQuantities = new long[8];
+
+	private long[] key = new long[8];
+
+	@SuppressWarnings("unchecked")
+	public void accept(Document doc) {
+		List<Document> drops = (List<Document>)doc.get("drops");
+		int dropNum = drops == null ? 0 : drops.size();
+		ensureCapacity(dropNum);
+		for (int i = 0; i < dropNum; i++) {
+			Document drop = drops.get(i);
+			dropItemIds[i] = drop.getString("itemId");
+			dropQuantities[i] = ((Number)drop.get("quantity")).longValue();
+		}
+		accept(doc.getString("stageId"), ((Number)doc.get("times")).longValue(), dropItemIds, dropQuantities,
+				dropNum);
+	}
+
+	/**
+	 * Same as {@link #accept(Document)}, for one report whose drops are given in the first dropNum elements of
+	 * dropItemIds and dropQuantities. The elements are reordered.
+	 */
+	public void accept(String stageId, long times, String[] dropItemIds, long[] dropQuantities, int dropNum) {
+		sort(dropItemIds, dropQuantities, dropNum);
+		long hash = canonicalHash(dropItemIds, dropQuantities, dropNum);
+		if (key.length < dropNum)
+			key = new long[Math.max(key.length * 2, dropNum)];
+		for (int i = 0; i < dropNum; i++)
+			key[i] = ((long)intern(dropItemIds[i]) << 32) | (dropQuantities[i] & 0xffffffffL);
+
+		PatternTable table = tables.get(stageId);
+		if (table == null) {
+			table = new PatternTable();
+			tables.put(stageId, table);
+		}
+		table.times += times;
+		table.add(hash, key, dropNum, times);
+	}
+
+	public List<Document> getResults() {
+		List<Document> results = new ArrayList<>();
+		tables.forEach((stageId, table) -> {
+			Integer times = (int)table.times;
+			for (int slot = 0; slot < table.keys.length; slot++) {
+				long[] patternKey = table.keys[slot];
+				if (patternKey == null)
+					continue;
+				List<Document> pattern = new ArrayList<>(patternKey.length);
+				for (long entry : patternKey) {
+					pattern.add(new Document("itemId", itemIds.get((int)(entry >>> 32))).append("quantity",
+							(int)entry));
+				}
+				results.add(new Document("stageId", stageId).append("times", times)
+						.append("quantity", (int)table.counts[slot]).append("pattern", pattern));
+			}
+		});
+		return results;
+	}
+
+	/**
+	 * @Title: canonicalize
+	 * @Description: Copy the drops sorted by itemId, then by quantity, which is the canonical order of a pattern.
+	 * @param drops
+	 * @return List<Drop>
+	 */
+	public static List<Drop> canonicalize(List<Drop> drops) {
+		if (drops == null)
+			return Collections.emptyList();
+		List<Drop> result = new ArrayList<>(drops);
+		result.sort((d1, d2) -> {
+			int compared = compareItemIds(d1.getItemId(), d2.getItemId());
+			return compared != 0 ? compared : Integer.compare(quantityOf(d1), quantityOf(d2));
+		});
+		return result;
+	}
+
+	/**
+	 * @Title: canonicalHash
+	 * @Description: The 64-bit hash of a pattern. It only depends on the itemIds and quantities, so it is the same
+	 *               in every aggregation and every process.
+	 * @param drops Drops in canonical order
+	 * @return long
+	 */
+	public static long canonicalHash(List<Drop> drops) {
+		long hash = FNV_OFFSET_BASIS;
+		for (Drop drop : drops)
+			hash = hashDrop(hash, drop.getItemId(), quantityOf(drop));
+		return mix(hash);
+	}
+
+	/**
+	 * Same as {@link #canonicalHash(List)}, for the drops in the first dropNum elements of the arrays, which are in
+	 * canonical order.
+	 */
+	public static long canonicalHash(String[] dropItemIds, long[] dropQuantities, int dropNum) {
+		long hash = FNV_OFFSET_BASIS;
+		for (int i = 0; i < dropNum; i++)
+			hash = hashDrop(hash, dropItemIds[i], (int)dropQuantities[i]);
+		return mix(hash);
+	}
+
+	private static long hashDrop(long hash, String itemId, int quantity) {
+		if (itemId != null) {
+			for (int i = 0, length = itemId.length(); i < length; i++) {
+				hash ^= itemId.charAt(i);
+				hash *= FNV_PRIME;
+			}
+		}
+		// a separator which no char in itemId can be
+		hash ^= 0x10000;
+		hash *= FNV_PRIME;
+		for (int shift = 0; shift < 32; shift += 8) {
+			hash ^= (quantity >>> shift) & 0xff;
+			hash *= FNV_PRIME;
+		}
+		return hash;
+	}
+
+	/**
+	 * The finalizer of SplitMix64, spreading every input bit over the whole hash.
+	 */
+	private static long mix(long hash) {
+		hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+		hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+		return hash ^ (hash >>> 31);
+	}
+
+	/**
+	 * Insertion sort by itemId, then by quantity. Patterns only have a few drops.
+	 */
+	private static void sort(String[] dropItemIds, long[] dropQuantities, int dropNum) {
+		for (int i = 1; i < dropNum; i++) {
+			String itemId = dropItemIds[i];
+			long quantity = dropQuantities[i];
+			int j = i - 1;
+			while (j >= 0) {
+				int compared = compareItemIds(dropItemIds[j], itemId);
+				if (compared < 0 || compared == 0 && dropQuantities[j] <= quantity)
+					break;
+				dropItemIds[j + 1] = dropItemIds[j];
+				dropQuantities[j + 1] = dropQuantities[j];
+				j--;
+			}
+			dropItemIds[j + 1] = itemId;
+			dropQuantities[j + 1] = quantity;
+		}
+	}
+
+	private static int compareItemIds(String itemId1, String itemId2) {
+		if (itemId1 == null)
+			return itemId2 == null ? 0 : -1;
+		return itemId2 == null ? 1 : itemId1.compareTo(itemId2);
+	}
+
+	private static int quantityOf(Drop drop) {
+		return drop.getQuantity() == null ? 0 : drop.getQuantity();
+	}
+
+	private void ensureCapacity(int dropNum) {
+		if (dropItemIds.length >= dropNum)
+			return;
+		int length = Math.max(dropItemIds.length * 2, dropNum);
+		dropItemIds = new String[length];
+		dropQuantities = new long[length];
+	}
+
+	private int intern(String itemId) {
+		Integer ordinal = itemOrdinals.get(itemId);
+		if (ordinal == null) {
+			ordinal = itemIds.size();
+			itemOrdinals.put(itemId, ordinal);
+			itemIds.add(itemId);
+		}
+		return ordinal;
+	}
+
+	/**
+	 * Open addressing with linear probing, keyed by the canonical hash. Keys with the same hash are told apart by
+	 * comparing them, so a hash collision never merges two patterns.
+	 */
+	private static class PatternTable {
+
+		private long times = 0L;
+		private int size = 0;
+		private long[] hashes = new long[16];
+		private long[][] keys = new long[16][];
+		private long[] counts = new long[16];
+
+		private void add(long hash, long[] key, int keyLength, long count) {
+			int mask = keys.length - 1;
+			int slot = (int)hash & mask;
+			while (keys[slot] != null) {
+				if (hashes[slot] == hash && equals(keys[slot], key, keyLength)) {
+					counts[slot] += count;
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			hashes[slot] = hash;
+			keys[slot] = Arrays.copyOf(key, keyLength);
+			counts[slot] = count;
+			if (++size * 2 > keys.length)
+				resize();
+		}
+
+		private void resize() {
+			long[] oldHashes = hashes;
+			long[][] oldKeys = keys;
+			long[] oldCounts = counts;
+			hashes = new long[oldKeys.length * 2];
+			keys = new long[oldKeys.length * 2][];
+			counts = new long[oldKeys.length * 2];
+			int mask = keys.length - 1;
+			for (int i = 0; i < oldKeys.length; i++) {
+				if (oldKeys[i] == null)
+					continue;
+				int slot = (int)oldHashes[i] & mask;
+				while (keys[slot] != null)
+					slot = (slot + 1) & mask;
+				hashes[slot] = oldHashes[i];
+				keys[slot] = oldKeys[i];
+				counts[slot] = oldCounts[i];
+			}
+		}
+
+		private static boolean equals(long[] storedKey, long[] key, int keyLength) {
+			if (storedKey.length != keyLength)
+				return false;
+			for (int i = 0; i < keyLength; i++) {
+				if (storedKey[i] != key[i])
+					return false;
+			}
+			return true;
+		}
+
+	}
+
+}
@@ -0,0 +1,105 @@
+package io.penguinstats.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.function.ToLongFunction;
+
+/**
+ * An immutable interval tree over half-open intervals [start, end).<br>
+ * The values are sorted by start, and the sorted array is used as an implicit balanced tree: the root of a slice is
+ * its middle element, and every node keeps the max end of its slice. A query skips every slice whose max end is not
+ * after the query start, and everything right of a node which starts after the query end, so only the slices holding
+ * matches are visited. Matches are reported in the order of start.
+ */
+public class IntervalTree<T> {
+
+	private final List<T> values;
+
+	private final long[] starts;
+
+	private final long[] ends;
+
+	private final long[] maxEnds;
+
+	private IntervalTree(List<T> values, long[] starts, long[] ends) {
+		this.values = values;
+		this.starts = starts;
+		this.ends = ends;
+		this.maxEnds = new long[values.size()];
+		buildMaxEnds(0, values.size());
+	}
+
+	/**
+	 * @Title: of
+	 * @Description: Build a tree of the values, whose intervals are given by the two functions.
+	 * @param values
+	 * @param startFunction Use Long.MIN_VALUE for no start.
+	 * @param endFunction Use Long.MAX_VALUE for no end.
+	 * @return IntervalTree<T>
+	 */
+	public static <T> IntervalTree<T> of(Collection<T> values, ToLongFunction<T> startFunction,
+			ToLongFunction<T> endFunction) {
+		List<T> sorted = new ArrayList<>(values);
+		sorted.sort((v1, v2) -> Long.compare(startFunction.applyAsLong(v1), startFunction.applyAsLong(v2)));
+		long[] starts = new long[sorted.size()];
+		long[] ends = new long[sorted.size()];
+		for (int i = 0; i < starts.length; i++) {
+			starts[i] = startFunction.applyAsLong(sorted.get(i));
+			ends[i] = endFunction.applyAsLong(sorted.get(i));
+		}
+		return new IntervalTree<>(sorted, starts, ends);
+	}
+
+	/**
+	 * @Title: stab
+	 * @Description: Find the values whose interval contains the time.
+	 * @param time
+	 * @param consumer
+	 */
+	public void stab(long time, Consumer<T> consumer) {
+		if (time < Long.MAX_VALUE)
+			visit(0, values.size(), time, time + 1, consumer);
+	}
+
+	/**
+	 * @Title: overlap
+	 * @Description: Find the values whose interval overlaps [start, end).
+	 * @param start
+	 * @param end
+	 * @param consumer
+	 */
+	public void overlap(long start, long end, Consumer<T> consumer) {
+		if (start < end)
+			visit(0, values.size(), start, end, consumer);
+	}
+
+	public int size() {
+		return values.size();
+	}
+
+	private long buildMaxEnds(int low, int high) {
+		if (low >= high)
+			return Long.MIN_VALUE;
+		int mid = (low + high) >>> 1;
+		long maxEnd = Math.max(ends[mid], Math.max(buildMaxEnds(low, mid), buildMaxEnds(mid + 1, high)));
+		maxEnds[mid] = maxEnd;
+		return maxEnd;
+	}
+
+	private void visit(int low, int high, long start, long end, Consumer<T> consumer) {
+		while (low < high) {
+			int mid = (low + high) >>> 1;
+			if (maxEnds[mid] <= start)
+				return;
+			visit(low, mid, start, end, consumer);
+			if (starts[mid] >= end)
+				return;
+			if (ends[mid] > start)
+				consumer.accept(values.get(mid));
+			low = mid + 1;
+		}
+	}
+
+}
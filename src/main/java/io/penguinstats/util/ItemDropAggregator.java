@@ -0,0 +1,154 @@
+package io.penguinstats.util;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.Document;
+
+/**
+ * Single pass, in-JVM counterpart of the item drop aggregation pipeline.<br>
+ * Item drop documents (only <b>stageId</b>, <b>times</b>, <b>drops</b> and <b>timestamp</b> are read) are fed one by
+ * one into {@link #accept(Document)}. Stage ids and item ids are interned into ordinals, so that every (section,
+ * stage) pair only keeps its times and a <code>long[]</code> of quantities indexed by item ordinal.<br>
+ * {@link #getResults()} returns documents in the same shape as the pipeline does: <b>section</b>, <b>stageId</b>,
+ * <b>times</b>, <b>itemId</b> and <b>quantity</b>. A document without <b>itemId</b> is emitted for every (section,
+ * stage) pair having a report with no drops.
+ */
+public class ItemDropAggregator {
+
+	private final Set<String> itemIdFilter;
+
+	private final long baseTime;
+
+	private final Long interval;
+
+	private final Map<String, Integer> stageOrdinals = new HashMap<>();
+
+	private final List<String> stageIds = new ArrayList<>();
+
+	private final Map<String, Integer> itemOrdinals = new HashMap<>();
+
+	private final List<String> itemIds = new ArrayList<>();
+
+	private final Map<Long, SectionCounter> counters = new HashMap<>();
+
+	/**
+	 * @param itemIdFilter If not empty, only these items are counted.
+	 * @param baseTime The start time of section 0. Ignored if interval is null.
+	 * @param interval The length of each section. If null, all drops are counted in section 0.
+	 */
+	public ItemDropAggregator(Collection<String> itemIdFilter, Long baseTime, Long interval) {
+		this.itemIdFilter = itemIdFilter == null ? new HashSet<>() : new HashSet<>(itemIdFilter);
+		this.baseTime = baseTime == null ? 0L : baseTime;
+		this.interval = interval;
+	}
+
+	@SuppressWarnings("unchecked")
+	public void accept(Document doc) {
+		SectionCounter counter = count(doc.getString("stageId"), ((Number)doc.get("timestamp")).longValue(),
+				((Number)doc.get("times")).longValue());
+		List<Document> drops = (List<Document>)doc.get("drops");
+		if (drops == null || drops.isEmpty()) {
+			counter.hasEmptyDrops = true;
+			return;
+		}
+		for (Document drop : drops)
+			addDrop(counter, drop.getString("itemId"), ((Number)drop.get("quantity")).longValue());
+	}
+
+	/**
+	 * Same as {@link #accept(Document)}, for one report whose drops are given in the first dropNum elements of
+	 * dropItemIds and dropQuantities.
+	 */
+	public void accept(String stageId, long timestamp, long times, String[] dropItemIds, long[] dropQuantities,
+			int dropNum) {
+		SectionCounter counter = count(stageId, timestamp, times);
+		if (dropNum == 0) {
+			counter.hasEmptyDrops = true;
+			return;
+		}
+		for (int i = 0; i < dropNum; i++)
+			addDrop(counter, dropItemIds[i], dropQuantities[i]);
+	}
+
+	public List<Document> getResults() {
+		List<Document> results = new ArrayList<>();
+		for (SectionCounter counter : counters.values()) {
+			String stageId = stageIds.get(counter.stageOrdinal);
+			Double section = (double)counter.section;
+			Integer times = (int)counter.times;
+			for (int i = 0; i < counter.quantities.length; i++) {
+				if (!counter.present[i])
+					continue;
+				results.add(new Document("section", section).append("stageId", stageId).append("times", times)
+						.append("itemId", itemIds.get(i)).append("quantity", (int)counter.quantities[i]));
+			}
+			if (counter.hasEmptyDrops)
+				results.add(new Document("section", section).append("stageId", stageId).append("times", times));
+		}
+		return results;
+	}
+
+	private SectionCounter count(String stageId, long timestamp, long times) {
+		int stageOrdinal = intern(stageId, stageOrdinals, stageIds);
+		long section = interval == null ? 0L : (timestamp - baseTime) / interval;
+		long key = (section << 32) | stageOrdinal;
+
+		SectionCounter counter = counters.get(key);
+		if (counter == null) {
+			counter = new SectionCounter(section, stageOrdinal);
+			counters.put(key, counter);
+		}
+		counter.times += times;
+		return counter;
+	}
+
+	private void addDrop(SectionCounter counter, String itemId, long quantity) {
+		if (!itemIdFilter.isEmpty() && !itemIdFilter.contains(itemId))
+			return;
+		counter.add(intern(itemId, itemOrdinals, itemIds), quantity);
+	}
+
+	private static int intern(String id, Map<String, Integer> ordinals, List<String> ids) {
+		Integer ordinal = ordinals.get(id);
+		if (ordinal == null) {
+			ordinal = ids.size();
+			ordinals.put(id, ordinal);
+			ids.add(id);
+		}
+		return ordinal;
+	}
+
+	private static class SectionCounter {
+
+		private final long section;
+		private final int stageOrdinal;
+		private long times = 0L;
+		private long[] quantities = new long[8];
+		private boolean[] present = new boolean[8];
+		private boolean hasEmptyDrops = false;
+
+		private SectionCounter(long section, int stageOrdinal) {
+			this.section = section;
+			this.stageOrdinal = stageOrdinal;
+		}
+
+		private void add(int itemOrdinal, long quantity) {
+			if (itemOrdinal >= quantities.length) {
+				int length = Math.max(quantities.length * 2, itemOrdinal + 1);
+				quantities = Arrays.copyOf(quantities, length);
+				present = Arrays.copyOf(present, length);
+			}
+			quantities[itemOrdinal] += quantity;
+			present[itemOrdinal] = true;
+		}
+
+	}
+
+}
@@ -0,0 +1,115 @@
+package io.penguinstats.util;
+
+import java.util.concurrent.TimeUnit;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Metrics;
+import io.penguinstats.enums.QueryType;
+import io.penguinstats.enums.ValidatorType;
+
+/**
+ * Records the meters of ingest, aggregation and serving.<br>
+ * All meters go to the global registry, which the registries of Spring Boot are added to. Before the application is
+ * started, e.g. in unit tests, the global registry has no registry in it and nothing is recorded.
+ */
+public class MetricsUtil {
+
+	public static final String REPORT_INGEST = "penguinstats.report.ingest";
+	public static final String REPORT_VALIDATION = "penguinstats.report.validation";
+	public static final String REPORT_AUDIT = "penguinstats.report.audit";
+	public static final String AGGREGATION = "penguinstats.aggregation";
+	public static final String AGGREGATION_DOCUMENTS = "penguinstats.aggregation.documents";
+	public static final String TASK = "penguinstats.task";
+	public static final String TASK_ITEM = "penguinstats.task.item";
+	public static final String QUERY_QUEUE = "penguinstats.query.queue";
+	public static final String QUERY_EXECUTION = "penguinstats.query.execution";
+	public static final String CACHE_EVENTS = "penguinstats.cache.events";
+	public static final String RESPONSE_SIZE = "penguinstats.http.response.size";
+
+	/**
+	 * @Title: recordReport
+	 * @Description: Record the latency of a report from receiving it to submitting it into the ingestion queue.
+	 * @param startTime
+	 * @param isReliable
+	 */
+	public static void recordReport(long startTime, boolean isReliable) {
+		Metrics.timer(REPORT_INGEST, "reliable", String.valueOf(isReliable))
+				.record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+	}
+
+	public static void recordValidation(ValidatorType validatorType, boolean passed) {
+		Metrics.counter(REPORT_VALIDATION, "validator", validatorType.name(), "outcome", passed ? "pass" : "fail")
+				.increment();
+	}
+
+	/**
+	 * @Title: recordAudit
+	 * @Description: Count a sampled report, which is either queued into the audit log, or dropped because the queue
+	 *               is full.
+	 * @param queued
+	 */
+	public static void recordAudit(boolean queued) {
+		Metrics.counter(REPORT_AUDIT, "outcome", queued ? "queued" : "dropped").increment();
+	}
+
+	/**
+	 * @Title: recordAggregation
+	 * @Description: Record the time of an aggregation, with the number of documents it scanned and returned. A
+	 *               negative number means it is unknown, e.g. the documents scanned inside a Mongo pipeline.
+	 * @param pipeline
+	 * @param engine
+	 * @param startTime
+	 * @param scanned
+	 * @param returned
+	 */
+	public static void recordAggregation(String pipeline, String engine, long startTime, long scanned,
+			long returned) {
+		Metrics.timer(AGGREGATION, "pipeline", pipeline, "engine", engine)
+				.record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+		if (scanned >= 0)
+			documents(pipeline, engine, "scanned").record(scanned);
+		if (returned >= 0)
+			documents(pipeline, engine, "returned").record(returned);
+	}
+
+	public static void recordTask(String taskName, String outcome, long duration) {
+		Metrics.timer(TASK, "task", taskName, "outcome", outcome).record(duration, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @Title: recordTaskItem
+	 * @Description: Record the time of a task on one of its items, e.g. on one server.
+	 * @param taskName
+	 * @param item
+	 * @param duration
+	 */
+	public static void recordTaskItem(String taskName, String item, long duration) {
+		Metrics.timer(TASK_ITEM, "task", taskName, "item", item).record(duration, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @Title: recordQuery
+	 * @Description: Record how long an advanced query waited before it started, and how long it ran.
+	 * @param queryType
+	 * @param queueTime
+	 * @param executionTime
+	 */
+	public static void recordQuery(QueryType queryType, long queueTime, long executionTime) {
+		Metrics.timer(QUERY_QUEUE, "type", queryType.name()).record(queueTime, TimeUnit.MILLISECONDS);
+		Metrics.timer(QUERY_EXECUTION, "type", queryType.name()).record(executionTime, TimeUnit.MILLISECONDS);
+	}
+
+	public static void recordCacheEvent(String eventType) {
+		Metrics.counter(CACHE_EVENTS, "type", eventType).increment();
+	}
+
+	public static void recordResponseSize(String uri, String method, int status, long size) {
+		DistributionSummary.builder(RESPONSE_SIZE).baseUnit("bytes").tags("uri", uri, "method", method, "status",
+				String.valueOf(status)).register(Metrics.globalRegistry).record(size);
+	}
+
+	private static DistributionSummary documents(String pipeline, String engine, String kind) {
+		return Metrics.summary(AGGREGATION_DOCUMENTS, "pipeline", pipeline, "engine", engine, "kind", kind);
+	}
+
+}
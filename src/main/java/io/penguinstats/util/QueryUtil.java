@@ -1,23 +1,30 @@
 package io.penguinstats.util;
 
-import java.util.List;
-import java.util.concurrent.Callable;
-import java.util.concurrent.ExecutionException;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.Future;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.TimeoutException;
+/**
+ * Carries the deadline of the query running in the current thread down to the database calls.
+ */
+public class QueryUtil {
 
-import io.penguinstats.model.MatrixElement;
+	private static final ThreadLocal<Long> deadline = new ThreadLocal<>();
 
-public class QueryUtil {
+	public static void setDeadline(Long deadlineTimestamp) {
+		deadline.set(deadlineTimestamp);
+	}
+
+	public static void clearDeadline() {
+		deadline.remove();
+	}
 
-	public static List<? extends MatrixElement> runQuery(Callable<List<? extends MatrixElement>> func, Integer timeout)
-			throws InterruptedException, ExecutionException, TimeoutException {
-		ExecutorService singleThreadExecutor = Executors.newSingleThreadExecutor();
-		Future<List<? extends MatrixElement>> future = singleThreadExecutor.submit(func);
-		return timeout != null ? future.get(timeout, TimeUnit.MINUTES) : future.get();
+	/**
+	 * @Title: getRemainingTime
+	 * @Description: The time left for the query running in the current thread, to be used as maxTimeMS.
+	 * @return Long The remaining ms, at least 1, or null if there is no deadline
+	 */
+	public static Long getRemainingTime() {
+		Long deadlineTimestamp = deadline.get();
+		if (deadlineTimestamp == null)
+			return null;
+		return Math.max(deadlineTimestamp - System.currentTimeMillis(), 1L);
 	}
 
 }
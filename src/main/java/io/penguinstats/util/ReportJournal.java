@@ -0,0 +1,116 @@
+package io.penguinstats.util;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * ReportJournal is an append-only local spill of accepted reports, one line per report.<br>
+ * Lines are appended into the active segment. {@link #rotate()} closes the active segment and hands it over to the
+ * caller, who deletes it once all of its reports have been committed into the database. Segments left on disk after
+ * a crash are replayed on startup.
+ */
+@Log4j2
+public class ReportJournal {
+
+	private static final String SEGMENT_PREFIX = "journal-";
+	private static final String SEGMENT_SUFFIX = ".log";
+
+	private final Path directory;
+
+	private long nextSequence;
+
+	private Path activeSegment;
+
+	private OutputStream activeStream;
+
+	public ReportJournal(Path directory) throws IOException {
+		this.directory = directory;
+		Files.createDirectories(directory);
+		List<Path> segments = listSegments();
+		this.nextSequence = segments.isEmpty() ? 0L : getSequence(segments.get(segments.size() - 1)) + 1;
+	}
+
+	/** 
+	 * @Title: append 
+	 * @Description: Append one line into the active segment. The line is handed over to the OS before returning, so it
+	 *               survives a crash of the JVM.
+	 * @param line
+	 * @throws IOException
+	 */
+	public synchronized void append(String line) throws IOException {
+		if (activeStream == null) {
+			activeSegment = directory.resolve(SEGMENT_PREFIX + String.format("%020d", nextSequence++) + SEGMENT_SUFFIX);
+			activeStream = Files.newOutputStream(activeSegment, StandardOpenOption.CREATE_NEW,
+					StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+		}
+		activeStream.write((line + "\n").getBytes(StandardCharsets.UTF_8));
+		activeStream.flush();
+	}
+
+	/** 
+	 * @Title: rotate 
+	 * @Description: Close the active segment. The next append will open a new one.
+	 * @return List<Path> The closed segment, or an empty list if nothing has been appended since the last rotation.
+	 */
+	public synchronized List<Path> rotate() {
+		if (activeStream == null)
+			return Collections.emptyList();
+		try {
+			activeStream.close();
+		} catch (IOException e) {
+			log.error("Error in closing report journal segment " + activeSegment, e);
+		}
+		List<Path> result = Collections.singletonList(activeSegment);
+		activeStream = null;
+		activeSegment = null;
+		return result;
+	}
+
+	public synchronized List<Path> listSegments() throws IOException {
+		List<Path> result = new ArrayList<>();
+		try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+			stream.forEach(path -> {
+				if (!path.equals(activeSegment))
+					result.add(path);
+			});
+		}
+		result.sort((p1, p2) -> Long.compare(getSequence(p1), getSequence(p2)));
+		return result;
+	}
+
+	public List<String> readSegment(Path segment) throws IOException {
+		List<String> result = new ArrayList<>();
+		for (String line : Files.readAllLines(segment, StandardCharsets.UTF_8)) {
+			if (!line.isEmpty())
+				result.add(line);
+		}
+		return result;
+	}
+
+	public void delete(List<Path> segments) {
+		segments.forEach(segment -> {
+			try {
+				Files.deleteIfExists(segment);
+			} catch (IOException e) {
+				log.error("Error in deleting report journal segment " + segment, e);
+			}
+		});
+	}
+
+	private long getSequence(Path segment) {
+		String fileName = segment.getFileName().toString();
+		return Long.parseLong(
+				fileName.substring(SEGMENT_PREFIX.length(), fileName.length() - SEGMENT_SUFFIX.length()));
+	}
+
+}
@@ -20,6 +20,7 @@ import io.penguinstats.enums.ErrorCode;
 import io.penguinstats.util.exception.DatabaseException;
 import io.penguinstats.util.exception.NotFoundException;
 import io.penguinstats.util.exception.PenguinException;
+import io.penguinstats.util.exception.ServiceUnavailableException;
 import lombok.extern.log4j.Log4j2;
 
 @ControllerAdvice
@@ -79,6 +80,20 @@ public class RestExceptionHandler {
 		return handleExceptionInternal(ex, apiResponse, headers, status, request);
 	}
 
+	@ExceptionHandler({ServiceUnavailableException.class})
+	public final ResponseEntity<ErrorResponseWrapper>
+			handleServiceUnavailableException(ServiceUnavailableException ex, WebRequest request) {
+		log.warn("service unavailable: {}", ex.getMessage());
+		HttpHeaders headers = new HttpHeaders();
+		if (ex.getRetryAfter() != null)
+			headers.add(HttpHeaders.RETRY_AFTER, ex.getRetryAfter().toString());
+
+		HttpStatus status = HttpStatus.SERVICE_UNAVAILABLE;
+		ErrorResponseWrapper apiResponse = new ErrorResponseWrapper(ex.getErrorCode().getValue(), ex.getMessage());
+
+		return handleExceptionInternal(ex, apiResponse, headers, status, request);
+	}
+
 	@ExceptionHandler({IllegalArgumentException.class})
 	public final ResponseEntity<? extends ErrorResponseWrapper> handleBadRequestException(IllegalArgumentException ex,
 			WebRequest request) {
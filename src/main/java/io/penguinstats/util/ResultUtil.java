@@ -2,6 +2,8 @@ package io.penguinstats.util;
 
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.Iterator;
@@ -10,6 +12,8 @@ import java.util.NoSuchElementException;
 import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
 import java.util.stream.Collectors;
 
@@ -19,29 +23,42 @@ import javax.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Component;
 
 import io.penguinstats.constant.Constant.SystemPropertyKey;
 import io.penguinstats.controller.v2.mapper.QueryMapper;
 import io.penguinstats.controller.v2.request.AdvancedQueryRequest;
+import io.penguinstats.controller.v2.request.SingleQuery;
 import io.penguinstats.controller.v2.response.AdvancedQueryResponse;
 import io.penguinstats.controller.v2.response.BasicQueryResponse;
+import io.penguinstats.controller.v2.response.FailedQueryResponse;
 import io.penguinstats.controller.v2.response.MatrixQueryResponse;
 import io.penguinstats.controller.v2.response.PatternQueryResponse;
 import io.penguinstats.controller.v2.response.TrendQueryResponse;
+import io.penguinstats.enums.QueryStatus;
 import io.penguinstats.enums.QueryType;
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.MatrixElement;
 import io.penguinstats.model.PatternMatrixElement;
+import io.penguinstats.model.RenderedResponse;
 import io.penguinstats.model.query.BasicQuery;
-import io.penguinstats.model.query.GlobalMatrixQuery;
+import io.penguinstats.model.query.CustomDropMatrixQuery;
 import io.penguinstats.model.query.GlobalPatternQuery;
 import io.penguinstats.model.query.QueryFactory;
-import io.penguinstats.service.DropInfoService;
 import io.penguinstats.service.DropMatrixElementService;
+import io.penguinstats.service.DropMatrixStoreService;
+import io.penguinstats.service.MatrixResponseService;
+import io.penguinstats.service.OpeningStageService;
 import io.penguinstats.service.PatternMatrixElementService;
+import io.penguinstats.service.PersonalDropMatrixService;
+import io.penguinstats.service.QueryExecutionService;
+import io.penguinstats.service.QueryResultCacheService;
 import io.penguinstats.service.SystemPropertyService;
+import io.penguinstats.util.matrix.DropMatrixTable;
+import io.penguinstats.util.matrix.OrdinalDictionary;
 import lombok.extern.log4j.Log4j2;
 
 @Log4j2
@@ -50,8 +67,6 @@ public class ResultUtil {
 
 	private static ResultUtil resultUtil;
 
-	@Autowired
-	private DropInfoService dropInfoService;
 	@Autowired
 	private DropMatrixElementService dropMatrixElementService;
 	@Autowired
@@ -64,11 +79,22 @@ public class ResultUtil {
 	private QueryMapper queryMapper;
 	@Autowired
 	private QueryFactory queryFactory;
+	@Autowired
+	private MatrixResponseService matrixResponseService;
+	@Autowired
+	private DropMatrixStoreService dropMatrixStoreService;
+	@Autowired
+	private QueryExecutionService queryExecutionService;
+	@Autowired
+	private QueryResultCacheService queryResultCacheService;
+	@Autowired
+	private PersonalDropMatrixService personalDropMatrixService;
+	@Autowired
+	private OpeningStageService openingStageService;
 
 	@PostConstruct
 	public void init() {
 		resultUtil = this;
-		resultUtil.dropInfoService = this.dropInfoService;
 		resultUtil.dropMatrixElementService = this.dropMatrixElementService;
 		resultUtil.patternMatrixElementService = this.patternMatrixElementService;
 		resultUtil.systemPropertyService = this.systemPropertyService;
@@ -76,7 +102,6 @@ public class ResultUtil {
 		resultUtil.queryFactory = this.queryFactory;
 	}
 
-	@SuppressWarnings("unchecked")
 	public ResponseEntity<MatrixQueryResponse> getMatrixHelper(HttpServletRequest request, Server server,
 			boolean showClosedZones, String stageFilter, String itemFilter, boolean isPersonal) throws Exception {
 		log.info("GET /matrix");
@@ -86,47 +111,23 @@ public class ResultUtil {
 			return new ResponseEntity<MatrixQueryResponse>(new MatrixQueryResponse(new ArrayList<>()), HttpStatus.OK);
 		}
 
-		List<DropMatrixElement> pastElements = null;
-		List<DropMatrixElement> currentElements = null;
-		if (userID != null) {
-			GlobalMatrixQuery pastQuery = (GlobalMatrixQuery)queryFactory.getQuery(QueryType.GLOBAL_MATRIX);
+		if (userID == null)
+			return getGlobalMatrixFromStore(server, showClosedZones, stageFilter, itemFilter);
+
+		List<DropMatrixElement> elements = personalDropMatrixService.getPersonalDropMatrixElements(server, userID);
+		if (elements == null) {
+			// Building the personal matrix aggregates both the past and the current time ranges
 			Integer pastTimeout =
 					systemPropertyService.getPropertyIntegerValue(SystemPropertyKey.PAST_GLOBAL_MATRIX_QUERY_TIMEOUT);
-			pastQuery.setServer(server).setUserID(userID).setIsPast(true);
-			if (pastTimeout != null)
-				pastQuery.setTimeout(pastTimeout);
-			pastElements = (List<DropMatrixElement>)pastQuery.execute();
-
-			GlobalMatrixQuery currentQuery = (GlobalMatrixQuery)queryFactory.getQuery(QueryType.GLOBAL_MATRIX);
 			Integer currentTimeout = systemPropertyService
 					.getPropertyIntegerValue(SystemPropertyKey.CURRENT_GLOBAL_MATRIX_QUERY_TIMEOUT);
-			currentQuery.setServer(server).setUserID(userID).setIsPast(false);
-			if (currentTimeout != null)
-				currentQuery.setTimeout(currentTimeout);
-			currentElements = (List<DropMatrixElement>)currentQuery.execute();
-		} else {
-			pastElements = dropMatrixElementService.getGlobalDropMatrixElements(server, true);
-			if (pastElements.isEmpty()) {
-				Thread.sleep(1000L);
-				pastElements = dropMatrixElementService.getGlobalDropMatrixElements(server, true);
-				if (pastElements.isEmpty()) {
-					log.error("past global drop matrix elements shouldn't be empty");
-				}
-			}
-
-			currentElements = dropMatrixElementService.getGlobalDropMatrixElements(server, false);
-			if (currentElements.isEmpty()) {
-				Thread.sleep(1000L);
-				currentElements = dropMatrixElementService.getGlobalDropMatrixElements(server, false);
-				if (currentElements.isEmpty()) {
-					log.error("current global drop matrix elements shouldn't be empty");
-				}
-			}
+			Integer timeout = pastTimeout == null || currentTimeout == null ? null : pastTimeout + currentTimeout;
+			elements = queryExecutionService.execute(QueryType.GLOBAL_MATRIX, IpUtil.getIpAddr(request),
+					() -> personalDropMatrixService.buildPersonalDropMatrixElements(server, userID), timeout);
 		}
-		List<DropMatrixElement> elements = DropMatrixElementUtil.combineElementLists(pastElements, currentElements);
 
 		if (!showClosedZones)
-			removeClosedStages(elements, server);
+			elements = retainOpeningStages(elements, server);
 
 		if (stageFilter != null)
 			filterStages(elements, stageFilter);
@@ -134,31 +135,92 @@ public class ResultUtil {
 		if (itemFilter != null)
 			filterItems(elements, itemFilter);
 
-		HttpHeaders headers = new HttpHeaders();
-		if (userID == null) {
-			DropMatrixElement maxLastUpdateTimeElement =
-					elements.stream().max(Comparator.comparing(DropMatrixElement::getUpdateTime))
-							.orElseThrow(NoSuchElementException::new);
-			Long lastUpdateTime = maxLastUpdateTimeElement.getUpdateTime();
-			String lastModified = DateUtil.formatDate(new Date(lastUpdateTime));
-			headers.add(HttpHeaders.LAST_MODIFIED, lastModified);
-		}
-
 		elements.forEach(DropMatrixElement::toResultView);
 		MatrixQueryResponse result = new MatrixQueryResponse(elements);
 
+		return new ResponseEntity<MatrixQueryResponse>(result, HttpStatus.OK);
+	}
+
+	/**
+	 * @Title: getGlobalMatrixFromStore
+	 * @Description: Filter the global matrix in the in-memory store by stage and item ordinals, and only materialize
+	 *               the matching elements.
+	 * @param server
+	 * @param showClosedZones
+	 * @param stageFilter
+	 * @param itemFilter
+	 * @return ResponseEntity<MatrixQueryResponse>
+	 */
+	private ResponseEntity<MatrixQueryResponse> getGlobalMatrixFromStore(Server server, boolean showClosedZones,
+			String stageFilter, String itemFilter) {
+		DropMatrixTable table = dropMatrixStoreService.getCombinedTable(server);
+		if (table.size() == 0)
+			log.error("global drop matrix elements shouldn't be empty");
+
+		BitSet stageMask = null;
+		if (!showClosedZones) {
+			stageMask = openingStageService.getOpeningStageMask(server, System.currentTimeMillis());
+		}
+		Set<String> stageFilters = stageFilter == null ? Collections.emptySet() : extractFilters(stageFilter);
+		if (!stageFilters.isEmpty()) {
+			BitSet filterMask = dropMatrixStoreService.getStageMask(stageFilters);
+			if (stageMask == null)
+				stageMask = filterMask;
+			else
+				stageMask.and(filterMask);
+		}
+		Set<String> itemFilters = itemFilter == null ? Collections.emptySet() : extractFilters(itemFilter);
+		BitSet itemMask = itemFilters.isEmpty() ? null : dropMatrixStoreService.getItemMask(itemFilters);
+
+		HttpHeaders headers = new HttpHeaders();
+		if (table.getUpdateTime() > 0)
+			headers.add(HttpHeaders.LAST_MODIFIED, DateUtil.formatDate(new Date(table.getUpdateTime())));
+
+		MatrixQueryResponse result = new MatrixQueryResponse(table.toElements(stageMask, itemMask));
 		return new ResponseEntity<MatrixQueryResponse>(result, headers, HttpStatus.OK);
 	}
 
+	/**
+	 * @Title: getRenderedMatrixHelper
+	 * @Description: Serve the pre-rendered global matrix. The gzip variant is sent if the client accepts it, and 304
+	 *               is returned if the client's copy is still valid. If the matrix cannot be rendered, it is built from
+	 *               the store and serialized inline, like a filtered query.
+	 * @param request
+	 * @param server
+	 * @param showClosedZones
+	 * @return ResponseEntity<?> byte[], or MatrixQueryResponse if the rendered matrix is unavailable
+	 */
+	public ResponseEntity<?> getRenderedMatrixHelper(HttpServletRequest request, Server server,
+			boolean showClosedZones) {
+		log.info("GET /matrix");
+
+		RenderedResponse rendered = matrixResponseService.getRenderedMatrix(server, showClosedZones);
+		if (rendered == null) {
+			log.warn("rendered matrix of server {} is unavailable, serving it inline", server);
+			return getGlobalMatrixFromStore(server, showClosedZones, null, null);
+		}
+		boolean isGzip = acceptsGzip(request);
+		String etag = isGzip ? rendered.getEtag().replaceFirst("\"$", "-gzip\"") : rendered.getEtag();
+
+		HttpHeaders headers = new HttpHeaders();
+		headers.setETag(etag);
+		headers.add(HttpHeaders.LAST_MODIFIED, DateUtil.formatDate(new Date(rendered.getLastModified())));
+		headers.add(HttpHeaders.VARY, HttpHeaders.ACCEPT_ENCODING);
+		if (isNotModified(request, etag, rendered.getLastModified()))
+			return new ResponseEntity<>(headers, HttpStatus.NOT_MODIFIED);
+
+		byte[] body = isGzip ? rendered.getGzipBody() : rendered.getBody();
+		headers.setContentType(MediaType.APPLICATION_JSON_UTF8);
+		if (isGzip)
+			headers.add(HttpHeaders.CONTENT_ENCODING, "gzip");
+		headers.setContentLength(body.length);
+		return new ResponseEntity<>(body, headers, HttpStatus.OK);
+	}
+
 	public ResponseEntity<TrendQueryResponse> getTrendHelper(Server server) throws Exception {
 		List<DropMatrixElement> elements = dropMatrixElementService.getGlobalTrendElements(server);
-		if (elements.isEmpty()) {
-			Thread.sleep(1000L);
-			elements = dropMatrixElementService.getGlobalTrendElements(server);
-			if (elements.isEmpty()) {
-				log.error("global trend shouldn't be empty");
-			}
-		}
+		if (elements.isEmpty())
+			log.error("global trend shouldn't be empty");
 
 		DropMatrixElement maxLastUpdateTimeElement = elements.stream()
 				.max(Comparator.comparing(DropMatrixElement::getUpdateTime)).orElseThrow(NoSuchElementException::new);
@@ -188,19 +250,14 @@ public class ResultUtil {
 			GlobalPatternQuery pastQuery = (GlobalPatternQuery)queryFactory.getQuery(QueryType.GLOBAL_PATTERN);
 			Integer pastTimeout =
 					systemPropertyService.getPropertyIntegerValue(SystemPropertyKey.GLOBAL_PATTERN_QUERY_TIMEOUT);
-			pastQuery.setServer(server).setUserID(userID);
+			pastQuery.setServer(server).setUserID(userID).setClientID(IpUtil.getIpAddr(request));
 			if (pastTimeout != null)
 				pastQuery.setTimeout(pastTimeout);
 			elements = (List<PatternMatrixElement>)pastQuery.execute();
 		} else {
 			elements = patternMatrixElementService.getGlobalPatternMatrixElements(server);
-			if (elements.isEmpty()) {
-				Thread.sleep(1000L);
-				elements = patternMatrixElementService.getGlobalPatternMatrixElements(server);
-				if (elements.isEmpty()) {
-					log.error("global pattern matrix elements shouldn't be empty");
-				}
-			}
+			if (elements.isEmpty())
+				log.error("global pattern matrix elements shouldn't be empty");
 		}
 
 		HttpHeaders headers = new HttpHeaders();
@@ -230,62 +287,125 @@ public class ResultUtil {
 			return new ResponseEntity<>(advancedQueryResponse, HttpStatus.BAD_REQUEST);
 		}
 		final String userIDFromCookie = cookieUtil.readUserIDFromCookie(request);
+		final String clientID = IpUtil.getIpAddr(request);
+		Integer timeout = systemPropertyService.getPropertyIntegerValue(SystemPropertyKey.ADVANCED_QUERY_TIMEOUT);
+		Long deadline = timeout == null ? null : System.currentTimeMillis() + TimeUnit.MINUTES.toMillis(timeout);
+
+		List<SingleQuery> singleQueries = advancedQueryRequest.getQueries();
+		List<BasicQuery> queries = singleQueries.stream().map(singleQuery -> {
+			Boolean isPersonal = Optional.ofNullable(singleQuery.getIsPersonal()).orElse(false);
+			String userID = isPersonal ? userIDFromCookie : null;
+			return queryMapper.queryRequestToQueryModel(singleQuery, userID, clientID, timeout);
+		}).collect(Collectors.toList());
+		// Cached results are answered without going through the query executor
+		List<List<DropMatrixElement>> cachedResults = queries.stream()
+				.map(query -> query instanceof CustomDropMatrixQuery
+						? queryResultCacheService.getIfPresent((CustomDropMatrixQuery)query)
+						: null)
+				.collect(Collectors.toList());
+		List<BasicQuery> queriesToRun = new ArrayList<>();
+		for (int i = 0; i < queries.size(); i++) {
+			if (queries.get(i) != null && cachedResults.get(i) == null)
+				queriesToRun.add(queries.get(i));
+		}
+		Iterator<Future<List<? extends MatrixElement>>> futures =
+				queryExecutionService.submitAll(clientID, queriesToRun, deadline).iterator();
+
 		List<BasicQueryResponse> results = new ArrayList<>();
-		advancedQueryRequest.getQueries().forEach(singleQuery -> {
+		for (int i = 0; i < singleQueries.size(); i++) {
+			SingleQuery singleQuery = singleQueries.get(i);
+			if (queries.get(i) == null) {
+				results.add(new FailedQueryResponse(QueryStatus.ERROR, "Failed to create the query."));
+				continue;
+			}
+			if (cachedResults.get(i) != null) {
+				results.add(queryMapper.elementsToBasicQueryResponse(singleQuery, cachedResults.get(i)));
+				continue;
+			}
+			Future<List<? extends MatrixElement>> future = futures.next();
 			try {
-				Boolean isPersonal = Optional.ofNullable(singleQuery.getIsPersonal()).orElse(false);
-				String userID = isPersonal ? userIDFromCookie : null;
-				Integer timeout =
-						systemPropertyService.getPropertyIntegerValue(SystemPropertyKey.ADVANCED_QUERY_TIMEOUT);
-				BasicQuery query = queryMapper.queryRequestToQueryModel(singleQuery, userID, timeout);
-				List<DropMatrixElement> elements = (List<DropMatrixElement>)query.execute();
+				List<DropMatrixElement> elements = (List<DropMatrixElement>)(deadline == null ? future.get()
+						: future.get(Math.max(deadline - System.currentTimeMillis(), 0L), TimeUnit.MILLISECONDS));
 				elements.forEach(DropMatrixElement::toResultView);
-				BasicQueryResponse queryResponse = queryMapper.elementsToBasicQueryResponse(singleQuery, elements);
-				results.add(queryResponse);
+				results.add(queryMapper.elementsToBasicQueryResponse(singleQuery, elements));
 			} catch (TimeoutException toEx) {
-				log.error("TimeoutException in executeAdvancedQueries: ", toEx);
+				future.cancel(true);
+				log.warn("Query " + i + " in executeAdvancedQueries timed out");
+				results.add(new FailedQueryResponse(QueryStatus.TIMEOUT, "The query is not finished in time."));
 			} catch (ExecutionException exeEx) {
-				log.error("ExecutionException in executeAdvancedQueries: ", exeEx);
-			} catch (Exception ex) {
-				log.error("Error in executeAdvancedQueries: ", ex);
+				log.error("ExecutionException in executeAdvancedQueries: ", exeEx.getCause());
+				results.add(new FailedQueryResponse(QueryStatus.ERROR, "Failed to execute the query."));
+			} catch (InterruptedException inEx) {
+				future.cancel(true);
+				Thread.currentThread().interrupt();
+				results.add(new FailedQueryResponse(QueryStatus.ERROR, "The query is interrupted."));
 			}
-		});
+		}
 		AdvancedQueryResponse advancedQueryResponse = new AdvancedQueryResponse(results);
 		return new ResponseEntity<AdvancedQueryResponse>(advancedQueryResponse, HttpStatus.OK);
 	}
 
-	private void removeClosedStages(List<DropMatrixElement> elements, Server server) {
-		Set<String> openingStages = dropInfoService.getOpeningStages(server, System.currentTimeMillis());
-		Iterator<DropMatrixElement> iter = elements.iterator();
-		while (iter.hasNext()) {
-			DropMatrixElement element = iter.next();
-			if (!openingStages.contains(element.getStageId()))
-				iter.remove();
+	private boolean acceptsGzip(HttpServletRequest request) {
+		String acceptEncoding = request.getHeader(HttpHeaders.ACCEPT_ENCODING);
+		if (acceptEncoding == null)
+			return false;
+		for (String coding : acceptEncoding.split(",")) {
+			String[] parts = coding.trim().split(";");
+			if (!"gzip".equalsIgnoreCase(parts[0].trim()))
+				continue;
+			return parts.length < 2 || !parts[1].trim().matches("q=0(\\.0*)?");
+		}
+		return false;
+	}
+
+	/**
+	 * If-None-Match takes precedence over If-Modified-Since, as required by RFC 7232.
+	 */
+	private boolean isNotModified(HttpServletRequest request, String etag, Long lastModified) {
+		String ifNoneMatch = request.getHeader(HttpHeaders.IF_NONE_MATCH);
+		if (ifNoneMatch != null) {
+			for (String tag : ifNoneMatch.split(",")) {
+				tag = tag.trim();
+				if (tag.startsWith("W/"))
+					tag = tag.substring(2);
+				if (tag.equals("*") || tag.equals(etag))
+					return true;
+			}
+			return false;
+		}
+		try {
+			long ifModifiedSince = request.getDateHeader(HttpHeaders.IF_MODIFIED_SINCE);
+			return ifModifiedSince != -1 && lastModified / 1000 <= ifModifiedSince / 1000;
+		} catch (IllegalArgumentException e) {
+			return false;
 		}
 	}
 
+	/**
+	 * Copy the elements of opening stages in one pass, testing each stage ordinal against the opening stage mask.
+	 */
+	private List<DropMatrixElement> retainOpeningStages(List<DropMatrixElement> elements, Server server) {
+		OrdinalDictionary stages = dropMatrixStoreService.getStageDictionary();
+		BitSet openingStageMask = openingStageService.getOpeningStageMask(server, System.currentTimeMillis());
+		List<DropMatrixElement> result = new ArrayList<>(elements.size());
+		for (DropMatrixElement element : elements) {
+			int ordinal = stages.lookup(element.getStageId());
+			if (ordinal >= 0 && openingStageMask.get(ordinal))
+				result.add(element);
+		}
+		return result;
+	}
+
 	private void filterStages(List<DropMatrixElement> elements, String stageFilter) {
 		Set<String> filters = extractFilters(stageFilter);
-		if (filters.isEmpty())
-			return;
-		Iterator<DropMatrixElement> iter = elements.iterator();
-		while (iter.hasNext()) {
-			DropMatrixElement element = iter.next();
-			if (!filters.contains(element.getStageId()))
-				iter.remove();
-		}
+		if (!filters.isEmpty())
+			DropMatrixElementUtil.retainStages(elements, filters);
 	}
 
 	private void filterItems(List<DropMatrixElement> elements, String itemFilter) {
 		Set<String> filters = extractFilters(itemFilter);
-		if (filters.isEmpty())
-			return;
-		Iterator<DropMatrixElement> iter = elements.iterator();
-		while (iter.hasNext()) {
-			DropMatrixElement element = iter.next();
-			if (!filters.contains(element.getItemId()))
-				iter.remove();
-		}
+		if (!filters.isEmpty())
+			DropMatrixElementUtil.retainItems(elements, filters);
 	}
 
 	private Set<String> extractFilters(String filterStr) {
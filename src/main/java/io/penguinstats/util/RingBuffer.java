@@ -0,0 +1,123 @@
+package io.penguinstats.util;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Consumer;
+
+/**
+ * A bounded lock-free queue over a ring of slots, for handing objects from request threads to a background thread.<br>
+ * Every slot has a sequence number telling whether it is free for the producer at a position, or filled for the
+ * consumer at it. Producers and consumers claim positions by CAS, so neither of them ever blocks. When the ring is
+ * full, {@link #offer(Object)} fails instead of waiting.
+ */
+public class RingBuffer<T> {
+
+	private final int mask;
+
+	private final AtomicReferenceArray<T> elements;
+
+	private final AtomicLongArray sequences;
+
+	/**
+	 * The next position to produce at
+	 */
+	private final AtomicLong tail = new AtomicLong();
+
+	/**
+	 * The next position to consume at
+	 */
+	private final AtomicLong head = new AtomicLong();
+
+	/**
+	 * @param capacity Rounded up to a power of 2.
+	 */
+	public RingBuffer(int capacity) {
+		if (capacity < 1 || capacity > (1 << 30))
+			throw new IllegalArgumentException("Illegal capacity: " + capacity);
+		int size = Integer.highestOneBit(capacity);
+		if (size < capacity)
+			size <<= 1;
+		this.mask = size - 1;
+		this.elements = new AtomicReferenceArray<>(size);
+		this.sequences = new AtomicLongArray(size);
+		for (int i = 0; i < size; i++)
+			sequences.set(i, i);
+	}
+
+	/**
+	 * @Title: offer
+	 * @Description: Put an element at the tail.
+	 * @param element
+	 * @return boolean False if the ring is full.
+	 */
+	public boolean offer(T element) {
+		long position = tail.get();
+		while (true) {
+			int index = (int)(position & mask);
+			long difference = sequences.get(index) - position;
+			if (difference == 0) {
+				if (tail.compareAndSet(position, position + 1)) {
+					elements.set(index, element);
+					sequences.set(index, position + 1);
+					return true;
+				}
+				position = tail.get();
+			} else if (difference < 0)
+				return false;
+			else
+				position = tail.get();
+		}
+	}
+
+	/**
+	 * @Title: poll
+	 * @Description: Take the element at the head.
+	 * @return T Null if the ring is empty.
+	 */
+	public T poll() {
+		long position = head.get();
+		while (true) {
+			int index = (int)(position & mask);
+			long difference = sequences.get(index) - (position + 1);
+			if (difference == 0) {
+				if (head.compareAndSet(position, position + 1)) {
+					T element = elements.get(index);
+					elements.set(index, null);
+					sequences.set(index, position + mask + 1);
+					return element;
+				}
+				position = head.get();
+			} else if (difference < 0)
+				return null;
+			else
+				position = head.get();
+		}
+	}
+
+	/**
+	 * @Title: drain
+	 * @Description: Take at most maxNum elements from the head.
+	 * @param consumer
+	 * @param maxNum
+	 * @return int The number of elements taken
+	 */
+	public int drain(Consumer<T> consumer, int maxNum) {
+		int count = 0;
+		T element;
+		while (count < maxNum && (element = poll()) != null) {
+			consumer.accept(element);
+			count++;
+		}
+		return count;
+	}
+
+	public int capacity() {
+		return mask + 1;
+	}
+
+	public int size() {
+		return (int)Math.max(0L, Math.min(tail.get() - head.get(), capacity()));
+	}
+
+}
@@ -0,0 +1,86 @@
+package io.penguinstats.util;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Counts values by key in a sliding window of the latest minutes.<br>
+ * The window is a ring of per-minute buckets, together with the running totals of all buckets. When the window moves
+ * on, the buckets falling out of it are subtracted from the totals and reused for the new minutes, so that reading the
+ * totals only costs O(keys). Values older than the window are ignored, and values from the future, e.g. caused by
+ * clock skew, are counted in the current minute.
+ */
+public class SlidingWindowCounter {
+
+	private static final long MINUTE = 60000L;
+
+	private final int size;
+
+	private final Map<String, Long>[] buckets;
+
+	private final Map<String, Long> totals = new HashMap<>();
+
+	/** The latest minute in the window. */
+	private long headMinute = Long.MIN_VALUE;
+
+	/**
+	 * @param windowLength The length of the window in milliseconds. It is rounded down to whole minutes.
+	 */
+	@SuppressWarnings("unchecked")
+	public SlidingWindowCounter(long windowLength) {
+		this.size = (int)Math.max(windowLength / MINUTE, 1L);
+		this.buckets = new Map[size];
+		for (int i = 0; i < size; i++)
+			buckets[i] = new HashMap<>();
+	}
+
+	/**
+	 * @Title: add
+	 * @Description: Add a value of the given time. A negative value cancels one added before.
+	 * @param key
+	 * @param timestamp
+	 * @param delta
+	 * @param currentTime
+	 */
+	public synchronized void add(String key, long timestamp, long delta, long currentTime) {
+		advance(Math.floorDiv(currentTime, MINUTE));
+		long minute = Math.min(Math.floorDiv(timestamp, MINUTE), headMinute);
+		if (minute <= headMinute - size)
+			return;
+		buckets[(int)Math.floorMod(minute, (long)size)].merge(key, delta, Long::sum);
+		totals.merge(key, delta, Long::sum);
+	}
+
+	/**
+	 * @Title: sum
+	 * @Description: Sum the values in the window ending at the given time by key.
+	 * @param currentTime
+	 * @return Map<String,Long>
+	 */
+	public synchronized Map<String, Long> sum(long currentTime) {
+		advance(Math.floorDiv(currentTime, MINUTE));
+		Map<String, Long> result = new HashMap<>(totals);
+		result.values().removeIf(value -> value == 0L);
+		return result;
+	}
+
+	/**
+	 * Move the window on to the given minute, expiring the oldest buckets.
+	 */
+	private void advance(long currentMinute) {
+		if (currentMinute <= headMinute)
+			return;
+		long firstMinute = headMinute == Long.MIN_VALUE ? currentMinute - size + 1
+				: Math.max(headMinute + 1, currentMinute - size + 1);
+		for (long minute = firstMinute; minute <= currentMinute; minute++) {
+			Map<String, Long> bucket = buckets[(int)Math.floorMod(minute, (long)size)];
+			bucket.forEach((key, value) -> {
+				if (totals.merge(key, -value, Long::sum) == 0L)
+					totals.remove(key);
+			});
+			bucket.clear();
+		}
+		headMinute = currentMinute;
+	}
+
+}
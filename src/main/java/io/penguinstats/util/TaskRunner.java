@@ -0,0 +1,231 @@
+package io.penguinstats.util;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import lombok.Getter;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The shared executor of scheduled tasks.<br>
+ * All tasks run in one bounded fork-join pool. A task is skipped if its previous run is still executing. Inside a
+ * task, work can be fanned out with {@link #forEach(Collection, Consumer)} and {@link #map(List, Function)}, and every
+ * aggregation wrapped by {@link #limitAggregation(Supplier)} waits for one of a limited number of permits, so that the
+ * tasks never put more than <b>maxConcurrentAggregations</b> aggregations on the database at once.<br>
+ * Outside the pool, e.g. in a query from a client, nothing is fanned out: the items run one by one in the calling
+ * thread, so that they keep its query deadline and its cancellation, and do not compete with the tasks.
+ */
+@Log4j2
+@Component("taskRunner")
+public class TaskRunner {
+
+	@Value("${penguinstats.task.parallelism:4}")
+	private int parallelism;
+
+	@Value("${penguinstats.task.max-concurrent-aggregations:2}")
+	private int maxConcurrentAggregations;
+
+	private ForkJoinPool pool;
+
+	private Semaphore aggregationPermits;
+
+	private final Map<String, TaskStats> statsMap = new ConcurrentHashMap<>();
+
+	/** The name of the task running in the current thread, so that its items can be timed under it. */
+	private final ThreadLocal<String> currentTaskName = new ThreadLocal<>();
+
+	@PostConstruct
+	public void init() {
+		pool = new ForkJoinPool(parallelism, p -> {
+			ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(p);
+			thread.setName("task-worker-" + thread.getPoolIndex());
+			return thread;
+		}, (thread, e) -> log.error("Uncaught exception in " + thread.getName() + ": ", e), false);
+		aggregationPermits = new Semaphore(maxConcurrentAggregations, true);
+	}
+
+	@PreDestroy
+	public void destroy() {
+		pool.shutdownNow();
+	}
+
+	/**
+	 * @Title: run
+	 * @Description: Run a task asynchronously in the pool, unless its previous run is still executing.
+	 * @param taskName
+	 * @param job
+	 */
+	public void run(String taskName, Runnable job) {
+		TaskStats stats = statsMap.computeIfAbsent(taskName, TaskStats::new);
+		if (!stats.running.compareAndSet(false, true)) {
+			stats.skipped.incrementAndGet();
+			log.warn("{} is skipped because its previous run is still executing", taskName);
+			return;
+		}
+		pool.execute(() -> {
+			Long startTime = System.currentTimeMillis();
+			boolean succeeded = false;
+			currentTaskName.set(taskName);
+			try {
+				job.run();
+				stats.succeeded.incrementAndGet();
+				succeeded = true;
+			} catch (Exception e) {
+				stats.failed.incrementAndGet();
+				log.error("Error in " + taskName + ": ", e);
+			} finally {
+				currentTaskName.remove();
+				long duration = System.currentTimeMillis() - startTime;
+				stats.lastDuration.set(duration);
+				stats.totalDuration.addAndGet(duration);
+				stats.running.set(false);
+				MetricsUtil.recordTask(taskName, succeeded ? "success" : "failure", duration);
+				log.debug("{} finished in {} ms", taskName, duration);
+			}
+		});
+	}
+
+	/**
+	 * @Title: forEach
+	 * @Description: Apply the action on all items in parallel and wait for all of them. A failure on one item is
+	 *               logged and does not affect the others. Inside a task, the time on each item is recorded.
+	 * @param items
+	 * @param action
+	 */
+	public <T> void forEach(Collection<T> items, Consumer<T> action) {
+		String taskName = currentTaskName.get();
+		map(items.stream().collect(Collectors.toList()), item -> {
+			Long startTime = System.currentTimeMillis();
+			try {
+				action.accept(item);
+			} catch (Exception e) {
+				log.error("Error in processing " + item + ": ", e);
+			} finally {
+				if (taskName != null)
+					MetricsUtil.recordTaskItem(taskName, String.valueOf(item), System.currentTimeMillis() - startTime);
+			}
+			return null;
+		});
+	}
+
+	/**
+	 * @Title: map
+	 * @Description: Apply the function on all items in parallel, and return the results in the order of the items.
+	 *               If any of them fails, the exception is thrown after all of them finished. Outside the pool, the
+	 *               items are processed in the calling thread, and the rest of them are skipped once it is
+	 *               interrupted.
+	 * @param items
+	 * @param function
+	 * @return List<R>
+	 * @throws CancellationException if the calling thread outside the pool is interrupted
+	 */
+	public <T, R> List<R> map(List<T> items, Function<T, R> function) {
+		if (items.isEmpty())
+			return Collections.emptyList();
+		if (items.size() == 1)
+			return Collections.singletonList(function.apply(items.get(0)));
+
+		if (!isInPool()) {
+			List<R> results = new ArrayList<>(items.size());
+			for (T item : items) {
+				if (Thread.currentThread().isInterrupted())
+					throw new CancellationException("Interrupted before all items are processed");
+				results.add(function.apply(item));
+			}
+			return results;
+		}
+
+		List<ForkJoinTask<R>> tasks = items.stream().map(item -> ForkJoinTask.adapt(() -> function.apply(item)))
+				.collect(Collectors.toList());
+		ForkJoinTask.invokeAll(tasks);
+		return tasks.stream().map(ForkJoinTask::join).collect(Collectors.toList());
+	}
+
+	/**
+	 * @Title: limitAggregation
+	 * @Description: Run an aggregation when a permit is available. Only calls from the tasks are limited.
+	 * @param aggregation
+	 * @return T
+	 */
+	public <T> T limitAggregation(Supplier<T> aggregation) {
+		if (!isInPool())
+			return aggregation.get();
+		try {
+			ForkJoinPool.managedBlock(new ForkJoinPool.ManagedBlocker() {
+				@Override
+				public boolean block() throws InterruptedException {
+					aggregationPermits.acquire();
+					return true;
+				}
+
+				@Override
+				public boolean isReleasable() {
+					return aggregationPermits.tryAcquire();
+				}
+			});
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException("Interrupted while waiting for an aggregation permit", e);
+		}
+		try {
+			return aggregation.get();
+		} finally {
+			aggregationPermits.release();
+		}
+	}
+
+	public Map<String, TaskStats> getStats() {
+		return Collections.unmodifiableMap(statsMap);
+	}
+
+	public int getActiveThreadCount() {
+		return pool.getActiveThreadCount();
+	}
+
+	public int getAvailableAggregationPermits() {
+		return aggregationPermits.availablePermits();
+	}
+
+	private boolean isInPool() {
+		return ForkJoinTask.inForkJoinPool() && ForkJoinTask.getPool() == pool;
+	}
+
+	@Getter
+	public static class TaskStats {
+
+		private final String taskName;
+		private final AtomicBoolean running = new AtomicBoolean(false);
+		private final AtomicLong succeeded = new AtomicLong();
+		private final AtomicLong failed = new AtomicLong();
+		private final AtomicLong skipped = new AtomicLong();
+		private final AtomicLong lastDuration = new AtomicLong();
+		private final AtomicLong totalDuration = new AtomicLong();
+
+		private TaskStats(String taskName) {
+			this.taskName = taskName;
+		}
+
+	}
+
+}
@@ -0,0 +1,93 @@
+package io.penguinstats.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+/**
+ * Values derived from data which is rarely changed, kept per key until the data changes.<br>
+ * An entry is reloaded when the version has changed since it was loaded, or when it is older than the refresh
+ * interval. The version is read before loading, so a change made during a load makes the next read reload again,
+ * instead of keeping the stale value under the new version.
+ */
+public class VersionedCache<K, V> {
+
+	private final LongSupplier version;
+
+	private final LongSupplier refreshInterval;
+
+	private final Map<K, Entry<V>> entries = new ConcurrentHashMap<>();
+
+	public VersionedCache(LongSupplier version, LongSupplier refreshInterval) {
+		this.version = version;
+		this.refreshInterval = refreshInterval;
+	}
+
+	/**
+	 * @Title: get
+	 * @Description: Get the value of the key, or load and keep it if it is missing or stale.
+	 * @param key
+	 * @param loader
+	 * @return V
+	 */
+	public V get(K key, Function<? super K, ? extends V> loader) {
+		long currentVersion = getVersion();
+		V value = getIfPresent(key);
+		if (value != null)
+			return value;
+		value = loader.apply(key);
+		put(key, value, currentVersion);
+		return value;
+	}
+
+	/**
+	 * @Title: getIfPresent
+	 * @Description: Get the value of the key if it is neither missing nor stale.
+	 * @param key
+	 * @return V Null if the value has to be reloaded.
+	 */
+	public V getIfPresent(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry == null || entry.version != getVersion() || entry.expireTime <= System.currentTimeMillis())
+			return null;
+		return entry.value;
+	}
+
+	/**
+	 * @Title: getVersion
+	 * @Description: The current version, to be read before loading a value which is put later.
+	 * @return long
+	 */
+	public long getVersion() {
+		return version.getAsLong();
+	}
+
+	/**
+	 * @Title: put
+	 * @Description: Keep a value loaded at the given version.
+	 * @param key
+	 * @param value
+	 * @param version The version read before loading the value.
+	 */
+	public void put(K key, V value, long version) {
+		entries.put(key, new Entry<>(value, version, System.currentTimeMillis() + refreshInterval.getAsLong()));
+	}
+
+	private static class Entry<V> {
+
+		private final V value;
+
+		private final long version;
+
+		private final long expireTime;
+
+		private Entry(V value, long version, long expireTime) {
+			this.value = value;
+			this.version = version;
+			this.expireTime = expireTime;
+		}
+
+	}
+
+}
@@ -0,0 +1,22 @@
+package io.penguinstats.util.exception;
+
+import io.penguinstats.enums.ErrorCode;
+import io.penguinstats.model.ItemDrop;
+import java.util.List;
+import java.util.Optional;
+import lombok.Getter;
+
+public class BatchInsertException extends DatabaseException {
+  @Getter
+  private List<ItemDrop> insertedItemDrops;
+  @Getter
+  private List<ItemDrop> failedItemDrops;
+
+  public BatchInsertException(List<ItemDrop> insertedItemDrops, List<ItemDrop> failedItemDrops,
+      Throwable cause) {
+    super(ErrorCode.ITEM_DROP_BATCH_INSERT_FAILED,
+        failedItemDrops.size() + " item drops failed in batch insert", Optional.empty(), cause);
+    this.insertedItemDrops = insertedItemDrops;
+    this.failedItemDrops = failedItemDrops;
+  }
+}
@@ -0,0 +1,16 @@
+package io.penguinstats.util.exception;
+
+import io.penguinstats.enums.ErrorCode;
+import java.util.Optional;
+import lombok.Getter;
+
+public class ServiceUnavailableException extends PenguinException {
+  @Getter
+  private Integer retryAfter;
+
+  public ServiceUnavailableException(ErrorCode errorCode, String message,
+      Optional<Object> data, Integer retryAfter) {
+    super(errorCode, message, data);
+    this.retryAfter = retryAfter;
+  }
+}
@@ -0,0 +1,269 @@
+package io.penguinstats.util.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+
+import io.penguinstats.model.DropMatrixElement;
+
+/**
+ * An immutable, column-oriented drop matrix.<br>
+ * Every (stage, item) cell is one row. Stages and items are kept as ordinals of shared {@link OrdinalDictionary}s, and
+ * <b>quantity</b>, <b>times</b>, <b>start</b> and <b>end</b> are kept in primitive arrays. A cell is found in O(1)
+ * through an open addressing index over the (stage, item) ordinals.<br>
+ * Filters are given as {@link BitSet}s of ordinals, so that a row is tested without touching any id string.
+ */
+public class DropMatrixTable {
+
+	/** Stands for a null end, i.e. the time range is still open. */
+	public static final long OPEN_END = Long.MIN_VALUE;
+
+	private static final int EMPTY_SLOT = -1;
+
+	private final String[] stageIds;
+	private final String[] itemIds;
+
+	private final int size;
+	private final int[] stageOrdinals;
+	private final int[] itemOrdinals;
+	private final int[] quantities;
+	private final int[] times;
+	private final long[] starts;
+	private final long[] ends;
+
+	private final long updateTime;
+
+	private final int[] slots;
+
+	private DropMatrixTable(String[] stageIds, String[] itemIds, int size, int[] stageOrdinals, int[] itemOrdinals,
+			int[] quantities, int[] times, long[] starts, long[] ends, long updateTime) {
+		this.stageIds = stageIds;
+		this.itemIds = itemIds;
+		this.size = size;
+		this.stageOrdinals = stageOrdinals;
+		this.itemOrdinals = itemOrdinals;
+		this.quantities = quantities;
+		this.times = times;
+		this.starts = starts;
+		this.ends = ends;
+		this.updateTime = updateTime;
+		this.slots = new int[Integer.highestOneBit(Math.max(size, 1) * 2 + 1) << 1];
+		Arrays.fill(slots, EMPTY_SLOT);
+		for (int row = 0; row < size; row++)
+			slots[findSlot(stageOrdinals[row], itemOrdinals[row])] = row;
+	}
+
+	/**
+	 * @Title: of
+	 * @Description: Build a table from matrix elements. Elements on the same cell are combined the same way as
+	 *               DropMatrixElementUtil.combineElements.
+	 * @param elements
+	 * @param stages
+	 * @param items
+	 * @return DropMatrixTable
+	 */
+	public static DropMatrixTable of(Collection<DropMatrixElement> elements, OrdinalDictionary stages,
+			OrdinalDictionary items) {
+		Builder builder = new Builder(elements.size());
+		for (DropMatrixElement el : elements) {
+			builder.add(stages.intern(el.getStageId()), items.intern(el.getItemId()), el.getQuantity(), el.getTimes(),
+					el.getStart(), el.getEnd() == null ? OPEN_END : el.getEnd(),
+					el.getUpdateTime() == null ? 0L : el.getUpdateTime());
+		}
+		return builder.build(stages.toArray(), items.toArray());
+	}
+
+	/**
+	 * @Title: combine
+	 * @Description: Combine two tables built on the same dictionaries, like DropMatrixElementUtil.combineElementLists.
+	 * @param table1
+	 * @param table2
+	 * @return DropMatrixTable
+	 */
+	public static DropMatrixTable combine(DropMatrixTable table1, DropMatrixTable table2) {
+		Builder builder = new Builder(table1.size + table2.size);
+		for (DropMatrixTable table : Arrays.asList(table1, table2)) {
+			for (int row = 0; row < table.size; row++) {
+				builder.add(table.stageOrdinals[row], table.itemOrdinals[row], table.quantities[row], table.times[row],
+						table.starts[row], table.ends[row], table.updateTime);
+			}
+		}
+		DropMatrixTable longer = table1.stageIds.length >= table2.stageIds.length ? table1 : table2;
+		DropMatrixTable wider = table1.itemIds.length >= table2.itemIds.length ? table1 : table2;
+		return builder.build(longer.stageIds, wider.itemIds);
+	}
+
+	public int size() {
+		return size;
+	}
+
+	public long getUpdateTime() {
+		return updateTime;
+	}
+
+	/**
+	 * @Title: indexOf
+	 * @Description: Find the row of a cell.
+	 * @param stageOrdinal
+	 * @param itemOrdinal
+	 * @return int The row, or -1 if the cell is not in the table
+	 */
+	public int indexOf(int stageOrdinal, int itemOrdinal) {
+		if (stageOrdinal < 0 || itemOrdinal < 0)
+			return -1;
+		return slots[findSlot(stageOrdinal, itemOrdinal)];
+	}
+
+	public int getStageOrdinal(int row) {
+		return stageOrdinals[row];
+	}
+
+	public int getItemOrdinal(int row) {
+		return itemOrdinals[row];
+	}
+
+	public int getQuantity(int row) {
+		return quantities[row];
+	}
+
+	public int getTimes(int row) {
+		return times[row];
+	}
+
+	public long getStart(int row) {
+		return starts[row];
+	}
+
+	public long getEnd(int row) {
+		return ends[row];
+	}
+
+	/**
+	 * @Title: count
+	 * @Description: Count the rows which match both masks. A null mask matches everything.
+	 * @param stageMask
+	 * @param itemMask
+	 * @return int
+	 */
+	public int count(BitSet stageMask, BitSet itemMask) {
+		int count = 0;
+		for (int row = 0; row < size; row++) {
+			if (matches(row, stageMask, itemMask))
+				count++;
+		}
+		return count;
+	}
+
+	/**
+	 * @Title: toElements
+	 * @Description: Materialize the rows which match both masks as elements in result view. A null mask matches
+	 *               everything.
+	 * @param stageMask
+	 * @param itemMask
+	 * @return List<DropMatrixElement>
+	 */
+	public List<DropMatrixElement> toElements(BitSet stageMask, BitSet itemMask) {
+		List<DropMatrixElement> result = new ArrayList<>(count(stageMask, itemMask));
+		for (int row = 0; row < size; row++) {
+			if (!matches(row, stageMask, itemMask))
+				continue;
+			DropMatrixElement element = new DropMatrixElement();
+			element.setStageId(stageIds[stageOrdinals[row]]);
+			element.setItemId(itemIds[itemOrdinals[row]]);
+			element.setQuantity(quantities[row]);
+			element.setTimes(times[row]);
+			element.setStart(starts[row]);
+			element.setEnd(ends[row] == OPEN_END ? null : ends[row]);
+			result.add(element);
+		}
+		return result;
+	}
+
+	private boolean matches(int row, BitSet stageMask, BitSet itemMask) {
+		return (stageMask == null || stageMask.get(stageOrdinals[row]))
+				&& (itemMask == null || itemMask.get(itemOrdinals[row]));
+	}
+
+	/**
+	 * The slot holding the row of the cell, or the empty slot where it would be put.
+	 */
+	private int findSlot(int stageOrdinal, int itemOrdinal) {
+		int mask = slots.length - 1;
+		int slot = hash(stageOrdinal, itemOrdinal) & mask;
+		while (slots[slot] != EMPTY_SLOT
+				&& (stageOrdinals[slots[slot]] != stageOrdinal || itemOrdinals[slots[slot]] != itemOrdinal))
+			slot = (slot + 1) & mask;
+		return slot;
+	}
+
+	private static int hash(int stageOrdinal, int itemOrdinal) {
+		int h = (stageOrdinal * 0x9E3779B9) ^ itemOrdinal;
+		h *= 0x85EBCA6B;
+		return h ^ (h >>> 16);
+	}
+
+	/**
+	 * Collects cells in primitive arrays, combining the ones added more than once.
+	 */
+	private static class Builder {
+
+		private int size;
+		private int[] stageOrdinals;
+		private int[] itemOrdinals;
+		private int[] quantities;
+		private int[] times;
+		private long[] starts;
+		private long[] ends;
+		private long updateTime;
+
+		private int[] slots;
+
+		private Builder(int capacity) {
+			stageOrdinals = new int[capacity];
+			itemOrdinals = new int[capacity];
+			quantities = new int[capacity];
+			times = new int[capacity];
+			starts = new long[capacity];
+			ends = new long[capacity];
+			slots = new int[Integer.highestOneBit(Math.max(capacity, 1) * 2 + 1) << 1];
+			Arrays.fill(slots, EMPTY_SLOT);
+		}
+
+		private void add(int stageOrdinal, int itemOrdinal, int quantity, int time, long start, long end,
+				long elementUpdateTime) {
+			updateTime = Math.max(updateTime, elementUpdateTime);
+			int mask = slots.length - 1;
+			int slot = hash(stageOrdinal, itemOrdinal) & mask;
+			while (slots[slot] != EMPTY_SLOT) {
+				int row = slots[slot];
+				if (stageOrdinals[row] == stageOrdinal && itemOrdinals[row] == itemOrdinal) {
+					quantities[row] += quantity;
+					times[row] += time;
+					starts[row] = Math.min(starts[row], start);
+					if (ends[row] != OPEN_END)
+						ends[row] = end == OPEN_END ? OPEN_END : Math.max(ends[row], end);
+					return;
+				}
+				slot = (slot + 1) & mask;
+			}
+			slots[slot] = size;
+			stageOrdinals[size] = stageOrdinal;
+			itemOrdinals[size] = itemOrdinal;
+			quantities[size] = quantity;
+			times[size] = time;
+			starts[size] = start;
+			ends[size] = end;
+			size++;
+		}
+
+		private DropMatrixTable build(String[] stageIds, String[] itemIds) {
+			return new DropMatrixTable(stageIds, itemIds, size, Arrays.copyOf(stageOrdinals, size),
+					Arrays.copyOf(itemOrdinals, size), Arrays.copyOf(quantities, size), Arrays.copyOf(times, size),
+					Arrays.copyOf(starts, size), Arrays.copyOf(ends, size), updateTime);
+		}
+
+	}
+
+}
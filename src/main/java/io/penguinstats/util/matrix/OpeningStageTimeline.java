@@ -0,0 +1,114 @@
+package io.penguinstats.util.matrix;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TimeRange;
+
+/**
+ * The opening stages of one server over time, precomputed from its drop infos and their time ranges.<br>
+ * All range boundaries are sorted in <b>boundaries</b>, and segment i is [boundaries[i], boundaries[i + 1]). Each
+ * segment has the set of opening stages both as a bitset over the ordinals of a shared {@link OrdinalDictionary} and
+ * as a set of stage ids, so finding the opening stages at some time is a binary search. The timeline is immutable, and
+ * bitsets are copied when they are handed out.
+ */
+public class OpeningStageTimeline {
+
+	private final long[] boundaries;
+
+	private final BitSet[] masks;
+
+	private final List<Set<String>> stageIdSets;
+
+	private OpeningStageTimeline(long[] boundaries, BitSet[] masks, List<Set<String>> stageIdSets) {
+		this.boundaries = boundaries;
+		this.masks = masks;
+		this.stageIdSets = stageIdSets;
+	}
+
+	/**
+	 * @Title: build
+	 * @Description: Sweep the time ranges of all drop infos in boundary order, counting the ranges open for each stage.
+	 *               Infos whose time range is unknown are skipped.
+	 * @param infos
+	 * @param timeRangeMap rangeID -> time range
+	 * @param stages The dictionary the stage ordinals are interned into
+	 * @return OpeningStageTimeline
+	 */
+	public static OpeningStageTimeline build(List<DropInfo> infos, Map<String, TimeRange> timeRangeMap,
+			OrdinalDictionary stages) {
+		// boundary -> ordinals of stages whose ranges start (+1) or end (-1) there, once per (stage, range)
+		TreeMap<Long, List<int[]>> events = new TreeMap<>();
+		Set<String> seen = new HashSet<>();
+		for (DropInfo info : infos) {
+			TimeRange range = timeRangeMap.get(info.getTimeRangeID());
+			if (range == null || range.getStart() == null || !seen.add(info.getStageId() + "|" + info.getTimeRangeID()))
+				continue;
+			int ordinal = stages.intern(info.getStageId());
+			events.computeIfAbsent(range.getStart(), k -> new ArrayList<>()).add(new int[] {ordinal, 1});
+			if (range.getEnd() != null)
+				events.computeIfAbsent(range.getEnd(), k -> new ArrayList<>()).add(new int[] {ordinal, -1});
+		}
+
+		long[] boundaries = new long[events.size()];
+		BitSet[] masks = new BitSet[events.size()];
+		List<Set<String>> stageIdSets = new ArrayList<>(events.size());
+		String[] stageIds = stages.toArray();
+		int[] openCounts = new int[stageIds.length];
+		BitSet mask = new BitSet(stageIds.length);
+		int segment = 0;
+		for (Map.Entry<Long, List<int[]>> entry : events.entrySet()) {
+			for (int[] event : entry.getValue()) {
+				openCounts[event[0]] += event[1];
+				mask.set(event[0], openCounts[event[0]] > 0);
+			}
+			boundaries[segment] = entry.getKey();
+			masks[segment] = (BitSet)mask.clone();
+			Set<String> stageIdSet = new HashSet<>();
+			for (int ordinal = mask.nextSetBit(0); ordinal >= 0; ordinal = mask.nextSetBit(ordinal + 1))
+				stageIdSet.add(stageIds[ordinal]);
+			stageIdSets.add(Collections.unmodifiableSet(stageIdSet));
+			segment++;
+		}
+		return new OpeningStageTimeline(boundaries, masks, stageIdSets);
+	}
+
+	/**
+	 * @Title: getOpeningStageMask
+	 * @Description: Get the ordinals of the stages opening at the given time.
+	 * @param time
+	 * @return BitSet A copy which the caller may modify
+	 */
+	public BitSet getOpeningStageMask(long time) {
+		int segment = findSegment(time);
+		return segment < 0 ? new BitSet() : (BitSet)masks[segment].clone();
+	}
+
+	/**
+	 * @Title: getOpeningStages
+	 * @Description: Get the ids of the stages opening at the given time.
+	 * @param time
+	 * @return Set<String> An unmodifiable set
+	 */
+	public Set<String> getOpeningStages(long time) {
+		int segment = findSegment(time);
+		return segment < 0 ? Collections.emptySet() : stageIdSets.get(segment);
+	}
+
+	/**
+	 * The last segment starting at or before the time, or -1 if the time is before all boundaries.
+	 */
+	private int findSegment(long time) {
+		int index = Arrays.binarySearch(boundaries, time);
+		return index >= 0 ? index : -index - 2;
+	}
+
+}
@@ -0,0 +1,62 @@
+package io.penguinstats.util.matrix;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * An append-only dictionary which assigns dense int ordinals to ids, starting from 0.<br>
+ * Ordinals are never reassigned, so they can be kept in primitive arrays for the life of the dictionary. Lookups are
+ * lock-free; interning a new id is synchronized.
+ */
+public class OrdinalDictionary {
+
+	private final Map<String, Integer> ordinals = new ConcurrentHashMap<>();
+
+	private final List<String> ids = new ArrayList<>();
+
+	public int intern(String id) {
+		Integer ordinal = ordinals.get(id);
+		if (ordinal != null)
+			return ordinal;
+		synchronized (this) {
+			ordinal = ordinals.get(id);
+			if (ordinal == null) {
+				ordinal = ids.size();
+				ids.add(id);
+				ordinals.put(id, ordinal);
+			}
+			return ordinal;
+		}
+	}
+
+	/**
+	 * @Title: lookup
+	 * @Description: Get the ordinal of an id without interning it.
+	 * @param id
+	 * @return int The ordinal, or -1 if the id is unknown
+	 */
+	public int lookup(String id) {
+		Integer ordinal = id == null ? null : ordinals.get(id);
+		return ordinal == null ? -1 : ordinal;
+	}
+
+	public synchronized String get(int ordinal) {
+		return ids.get(ordinal);
+	}
+
+	public synchronized int size() {
+		return ids.size();
+	}
+
+	/**
+	 * @Title: toArray
+	 * @Description: A copy of all ids indexed by ordinal, for readers which resolve many ordinals at once.
+	 * @return String[]
+	 */
+	public synchronized String[] toArray() {
+		return ids.toArray(new String[0]);
+	}
+
+}
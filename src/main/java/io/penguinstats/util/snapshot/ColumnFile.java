@@ -0,0 +1,133 @@
+package io.penguinstats.util.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileChannel.MapMode;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * An append-only file of zigzag, variable-length encoded longs.<br>
+ * Values are buffered and appended by {@link #flush()}. Readers only see the bytes up to a committed length, through a
+ * read-only memory mapping which is shared and only re-mapped when the column has grown.
+ */
+public class ColumnFile implements Closeable {
+
+	private static final int BUFFER_SIZE = 64 * 1024;
+
+	private final Path path;
+
+	private final FileChannel channel;
+
+	private final ByteBuffer writeBuffer = ByteBuffer.allocate(BUFFER_SIZE);
+
+	/** bytes in the file, not including the buffered ones */
+	private long fileLength;
+
+	private MappedByteBuffer mapped;
+
+	/**
+	 * @param path
+	 * @param committedLength Bytes beyond this length are left by an unfinished commit and will be truncated.
+	 * @throws IOException
+	 */
+	public ColumnFile(Path path, long committedLength) throws IOException {
+		this.path = path;
+		this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+				StandardOpenOption.WRITE);
+		long size = channel.size();
+		if (size < committedLength) {
+			channel.close();
+			throw new IOException(path + " is shorter than its committed length " + committedLength);
+		}
+		if (size > committedLength)
+			channel.truncate(committedLength);
+		this.fileLength = committedLength;
+	}
+
+	public void write(long value) throws IOException {
+		if (writeBuffer.remaining() < 10)
+			flushBuffer();
+		long v = (value << 1) ^ (value >> 63);
+		while ((v & ~0x7FL) != 0) {
+			writeBuffer.put((byte)((v & 0x7F) | 0x80));
+			v >>>= 7;
+		}
+		writeBuffer.put((byte)v);
+	}
+
+	/**
+	 * @Title: flush
+	 * @Description: Append all buffered values into the file and force them to the storage.
+	 * @return long The length of the column
+	 * @throws IOException
+	 */
+	public long flush() throws IOException {
+		flushBuffer();
+		channel.force(false);
+		return fileLength;
+	}
+
+	/**
+	 * @Title: reader
+	 * @Description: Get a reader of the first committedLength bytes in this column.
+	 * @param committedLength
+	 * @return Reader
+	 * @throws IOException
+	 */
+	public Reader reader(long committedLength) throws IOException {
+		if (committedLength > Integer.MAX_VALUE)
+			throw new IOException(path + " is too large to be mapped");
+		MappedByteBuffer buffer;
+		synchronized (this) {
+			if (mapped == null || mapped.capacity() < committedLength)
+				mapped = channel.map(MapMode.READ_ONLY, 0, committedLength);
+			buffer = mapped;
+		}
+		ByteBuffer view = buffer.duplicate();
+		view.limit((int)committedLength);
+		return new Reader(view);
+	}
+
+	@Override
+	public void close() throws IOException {
+		channel.close();
+	}
+
+	private void flushBuffer() throws IOException {
+		writeBuffer.flip();
+		while (writeBuffer.hasRemaining())
+			fileLength += channel.write(writeBuffer, fileLength);
+		writeBuffer.clear();
+	}
+
+	public static class Reader {
+
+		private final ByteBuffer buffer;
+
+		private Reader(ByteBuffer buffer) {
+			this.buffer = buffer;
+		}
+
+		public boolean hasNext() {
+			return buffer.hasRemaining();
+		}
+
+		public long next() {
+			long v = 0L;
+			int shift = 0;
+			byte b;
+			do {
+				b = buffer.get();
+				v |= (long)(b & 0x7F) << shift;
+				shift += 7;
+			} while ((b & 0x80) != 0);
+			return (v >>> 1) ^ -(v & 1);
+		}
+
+	}
+
+}
@@ -0,0 +1,141 @@
+package io.penguinstats.util.snapshot;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.bson.types.ObjectId;
+
+import io.penguinstats.model.ItemDrop;
+
+/**
+ * Tells which of the drops deleted during a rebuild have been counted by it.<br>
+ * The rebuild streams the drops in the order of timestamp and passes each of them to {@link #accept(ObjectId, long)}
+ * before counting it, while deletions are passed to {@link #delete(ItemDrop)} as they come. A drop deleted after the
+ * stream passed it has been counted and must be subtracted. A drop deleted before that is either left out by the
+ * query or, if the cursor had already fetched it, skipped by {@link #accept(ObjectId, long)}, so it is never counted.
+ * <br>
+ * The only case left is a drop read as deleted by the cursor whose event comes after the stream passed it, which
+ * needs the stream to overtake the gap between saving a deletion and publishing its event. It is corrected by the
+ * next rebuild.<br>
+ * Drops saved during the rebuild are passed to {@link #save(ItemDrop)}. One whose timestamp the stream has already
+ * passed, or which the stream never reads, has been missed and must be added.
+ */
+public class DeletionTracker {
+
+	/** the timestamp of the last drop accepted by the stream */
+	private long position = Long.MIN_VALUE;
+
+	/** ids of the accepted drops whose timestamp is the position */
+	private final Set<ObjectId> idsAtPosition = new HashSet<>();
+
+	/** ids of the drops deleted before the stream reached them */
+	private final Set<ObjectId> skippedIds = new HashSet<>();
+
+	private final List<ItemDrop> countedItemDrops = new ArrayList<>();
+
+	private final List<ItemDrop> deletedItemDrops = new ArrayList<>();
+
+	private final List<ItemDrop> savedItemDrops = new ArrayList<>();
+
+	/** saved drops whose timestamp the stream had passed */
+	private final List<ItemDrop> passedItemDrops = new ArrayList<>();
+
+	/** saved drops not reached by the stream yet, by id */
+	private final Map<ObjectId, ItemDrop> unreadItemDrops = new LinkedHashMap<>();
+
+	/**
+	 * @Title: accept
+	 * @Description: Called by the stream before counting a drop.
+	 * @param id
+	 * @param timestamp Not less than the one of the last drop
+	 * @return boolean False if the drop has been deleted, and must not be counted
+	 */
+	public synchronized boolean accept(ObjectId id, long timestamp) {
+		if (timestamp != position) {
+			position = timestamp;
+			idsAtPosition.clear();
+		}
+		unreadItemDrops.remove(id);
+		if (skippedIds.remove(id))
+			return false;
+		idsAtPosition.add(id);
+		return true;
+	}
+
+	/**
+	 * @Title: delete
+	 * @Description: Called when a drop is deleted.
+	 * @param itemDrop
+	 */
+	public synchronized void delete(ItemDrop itemDrop) {
+		deletedItemDrops.add(itemDrop);
+		// A missed drop has never been counted
+		if (passedItemDrops.removeIf(passed -> passed.getId().equals(itemDrop.getId())))
+			return;
+		unreadItemDrops.remove(itemDrop.getId());
+		long timestamp = itemDrop.getTimestamp();
+		if (timestamp < position || timestamp == position && idsAtPosition.contains(itemDrop.getId()))
+			countedItemDrops.add(itemDrop);
+		else
+			skippedIds.add(itemDrop.getId());
+	}
+
+	/**
+	 * @Title: save
+	 * @Description: Called when a drop is saved.
+	 * @param itemDrop
+	 */
+	public synchronized void save(ItemDrop itemDrop) {
+		savedItemDrops.add(itemDrop);
+		if (itemDrop.getTimestamp() < position)
+			passedItemDrops.add(itemDrop);
+		else
+			unreadItemDrops.put(itemDrop.getId(), itemDrop);
+	}
+
+	/**
+	 * @Title: getCountedItemDrops
+	 * @Description: The deleted drops which have been counted by the stream.
+	 * @return List<ItemDrop>
+	 */
+	public synchronized List<ItemDrop> getCountedItemDrops() {
+		return new ArrayList<>(countedItemDrops);
+	}
+
+	/**
+	 * @Title: getDeletedItemDrops
+	 * @Description: All drops deleted since the tracker is created.
+	 * @return List<ItemDrop>
+	 */
+	public synchronized List<ItemDrop> getDeletedItemDrops() {
+		return new ArrayList<>(deletedItemDrops);
+	}
+
+	/**
+	 * @Title: getMissedItemDrops
+	 * @Description: The saved and non-deleted drops which have not been counted by the stream, as long as the stream
+	 *               has ended.
+	 * @param end The end of the stream, after which the drops are not missed
+	 * @return List<ItemDrop>
+	 */
+	public synchronized List<ItemDrop> getMissedItemDrops(long end) {
+		List<ItemDrop> missedItemDrops = new ArrayList<>(passedItemDrops);
+		unreadItemDrops.values().stream().filter(itemDrop -> itemDrop.getTimestamp() < end)
+				.forEach(missedItemDrops::add);
+		return missedItemDrops;
+	}
+
+	/**
+	 * @Title: getSavedItemDrops
+	 * @Description: All drops saved since the tracker is created.
+	 * @return List<ItemDrop>
+	 */
+	public synchronized List<ItemDrop> getSavedItemDrops() {
+		return new ArrayList<>(savedItemDrops);
+	}
+
+}
@@ -0,0 +1,338 @@
+package io.penguinstats.util.snapshot;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+import org.bson.Document;
+
+import io.penguinstats.model.Drop;
+import io.penguinstats.model.ItemDrop;
+
+/**
+ * A columnar, memory-mapped snapshot of reliable and non-deleted item drops.<br>
+ * Every report is one row, stored across these columns: <b>timestamp</b> (delta from the previous row),
+ * <b>server</b>, <b>stage</b>, <b>times</b> and <b>dropNum</b>. Its drops are stored in the <b>item</b> and
+ * <b>quantity</b> columns. Servers, stages and items are kept as ordinals of append-only dictionaries.<br>
+ * Rows are only appended. A drop deleted after being appended is cancelled by appending it again with negative
+ * times and quantities, so that sums over the rows stay correct.<br>
+ * Appended rows become visible to {@link #scan(RowVisitor)} after {@link #commit(long)}, which also persists the
+ * column lengths and the high water mark into <b>meta.properties</b>. Anything written after the last commit is
+ * discarded when the snapshot is opened again.
+ */
+public class ItemDropSnapshot implements Closeable {
+
+	private static final String META_FILE = "meta.properties";
+
+	private static final String[] COLUMN_NAMES = {"timestamp", "server", "stage", "times", "dropNum", "item", "quantity"};
+	private static final int TIMESTAMP = 0;
+	private static final int SERVER = 1;
+	private static final int STAGE = 2;
+	private static final int TIMES = 3;
+	private static final int DROP_NUM = 4;
+	private static final int ITEM = 5;
+	private static final int QUANTITY = 6;
+
+	private final Path directory;
+
+	private final ColumnFile[] columns = new ColumnFile[COLUMN_NAMES.length];
+
+	private final Dictionary servers;
+
+	private final Dictionary stages;
+
+	private final Dictionary items;
+
+	private final long buildTime;
+
+	/** writer side, guarded by this */
+	private long rows;
+	private long drops;
+	private long lastTimestamp;
+
+	private volatile State state;
+
+	private ItemDropSnapshot(Path directory, Properties meta) throws IOException {
+		this.directory = directory;
+		this.buildTime = Long.parseLong(meta.getProperty("buildTime"));
+		this.rows = Long.parseLong(meta.getProperty("rows", "0"));
+		this.drops = Long.parseLong(meta.getProperty("drops", "0"));
+		this.lastTimestamp = Long.parseLong(meta.getProperty("lastTimestamp", "0"));
+		long highWaterMark = Long.parseLong(meta.getProperty("highWaterMark", "0"));
+
+		long[] lengths = new long[COLUMN_NAMES.length];
+		try {
+			for (int i = 0; i < COLUMN_NAMES.length; i++) {
+				lengths[i] = Long.parseLong(meta.getProperty("length." + COLUMN_NAMES[i], "0"));
+				columns[i] = new ColumnFile(directory.resolve(COLUMN_NAMES[i] + ".col"), lengths[i]);
+			}
+		} catch (IOException e) {
+			close();
+			throw e;
+		}
+		this.servers = new Dictionary(directory.resolve("server.dict"));
+		this.stages = new Dictionary(directory.resolve("stage.dict"));
+		this.items = new Dictionary(directory.resolve("item.dict"));
+		this.state = new State(rows, highWaterMark, lengths, servers.toArray(), stages.toArray(), items.toArray());
+	}
+
+	public static ItemDropSnapshot create(Path directory) throws IOException {
+		Files.createDirectories(directory);
+		Properties meta = new Properties();
+		meta.setProperty("buildTime", String.valueOf(System.currentTimeMillis()));
+		writeMeta(directory, meta);
+		return new ItemDropSnapshot(directory, meta);
+	}
+
+	public static ItemDropSnapshot open(Path directory) throws IOException {
+		Properties meta = new Properties();
+		try (InputStream in = Files.newInputStream(directory.resolve(META_FILE))) {
+			meta.load(in);
+		}
+		return new ItemDropSnapshot(directory, meta);
+	}
+
+	public Path getDirectory() {
+		return directory;
+	}
+
+	public long getBuildTime() {
+		return buildTime;
+	}
+
+	public long getHighWaterMark() {
+		return state.highWaterMark;
+	}
+
+	public long getRows() {
+		return state.rows;
+	}
+
+	/**
+	 * @Title: append
+	 * @Description: Append one item drop document, which has at least server, stageId, times, drops and timestamp.
+	 * @param doc
+	 * @throws IOException
+	 */
+	@SuppressWarnings("unchecked")
+	public synchronized void append(Document doc) throws IOException {
+		List<Document> dropDocs = (List<Document>)doc.get("drops");
+		int dropNum = dropDocs == null ? 0 : dropDocs.size();
+		appendRow(String.valueOf(doc.get("server")), doc.getString("stageId"),
+				((Number)doc.get("timestamp")).longValue(), ((Number)doc.get("times")).longValue(), dropNum);
+		for (int i = 0; i < dropNum; i++) {
+			Document drop = dropDocs.get(i);
+			appendDrop(drop.getString("itemId"), ((Number)drop.get("quantity")).longValue());
+		}
+	}
+
+	/**
+	 * @Title: appendSaved
+	 * @Description: Append an item drop which is not read from Mongo, e.g. one saved behind the high water mark.
+	 * @param itemDrop
+	 * @throws IOException
+	 */
+	public synchronized void appendSaved(ItemDrop itemDrop) throws IOException {
+		appendItemDrop(itemDrop, 1);
+	}
+
+	/**
+	 * @Title: appendDeleted
+	 * @Description: Cancel an item drop which has been appended before.
+	 * @param itemDrop
+	 * @throws IOException
+	 */
+	public synchronized void appendDeleted(ItemDrop itemDrop) throws IOException {
+		appendItemDrop(itemDrop, -1);
+	}
+
+	/**
+	 * @Title: commit
+	 * @Description: Make all appended rows durable and visible to scans.
+	 * @param highWaterMark All reliable drops before this timestamp have been appended.
+	 * @throws IOException
+	 */
+	public synchronized void commit(long highWaterMark) throws IOException {
+		long[] lengths = new long[COLUMN_NAMES.length];
+		for (int i = 0; i < COLUMN_NAMES.length; i++)
+			lengths[i] = columns[i].flush();
+		servers.flush();
+		stages.flush();
+		items.flush();
+
+		Properties meta = new Properties();
+		meta.setProperty("buildTime", String.valueOf(buildTime));
+		meta.setProperty("rows", String.valueOf(rows));
+		meta.setProperty("drops", String.valueOf(drops));
+		meta.setProperty("lastTimestamp", String.valueOf(lastTimestamp));
+		meta.setProperty("highWaterMark", String.valueOf(highWaterMark));
+		for (int i = 0; i < COLUMN_NAMES.length; i++)
+			meta.setProperty("length." + COLUMN_NAMES[i], String.valueOf(lengths[i]));
+		writeMeta(directory, meta);
+
+		state = new State(rows, highWaterMark, lengths, servers.toArray(), stages.toArray(), items.toArray());
+	}
+
+	/**
+	 * @Title: scan
+	 * @Description: Visit all committed rows sequentially. The arrays passed to the visitor are reused between rows.
+	 * @param visitor
+	 * @return long The high water mark of the scanned rows
+	 * @throws IOException
+	 */
+	public long scan(RowVisitor visitor) throws IOException {
+		State s = state;
+		ColumnFile.Reader[] readers = new ColumnFile.Reader[COLUMN_NAMES.length];
+		for (int i = 0; i < COLUMN_NAMES.length; i++)
+			readers[i] = columns[i].reader(s.lengths[i]);
+
+		String[] itemIds = new String[16];
+		long[] quantities = new long[16];
+		long timestamp = 0L;
+		for (long row = 0; row < s.rows; row++) {
+			timestamp += readers[TIMESTAMP].next();
+			String server = s.serverIds[(int)readers[SERVER].next()];
+			String stageId = s.stageIds[(int)readers[STAGE].next()];
+			long times = readers[TIMES].next();
+			int dropNum = (int)readers[DROP_NUM].next();
+			if (dropNum > itemIds.length) {
+				itemIds = new String[dropNum];
+				quantities = new long[dropNum];
+			}
+			for (int i = 0; i < dropNum; i++) {
+				itemIds[i] = s.itemIds[(int)readers[ITEM].next()];
+				quantities[i] = readers[QUANTITY].next();
+			}
+			visitor.visit(server, stageId, timestamp, times, itemIds, quantities, dropNum);
+		}
+		return s.highWaterMark;
+	}
+
+	@Override
+	public void close() throws IOException {
+		for (ColumnFile column : columns) {
+			if (column != null)
+				column.close();
+		}
+	}
+
+	private void appendRow(String server, String stageId, long timestamp, long times, int dropNum)
+			throws IOException {
+		columns[TIMESTAMP].write(timestamp - lastTimestamp);
+		lastTimestamp = timestamp;
+		columns[SERVER].write(servers.intern(server));
+		columns[STAGE].write(stages.intern(stageId));
+		columns[TIMES].write(times);
+		columns[DROP_NUM].write(dropNum);
+		rows++;
+	}
+
+	private void appendItemDrop(ItemDrop itemDrop, int sign) throws IOException {
+		List<Drop> dropList = itemDrop.getDrops();
+		int dropNum = dropList == null ? 0 : dropList.size();
+		appendRow(String.valueOf(itemDrop.getServer()), itemDrop.getStageId(), itemDrop.getTimestamp(),
+				sign * itemDrop.getTimes(), dropNum);
+		for (int i = 0; i < dropNum; i++) {
+			Drop drop = dropList.get(i);
+			appendDrop(drop.getItemId(), sign * drop.getQuantity());
+		}
+	}
+
+	private void appendDrop(String itemId, long quantity) throws IOException {
+		columns[ITEM].write(items.intern(itemId));
+		columns[QUANTITY].write(quantity);
+		drops++;
+	}
+
+	private static void writeMeta(Path directory, Properties meta) throws IOException {
+		Path tmp = directory.resolve(META_FILE + ".tmp");
+		try (OutputStream out = Files.newOutputStream(tmp)) {
+			meta.store(out, null);
+		}
+		Files.move(tmp, directory.resolve(META_FILE), StandardCopyOption.REPLACE_EXISTING,
+				StandardCopyOption.ATOMIC_MOVE);
+	}
+
+	public interface RowVisitor {
+
+		void visit(String server, String stageId, long timestamp, long times, String[] itemIds, long[] quantities,
+				int dropNum);
+
+	}
+
+	private static class State {
+
+		private final long rows;
+		private final long highWaterMark;
+		private final long[] lengths;
+		private final String[] serverIds;
+		private final String[] stageIds;
+		private final String[] itemIds;
+
+		private State(long rows, long highWaterMark, long[] lengths, String[] serverIds, String[] stageIds,
+				String[] itemIds) {
+			this.rows = rows;
+			this.highWaterMark = highWaterMark;
+			this.lengths = lengths;
+			this.serverIds = serverIds;
+			this.stageIds = stageIds;
+			this.itemIds = itemIds;
+		}
+
+	}
+
+	/**
+	 * An append-only dictionary persisted as one value per line. Ordinals are line numbers.
+	 */
+	private static class Dictionary {
+
+		private final Path path;
+		private final Map<String, Integer> ordinals = new HashMap<>();
+		private final List<String> values = new ArrayList<>();
+		private int persisted;
+
+		private Dictionary(Path path) throws IOException {
+			this.path = path;
+			if (Files.exists(path)) {
+				for (String value : Files.readAllLines(path, StandardCharsets.UTF_8))
+					intern(value);
+			}
+			this.persisted = values.size();
+		}
+
+		private int intern(String value) {
+			Integer ordinal = ordinals.get(value);
+			if (ordinal == null) {
+				ordinal = values.size();
+				ordinals.put(value, ordinal);
+				values.add(value);
+			}
+			return ordinal;
+		}
+
+		private void flush() throws IOException {
+			if (persisted == values.size())
+				return;
+			Files.write(path, values.subList(persisted, values.size()), StandardCharsets.UTF_8,
+					StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+			persisted = values.size();
+		}
+
+		private String[] toArray() {
+			return values.toArray(new String[0]);
+		}
+
+	}
+
+}
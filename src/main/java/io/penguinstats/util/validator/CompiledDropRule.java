@@ -0,0 +1,139 @@
+package io.penguinstats.util.validator;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.penguinstats.enums.DropType;
+import io.penguinstats.model.Bounds;
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TypedDrop;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * The opening drop infos of one stage, compiled for validating the drops of reports.<br>
+ * Every (drop type, item) with drop infos gets a slot, which holds the bounds of its quantity. The drop infos without
+ * item bound the number of item kinds in their drop type. A drop type without any drop info is not checked. Instances
+ * are immutable and shared by all reports of the stage.
+ */
+@Log4j2
+public class CompiledDropRule {
+
+	private static final DropType[] DROP_TYPES = DropType.values();
+
+	private static final Bounds[] NO_BOUNDS = new Bounds[0];
+
+	/**
+	 * drop type ordinal -> itemId -> slot. Null if the drop type has no drop info.
+	 */
+	private final Map<String, Integer>[] slotsByDropType;
+
+	/**
+	 * slot -> bounds of the quantity
+	 */
+	private final Bounds[][] slotBounds;
+
+	/**
+	 * drop type ordinal -> bounds of the number of item kinds
+	 */
+	private final Bounds[][] kindsNumBounds;
+
+	@SuppressWarnings("unchecked")
+	public CompiledDropRule(List<DropInfo> dropInfos) {
+		slotsByDropType = new Map[DROP_TYPES.length];
+		kindsNumBounds = new Bounds[DROP_TYPES.length][];
+		List<List<Bounds>> boundsBySlot = new ArrayList<>();
+		List<List<Bounds>> kindsNumBoundsByDropType = new ArrayList<>();
+		for (int i = 0; i < DROP_TYPES.length; i++)
+			kindsNumBoundsByDropType.add(new ArrayList<>());
+
+		for (DropInfo dropInfo : dropInfos) {
+			int type = dropInfo.getDropType().ordinal();
+			if (slotsByDropType[type] == null)
+				slotsByDropType[type] = new HashMap<>();
+			List<Bounds> target;
+			if (dropInfo.getItemId() == null)
+				target = kindsNumBoundsByDropType.get(type);
+			else {
+				Integer slot = slotsByDropType[type].get(dropInfo.getItemId());
+				if (slot == null) {
+					slot = boundsBySlot.size();
+					slotsByDropType[type].put(dropInfo.getItemId(), slot);
+					boundsBySlot.add(new ArrayList<>());
+				}
+				target = boundsBySlot.get(slot);
+			}
+			if (dropInfo.getBounds() != null)
+				target.add(dropInfo.getBounds());
+		}
+
+		slotBounds = new Bounds[boundsBySlot.size()][];
+		for (int i = 0; i < slotBounds.length; i++)
+			slotBounds[i] = boundsBySlot.get(i).toArray(NO_BOUNDS);
+		for (int i = 0; i < DROP_TYPES.length; i++) {
+			kindsNumBounds[i] = kindsNumBoundsByDropType.get(i).toArray(NO_BOUNDS);
+			if (slotsByDropType[i] == null && !dropInfos.isEmpty())
+				log.warn("Failed to find " + DROP_TYPES[i] + " drop info of stage " + dropInfos.get(0).getStageId());
+		}
+	}
+
+	/**
+	 * @Title: validate
+	 * @Description: Check the drops in one pass. Each item may be reported at most once in every drop type, and must
+	 *               have a drop info in the drop types which have any. An item not reported has a quantity of 0.
+	 * @param drops
+	 * @return boolean
+	 */
+	public boolean validate(List<TypedDrop> drops) {
+		if (drops == null)
+			return false;
+
+		int[] quantities = new int[slotBounds.length];
+		boolean[] reported = new boolean[slotBounds.length];
+		int[] kindsNums = new int[DROP_TYPES.length];
+		for (TypedDrop drop : drops) {
+			if (drop.getDropType() == null) {
+				log.debug("Found drop without drop type.");
+				return false;
+			}
+			int type = drop.getDropType().ordinal();
+			Map<String, Integer> slots = slotsByDropType[type];
+			if (slots == null)
+				continue;
+			kindsNums[type]++;
+			Integer slot = slots.get(drop.getItemId());
+			if (slot == null) {
+				log.debug("Found unexpected item in " + drop.getDropType() + ": " + drop.getItemId());
+				return false;
+			}
+			if (reported[slot]) {
+				log.debug("Found duplicated itemId in drops.");
+				return false;
+			}
+			reported[slot] = true;
+			quantities[slot] = drop.getQuantity() == null ? 0 : drop.getQuantity();
+		}
+
+		for (int slot = 0; slot < slotBounds.length; slot++) {
+			if (!isValid(slotBounds[slot], quantities[slot]))
+				return false;
+		}
+		for (int type = 0; type < DROP_TYPES.length; type++) {
+			if (!isValid(kindsNumBounds[type], kindsNums[type]))
+				return false;
+		}
+		return true;
+	}
+
+	private static boolean isValid(Bounds[] boundsArray, int num) {
+		for (Bounds bounds : boundsArray) {
+			if (!bounds.isValid(num)) {
+				log.debug("Failed target: " + num + ", bounds: " + bounds);
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
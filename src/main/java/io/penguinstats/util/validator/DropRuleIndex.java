@@ -0,0 +1,77 @@
+package io.penguinstats.util.validator;
+
+import static java.util.stream.Collectors.groupingBy;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TimeRange;
+import lombok.Getter;
+
+/**
+ * The compiled drop rules of the stages opening in one server, key is stageId.<br>
+ * The opening stages only change at the boundaries of the time ranges, so the index stays the same for every time in
+ * [validFrom, validUntil), which is the span between the nearest boundaries around the time it is built for.
+ */
+@Getter
+public class DropRuleIndex {
+
+	private final Map<String, CompiledDropRule> rulesByStageId;
+
+	private final long validFrom;
+
+	private final long validUntil;
+
+	private DropRuleIndex(Map<String, CompiledDropRule> rulesByStageId, long validFrom, long validUntil) {
+		this.rulesByStageId = Collections.unmodifiableMap(rulesByStageId);
+		this.validFrom = validFrom;
+		this.validUntil = validUntil;
+	}
+
+	/**
+	 * @Title: build
+	 * @Description: Compile the drop infos of one server which are opening at the given time. Drop infos whose time
+	 *               range is missing are ignored.
+	 * @param dropInfos
+	 * @param timeRangeMap
+	 * @param time
+	 * @return DropRuleIndex
+	 */
+	public static DropRuleIndex build(List<DropInfo> dropInfos, Map<String, TimeRange> timeRangeMap, long time) {
+		long validFrom = Long.MIN_VALUE;
+		long validUntil = Long.MAX_VALUE;
+		for (DropInfo dropInfo : dropInfos) {
+			TimeRange range = timeRangeMap.get(dropInfo.getTimeRangeID());
+			if (range == null)
+				continue;
+			for (Long boundary : new Long[] {range.getStart(), range.getEnd()}) {
+				if (boundary == null)
+					continue;
+				if (boundary <= time)
+					validFrom = Math.max(validFrom, boundary);
+				else
+					validUntil = Math.min(validUntil, boundary);
+			}
+		}
+
+		Map<String, CompiledDropRule> rulesByStageId = new HashMap<>();
+		dropInfos.stream().filter(dropInfo -> {
+			TimeRange range = timeRangeMap.get(dropInfo.getTimeRangeID());
+			return range != null && range.isIn(time);
+		}).collect(groupingBy(DropInfo::getStageId))
+				.forEach((stageId, infos) -> rulesByStageId.put(stageId, new CompiledDropRule(infos)));
+		return new DropRuleIndex(rulesByStageId, validFrom, validUntil);
+	}
+
+	public boolean covers(long time) {
+		return time >= validFrom && time < validUntil;
+	}
+
+	public CompiledDropRule getRule(String stageId) {
+		return rulesByStageId.get(stageId);
+	}
+
+}
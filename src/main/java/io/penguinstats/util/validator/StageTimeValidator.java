@@ -1,23 +1,19 @@
 package io.penguinstats.util.validator;
 
-import java.util.List;
-import java.util.Map;
-
 import org.springframework.stereotype.Component;
 import org.springframework.util.StringUtils;
 
 import io.penguinstats.enums.Server;
-import io.penguinstats.model.DropInfo;
-import io.penguinstats.service.DropInfoService;
+import io.penguinstats.service.DropRuleService;
 
 @Component("stageTimeValidator")
 public class StageTimeValidator extends BaseValidator {
 
-	private DropInfoService dropInfoService;
+	private DropRuleService dropRuleService;
 
-	public StageTimeValidator(ValidatorContext context, DropInfoService dropInfoService) {
+	public StageTimeValidator(ValidatorContext context, DropRuleService dropRuleService) {
 		super(context);
-		this.dropInfoService = dropInfoService;
+		this.dropRuleService = dropRuleService;
 	}
 
 	@Override
@@ -29,8 +25,7 @@ public class StageTimeValidator extends BaseValidator {
 		if (server == null || StringUtils.isEmpty(stageId) || timestamp == null)
 			return false;
 
-		Map<String, List<DropInfo>> openingDropInfosMap = dropInfoService.getOpeningDropInfosMap(server, timestamp);
-		return openingDropInfosMap.containsKey(stageId);
+		return dropRuleService.getDropRule(server, stageId, timestamp) != null;
 	}
 
 }
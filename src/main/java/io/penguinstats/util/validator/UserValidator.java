@@ -19,7 +19,9 @@ public class UserValidator extends BaseValidator {
 	public boolean validate() {
 		String userID = this.context.getUserID();
 
-		User user = userService.getUserByUserID(userID);
+		User user = this.context.getUser();
+		if (user == null)
+			user = userService.getUserByUserID(userID);
 		if (user == null)
 			return false;
 
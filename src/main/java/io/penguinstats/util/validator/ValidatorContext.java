@@ -6,6 +6,7 @@ import org.springframework.stereotype.Component;
 
 import io.penguinstats.enums.Server;
 import io.penguinstats.model.TypedDrop;
+import io.penguinstats.model.User;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -25,5 +26,6 @@ public class ValidatorContext {
 	private Long timestamp;
 	private String ip;
 	private String userID;
+	private User user;
 
 }
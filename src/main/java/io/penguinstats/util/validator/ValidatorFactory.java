@@ -1,7 +1,7 @@
 package io.penguinstats.util.validator;
 
 import io.penguinstats.enums.ValidatorType;
-import io.penguinstats.service.DropInfoService;
+import io.penguinstats.service.DropRuleService;
 import io.penguinstats.service.UserService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
@@ -10,7 +10,7 @@ import org.springframework.stereotype.Component;
 public class ValidatorFactory {
 
 	@Autowired
-	private DropInfoService dropInfoService;
+	private DropRuleService dropRuleService;
 
 	@Autowired
 	private UserService userService;
@@ -18,13 +18,13 @@ public class ValidatorFactory {
 	public Validator getValidator(ValidatorType type, ValidatorContext context) throws Exception {
 		switch (type) {
 			case STAGE_TIME:
-				return new StageTimeValidator(context, dropInfoService);
+				return new StageTimeValidator(context, dropRuleService);
 			case USER:
 				return new UserValidator(context, userService);
 			case IP:
 				return new IPValidator(context);
 			case DROPS:
-				return new DropsValidator(context, dropInfoService);
+				return new DropsValidator(context, dropRuleService);
 			default:
 				throw new Exception("Failed to create validator for " + type);
 		}
@@ -0,0 +1,88 @@
+package io.penguinstats.dao;
+
+import static org.junit.Assert.assertEquals;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.bson.Document;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.context.junit4.SpringRunner;
+
+import io.penguinstats.enums.AggregationEngine;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.QueryConditions;
+import lombok.extern.log4j.Log4j2;
+
+/**
+ * Compares the Mongo pipeline and the streaming engine of aggregateItemDrops on the data in the configured database.
+ * It only runs with <code>-Dbenchmark=true</code>, e.g.
+ * <code>mvn test -Dtest=ItemDropAggregationBenchmark -Dbenchmark=true -Dbenchmark.days=30</code>.
+ */
+@Log4j2
+@RunWith(SpringRunner.class)
+@SpringBootTest
+public class ItemDropAggregationBenchmark {
+
+	private static final int ROUNDS = 5;
+
+	@Autowired
+	private ItemDropDao itemDropDao;
+
+	@Before
+	public void setUp() {
+		Assume.assumeTrue(Boolean.getBoolean("benchmark"));
+	}
+
+	@Test
+	public void benchmarkMatrix() {
+		compare(() -> newConditions(null));
+	}
+
+	@Test
+	public void benchmarkTrend() {
+		compare(() -> newConditions(86400000L));
+	}
+
+	private QueryConditions newConditions(Long interval) {
+		long end = System.currentTimeMillis();
+		long start = end - Long.getLong("benchmark.days", 30L) * 86400000L;
+		QueryConditions conditions = new QueryConditions().addServer(Server.CN).addStage(null, start, end);
+		if (interval != null)
+			conditions.setInterval(interval);
+		return conditions;
+	}
+
+	private void compare(Supplier<QueryConditions> conditionsSupplier) {
+		List<Document> expected = itemDropDao
+				.aggregateItemDrops(conditionsSupplier.get().setEngine(AggregationEngine.MONGO_PIPELINE));
+		List<Document> actual =
+				itemDropDao.aggregateItemDrops(conditionsSupplier.get().setEngine(AggregationEngine.STREAMING));
+		assertEquals(toMap(expected), toMap(actual));
+
+		for (AggregationEngine engine : AggregationEngine.values()) {
+			long total = 0L;
+			for (int i = 0; i < ROUNDS; i++) {
+				long startTime = System.nanoTime();
+				itemDropDao.aggregateItemDrops(conditionsSupplier.get().setEngine(engine));
+				total += System.nanoTime() - startTime;
+			}
+			log.info("{}: {} rows, avg {} ms in {} rounds", engine, expected.size(), total / ROUNDS / 1000000, ROUNDS);
+		}
+	}
+
+	private Map<String, String> toMap(List<Document> docs) {
+		Map<String, String> map = new HashMap<>();
+		docs.forEach(doc -> map.put(doc.get("section") + "_" + doc.get("stageId") + "_" + doc.get("itemId"),
+				doc.get("times") + "_" + doc.get("quantity")));
+		return map;
+	}
+
+}
@@ -0,0 +1,166 @@
+package io.penguinstats.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.penguinstats.enums.QueryType;
+import io.penguinstats.util.QueryUtil;
+import io.penguinstats.util.TaskRunner;
+import io.penguinstats.util.exception.ServiceUnavailableException;
+
+public class QueryExecutionServiceTest {
+
+	private QueryExecutionServiceImpl queryExecutionService;
+
+	private ExecutorService callers;
+
+	private final CountDownLatch blockerStarted = new CountDownLatch(1);
+
+	private final CountDownLatch release = new CountDownLatch(1);
+
+	@Before
+	public void setUp() {
+		queryExecutionService = new QueryExecutionServiceImpl();
+		ReflectionTestUtils.setField(queryExecutionService, "parallelism", 1);
+		ReflectionTestUtils.setField(queryExecutionService, "queueCapacity", 8);
+		ReflectionTestUtils.setField(queryExecutionService, "maxQueuedPerClient", 2);
+		queryExecutionService.init();
+		callers = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		release.countDown();
+		callers.shutdownNow();
+		queryExecutionService.destroy();
+	}
+
+	@Test
+	public void testClientsAreServedInTurn() throws Exception {
+		List<String> order = new CopyOnWriteArrayList<>();
+		Future<?> blocker = submit("a", "blocker", order);
+		assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+		Future<?> a1 = submit("a", "a1", order);
+		waitForQueued(1);
+		Future<?> a2 = submit("a", "a2", order);
+		waitForQueued(2);
+		Future<?> b1 = submit("b", "b1", order);
+		waitForQueued(3);
+
+		release.countDown();
+		for (Future<?> future : Arrays.asList(blocker, a1, a2, b1))
+			future.get(5, TimeUnit.SECONDS);
+		assertEquals(Arrays.asList("blocker", "a1", "b1", "a2"), order);
+	}
+
+	@Test
+	public void testRejectWhenClientHasTooManyWaiting() throws Exception {
+		List<String> order = new CopyOnWriteArrayList<>();
+		submit("a", "blocker", order);
+		assertTrue(blockerStarted.await(5, TimeUnit.SECONDS));
+		submit("a", "a1", order);
+		waitForQueued(1);
+		submit("a", "a2", order);
+		waitForQueued(2);
+		try {
+			queryExecutionService.execute(QueryType.MATRIX, "a", () -> "a3", null);
+			fail("The third waiting query of one client should be rejected");
+		} catch (ServiceUnavailableException e) {
+			assertEquals(2, queryExecutionService.getQueuedNum());
+		}
+	}
+
+	@Test
+	public void testCancelInterruptsRunningQuery() throws Exception {
+		CountDownLatch started = new CountDownLatch(1);
+		CountDownLatch interrupted = new CountDownLatch(1);
+		Future<?> caller = callers.submit(() -> queryExecutionService.execute(QueryType.MATRIX, "a", () -> {
+			started.countDown();
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				interrupted.countDown();
+			}
+			return null;
+		}, null));
+		assertTrue(started.await(5, TimeUnit.SECONDS));
+		caller.cancel(true);
+		assertTrue(interrupted.await(5, TimeUnit.SECONDS));
+	}
+
+	private Future<?> submit(String clientID, String name, List<String> order) {
+		return callers.submit(() -> queryExecutionService.execute(QueryType.MATRIX, clientID, () -> {
+			if ("blocker".equals(name)) {
+				blockerStarted.countDown();
+				release.await();
+			}
+			order.add(name);
+			return name;
+		}, null));
+	}
+
+	private void waitForQueued(int queuedNum) throws InterruptedException {
+		for (int i = 0; i < 500 && queryExecutionService.getQueuedNum() != queuedNum; i++)
+			Thread.sleep(10);
+		assertEquals(queuedNum, queryExecutionService.getQueuedNum());
+	}
+
+	@Test
+	public void testTimedOutQueryStopsItsAggregations() throws Exception {
+		TaskRunner taskRunner = new TaskRunner();
+		ReflectionTestUtils.setField(taskRunner, "parallelism", 2);
+		ReflectionTestUtils.setField(taskRunner, "maxConcurrentAggregations", 2);
+		taskRunner.init();
+		AtomicInteger started = new AtomicInteger();
+		AtomicInteger running = new AtomicInteger();
+		List<Long> maxTimes = new CopyOnWriteArrayList<>();
+		try {
+			queryExecutionService.executeUntil(QueryType.MATRIX, "a",
+					() -> taskRunner.map(Arrays.asList(1, 2, 3, 4), i -> taskRunner.limitAggregation(() -> {
+						// An aggregation which is only aborted by maxTimeMS or by interrupting its thread
+						Long maxTime = QueryUtil.getRemainingTime();
+						maxTimes.add(maxTime);
+						started.incrementAndGet();
+						running.incrementAndGet();
+						try {
+							release.await(maxTime, TimeUnit.MILLISECONDS);
+						} catch (InterruptedException e) {
+							Thread.currentThread().interrupt();
+						} finally {
+							running.decrementAndGet();
+						}
+						return i;
+					})), System.currentTimeMillis() + 200L);
+			fail("The query should time out");
+		} catch (TimeoutException e) {
+			for (int i = 0; i < 500 && running.get() > 0; i++)
+				Thread.sleep(10);
+			assertEquals(0, running.get());
+			int startedNum = started.get();
+			Thread.sleep(300L);
+			assertEquals(startedNum, started.get());
+			assertTrue(startedNum < 4);
+			assertTrue(maxTimes.stream().allMatch(maxTime -> maxTime != null && maxTime <= 200L));
+		} finally {
+			taskRunner.destroy();
+		}
+	}
+
+}
@@ -0,0 +1,159 @@
+package io.penguinstats.service;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import io.penguinstats.constant.Constant.CacheName;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.model.query.MatrixQuery;
+import io.penguinstats.util.QueryUtil;
+
+public class QueryResultCacheServiceTest {
+
+	private QueryResultCacheServiceImpl queryResultCacheService;
+
+	private ConcurrentMapCacheManager cacheManager;
+
+	private ExecutorService callers;
+
+	@Before
+	public void setUp() {
+		cacheManager = new ConcurrentMapCacheManager(CacheName.ADVANCED_QUERY_CLOSED, CacheName.ADVANCED_QUERY_OPEN,
+				CacheName.ADVANCED_QUERY_PERSONAL);
+		queryResultCacheService = new QueryResultCacheServiceImpl();
+		ReflectionTestUtils.setField(queryResultCacheService, "cacheManager", cacheManager);
+		callers = Executors.newCachedThreadPool();
+	}
+
+	@After
+	public void tearDown() {
+		callers.shutdownNow();
+	}
+
+	@Test
+	public void testNormalizedQueriesShareOneEntry() throws Exception {
+		List<DropMatrixElement> elements = Collections.singletonList(new DropMatrixElement());
+		queryResultCacheService.get(query().setItemIds(Arrays.asList("30012", "30011")).setEnd(null),
+				() -> elements);
+
+		assertSame(elements, queryResultCacheService
+				.getIfPresent(query().setItemIds(Arrays.asList("30011", "30012", "30011")).setEnd(null)));
+		assertNull(queryResultCacheService.getIfPresent(query().setItemIds(Arrays.asList("30011"))));
+		assertNull(queryResultCacheService.getIfPresent(
+				query().setItemIds(Arrays.asList("30011", "30012")).setUserID("user")));
+	}
+
+	@Test
+	public void testFutureEndIsNotSharedWithOpenEnd() throws Exception {
+		long future = System.currentTimeMillis() + 3600000L;
+		List<DropMatrixElement> open = Collections.singletonList(new DropMatrixElement());
+		List<DropMatrixElement> bounded = Collections.singletonList(new DropMatrixElement());
+		queryResultCacheService.get(query().setEnd(null), () -> open);
+
+		assertNull(queryResultCacheService.getIfPresent(query().setEnd(future)));
+		assertSame(bounded, queryResultCacheService.get(query().setEnd(future), () -> bounded));
+		assertSame(open, queryResultCacheService.getIfPresent(query().setEnd(null)));
+		assertNull(queryResultCacheService.getIfPresent(query().setEnd(future + 1)));
+		assertEquals(2, size(CacheName.ADVANCED_QUERY_OPEN));
+	}
+
+	@Test
+	public void testPartitionsByRangeAndUser() throws Exception {
+		queryResultCacheService.get(query().setEnd(1000L), () -> Collections.emptyList());
+		queryResultCacheService.get(query(), () -> Collections.emptyList());
+		queryResultCacheService.get(query().setEnd(1000L).setUserID("user"), () -> Collections.emptyList());
+
+		assertEquals(1, size(CacheName.ADVANCED_QUERY_CLOSED));
+		assertEquals(1, size(CacheName.ADVANCED_QUERY_OPEN));
+		assertEquals(1, size(CacheName.ADVANCED_QUERY_PERSONAL));
+	}
+
+	@Test
+	public void testIdenticalQueriesInFlightAreCoalesced() throws Exception {
+		AtomicInteger loads = new AtomicInteger();
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		List<DropMatrixElement> elements = Collections.singletonList(new DropMatrixElement());
+		Future<List<DropMatrixElement>> first = callers.submit(() -> queryResultCacheService.get(query(), () -> {
+			loads.incrementAndGet();
+			loading.countDown();
+			release.await();
+			return elements;
+		}));
+		loading.await(5, TimeUnit.SECONDS);
+		Future<List<DropMatrixElement>> second = callers.submit(() -> queryResultCacheService.get(query(), () -> {
+			loads.incrementAndGet();
+			return elements;
+		}));
+		Thread.sleep(100);
+		release.countDown();
+
+		assertSame(elements, first.get(5, TimeUnit.SECONDS));
+		assertSame(elements, second.get(5, TimeUnit.SECONDS));
+		assertEquals(1, loads.get());
+	}
+
+	@Test
+	public void testWaitIsBoundedByDeadline() throws Exception {
+		CountDownLatch loading = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		Future<List<DropMatrixElement>> first = callers.submit(() -> queryResultCacheService.get(query(), () -> {
+			loading.countDown();
+			release.await();
+			return Collections.emptyList();
+		}));
+		loading.await(5, TimeUnit.SECONDS);
+		Future<List<DropMatrixElement>> second = callers.submit(() -> {
+			QueryUtil.setDeadline(System.currentTimeMillis() + 200L);
+			try {
+				return queryResultCacheService.get(query(), () -> Collections.emptyList());
+			} finally {
+				QueryUtil.clearDeadline();
+			}
+		});
+
+		try {
+			second.get(5, TimeUnit.SECONDS);
+			fail("the waiter should time out with its own deadline");
+		} catch (ExecutionException e) {
+			assertTrue(e.getCause() instanceof TimeoutException);
+		}
+		assertFalse(first.isDone());
+		release.countDown();
+		first.get(5, TimeUnit.SECONDS);
+	}
+
+	private MatrixQuery query() {
+		return new MatrixQuery(null, null, queryResultCacheService).setServer(Server.CN).setStageId("main_01-07")
+				.setStart(0L);
+	}
+
+	private int size(String cacheName) {
+		return ((Map<?, ?>)cacheManager.getCache(cacheName).getNativeCache()).size();
+	}
+
+}
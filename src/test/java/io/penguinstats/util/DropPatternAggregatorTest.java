@@ -0,0 +1,78 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Test;
+
+import io.penguinstats.model.Drop;
+
+public class DropPatternAggregatorTest {
+
+	private static Document itemDrop(String stageId, int times, Document... drops) {
+		return new Document("stageId", stageId).append("times", times).append("drops",
+				new ArrayList<>(Arrays.asList(drops)));
+	}
+
+	private static Document drop(String itemId, int quantity) {
+		return new Document("itemId", itemId).append("quantity", quantity);
+	}
+
+	@SuppressWarnings("unchecked")
+	private static Document find(List<Document> results, String stageId, Document... pattern) {
+		return results.stream().filter(doc -> stageId.equals(doc.getString("stageId"))
+				&& Arrays.asList(pattern).equals(doc.get("pattern", List.class))).findFirst().orElse(null);
+	}
+
+	@Test
+	public void testPatternsInAnyOrderAreCountedTogether() {
+		DropPatternAggregator aggregator = new DropPatternAggregator();
+		aggregator.accept(itemDrop("main_01-07", 1, drop("30013", 1), drop("30012", 2)));
+		aggregator.accept(itemDrop("main_01-07", 1, drop("30012", 2), drop("30013", 1)));
+		aggregator.accept(itemDrop("main_01-07", 1, drop("30012", 1)));
+		aggregator.accept(itemDrop("main_01-07", 1));
+		aggregator.accept(itemDrop("main_04-04", 2, drop("30012", 2), drop("30013", 1)));
+
+		List<Document> results = aggregator.getResults();
+		assertEquals(4, results.size());
+		Document doc = find(results, "main_01-07", drop("30012", 2), drop("30013", 1));
+		assertEquals(Integer.valueOf(2), doc.getInteger("quantity"));
+		assertEquals(Integer.valueOf(4), doc.getInteger("times"));
+		assertEquals(Integer.valueOf(1), find(results, "main_01-07", drop("30012", 1)).getInteger("quantity"));
+		assertEquals(Integer.valueOf(1), find(results, "main_01-07").getInteger("quantity"));
+		assertEquals(Integer.valueOf(2), find(results, "main_04-04", drop("30012", 2), drop("30013", 1))
+				.getInteger("quantity"));
+		assertNull(find(results, "main_04-04", drop("30012", 1)));
+	}
+
+	@Test
+	public void testManyPatternsInOneStage() {
+		DropPatternAggregator aggregator = new DropPatternAggregator();
+		for (int i = 0; i < 1000; i++)
+			aggregator.accept(itemDrop("main_01-07", 1, drop("30012", i % 100), drop("30011", i % 7)));
+
+		List<Document> results = aggregator.getResults();
+		assertEquals(700, results.size());
+		assertEquals(1000, results.stream().mapToInt(doc -> doc.getInteger("quantity")).sum());
+	}
+
+	@Test
+	public void testCanonicalHash() {
+		List<Drop> drops = Arrays.asList(new Drop("30013", 1), new Drop("30012", 2));
+		List<Drop> canonical = DropPatternAggregator.canonicalize(drops);
+		assertEquals(Arrays.asList(new Drop("30012", 2), new Drop("30013", 1)), canonical);
+		assertEquals(DropPatternAggregator.canonicalHash(canonical), DropPatternAggregator.canonicalHash(
+				new String[] {"30012", "30013"}, new long[] {2L, 1L}, 2));
+		assertNotEquals(DropPatternAggregator.canonicalHash(canonical),
+				DropPatternAggregator.canonicalHash(Arrays.asList(new Drop("30012", 1), new Drop("30013", 2))));
+		assertNotEquals(DropPatternAggregator.canonicalHash(Arrays.asList(new Drop("3001", 1))),
+				DropPatternAggregator.canonicalHash(Arrays.asList(new Drop("30011", 1))));
+	}
+
+}
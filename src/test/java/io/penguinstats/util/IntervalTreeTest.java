@@ -0,0 +1,86 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+public class IntervalTreeTest {
+
+	private static IntervalTree<long[]> tree(List<long[]> intervals) {
+		return IntervalTree.of(intervals, interval -> interval[0], interval -> interval[1]);
+	}
+
+	@Test
+	public void testStabIsHalfOpen() {
+		IntervalTree<long[]> tree = tree(Arrays.asList(new long[] {10L, 20L}, new long[] {20L, Long.MAX_VALUE},
+				new long[] {Long.MIN_VALUE, 5L}));
+		List<long[]> result = new ArrayList<>();
+		tree.stab(20L, result::add);
+		assertEquals(1, result.size());
+		assertEquals(20L, result.get(0)[0]);
+
+		result.clear();
+		tree.stab(19L, result::add);
+		assertEquals(1, result.size());
+		assertEquals(10L, result.get(0)[0]);
+
+		result.clear();
+		tree.stab(-100L, result::add);
+		assertEquals(1, result.size());
+
+		result.clear();
+		tree.stab(7L, result::add);
+		assertEquals(0, result.size());
+	}
+
+	@Test
+	public void testQueriesMatchLinearScan() {
+		Random random = new Random(42L);
+		List<long[]> intervals = new ArrayList<>();
+		for (int i = 0; i < 500; i++) {
+			long start = random.nextInt(10000);
+			intervals.add(new long[] {start, random.nextInt(10) == 0 ? Long.MAX_VALUE : start + random.nextInt(500)});
+		}
+		IntervalTree<long[]> tree = tree(intervals);
+		assertEquals(500, tree.size());
+
+		for (int q = 0; q < 200; q++) {
+			long start = random.nextInt(11000) - 500;
+			long end = start + random.nextInt(300);
+			List<long[]> expected = new ArrayList<>();
+			for (long[] interval : intervals) {
+				if (interval[0] < end && interval[1] > start)
+					expected.add(interval);
+			}
+			List<long[]> actual = new ArrayList<>();
+			tree.overlap(start, end, actual::add);
+			assertEquals(expected.size(), actual.size());
+			for (int i = 1; i < actual.size(); i++)
+				assertTrue(actual.get(i - 1)[0] <= actual.get(i)[0]);
+			for (long[] interval : expected)
+				assertTrue(actual.contains(interval));
+
+			List<long[]> stabbed = new ArrayList<>();
+			tree.stab(start, stabbed::add);
+			long count = intervals.stream().filter(interval -> interval[0] <= start && interval[1] > start).count();
+			assertEquals(count, stabbed.size());
+		}
+	}
+
+	@Test
+	public void testEmptyTree() {
+		IntervalTree<long[]> tree = tree(Collections.emptyList());
+		List<long[]> result = new ArrayList<>();
+		tree.stab(0L, result::add);
+		tree.overlap(Long.MIN_VALUE, Long.MAX_VALUE, result::add);
+		assertEquals(0, result.size());
+	}
+
+}
@@ -0,0 +1,77 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Test;
+
+public class ItemDropAggregatorTest {
+
+	private static Document itemDrop(String stageId, int times, long timestamp, Document... drops) {
+		return new Document("stageId", stageId).append("times", times).append("timestamp", timestamp).append("drops",
+				new ArrayList<>(Arrays.asList(drops)));
+	}
+
+	private static Document drop(String itemId, int quantity) {
+		return new Document("itemId", itemId).append("quantity", quantity);
+	}
+
+	private static Document find(List<Document> results, double section, String stageId, String itemId) {
+		return results.stream()
+				.filter(doc -> doc.getDouble("section") == section && stageId.equals(doc.getString("stageId"))
+						&& (itemId == null ? !doc.containsKey("itemId") : itemId.equals(doc.getString("itemId"))))
+				.findFirst().orElse(null);
+	}
+
+	@Test
+	public void testAggregateWithoutInterval() {
+		ItemDropAggregator aggregator = new ItemDropAggregator(Collections.emptyList(), null, null);
+		aggregator.accept(itemDrop("main_01-07", 1, 100L, drop("30012", 2), drop("30013", 1)));
+		aggregator.accept(itemDrop("main_01-07", 1, 200L, drop("30012", 1)));
+		aggregator.accept(itemDrop("main_04-04", 2, 300L, drop("30012", 3)));
+
+		List<Document> results = aggregator.getResults();
+		assertEquals(3, results.size());
+		Document doc = find(results, 0.0, "main_01-07", "30012");
+		assertEquals(Integer.valueOf(3), doc.getInteger("quantity"));
+		assertEquals(Integer.valueOf(2), doc.getInteger("times"));
+		assertEquals(Integer.valueOf(1), find(results, 0.0, "main_01-07", "30013").getInteger("quantity"));
+		assertEquals(Integer.valueOf(2), find(results, 0.0, "main_04-04", "30012").getInteger("times"));
+	}
+
+	@Test
+	public void testAggregateBySection() {
+		ItemDropAggregator aggregator = new ItemDropAggregator(null, 1000L, 100L);
+		aggregator.accept(itemDrop("main_01-07", 1, 1050L, drop("30012", 2)));
+		aggregator.accept(itemDrop("main_01-07", 1, 1099L, drop("30012", 1)));
+		aggregator.accept(itemDrop("main_01-07", 1, 1100L, drop("30012", 4)));
+
+		List<Document> results = aggregator.getResults();
+		assertEquals(2, results.size());
+		assertEquals(Integer.valueOf(3), find(results, 0.0, "main_01-07", "30012").getInteger("quantity"));
+		assertEquals(Integer.valueOf(4), find(results, 1.0, "main_01-07", "30012").getInteger("quantity"));
+		assertEquals(Integer.valueOf(1), find(results, 1.0, "main_01-07", "30012").getInteger("times"));
+	}
+
+	@Test
+	public void testItemFilterAndEmptyDrops() {
+		ItemDropAggregator aggregator = new ItemDropAggregator(Arrays.asList("30013"), null, null);
+		aggregator.accept(itemDrop("main_01-07", 1, 100L, drop("30012", 2), drop("30013", 1)));
+		aggregator.accept(itemDrop("main_01-07", 1, 200L));
+		aggregator.accept(itemDrop("main_04-04", 1, 300L, drop("30012", 3)));
+
+		List<Document> results = aggregator.getResults();
+		assertEquals(2, results.size());
+		assertEquals(Integer.valueOf(1), find(results, 0.0, "main_01-07", "30013").getInteger("quantity"));
+		Document emptyDoc = find(results, 0.0, "main_01-07", null);
+		assertEquals(Integer.valueOf(2), emptyDoc.getInteger("times"));
+		assertFalse(results.stream().anyMatch(doc -> "main_04-04".equals(doc.getString("stageId"))));
+	}
+
+}
@@ -0,0 +1,82 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+public class ReportJournalTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	@Test
+	public void testRotateHandsOverWrittenSegments() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		ReportJournal journal = new ReportJournal(directory);
+		assertEquals(Collections.emptyList(), journal.rotate());
+
+		journal.append("a1");
+		journal.append("a2");
+		// The active segment is never listed, so a flush only sees closed segments
+		assertEquals(Collections.emptyList(), journal.listSegments());
+		List<Path> first = journal.rotate();
+		assertEquals(1, first.size());
+		assertEquals(Arrays.asList("a1", "a2"), journal.readSegment(first.get(0)));
+
+		journal.append("b1");
+		List<Path> second = journal.rotate();
+		assertEquals(Arrays.asList(first.get(0), second.get(0)), journal.listSegments());
+
+		journal.delete(first);
+		assertEquals(second, journal.listSegments());
+	}
+
+	@Test
+	public void testReplayAfterCrash() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		ReportJournal journal = new ReportJournal(directory);
+		journal.append("a1");
+		journal.rotate();
+		journal.append("b1");
+		journal.append("b2");
+		// the JVM stops here, without closing the active segment
+
+		ReportJournal replayed = new ReportJournal(directory);
+		List<Path> segments = replayed.listSegments();
+		assertEquals(2, segments.size());
+		List<String> lines = new ArrayList<>();
+		for (Path segment : segments)
+			lines.addAll(replayed.readSegment(segment));
+		assertEquals(Arrays.asList("a1", "b1", "b2"), lines);
+
+		// New lines go into a new segment after the replayed ones
+		replayed.append("c1");
+		List<Path> next = replayed.rotate();
+		assertFalse(segments.contains(next.get(0)));
+		assertEquals(next.get(0), replayed.listSegments().get(2));
+	}
+
+	@Test
+	public void testReadSkipsEmptyLines() throws IOException {
+		Path directory = folder.getRoot().toPath();
+		ReportJournal journal = new ReportJournal(directory);
+		journal.append("a1");
+		Path segment = journal.rotate().get(0);
+		Files.write(segment, "\na2\n\n".getBytes(StandardCharsets.UTF_8), StandardOpenOption.APPEND);
+		assertEquals(Arrays.asList("a1", "a2"), journal.readSegment(segment));
+	}
+
+}
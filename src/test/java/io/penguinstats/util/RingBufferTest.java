@@ -0,0 +1,67 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+public class RingBufferTest {
+
+	@Test
+	public void testOfferFailsWhenFull() {
+		RingBuffer<Integer> ringBuffer = new RingBuffer<>(3);
+		assertEquals(4, ringBuffer.capacity());
+		for (int i = 0; i < 4; i++)
+			assertTrue(ringBuffer.offer(i));
+		assertFalse(ringBuffer.offer(4));
+		assertEquals(4, ringBuffer.size());
+
+		assertEquals(Integer.valueOf(0), ringBuffer.poll());
+		assertTrue(ringBuffer.offer(4));
+		List<Integer> drained = new ArrayList<>();
+		assertEquals(4, ringBuffer.drain(drained::add, 10));
+		assertEquals(Arrays.asList(1, 2, 3, 4), drained);
+		assertNull(ringBuffer.poll());
+	}
+
+	@Test
+	public void testConcurrentProducersLoseNothing() throws Exception {
+		RingBuffer<Integer> ringBuffer = new RingBuffer<>(64);
+		ExecutorService producers = Executors.newFixedThreadPool(4);
+		List<Future<?>> futures = new ArrayList<>();
+		for (int p = 0; p < 4; p++) {
+			int base = p * 10000;
+			futures.add(producers.submit(() -> {
+				for (int i = 0; i < 10000; i++) {
+					while (!ringBuffer.offer(base + i))
+						Thread.yield();
+				}
+			}));
+		}
+
+		Set<Integer> consumed = new HashSet<>();
+		long deadline = System.currentTimeMillis() + TimeUnit.SECONDS.toMillis(10);
+		while (consumed.size() < 40000 && System.currentTimeMillis() < deadline) {
+			if (ringBuffer.drain(consumed::add, 128) == 0)
+				Thread.yield();
+		}
+		for (Future<?> future : futures)
+			future.get(5, TimeUnit.SECONDS);
+		producers.shutdown();
+		assertEquals(40000, consumed.size());
+		assertNull(ringBuffer.poll());
+	}
+
+}
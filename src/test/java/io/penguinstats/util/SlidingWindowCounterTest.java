@@ -0,0 +1,56 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Map;
+
+import org.junit.Test;
+
+public class SlidingWindowCounterTest {
+
+	private static final long MINUTE = 60000L;
+
+	private static final long BASE_TIME = 1556668800000L;
+
+	@Test
+	public void testValuesExpireWithTheirMinute() {
+		SlidingWindowCounter counter = new SlidingWindowCounter(3 * MINUTE);
+		counter.add("main_01-07", BASE_TIME, 2, BASE_TIME);
+		counter.add("main_01-07", BASE_TIME + MINUTE, 3, BASE_TIME + MINUTE);
+		counter.add("main_04-06", BASE_TIME + 2 * MINUTE, 5, BASE_TIME + 2 * MINUTE);
+
+		Map<String, Long> sum = counter.sum(BASE_TIME + 2 * MINUTE);
+		assertEquals(Long.valueOf(5), sum.get("main_01-07"));
+		assertEquals(Long.valueOf(5), sum.get("main_04-06"));
+
+		sum = counter.sum(BASE_TIME + 3 * MINUTE);
+		assertEquals(Long.valueOf(3), sum.get("main_01-07"));
+
+		sum = counter.sum(BASE_TIME + 10 * MINUTE);
+		assertTrue(sum.isEmpty());
+	}
+
+	@Test
+	public void testNegativeValuesCompensate() {
+		SlidingWindowCounter counter = new SlidingWindowCounter(60 * MINUTE);
+		counter.add("main_01-07", BASE_TIME, 1, BASE_TIME);
+		counter.add("main_01-07", BASE_TIME + MINUTE, 1, BASE_TIME + MINUTE);
+		counter.add("main_01-07", BASE_TIME, -1, BASE_TIME + 2 * MINUTE);
+		assertEquals(Long.valueOf(1), counter.sum(BASE_TIME + 2 * MINUTE).get("main_01-07"));
+
+		counter.add("main_01-07", BASE_TIME + MINUTE, -1, BASE_TIME + 2 * MINUTE);
+		assertTrue(counter.sum(BASE_TIME + 2 * MINUTE).isEmpty());
+	}
+
+	@Test
+	public void testOutOfWindowValuesAreIgnored() {
+		SlidingWindowCounter counter = new SlidingWindowCounter(3 * MINUTE);
+		counter.add("main_01-07", BASE_TIME - 5 * MINUTE, 1, BASE_TIME);
+		counter.add("main_01-07", BASE_TIME + 5 * MINUTE, 2, BASE_TIME);
+		assertEquals(Long.valueOf(2), counter.sum(BASE_TIME).get("main_01-07"));
+		assertEquals(Long.valueOf(2), counter.sum(BASE_TIME + 2 * MINUTE).get("main_01-07"));
+		assertTrue(counter.sum(BASE_TIME + 3 * MINUTE).isEmpty());
+	}
+
+}
@@ -0,0 +1,109 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+public class TaskRunnerTest {
+
+	private TaskRunner taskRunner;
+
+	@Before
+	public void setUp() {
+		taskRunner = new TaskRunner();
+		ReflectionTestUtils.setField(taskRunner, "parallelism", 4);
+		ReflectionTestUtils.setField(taskRunner, "maxConcurrentAggregations", 1);
+		taskRunner.init();
+	}
+
+	@After
+	public void tearDown() {
+		taskRunner.destroy();
+	}
+
+	@Test
+	public void testSkipWhilePreviousRunIsExecuting() throws InterruptedException {
+		CountDownLatch release = new CountDownLatch(1);
+		CountDownLatch finished = new CountDownLatch(1);
+		taskRunner.run("test", () -> {
+			try {
+				release.await();
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+			finished.countDown();
+		});
+		taskRunner.run("test", () -> {});
+		release.countDown();
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+		assertEquals(1L, taskRunner.getStats().get("test").getSkipped().get());
+	}
+
+	@Test
+	public void testMapKeepsOrderAndLimitsAggregations() throws InterruptedException {
+		AtomicInteger concurrent = new AtomicInteger();
+		AtomicInteger maxConcurrent = new AtomicInteger();
+		CountDownLatch finished = new CountDownLatch(1);
+		List<List<Integer>> results = new ArrayList<>();
+		taskRunner.run("test", () -> {
+			results.add(taskRunner.map(Arrays.asList(1, 2, 3, 4, 5, 6), i -> taskRunner.limitAggregation(() -> {
+				maxConcurrent.accumulateAndGet(concurrent.incrementAndGet(), Math::max);
+				try {
+					Thread.sleep(20L);
+				} catch (InterruptedException e) {
+					Thread.currentThread().interrupt();
+				}
+				concurrent.decrementAndGet();
+				return i * 10;
+			})));
+			finished.countDown();
+		});
+		assertTrue(finished.await(5, TimeUnit.SECONDS));
+
+		assertEquals(Arrays.asList(10, 20, 30, 40, 50, 60), results.get(0));
+		assertEquals(1, maxConcurrent.get());
+	}
+
+	@Test
+	public void testMapOutsidePoolRunsInCallingThread() {
+		Thread caller = Thread.currentThread();
+		List<Integer> results = taskRunner.map(Arrays.asList(1, 2, 3), i -> {
+			assertSame(caller, Thread.currentThread());
+			return i * 10;
+		});
+		assertEquals(Arrays.asList(10, 20, 30), results);
+	}
+
+	@Test
+	public void testMapOutsidePoolStopsWhenInterrupted() {
+		AtomicInteger processed = new AtomicInteger();
+		try {
+			taskRunner.map(Arrays.asList(1, 2, 3), i -> {
+				processed.incrementAndGet();
+				Thread.currentThread().interrupt();
+				return i;
+			});
+			fail("The rest of the items should be skipped once the caller is interrupted");
+		} catch (CancellationException e) {
+			assertEquals(1, processed.get());
+		} finally {
+			Thread.interrupted();
+		}
+	}
+
+}
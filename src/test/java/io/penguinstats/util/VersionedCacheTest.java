@@ -0,0 +1,48 @@
+package io.penguinstats.util;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+public class VersionedCacheTest {
+
+	@Test
+	public void testReloadAfterVersionChanged() {
+		AtomicLong version = new AtomicLong();
+		AtomicInteger loads = new AtomicInteger();
+		VersionedCache<String, Integer> cache = new VersionedCache<>(version::get, () -> Long.MAX_VALUE / 2);
+
+		assertEquals(Integer.valueOf(1), cache.get("a", key -> loads.incrementAndGet()));
+		assertEquals(Integer.valueOf(1), cache.get("a", key -> loads.incrementAndGet()));
+		version.incrementAndGet();
+		assertNull(cache.getIfPresent("a"));
+		assertEquals(Integer.valueOf(2), cache.get("a", key -> loads.incrementAndGet()));
+	}
+
+	@Test
+	public void testChangeDuringLoadIsNotStamped() {
+		AtomicLong version = new AtomicLong();
+		VersionedCache<String, String> cache = new VersionedCache<>(version::get, () -> Long.MAX_VALUE / 2);
+
+		// The data changes while the stale value is being loaded
+		assertEquals("stale", cache.get("a", key -> {
+			version.incrementAndGet();
+			return "stale";
+		}));
+		assertNull(cache.getIfPresent("a"));
+		assertEquals("fresh", cache.get("a", key -> "fresh"));
+		assertEquals("fresh", cache.getIfPresent("a"));
+	}
+
+	@Test
+	public void testReloadAfterRefreshInterval() {
+		VersionedCache<String, String> cache = new VersionedCache<>(() -> 0L, () -> 0L);
+		cache.put("a", "value", 0L);
+		assertNull(cache.getIfPresent("a"));
+	}
+
+}
@@ -0,0 +1,86 @@
+package io.penguinstats.util.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+
+import org.junit.Test;
+
+import io.penguinstats.enums.DropMatrixElementType;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.DropMatrixElement;
+import io.penguinstats.util.DropMatrixElementUtil;
+
+public class DropMatrixTableTest {
+
+	private static DropMatrixElement element(String stageId, String itemId, int quantity, int times, long start,
+			Long end, boolean isPast, long updateTime) {
+		return new DropMatrixElement(DropMatrixElementType.REGULAR, stageId, itemId, quantity, times, start, end,
+				Server.CN, isPast, updateTime);
+	}
+
+	@Test
+	public void testLookupAndCombine() {
+		OrdinalDictionary stages = new OrdinalDictionary();
+		OrdinalDictionary items = new OrdinalDictionary();
+		List<DropMatrixElement> pastElements = Arrays.asList(
+				element("main_01-07", "30012", 10, 20, 100L, 200L, true, 5L),
+				element("main_04-04", "30012", 3, 9, 100L, 200L, true, 6L));
+		List<DropMatrixElement> currentElements = Arrays.asList(
+				element("main_01-07", "30012", 1, 2, 300L, null, false, 7L),
+				element("main_01-07", "30013", 4, 2, 300L, null, false, 8L));
+
+		DropMatrixTable past = DropMatrixTable.of(pastElements, stages, items);
+		DropMatrixTable current = DropMatrixTable.of(currentElements, stages, items);
+		DropMatrixTable combined = DropMatrixTable.combine(past, current);
+		List<DropMatrixElement> expected = DropMatrixElementUtil.combineElementLists(pastElements, currentElements);
+
+		assertEquals(expected.size(), combined.size());
+		assertEquals(8L, combined.getUpdateTime());
+		for (DropMatrixElement el : expected) {
+			int row = combined.indexOf(stages.lookup(el.getStageId()), items.lookup(el.getItemId()));
+			assertEquals(el.getQuantity().intValue(), combined.getQuantity(row));
+			assertEquals(el.getTimes().intValue(), combined.getTimes(row));
+			assertEquals(el.getStart().longValue(), combined.getStart(row));
+			assertEquals(el.getEnd() == null ? DropMatrixTable.OPEN_END : el.getEnd(), combined.getEnd(row));
+		}
+		assertEquals(-1, combined.indexOf(stages.lookup("main_04-04"), items.lookup("30013")));
+		assertEquals(-1, combined.indexOf(stages.lookup("unknown"), items.lookup("30012")));
+	}
+
+	@Test
+	public void testFilter() {
+		OrdinalDictionary stages = new OrdinalDictionary();
+		OrdinalDictionary items = new OrdinalDictionary();
+		List<DropMatrixElement> elements = Arrays.asList(element("main_01-07", "30012", 10, 20, 100L, null, true, 5L),
+				element("main_04-04", "30012", 3, 9, 100L, 200L, true, 6L),
+				element("main_04-04", "30013", 1, 9, 100L, 200L, true, 6L));
+		DropMatrixTable table = DropMatrixTable.of(elements, stages, items);
+
+		BitSet stageMask = new BitSet();
+		stageMask.set(stages.lookup("main_04-04"));
+		BitSet itemMask = new BitSet();
+		itemMask.set(items.lookup("30012"));
+
+		assertEquals(3, table.count(null, null));
+		assertEquals(2, table.count(stageMask, null));
+		assertEquals(2, table.count(null, itemMask));
+
+		List<DropMatrixElement> filtered = table.toElements(stageMask, itemMask);
+		assertEquals(1, filtered.size());
+		DropMatrixElement el = filtered.get(0);
+		assertEquals("main_04-04", el.getStageId());
+		assertEquals("30012", el.getItemId());
+		assertEquals(Integer.valueOf(3), el.getQuantity());
+		assertEquals(Long.valueOf(200L), el.getEnd());
+		assertNull(el.getServer());
+		assertNull(el.getUpdateTime());
+
+		assertNull(table.toElements(null, null).stream().filter(e -> e.getStageId().equals("main_01-07"))
+				.findFirst().get().getEnd());
+	}
+
+}
@@ -0,0 +1,59 @@
+package io.penguinstats.util.matrix;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TimeRange;
+
+public class OpeningStageTimelineTest {
+
+	private static DropInfo info(String stageId, String itemId, String timeRangeID) {
+		DropInfo info = new DropInfo();
+		info.setStageId(stageId);
+		info.setItemId(itemId);
+		info.setTimeRangeID(timeRangeID);
+		return info;
+	}
+
+	@Test
+	public void testOpeningStagesOverTime() {
+		Map<String, TimeRange> timeRangeMap = new HashMap<>();
+		timeRangeMap.put("always", new TimeRange(100L, null));
+		timeRangeMap.put("event1", new TimeRange(200L, 300L));
+		timeRangeMap.put("event2", new TimeRange(300L, 400L));
+		List<DropInfo> infos = Arrays.asList(info("main_01-07", "30012", "always"),
+				info("main_01-07", "30013", "always"), info("act_01", "30012", "event1"),
+				info("act_01", "30013", "event2"), info("act_02", "30012", "event1"),
+				info("unknown", "30012", "missing"));
+		OrdinalDictionary stages = new OrdinalDictionary();
+		OpeningStageTimeline timeline = OpeningStageTimeline.build(infos, timeRangeMap, stages);
+
+		assertEquals(Collections.emptySet(), timeline.getOpeningStages(99L));
+		assertEquals(Collections.singleton("main_01-07"), timeline.getOpeningStages(100L));
+		assertEquals(new HashSet<>(Arrays.asList("main_01-07", "act_01", "act_02")),
+				timeline.getOpeningStages(250L));
+		// act_01 is closed by event1 and reopened by event2 at the same boundary
+		assertEquals(new HashSet<>(Arrays.asList("main_01-07", "act_01")), timeline.getOpeningStages(300L));
+		assertEquals(Collections.singleton("main_01-07"), timeline.getOpeningStages(400L));
+		assertEquals(-1, stages.lookup("unknown"));
+
+		BitSet mask = timeline.getOpeningStageMask(250L);
+		assertEquals(3, mask.cardinality());
+		assertTrue(mask.get(stages.lookup("act_02")));
+		mask.clear();
+		assertEquals(3, timeline.getOpeningStageMask(250L).cardinality());
+		assertTrue(timeline.getOpeningStageMask(50L).isEmpty());
+	}
+
+}
@@ -0,0 +1,75 @@
+package io.penguinstats.util.snapshot;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.bson.types.ObjectId;
+import org.junit.Test;
+
+import io.penguinstats.model.ItemDrop;
+
+public class DeletionTrackerTest {
+
+	@Test
+	public void testDeletedBeforeStreamedIsSkipped() {
+		DeletionTracker tracker = new DeletionTracker();
+		ItemDrop early = itemDrop(100L);
+		ItemDrop late = itemDrop(300L);
+		assertTrue(tracker.accept(early.getId(), 100L));
+		tracker.delete(late);
+		// Fetched by the cursor before the deletion is saved
+		assertFalse(tracker.accept(late.getId(), 300L));
+		assertEquals(Collections.emptyList(), tracker.getCountedItemDrops());
+		assertEquals(Collections.singletonList(late), tracker.getDeletedItemDrops());
+	}
+
+	@Test
+	public void testDeletedAfterStreamedIsCounted() {
+		DeletionTracker tracker = new DeletionTracker();
+		ItemDrop first = itemDrop(100L);
+		ItemDrop second = itemDrop(200L);
+		ItemDrop sameTimestamp = itemDrop(200L);
+		assertTrue(tracker.accept(first.getId(), 100L));
+		assertTrue(tracker.accept(second.getId(), 200L));
+		tracker.delete(first);
+		tracker.delete(second);
+		// Not reached yet, although its timestamp is the position
+		tracker.delete(sameTimestamp);
+		assertFalse(tracker.accept(sameTimestamp.getId(), 200L));
+		assertEquals(Arrays.asList(first, second), tracker.getCountedItemDrops());
+	}
+
+	@Test
+	public void testSavedBehindStreamIsMissed() {
+		DeletionTracker tracker = new DeletionTracker();
+		ItemDrop passed = itemDrop(100L);
+		ItemDrop read = itemDrop(300L);
+		ItemDrop unread = itemDrop(300L);
+		ItemDrop afterEnd = itemDrop(500L);
+		ItemDrop deleted = itemDrop(100L);
+		assertTrue(tracker.accept(new ObjectId(), 200L));
+		tracker.save(passed);
+		tracker.save(read);
+		tracker.save(unread);
+		tracker.save(afterEnd);
+		tracker.save(deleted);
+		assertTrue(tracker.accept(read.getId(), 300L));
+		// Never counted, so it is neither missed nor to be subtracted
+		tracker.delete(deleted);
+		assertEquals(Arrays.asList(passed, unread), tracker.getMissedItemDrops(400L));
+		assertEquals(Collections.emptyList(), tracker.getCountedItemDrops());
+		assertEquals(Arrays.asList(passed, read, unread, afterEnd, deleted), tracker.getSavedItemDrops());
+	}
+
+	private ItemDrop itemDrop(long timestamp) {
+		ItemDrop itemDrop = new ItemDrop();
+		itemDrop.setId(new ObjectId());
+		itemDrop.setTimestamp(timestamp);
+		return itemDrop;
+	}
+
+}
@@ -0,0 +1,91 @@
+package io.penguinstats.util.snapshot;
+
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.bson.Document;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.Drop;
+import io.penguinstats.model.ItemDrop;
+
+public class ItemDropSnapshotTest {
+
+	@Rule
+	public TemporaryFolder folder = new TemporaryFolder();
+
+	private static Document itemDrop(String stageId, int times, long timestamp, Document... drops) {
+		return new Document("server", "CN").append("stageId", stageId).append("times", times)
+				.append("timestamp", timestamp).append("drops", new ArrayList<>(Arrays.asList(drops)));
+	}
+
+	private static Document drop(String itemId, int quantity) {
+		return new Document("itemId", itemId).append("quantity", quantity);
+	}
+
+	private static List<String> scanToList(ItemDropSnapshot snapshot) throws IOException {
+		List<String> rows = new ArrayList<>();
+		snapshot.scan((server, stageId, timestamp, times, itemIds, quantities, dropNum) -> {
+			StringBuilder sb = new StringBuilder(server + "," + stageId + "," + timestamp + "," + times);
+			for (int i = 0; i < dropNum; i++)
+				sb.append(",").append(itemIds[i]).append(":").append(quantities[i]);
+			rows.add(sb.toString());
+		});
+		return rows;
+	}
+
+	@Test
+	public void testAppendAndScan() throws IOException {
+		Path dir = folder.getRoot().toPath().resolve("gen-1");
+		try (ItemDropSnapshot snapshot = ItemDropSnapshot.create(dir)) {
+			snapshot.append(itemDrop("main_01-07", 1, 1000L, drop("30012", 2), drop("30013", 1)));
+			snapshot.append(itemDrop("main_04-04", 1, 900L));
+			assertEquals(0, scanToList(snapshot).size());
+
+			snapshot.commit(2000L);
+			assertEquals(Arrays.asList("CN,main_01-07,1000,1,30012:2,30013:1", "CN,main_04-04,900,1"),
+					scanToList(snapshot));
+			assertEquals(2000L, snapshot.getHighWaterMark());
+
+			ItemDrop deleted = new ItemDrop().setServer(Server.CN).setStageId("main_01-07").setTimestamp(1000L)
+					.setTimes(1).setDrops(Arrays.asList(new Drop("30012", 2)));
+			snapshot.appendDeleted(deleted);
+			snapshot.commit(2000L);
+			assertEquals("CN,main_01-07,1000,-1,30012:-2", scanToList(snapshot).get(2));
+
+			ItemDrop saved = new ItemDrop().setServer(Server.CN).setStageId("main_04-04").setTimestamp(500L)
+					.setTimes(1).setDrops(Arrays.asList(new Drop("30013", 1)));
+			snapshot.appendSaved(saved);
+			snapshot.commit(2000L);
+			assertEquals("CN,main_04-04,500,1,30013:1", scanToList(snapshot).get(3));
+		}
+	}
+
+	@Test
+	public void testUncommittedRowsAreDiscardedOnOpen() throws IOException {
+		Path dir = folder.getRoot().toPath().resolve("gen-1");
+		try (ItemDropSnapshot snapshot = ItemDropSnapshot.create(dir)) {
+			snapshot.append(itemDrop("main_01-07", 1, 1000L, drop("30012", 2)));
+			snapshot.commit(1500L);
+			snapshot.append(itemDrop("main_01-07", 1, 1600L, drop("30012", 300)));
+			for (int i = 0; i < 10000; i++)
+				snapshot.append(itemDrop("main_01-07", 1, 1600L + i, drop("30013", i)));
+		}
+		try (ItemDropSnapshot snapshot = ItemDropSnapshot.open(dir)) {
+			assertEquals(Arrays.asList("CN,main_01-07,1000,1,30012:2"), scanToList(snapshot));
+			snapshot.append(itemDrop("main_01-07", 1, 1700L, drop("30014", 1)));
+			snapshot.commit(1800L);
+			assertEquals(Arrays.asList("CN,main_01-07,1000,1,30012:2", "CN,main_01-07,1700,1,30014:1"),
+					scanToList(snapshot));
+		}
+	}
+
+}
@@ -0,0 +1,93 @@
+package io.penguinstats.util.validator;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import io.penguinstats.enums.DropType;
+import io.penguinstats.enums.Server;
+import io.penguinstats.model.Bounds;
+import io.penguinstats.model.DropInfo;
+import io.penguinstats.model.TimeRange;
+import io.penguinstats.model.TypedDrop;
+
+public class CompiledDropRuleTest {
+
+	private final CompiledDropRule rule = new CompiledDropRule(Arrays.asList(info("30012", DropType.NORMAL_DROP, 0, 3),
+			info("30011", DropType.NORMAL_DROP, 0, 2), info(null, DropType.NORMAL_DROP, 1, 2),
+			info("30013", DropType.EXTRA_DROP, null, null), info(null, DropType.EXTRA_DROP, 0, 1)));
+
+	@Test
+	public void testValidDrops() {
+		assertTrue(rule.validate(Arrays.asList(drop("30012", 3, DropType.NORMAL_DROP),
+				drop("30011", 2, DropType.NORMAL_DROP), drop("30013", 5, DropType.EXTRA_DROP))));
+		// SPECIAL_DROP has no drop info, so it is not checked
+		assertTrue(rule.validate(
+				Arrays.asList(drop("30012", 1, DropType.NORMAL_DROP), drop("30099", 9, DropType.SPECIAL_DROP))));
+	}
+
+	@Test
+	public void testInvalidDrops() {
+		assertFalse(rule.validate(null));
+		assertFalse(rule.validate(Collections.emptyList()));
+		assertFalse(rule.validate(Arrays.asList(drop("30012", 4, DropType.NORMAL_DROP))));
+		assertFalse(rule.validate(Arrays.asList(drop("30013", 1, DropType.NORMAL_DROP))));
+		assertFalse(rule.validate(
+				Arrays.asList(drop("30012", 1, DropType.NORMAL_DROP), drop("30012", 1, DropType.NORMAL_DROP))));
+		assertFalse(rule.validate(Arrays.asList(drop("30012", 1, DropType.NORMAL_DROP),
+				drop("30011", 1, DropType.NORMAL_DROP), drop("30013", 1, DropType.EXTRA_DROP),
+				drop("30013", 1, DropType.EXTRA_DROP))));
+		assertFalse(rule.validate(Arrays.asList(drop("30012", 1, null))));
+	}
+
+	@Test
+	public void testIndexIsValidBetweenBoundaries() {
+		Map<String, TimeRange> timeRangeMap = new HashMap<>();
+		timeRangeMap.put("first", range("first", 1000L, 2000L));
+		timeRangeMap.put("second", range("second", 2000L, null));
+		timeRangeMap.put("event", range("event", 1500L, 1800L));
+		List<DropInfo> infos = Arrays.asList(info("main_01-07", "first"), info("main_01-07", "second"),
+				info("act_01", "event"));
+
+		DropRuleIndex index = DropRuleIndex.build(infos, timeRangeMap, 1200L);
+		assertEquals(1000L, index.getValidFrom());
+		assertEquals(1500L, index.getValidUntil());
+		assertTrue(index.covers(1499L));
+		assertFalse(index.covers(1500L));
+		assertNull(index.getRule("act_01"));
+
+		index = DropRuleIndex.build(infos, timeRangeMap, 2500L);
+		assertEquals(2000L, index.getValidFrom());
+		assertEquals(Long.MAX_VALUE, index.getValidUntil());
+		assertEquals(Collections.singleton("main_01-07"), index.getRulesByStageId().keySet());
+	}
+
+	private static DropInfo info(String itemId, DropType dropType, Integer lower, Integer upper) {
+		return new DropInfo(null, Server.CN, "main_01-07", itemId, dropType, "range",
+				lower == null && upper == null ? null : new Bounds(lower, upper), true, null);
+	}
+
+	private static DropInfo info(String stageId, String rangeID) {
+		return new DropInfo(null, Server.CN, stageId, null, DropType.NORMAL_DROP, rangeID, null, true, null);
+	}
+
+	private static TimeRange range(String rangeID, Long start, Long end) {
+		TimeRange range = new TimeRange(start, end);
+		range.setRangeID(rangeID);
+		return range;
+	}
+
+	private static TypedDrop drop(String itemId, Integer quantity, DropType dropType) {
+		return new TypedDrop(itemId, quantity, dropType);
+	}
+
+}